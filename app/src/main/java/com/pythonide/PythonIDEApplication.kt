@@ -10,6 +10,7 @@ import com.pythonide.services.GitService
 import com.pythonide.services.FileSyncService
 import com.pythonide.utils.CrashHandler
 import com.pythonide.utils.ThemeManager
+import java.io.File
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.SupervisorJob
 
@@ -31,7 +32,7 @@ class PythonIDEApplication : Application() {
     }
     
     // Repositories
-    val fileRepository by lazy { FileRepository(database.fileDao()) }
+    val fileRepository by lazy { FileRepository(database.fileDao(), File(cacheDir, "search_index")) }
     val gitRepository by lazy { GitRepository(database.gitDao()) }
     
     // Coroutine scope for app-wide operations
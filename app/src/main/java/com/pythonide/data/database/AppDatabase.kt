@@ -51,6 +51,9 @@ interface FileDao {
     @Query("SELECT * FROM files WHERE name LIKE :searchQuery OR content LIKE :searchQuery ORDER BY last_modified DESC")
     suspend fun searchFiles(searchQuery: String): List<FileModel>
     
+    @Query("SELECT * FROM files WHERE name LIKE :searchQuery ORDER BY last_modified DESC")
+    suspend fun searchFilesByName(searchQuery: String): List<FileModel>
+    
     @Query("SELECT * FROM files WHERE parent_folder = :parentFolder ORDER BY is_favorite DESC, name ASC")
     suspend fun getFilesInFolder(parentFolder: String): List<FileModel>
     
@@ -4,16 +4,24 @@ import android.content.Context
 import com.pythonide.data.database.FileDao
 import com.pythonide.data.models.FileModel
 import com.pythonide.data.models.GitFileStatus
+import com.pythonide.data.search.TrigramIndex
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import java.io.File
 import java.util.*
+import java.util.regex.PatternSyntaxException
 
 /**
  * Repository for file operations
  * Handles business logic for file management
  */
-class FileRepository(private val fileDao: FileDao) {
+class FileRepository(
+    private val fileDao: FileDao,
+    private val indexDirectory: File? = null
+) {
+    
+    // Content search indexes of the scanned projects, keyed by project root
+    private val contentIndexes = HashMap<String, TrigramIndex>()
     
     /**
      * Get all files from database
@@ -45,12 +53,36 @@ class FileRepository(private val fileDao: FileDao) {
     
     /**
      * Search files by name or content
+     * Content is searched through the trigram index of each scanned project; before any
+     * project has been scanned this falls back to matching the stored content in SQL.
      */
-    suspend fun searchFiles(query: String): List<FileModel> = withContext(Dispatchers.IO) {
+    suspend fun searchFiles(
+        query: String,
+        caseSensitive: Boolean = false,
+        useRegex: Boolean = false
+    ): List<FileModel> = withContext(Dispatchers.IO) {
         if (query.isBlank()) {
+            return@withContext emptyList()
+        }
+        
+        val indexes = synchronized(contentIndexes) { contentIndexes.values.toList() }
+        if (indexes.isEmpty()) {
+            return@withContext fileDao.searchFiles("%$query%")
+        }
+        
+        try {
+            val results = LinkedHashMap<String, FileModel>()
+            fileDao.searchFilesByName("%$query%").forEach { results[it.path] = it }
+            for (index in indexes) {
+                for (path in index.search(query, caseSensitive, useRegex)) {
+                    if (path !in results) {
+                        fileDao.getFileByPath(path)?.let { results[path] = it }
+                    }
+                }
+            }
+            results.values.sortedByDescending { it.lastModified }
+        } catch (e: PatternSyntaxException) {
             emptyList()
-        } else {
-            fileDao.searchFiles("%$query%")
         }
     }
     
@@ -80,6 +112,7 @@ class FileRepository(private val fileDao: FileDao) {
                 val file = File(currentFile.path)
                 file.parentFile?.mkdirs()
                 file.writeText(content)
+                contentIndexFor(file)?.updateFile(file, content)
             }
             
             true
@@ -121,6 +154,7 @@ class FileRepository(private val fileDao: FileDao) {
             // Write to physical file
             file.writeText(content)
             fileModel.size = file.length()
+            contentIndexFor(file)?.updateFile(file, content)
             
             // Save to database
             fileDao.insertFile(fileModel)
@@ -140,6 +174,7 @@ class FileRepository(private val fileDao: FileDao) {
             
             // Delete physical file
             File(file.path).delete()
+            contentIndexFor(File(file.path))?.removeFile(File(file.path))
             
             // Delete from database
             fileDao.deleteFile(file)
@@ -163,6 +198,9 @@ class FileRepository(private val fileDao: FileDao) {
             
             // Rename physical file
             if (oldFile.renameTo(newFile)) {
+                contentIndexFor(oldFile)?.removeFile(oldFile)
+                contentIndexFor(newFile)?.updateFile(newFile)
+                
                 val updatedFile = currentFile.copy(
                     name = newName,
                     path = newPath,
@@ -334,12 +372,38 @@ class FileRepository(private val fileDao: FileDao) {
             // Save to database
             fileDao.insertFiles(fileModels)
             
+            // Bring the project's content index up to date; only changed files are re-read
+            projectIndex(directory)?.refresh()
+            
             fileModels
         } catch (e: Exception) {
             emptyList()
         }
     }
     
+    /**
+     * Content index of a project root, loaded from disk on first use
+     */
+    private fun projectIndex(root: File): TrigramIndex? {
+        val directory = indexDirectory ?: return null
+        val rootPath = root.absolutePath
+        return synchronized(contentIndexes) {
+            contentIndexes.getOrPut(rootPath) {
+                val name = root.name + "-" + Integer.toHexString(rootPath.hashCode()) + ".trg"
+                TrigramIndex(root, File(directory, name))
+            }
+        }
+    }
+    
+    /**
+     * Index of the scanned project containing [file], if any
+     */
+    private fun contentIndexFor(file: File): TrigramIndex? {
+        return synchronized(contentIndexes) {
+            contentIndexes.values.firstOrNull { it.contains(file) }
+        }
+    }
+    
     companion object {
         private fun getFileTypeFromName(fileName: String): String {
             return when {
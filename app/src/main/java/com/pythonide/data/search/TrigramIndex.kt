@@ -0,0 +1,637 @@
+package com.pythonide.data.search
+
+import android.util.Log
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.charset.CodingErrorAction
+import java.util.regex.Pattern
+
+/**
+ * Persistent trigram index over the text files of one project
+ * Every file is reduced to the set of case-folded trigrams it contains; a query only
+ * reads the files whose trigram sets contain all trigrams of the query's required literals,
+ * found by intersecting sorted posting lists. The index is kept on disk and brought up
+ * to date incrementally from file modification times.
+ */
+class TrigramIndex(val root: File, private val indexFile: File) {
+    
+    private val TAG = "TrigramIndex"
+    
+    /**
+     * An indexed file; [trigrams] is null for files too large to index, which are always verified
+     */
+    private class Document(
+        val path: String,
+        val lastModified: Long,
+        val size: Long,
+        val trigrams: IntArray?
+    )
+    
+    /**
+     * Sorted, growable list of document ids
+     */
+    private class PostingList {
+        var ids = IntArray(4)
+        var size = 0
+        
+        fun append(id: Int) {
+            // A new document always gets the highest id, so the list stays sorted
+            if (size == ids.size) {
+                ids = ids.copyOf(size * 2)
+            }
+            ids[size++] = id
+        }
+        
+        fun remove(id: Int) {
+            val index = java.util.Arrays.binarySearch(ids, 0, size, id)
+            if (index >= 0) {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1)
+                size--
+            }
+        }
+    }
+    
+    // Guarded by this
+    private val documents = ArrayList<Document?>()
+    private val documentIds = HashMap<String, Int>()
+    private val postings = HashMap<Int, PostingList>()
+    private val unindexed = HashSet<Int>()
+    private var loaded = false
+    private var dirty = false
+    
+    /**
+     * Bring the index up to date with the project tree: load the on-disk index on first use,
+     * re-index files whose size or modification time changed, drop deleted ones, and persist
+     * the result if anything changed. Blocking; call from a background thread.
+     */
+    fun refresh() {
+        ensureLoaded()
+        val startTime = System.currentTimeMillis()
+        
+        val seen = HashSet<String>()
+        var reindexed = 0
+        walk(root) { file ->
+            val path = file.absolutePath
+            seen.add(path)
+            val lastModified = file.lastModified()
+            val size = file.length()
+            val current = synchronized(this) { documentIds[path]?.let { documents[it] } }
+            if (current == null || current.lastModified != lastModified || current.size != size) {
+                // Reading and tokenizing happen outside the lock so queries are not blocked
+                val trigrams = if (size > MAX_INDEXED_SIZE) null else readTrigrams(file)
+                synchronized(this) { put(Document(path, lastModified, size, trigrams)) }
+                reindexed++
+            }
+        }
+        
+        synchronized(this) {
+            val removed = documentIds.keys.filter { it !in seen }
+            removed.forEach { remove(it) }
+            if (reindexed > 0 || removed.isNotEmpty()) {
+                dirty = true
+            }
+        }
+        persistIfDirty()
+        
+        Log.d(TAG, "Refreshed ${root.name}: $reindexed re-indexed in ${System.currentTimeMillis() - startTime}ms")
+    }
+    
+    /**
+     * Re-index one file from content that was just written to it
+     */
+    fun updateFile(file: File, content: CharSequence) {
+        if (!contains(file)) return
+        ensureLoaded()
+        
+        val trigrams = if (content.length > MAX_INDEXED_SIZE) null else extractTrigrams(content) ?: IntArray(0)
+        synchronized(this) {
+            put(Document(file.absolutePath, file.lastModified(), file.length(), trigrams))
+            // Not persisted here: the next refresh sees the newer mtime and catches up anyway
+            dirty = true
+        }
+    }
+    
+    /**
+     * Re-index one file from its content on disk
+     */
+    fun updateFile(file: File) {
+        if (!contains(file)) return
+        ensureLoaded()
+        
+        val size = file.length()
+        val trigrams = if (size > MAX_INDEXED_SIZE) null else readTrigrams(file)
+        synchronized(this) {
+            put(Document(file.absolutePath, file.lastModified(), size, trigrams))
+            dirty = true
+        }
+    }
+    
+    fun removeFile(file: File) {
+        synchronized(this) {
+            if (remove(file.absolutePath)) {
+                dirty = true
+            }
+        }
+    }
+    
+    /**
+     * Whether [file] lies inside this index's project
+     */
+    fun contains(file: File): Boolean {
+        val rootPath = root.absolutePath
+        val path = file.absolutePath
+        return path.startsWith(rootPath + File.separator)
+    }
+    
+    /**
+     * Paths of the files whose content matches [query]
+     */
+    fun search(query: String, caseSensitive: Boolean = false, useRegex: Boolean = false): List<String> {
+        if (query.isEmpty()) return emptyList()
+        ensureLoaded()
+        
+        var flags = Pattern.MULTILINE
+        if (!caseSensitive) {
+            flags = flags or Pattern.CASE_INSENSITIVE or Pattern.UNICODE_CASE
+        }
+        if (!useRegex) {
+            flags = flags or Pattern.LITERAL
+        }
+        val pattern = Pattern.compile(query, flags)
+        
+        val literals = if (useRegex) requiredLiterals(query) else listOf(query)
+        val candidates = candidates(literals)
+        
+        // Trigram filtering may admit false positives; every candidate is checked against its content
+        val matches = ArrayList<String>()
+        for (path in candidates) {
+            val text = readText(File(path)) ?: continue
+            if (pattern.matcher(text).find()) {
+                matches.add(path)
+            }
+        }
+        Log.d(TAG, "\"$query\": ${candidates.size} candidates, ${matches.size} matches")
+        return matches
+    }
+    
+    /**
+     * Paths of the files that contain every trigram of every literal
+     */
+    @Synchronized
+    private fun candidates(literals: List<String>): List<String> {
+        val required = HashSet<Int>()
+        for (literal in literals) {
+            extractTrigrams(literal)?.forEach { required.add(it) }
+        }
+        
+        val ids: IntArray
+        if (required.isEmpty()) {
+            // Nothing to filter on; every file is a candidate
+            ids = documents.indices.filter { documents[it] != null }.toIntArray()
+        } else {
+            val lists = ArrayList<PostingList>(required.size)
+            for (trigram in required) {
+                val list = postings[trigram]
+                if (list == null || list.size == 0) {
+                    lists.clear()
+                    break
+                }
+                lists.add(list)
+            }
+            ids = if (lists.isEmpty()) IntArray(0) else intersect(lists)
+        }
+        
+        val result = ArrayList<String>(ids.size + unindexed.size)
+        for (id in ids) {
+            documents[id]?.let { result.add(it.path) }
+        }
+        if (required.isNotEmpty()) {
+            for (id in unindexed) {
+                documents[id]?.let { result.add(it.path) }
+            }
+        }
+        return result
+    }
+    
+    private fun put(document: Document) {
+        remove(document.path)
+        val id = documents.size
+        documents.add(document)
+        documentIds[document.path] = id
+        if (document.trigrams == null) {
+            unindexed.add(id)
+        } else {
+            for (trigram in document.trigrams) {
+                postings.getOrPut(trigram) { PostingList() }.append(id)
+            }
+        }
+        // Replaced documents leave holes; renumber once they outweigh the live ones
+        if (documents.size > 2 * documentIds.size + 64) {
+            compact()
+        }
+    }
+    
+    private fun compact() {
+        val live = documents.filterNotNull()
+        documents.clear()
+        documentIds.clear()
+        postings.clear()
+        unindexed.clear()
+        live.forEach { put(it) }
+    }
+    
+    private fun remove(path: String): Boolean {
+        val id = documentIds.remove(path) ?: return false
+        val document = documents[id] ?: return false
+        documents[id] = null
+        unindexed.remove(id)
+        document.trigrams?.forEach { trigram ->
+            val list = postings[trigram] ?: return@forEach
+            list.remove(id)
+            if (list.size == 0) {
+                postings.remove(trigram)
+            }
+        }
+        return true
+    }
+    
+    private fun ensureLoaded() {
+        synchronized(this) {
+            if (loaded) return
+            loaded = true
+            try {
+                load()
+            } catch (e: IOException) {
+                Log.w(TAG, "Discarding unreadable index ${indexFile.name}", e)
+                documents.clear()
+                documentIds.clear()
+                postings.clear()
+                unindexed.clear()
+            }
+        }
+    }
+    
+    private fun load() {
+        if (!indexFile.exists()) return
+        val startTime = System.currentTimeMillis()
+        
+        DataInputStream(BufferedInputStream(FileInputStream(indexFile))).use { input ->
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw IOException("Unknown index format")
+            }
+            if (input.readUTF() != root.absolutePath) {
+                throw IOException("Index belongs to another project")
+            }
+            val count = input.readInt()
+            repeat(count) {
+                val path = input.readUTF()
+                val lastModified = input.readLong()
+                val size = input.readLong()
+                val trigramCount = input.readInt()
+                var trigrams: IntArray? = null
+                if (trigramCount >= 0) {
+                    // Sorted trigrams are stored as variable-length deltas
+                    trigrams = IntArray(trigramCount)
+                    var previous = 0
+                    for (i in 0 until trigramCount) {
+                        previous += readVarInt(input)
+                        trigrams[i] = previous
+                    }
+                }
+                put(Document(path, lastModified, size, trigrams))
+            }
+        }
+        Log.d(TAG, "Loaded ${documentIds.size} files in ${System.currentTimeMillis() - startTime}ms")
+    }
+    
+    /**
+     * Write the index to a temporary file and move it over the old one
+     */
+    private fun persistIfDirty() {
+        val live: List<Document>
+        synchronized(this) {
+            if (!dirty) return
+            dirty = false
+            live = documents.filterNotNull()
+        }
+        
+        indexFile.parentFile?.mkdirs()
+        val temp = File(indexFile.parentFile, indexFile.name + ".tmp")
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(temp))).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.writeUTF(root.absolutePath)
+                output.writeInt(live.size)
+                for (document in live) {
+                    output.writeUTF(document.path)
+                    output.writeLong(document.lastModified)
+                    output.writeLong(document.size)
+                    val trigrams = document.trigrams
+                    if (trigrams == null) {
+                        output.writeInt(-1)
+                    } else {
+                        output.writeInt(trigrams.size)
+                        var previous = 0
+                        for (trigram in trigrams) {
+                            writeVarInt(output, trigram - previous)
+                            previous = trigram
+                        }
+                    }
+                }
+            }
+            if (!temp.renameTo(indexFile)) {
+                throw IOException("Could not replace $indexFile")
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "Error writing index", e)
+            temp.delete()
+            synchronized(this) { dirty = true }
+        }
+    }
+    
+    companion object {
+        private const val MAGIC = 0x54524749 // "TRGI"
+        private const val VERSION = 1
+        
+        // Larger files are not tokenized; they are always read when searching
+        private const val MAX_INDEXED_SIZE = 4L * 1024 * 1024
+        // A NUL byte in the first block marks the file as binary
+        private const val BINARY_CHECK_BYTES = 8 * 1024
+        
+        private val IGNORED_DIRECTORIES = setOf("__pycache__", "node_modules", "site-packages", "venv")
+        
+        private fun walk(directory: File, action: (File) -> Unit) {
+            val children = directory.listFiles() ?: return
+            // A virtualenv is recognised by its config file, whatever it is called
+            if (children.any { it.name == "pyvenv.cfg" }) return
+            
+            for (child in children) {
+                if (child.isDirectory) {
+                    if (!child.name.startsWith(".") && child.name !in IGNORED_DIRECTORIES) {
+                        walk(child, action)
+                    }
+                } else if (child.isFile) {
+                    action(child)
+                }
+            }
+        }
+        
+        /**
+         * Case fold a char the way a case insensitive Unicode match does
+         */
+        private fun fold(c: Char): Char = Character.toLowerCase(Character.toUpperCase(c))
+        
+        /**
+         * Sorted, distinct trigrams of [text], or null if it is shorter than a trigram
+         * Each trigram packs the low 10 bits of three folded chars; chars past U+03FF may
+         * collide, which only adds candidates since every candidate is verified.
+         */
+        internal fun extractTrigrams(text: CharSequence): IntArray? {
+            if (text.length < 3) return null
+            
+            val trigrams = IntArray(text.length - 2)
+            var window = ((fold(text[0]).code and 0x3FF) shl 10) or (fold(text[1]).code and 0x3FF)
+            for (i in 2 until text.length) {
+                window = ((window shl 10) or (fold(text[i]).code and 0x3FF)) and 0x3FFFFFFF
+                trigrams[i - 2] = window
+            }
+            trigrams.sort()
+            
+            var distinct = 0
+            for (i in trigrams.indices) {
+                if (distinct == 0 || trigrams[distinct - 1] != trigrams[i]) {
+                    trigrams[distinct++] = trigrams[i]
+                }
+            }
+            return trigrams.copyOf(distinct)
+        }
+        
+        /**
+         * Literal runs that every match of [regex] must contain
+         * Conservative: anything the scanner does not understand ends the current run,
+         * groups are skipped entirely, and alternation gives up on filtering.
+         */
+        internal fun requiredLiterals(regex: String): List<String> {
+            val literals = ArrayList<String>()
+            val run = StringBuilder()
+            fun endRun() {
+                if (run.length >= 3) {
+                    literals.add(run.toString())
+                }
+                run.setLength(0)
+            }
+            
+            var i = 0
+            while (i < regex.length) {
+                val c = regex[i]
+                when (c) {
+                    '|' -> return emptyList()
+                    '\\' -> {
+                        if (i + 1 >= regex.length) return emptyList()
+                        val next = regex[i + 1]
+                        if (next.isLetterOrDigit()) {
+                            // Classes (\d, \w), anchors (\b), quoting (\Q), back references and char codes
+                            endRun()
+                            if (next == 'Q') return emptyList()
+                            i = skipEscape(regex, i)
+                            if (i < 0) return emptyList()
+                        } else {
+                            run.append(next)
+                            i += 2
+                        }
+                        continue
+                    }
+                    '[' -> {
+                        endRun()
+                        i = skipClass(regex, i)
+                        continue
+                    }
+                    '(' -> {
+                        endRun()
+                        i = skipGroup(regex, i)
+                        continue
+                    }
+                    '?', '*' -> {
+                        // The previous char is optional
+                        if (run.isNotEmpty()) run.setLength(run.length - 1)
+                        endRun()
+                    }
+                    '{' -> {
+                        if (run.isNotEmpty()) run.setLength(run.length - 1)
+                        endRun()
+                        val close = regex.indexOf('}', i)
+                        if (close < 0) return emptyList()
+                        i = close + 1
+                        continue
+                    }
+                    '+' -> {
+                        // The previous char is required but may repeat
+                        endRun()
+                    }
+                    '.', '^', '$', ')' -> endRun()
+                    else -> run.append(c)
+                }
+                i++
+            }
+            endRun()
+            return literals
+        }
+        
+        /**
+         * Index just past the letter or digit escape at [start], including its argument
+         * (\x41, \u0041, \0101, \cA, \p{Lu}, \k<name>...), or -1 if it is malformed
+         */
+        private fun skipEscape(regex: String, start: Int): Int {
+            val i = start + 2
+            return when (regex[start + 1]) {
+                'x' -> if (regex.startsWith("{", i)) closing(regex, i, '}') else skipWhile(regex, i, 2) { isHexDigit(it) }
+                'u' -> skipWhile(regex, i, 4) { isHexDigit(it) }
+                '0' -> skipWhile(regex, i, if (i < regex.length && regex[i] in '0'..'3') 3 else 2) { it in '0'..'7' }
+                'c' -> if (i < regex.length) i + 1 else -1
+                'p', 'P' -> when {
+                    i >= regex.length -> -1
+                    regex[i] == '{' -> closing(regex, i, '}')
+                    else -> i + 1
+                }
+                'k' -> if (regex.startsWith("<", i)) closing(regex, i, '>') else -1
+                'N' -> if (regex.startsWith("{", i)) closing(regex, i, '}') else -1
+                // A back reference takes as many digits as there are groups; dropping them all is safe
+                in '1'..'9' -> skipWhile(regex, i, regex.length) { it.isDigit() }
+                else -> i
+            }
+        }
+        
+        private fun closing(regex: String, open: Int, close: Char): Int {
+            val end = regex.indexOf(close, open)
+            return if (end < 0) -1 else end + 1
+        }
+        
+        private inline fun skipWhile(regex: String, start: Int, max: Int, predicate: (Char) -> Boolean): Int {
+            var i = start
+            while (i < regex.length && i - start < max && predicate(regex[i])) i++
+            return i
+        }
+        
+        private fun isHexDigit(c: Char): Boolean {
+            return c in '0'..'9' || c in 'a'..'f' || c in 'A'..'F'
+        }
+        
+        private fun skipClass(regex: String, start: Int): Int {
+            var i = start + 1
+            if (i < regex.length && regex[i] == '^') i++
+            if (i < regex.length && regex[i] == ']') i++
+            var depth = 1
+            while (i < regex.length && depth > 0) {
+                when (regex[i]) {
+                    '\\' -> i++
+                    '[' -> depth++
+                    ']' -> depth--
+                }
+                i++
+            }
+            return i
+        }
+        
+        private fun skipGroup(regex: String, start: Int): Int {
+            var i = start + 1
+            var depth = 1
+            while (i < regex.length && depth > 0) {
+                when (regex[i]) {
+                    '\\' -> i++
+                    '[' -> {
+                        i = skipClass(regex, i)
+                        continue
+                    }
+                    '(' -> depth++
+                    ')' -> depth--
+                }
+                i++
+            }
+            return i
+        }
+        
+        /**
+         * Intersect posting lists, smallest first so the working set only shrinks
+         */
+        private fun intersect(lists: List<PostingList>): IntArray {
+            val sorted = lists.sortedBy { it.size }
+            var result = sorted[0].ids.copyOf(sorted[0].size)
+            var resultSize = result.size
+            for (k in 1 until sorted.size) {
+                if (resultSize == 0) break
+                val other = sorted[k]
+                var kept = 0
+                var j = 0
+                for (i in 0 until resultSize) {
+                    val id = result[i]
+                    while (j < other.size && other.ids[j] < id) j++
+                    if (j == other.size) break
+                    if (other.ids[j] == id) {
+                        result[kept++] = id
+                    }
+                }
+                resultSize = kept
+            }
+            if (resultSize != result.size) {
+                result = result.copyOf(resultSize)
+            }
+            return result
+        }
+        
+        /**
+         * Trigrams of a file's content; binary and unreadable files get none, so they are
+         * only read again when their modification time changes
+         */
+        private fun readTrigrams(file: File): IntArray {
+            val text = readText(file) ?: return IntArray(0)
+            return extractTrigrams(text) ?: IntArray(0)
+        }
+        
+        /**
+         * UTF-8 content of a text file, or null if it is binary or unreadable
+         */
+        private fun readText(file: File): CharSequence? {
+            return try {
+                val bytes = file.readBytes()
+                val checkLimit = minOf(bytes.size, BINARY_CHECK_BYTES)
+                for (i in 0 until checkLimit) {
+                    if (bytes[i].toInt() == 0) return null
+                }
+                Charsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(ByteBuffer.wrap(bytes))
+            } catch (e: IOException) {
+                null
+            }
+        }
+        
+        private fun writeVarInt(output: DataOutputStream, value: Int) {
+            var remaining = value
+            while (remaining and 0x7F.inv() != 0) {
+                output.writeByte((remaining and 0x7F) or 0x80)
+                remaining = remaining ushr 7
+            }
+            output.writeByte(remaining)
+        }
+        
+        private fun readVarInt(input: DataInputStream): Int {
+            var value = 0
+            var shift = 0
+            while (true) {
+                val b = input.readUnsignedByte()
+                value = value or ((b and 0x7F) shl shift)
+                if (b and 0x80 == 0) return value
+                shift += 7
+            }
+        }
+    }
+}
@@ -28,6 +28,9 @@ class EnhancedTerminalManager(private val context: Context) {
         private const val TAG = "EnhancedTerminalManager"
         private const val MAX_HISTORY_SIZE = 10000
         private const val CLEANUP_INTERVAL = 5 * 60 * 1000L // 5 minutes
+        private const val STREAM_BUFFER_SIZE = 64 * 1024
+        // Chars of each stream kept for the command result; older output is dropped
+        private const val MAX_CAPTURED_OUTPUT = 256 * 1024
     }
     
     private val json = Json { 
@@ -180,56 +183,24 @@ class EnhancedTerminalManager(private val context: Context) {
         val startTime = System.currentTimeMillis()
         
         try {
-            val inputStream = BufferedReader(InputStreamReader(process.inputStream))
-            val errorStream = BufferedReader(InputStreamReader(process.errorStream))
-            val outputStream = PrintWriter(process.outputStream, true)
-            
-            val outputLines = mutableListOf<String>()
-            val errorLines = mutableListOf<String>()
-            
             // Read output and error streams concurrently
-            val outputJob = launch {
-                try {
-                    var line: String?
-                    while (inputStream.readLine().also { line = it } != null) {
-                        line?.let {
-                            outputLines.add(it)
-                            // Notify UI of new output
-                            notifyOutputReceived(terminalCommand.sessionId, it, TerminalOutput.OutputType.OUTPUT)
-                        }
-                    }
-                } catch (e: Exception) {
-                    Log.w(TAG, "Error reading output stream", e)
-                }
+            val outputJob = async {
+                pumpStream(process.inputStream, terminalCommand.sessionId, TerminalOutput.OutputType.OUTPUT)
             }
-            
-            val errorJob = launch {
-                try {
-                    var line: String?
-                    while (errorStream.readLine().also { line = it } != null) {
-                        line?.let {
-                            errorLines.add(it)
-                            notifyOutputReceived(terminalCommand.sessionId, it, TerminalOutput.OutputType.ERROR)
-                        }
-                    }
-                } catch (e: Exception) {
-                    Log.w(TAG, "Error reading error stream", e)
-                }
+            val errorJob = async {
+                pumpStream(process.errorStream, terminalCommand.sessionId, TerminalOutput.OutputType.ERROR)
             }
             
             // Wait for process to complete
             val exitCode = process.waitFor()
             
             // Wait for streams to finish reading
-            outputJob.join()
-            errorJob.join()
+            val output = outputJob.await()
+            val error = errorJob.await()
             
             val endTime = System.currentTimeMillis()
             val duration = endTime - startTime
             
-            val output = outputLines.joinToString("\n")
-            val error = errorLines.joinToString("\n")
-            
             // Update terminal command with results
             val updatedCommand = terminalCommand.copy(
                 output = output,
@@ -259,6 +230,43 @@ class EnhancedTerminalManager(private val context: Context) {
         }
     }
     
+    /**
+     * Read a process stream in large chunks until it closes, forwarding each chunk to the UI.
+     * Only the last [MAX_CAPTURED_OUTPUT] chars are kept, so a noisy program cannot exhaust the heap.
+     */
+    private fun pumpStream(stream: InputStream, sessionId: String, type: TerminalOutput.OutputType): String {
+        val captured = StringBuilder()
+        var dropped = 0L
+        val buffer = CharArray(STREAM_BUFFER_SIZE)
+        try {
+            // The reader decodes incrementally, keeping characters split across reads intact
+            InputStreamReader(stream, Charsets.UTF_8).use { reader ->
+                while (true) {
+                    val read = reader.read(buffer)
+                    if (read < 0) break
+                    notifyOutputReceived(sessionId, String(buffer, 0, read), type)
+                    
+                    captured.append(buffer, 0, read)
+                    // Trim in large steps so dropping old output stays linear
+                    if (captured.length > MAX_CAPTURED_OUTPUT * 2) {
+                        val excess = captured.length - MAX_CAPTURED_OUTPUT
+                        captured.delete(0, excess)
+                        dropped += excess
+                    }
+                }
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Error reading ${type.name.lowercase()} stream", e)
+        }
+        
+        if (captured.length > MAX_CAPTURED_OUTPUT) {
+            dropped += captured.length - MAX_CAPTURED_OUTPUT
+            captured.delete(0, captured.length - MAX_CAPTURED_OUTPUT)
+        }
+        val text = captured.removeSuffix("\n").toString()
+        return if (dropped > 0) "[... $dropped characters omitted ...]\n$text" else text
+    }
+    
     /**
      * Start background process
      */
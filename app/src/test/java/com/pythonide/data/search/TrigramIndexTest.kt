@@ -0,0 +1,190 @@
+package com.pythonide.data.search
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+/**
+ * Test suite for the project trigram index
+ */
+class TrigramIndexTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private lateinit var projectRoot: File
+    private lateinit var indexFile: File
+    private lateinit var index: TrigramIndex
+
+    @Before
+    fun setUp() {
+        projectRoot = tempFolder.newFolder("project")
+        indexFile = File(tempFolder.root, "trigrams.idx")
+
+        write("main.py", "import utils\n\ndef main():\n    utils.load_config()\n")
+        write("utils.py", "def load_config():\n    return {'Debug': True}\n\ndef load_data(path):\n    pass\n")
+        write("pkg/models.py", "class User:\n    name = 'HELLO World'\n")
+        write("README.md", "Version 42 of the project\n")
+
+        index = TrigramIndex(projectRoot, indexFile)
+        index.refresh()
+    }
+
+    @Test
+    fun `test literal search`() {
+        assertEquals(setOf("main.py", "utils.py"), search("load_config"))
+        assertEquals(setOf("pkg/models.py"), search("class User"))
+        assertTrue(search("does_not_exist").isEmpty())
+    }
+
+    @Test
+    fun `test literal shorter than a trigram`() {
+        // No trigram to filter on, so every file is verified
+        assertEquals(setOf("main.py", "utils.py"), search("()"))
+    }
+
+    @Test
+    fun `test regex search`() {
+        assertEquals(setOf("utils.py"), search("def load_\\w+\\(path\\)", useRegex = true))
+        assertEquals(setOf("main.py", "utils.py"), search("^def \\w+\\(", useRegex = true))
+    }
+
+    @Test
+    fun `test regex search without extractable literal`() {
+        assertTrue(TrigramIndex.requiredLiterals("\\d+").isEmpty())
+        assertTrue(TrigramIndex.requiredLiterals("main|User").isEmpty())
+
+        assertEquals(setOf("README.md"), search("\\d+", useRegex = true))
+        assertEquals(setOf("main.py", "pkg/models.py"), search("main|User", caseSensitive = true, useRegex = true))
+    }
+
+    @Test
+    fun `test case folding`() {
+        assertArrayEquals(TrigramIndex.extractTrigrams("abc"), TrigramIndex.extractTrigrams("ABC"))
+
+        assertEquals(setOf("pkg/models.py"), search("hello world"))
+        assertTrue(search("hello world", caseSensitive = true).isEmpty())
+        assertEquals(setOf("pkg/models.py"), search("HELLO World", caseSensitive = true))
+        assertEquals(setOf("utils.py"), search("'debug'"))
+    }
+
+    @Test
+    fun `test persist and reload`() {
+        assertTrue(indexFile.exists())
+
+        // A fresh instance answers from the file on disk without walking the project
+        val reloaded = TrigramIndex(projectRoot, indexFile)
+        assertEquals(setOf("main.py", "utils.py"), relative(reloaded.search("load_config")))
+        assertEquals(setOf("pkg/models.py"), relative(reloaded.search("hello world")))
+    }
+
+    @Test
+    fun `test index of another project is discarded`() {
+        val otherRoot = tempFolder.newFolder("other")
+        File(otherRoot, "other.py").writeText("load_config = None\n")
+
+        val other = TrigramIndex(otherRoot, indexFile)
+        assertTrue(other.search("load_config").isEmpty())
+        other.refresh()
+        assertEquals(listOf(File(otherRoot, "other.py").absolutePath), other.search("load_config"))
+    }
+
+    @Test
+    fun `test incremental update of one file`() {
+        val utils = write("utils.py", "def save_config():\n    pass\n")
+        index.updateFile(utils, utils.readText())
+
+        assertEquals(setOf("main.py"), search("load_config"))
+        assertEquals(setOf("utils.py"), search("save_config"))
+    }
+
+    @Test
+    fun `test update from disk and refresh`() {
+        val models = write("pkg/models.py", "class Account:\n    pass\n")
+        index.updateFile(models)
+        assertEquals(setOf("pkg/models.py"), search("class Account"))
+        assertTrue(search("class User").isEmpty())
+
+        val added = write("pkg/views.py", "class AccountView:\n    pass\n")
+        index.refresh()
+        assertEquals(setOf("pkg/models.py", "pkg/views.py"), search("class Account"))
+
+        added.delete()
+        index.refresh()
+        assertEquals(setOf("pkg/models.py"), search("class Account"))
+    }
+
+    @Test
+    fun `test remove one file`() {
+        val utils = File(projectRoot, "utils.py")
+        utils.delete()
+        index.removeFile(utils)
+
+        assertEquals(setOf("main.py"), search("load_config"))
+        assertTrue(search("load_data").isEmpty())
+    }
+
+    @Test
+    fun `test files outside the project are ignored`() {
+        val outside = File(tempFolder.root, "outside.py")
+        outside.writeText("load_config()\n")
+        index.updateFile(outside, outside.readText())
+
+        assertFalse(index.contains(outside))
+        assertEquals(setOf("main.py", "utils.py"), search("load_config"))
+    }
+
+    @Test
+    fun `test extract trigrams`() {
+        assertNull(TrigramIndex.extractTrigrams("ab"))
+        assertEquals(1, TrigramIndex.extractTrigrams("aaaa")!!.size)
+
+        // abc, bca and cab; sorted and distinct
+        val trigrams = TrigramIndex.extractTrigrams("abcabc")!!
+        assertEquals(3, trigrams.size)
+        assertArrayEquals(trigrams.sortedArray(), trigrams)
+    }
+
+    @Test
+    fun `test required literals`() {
+        assertEquals(listOf("def", "load_"), TrigramIndex.requiredLiterals("def\\s+load_\\w+"))
+        assertEquals(listOf("foo", "baz"), TrigramIndex.requiredLiterals("foo(bar)?baz"))
+        assertEquals(listOf("colo"), TrigramIndex.requiredLiterals("colou?r"))
+        assertEquals(listOf("_handler"), TrigramIndex.requiredLiterals("[a-z]+_handler"))
+        assertEquals(listOf(".py"), TrigramIndex.requiredLiterals("\\.py$"))
+        assertTrue(TrigramIndex.requiredLiterals("\\Qa.b\\E").isEmpty())
+
+        // Escape arguments are not literal text
+        assertEquals(listOf("bcd"), TrigramIndex.requiredLiterals("\\x41bcd"))
+        assertEquals(listOf("bcd"), TrigramIndex.requiredLiterals("\\x{41}bcd"))
+        assertEquals(listOf("bcd"), TrigramIndex.requiredLiterals("\\u0041bcd"))
+        assertEquals(listOf("bcd"), TrigramIndex.requiredLiterals("\\0101bcd"))
+        assertEquals(listOf("bcd"), TrigramIndex.requiredLiterals("\\cAbcd"))
+        assertEquals(listOf("abc"), TrigramIndex.requiredLiterals("\\pLabc"))
+        assertEquals(listOf("abc"), TrigramIndex.requiredLiterals("\\p{Lu}abc"))
+        assertEquals(listOf("abc"), TrigramIndex.requiredLiterals("\\P{IsDigit}abc"))
+        assertEquals(listOf("abc"), TrigramIndex.requiredLiterals("(?<n>x)\\k<n>abc"))
+    }
+
+    private fun write(path: String, content: String): File {
+        val file = File(projectRoot, path)
+        file.parentFile?.mkdirs()
+        file.writeText(content)
+        return file
+    }
+
+    private fun search(query: String, caseSensitive: Boolean = false, useRegex: Boolean = false): Set<String> {
+        return relative(index.search(query, caseSensitive, useRegex))
+    }
+
+    private fun relative(paths: List<String>): Set<String> {
+        return paths.map { File(it).relativeTo(projectRoot).path }.toSet()
+    }
+}
@@ -0,0 +1,250 @@
+package com.pythonide.editor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * مُجدول التحليل في الخلفية (Analysis Scheduler)
+ * يجمع ضربات المفاتيح المتتالية في نافذة قصيرة، ثم يحلل لقطة ثابتة من المستند على خيط خلفي.
+ * التحليل الجاري يُلغى عند أي تعديل جديد، والنتيجة لا تُسلَّم إلا إذا بقي المستند على نفس الإصدار
+ */
+public class AnalysisScheduler {
+    
+    private static final long DEBOUNCE_DELAY_MS = 150;
+    private static final int CANCEL_CHECK_INTERVAL_LINES = 256;
+    
+    // Shared by all editors; each scheduler only ever has one task queued or running
+    private static final ExecutorService ANALYSIS_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    public interface AnalysisListener {
+        void onAnalysisComplete(AnalysisResult result);
+    }
+    
+    private final TextDocument document;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Used only on the analysis thread
+    private final PythonLexer lexer;
+    
+    private AnalysisListener listener;
+    private Future<?> runningTask;
+    private final Runnable startTask = this::startAnalysis;
+    
+    public AnalysisScheduler(TextDocument document) {
+        this(document, new PythonLexer());
+    }
+    
+    public AnalysisScheduler(TextDocument document, PythonLexer lexer) {
+        this.document = document;
+        this.lexer = lexer;
+    }
+    
+    public void setAnalysisListener(AnalysisListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * طلب تحليل بعد انتهاء نافذة التجميع؛ يلغي أي تحليل جارٍ لأن نتيجته صارت قديمة
+     */
+    public void schedule() {
+        cancelRunningTask();
+        mainHandler.removeCallbacks(startTask);
+        mainHandler.postDelayed(startTask, DEBOUNCE_DELAY_MS);
+    }
+    
+    /**
+     * تحليل فوري دون انتظار (مثلاً بعد تحميل ملف)
+     */
+    public void runNow() {
+        cancelRunningTask();
+        mainHandler.removeCallbacks(startTask);
+        startAnalysis();
+    }
+    
+    /**
+     * إلغاء التحليل المجدول والجاري
+     */
+    public void cancel() {
+        mainHandler.removeCallbacks(startTask);
+        cancelRunningTask();
+    }
+    
+    private void cancelRunningTask() {
+        if (runningTask != null) {
+            runningTask.cancel(true);
+            runningTask = null;
+        }
+    }
+    
+    private void startAnalysis() {
+        final TextDocument snapshot = document.snapshot();
+        runningTask = ANALYSIS_EXECUTOR.submit(() -> {
+            try {
+                AnalysisResult result = analyze(snapshot);
+                if (result != null) {
+                    mainHandler.post(() -> deliver(result));
+                }
+            } catch (Exception e) {
+                Log.e("AnalysisScheduler", "Error analyzing document", e);
+            }
+        });
+    }
+    
+    private void deliver(AnalysisResult result) {
+        // A newer edit has already scheduled its own analysis
+        if (result.version != document.getVersion()) {
+            Log.d("AnalysisScheduler", "Dropped stale analysis of version " + result.version);
+            return;
+        }
+        runningTask = null;
+        if (listener != null) {
+            listener.onAnalysisComplete(result);
+        }
+    }
+    
+    /**
+     * تحليل اللقطة سطراً بسطر (يعمل على خيط التحليل)
+     * @return النتيجة أو null إذا أُلغي التحليل
+     */
+    private AnalysisResult analyze(TextDocument snapshot) {
+        long startTime = System.currentTimeMillis();
+        int lineCount = snapshot.getLineCount();
+        AnalysisResult result = new AnalysisResult(snapshot.getVersion(), lineCount);
+        
+        int state = PythonLexer.STATE_NORMAL;
+        for (int line = 0; line < lineCount; line++) {
+            if (line % CANCEL_CHECK_INTERVAL_LINES == 0 && Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            
+            result.lineStates[line] = state;
+            state = lexer.tokenizeLine(snapshot, snapshot.getLineStart(line), snapshot.getLineEnd(line), state);
+            
+            int tokenCount = lexer.getTokenCount();
+            for (int i = 0; i < tokenCount; i++) {
+                int start = lexer.getTokenStart(i);
+                int end = lexer.getTokenEnd(i);
+                switch (lexer.getTokenType(i)) {
+                    case PythonLexer.TOKEN_BRACKET_OPEN:
+                    case PythonLexer.TOKEN_BRACKET_CLOSE:
+                        result.addBracket(start, lexer.getTokenChar(i));
+                        break;
+                    case PythonLexer.TOKEN_FUNCTION_NAME:
+                    case PythonLexer.TOKEN_CLASS_NAME:
+                        // Definitions span from the def / class keyword to the end of the name
+                        int keywordStart = i > 0 ? lexer.getTokenStart(i - 1) : start;
+                        result.addDefinition(keywordStart, end, snapshot.getText(start, end));
+                        break;
+                    case PythonLexer.TOKEN_STRING:
+                        result.strings.add(start, end);
+                        break;
+                    case PythonLexer.TOKEN_COMMENT:
+                        result.comments.add(start, end);
+                        break;
+                }
+            }
+        }
+        result.lineStates[lineCount] = state;
+        
+        Log.d("AnalysisScheduler", "Analyzed " + lineCount + " lines in "
+            + (System.currentTimeMillis() - startTime) + "ms");
+        return result;
+    }
+    
+    /**
+     * نتيجة تحليل لقطة واحدة من المستند
+     */
+    public static class AnalysisResult {
+        public final long version;
+        public final int lineCount;
+        // Lexer state on entry to each line; lineStates[lineCount] is the exit state of the last line
+        public final int[] lineStates;
+        
+        public int[] bracketPositions = new int[64];
+        public char[] bracketChars = new char[64];
+        public int bracketCount = 0;
+        
+        public final RangeList definitions = new RangeList();
+        public String[] definitionNames = new String[16];
+        public final RangeList strings = new RangeList();
+        public final RangeList comments = new RangeList();
+        
+        AnalysisResult(long version, int lineCount) {
+            this.version = version;
+            this.lineCount = lineCount;
+            this.lineStates = new int[lineCount + 1];
+        }
+        
+        void addBracket(int position, char c) {
+            if (bracketCount == bracketPositions.length) {
+                bracketPositions = Arrays.copyOf(bracketPositions, bracketCount * 2);
+                bracketChars = Arrays.copyOf(bracketChars, bracketCount * 2);
+            }
+            bracketPositions[bracketCount] = position;
+            bracketChars[bracketCount] = c;
+            bracketCount++;
+        }
+        
+        void addDefinition(int start, int end, String name) {
+            if (definitions.size() == definitionNames.length) {
+                definitionNames = Arrays.copyOf(definitionNames, definitionNames.length * 2);
+            }
+            definitionNames[definitions.size()] = name;
+            definitions.add(start, end);
+        }
+    }
+    
+    /**
+     * قائمة نطاقات [start, end) مرتبة حسب البداية في مصفوفة أولية واحدة
+     */
+    public static class RangeList {
+        private int[] ranges = new int[64];
+        private int size = 0;
+        
+        void add(int start, int end) {
+            if (2 * size == ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[2 * size] = start;
+            ranges[2 * size + 1] = end;
+            size++;
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        public int getStart(int index) {
+            return ranges[2 * index];
+        }
+        
+        public int getEnd(int index) {
+            return ranges[2 * index + 1];
+        }
+        
+        /**
+         * فهرس النطاق المطابق تماماً أو -1 (بحث ثنائي)
+         */
+        public int indexOf(int start, int end) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midStart = ranges[2 * mid];
+                if (midStart < start) {
+                    low = mid + 1;
+                } else if (midStart > start) {
+                    high = mid - 1;
+                } else {
+                    return ranges[2 * mid + 1] == end ? mid : -1;
+                }
+            }
+            return -1;
+        }
+    }
+}
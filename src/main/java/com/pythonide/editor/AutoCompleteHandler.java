@@ -39,7 +39,10 @@ public class AutoCompleteHandler {
     // Common Python snippets and templates
     private Map<String, String> codeSnippets = new HashMap<>();
     private List<CompletionItem> allCompletions = new ArrayList<>();
-    private List<CompletionItem> filteredCompletions = new ArrayList<>();
+    private List<CompletionItem> additionalCompletions = new ArrayList<>();
+    private List<CompletionItem> filteredCompletions = new ArrayList<>(MAX_COMPLETIONS);
+    // Rebuilt when the completion set changes; queried on every keystroke
+    private CompletionIndex completionIndex;
     
     public AutoCompleteHandler(Context context, CodeEditText codeEditText, String[] keywords, String[] builtins) {
         this.context = context;
@@ -96,6 +99,23 @@ public class AutoCompleteHandler {
         
         // Add some common variable names and patterns
         addCommonCompletions();
+        
+        rebuildIndex();
+    }
+    
+    /**
+     * استبدال العناصر الإضافية (رموز المشروع، أسماء الحزم...) وإعادة بناء الفهرس
+     */
+    public void setAdditionalCompletions(List<CompletionItem> items) {
+        additionalCompletions = new ArrayList<>(items);
+        rebuildIndex();
+    }
+    
+    private void rebuildIndex() {
+        List<CompletionItem> indexed = new ArrayList<>(allCompletions.size() + additionalCompletions.size());
+        indexed.addAll(allCompletions);
+        indexed.addAll(additionalCompletions);
+        completionIndex = new CompletionIndex(indexed, MAX_COMPLETIONS);
     }
     
     private void addCommonCompletions() {
@@ -112,28 +132,23 @@ public class AutoCompleteHandler {
     
     private void setupTextWatcher() {
         codeEditText.addTextChangedListener(new android.text.TextWatcher() {
-            private String previousText = "";
-            private int previousCursorPosition = 0;
-            
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-                previousText = s.toString();
-                previousCursorPosition = start;
             }
             
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                if (count > 0) {
-                    char lastChar = s.charAt(start + count - 1);
-                    
-                    // Trigger autocomplete on dot or after keyword
-                    if (lastChar == '.' || lastChar == '(' || shouldTriggerCompletion(s, start + count)) {
-                        showCompletions(s, start + count);
-                    }
+                // Undo/redo replays history; it is not typing
+                if (count == 0 || codeEditText.isReplayingHistory()) {
+                    hideCompletions();
+                    return;
                 }
                 
-                // Hide popup if typing normal characters
-                if (count > 0 && isNormalCharacter(lastChar)) {
+                // Refresh the ranked list while a word is being typed or after '.' / '('; anything else closes it
+                char lastChar = s.charAt(start + count - 1);
+                if (isWordCharacter(lastChar) || isTriggerCharacter(lastChar)) {
+                    showCompletions(s, start + count);
+                } else {
                     hideCompletions();
                 }
             }
@@ -145,28 +160,25 @@ public class AutoCompleteHandler {
         });
     }
     
-    private boolean shouldTriggerCompletion(CharSequence text, int position) {
-        if (position <= 0) return false;
-        
-        char prevChar = text.charAt(position - 1);
-        
-        // Trigger completion after certain characters
-        return prevChar == ' ' || prevChar == '(' || prevChar == ',';
+    private boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
     }
     
-    private boolean isNormalCharacter(char c) {
-        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    private boolean isTriggerCharacter(char c) {
+        return c == '.' || c == '(';
     }
     
     private void showCompletions(CharSequence text, int position) {
-        String prefix = getCurrentWordPrefix(text, position);
+        int prefixStart = getCurrentWordPrefixStart(text, position);
         
-        if (prefix.length() < 2) {
+        // Right after '.' or '(' even an empty prefix lists the top ranked completions
+        boolean triggered = prefixStart > 0 && isTriggerCharacter(text.charAt(prefixStart - 1));
+        if (!triggered && position - prefixStart < 2) {
             hideCompletions();
             return;
         }
         
-        filterCompletions(prefix);
+        filterCompletions(text, prefixStart, position);
         
         if (filteredCompletions.isEmpty()) {
             hideCompletions();
@@ -176,45 +188,20 @@ public class AutoCompleteHandler {
         showCompletionPopup(position);
     }
     
-    private String getCurrentWordPrefix(CharSequence text, int position) {
-        if (position <= 0) return "";
-        
-        StringBuilder prefix = new StringBuilder();
-        int i = position - 1;
-        
-        // Get all characters before cursor that are part of a word
-        while (i >= 0 && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_' || text.charAt(i) == '.')) {
-            prefix.insert(0, text.charAt(i));
-            i--;
-        }
-        
-        return prefix.toString().toLowerCase();
-    }
-    
-    private void filterCompletions(String prefix) {
-        filteredCompletions.clear();
-        
-        for (CompletionItem item : allCompletions) {
-            if (item.name.toLowerCase().startsWith(prefix)) {
-                filteredCompletions.add(item);
-                if (filteredCompletions.size() >= MAX_COMPLETIONS) {
-                    break;
-                }
-            }
+    /**
+     * بداية البادئة قبل المؤشر (بعد آخر نقطة، فالإكمال بعد "os." يطابق اسم العضو)
+     */
+    private int getCurrentWordPrefixStart(CharSequence text, int position) {
+        int start = position;
+        while (start > 0 && isWordCharacter(text.charAt(start - 1))) {
+            start--;
         }
-        
-        // Sort completions by type priority and name
-        sortCompletions();
+        return start;
     }
     
-    private void sortCompletions() {
-        filteredCompletions.sort((item1, item2) -> {
-            // Sort by type priority (keywords first, then builtins, then others)
-            if (item1.type != item2.type) {
-                return Integer.compare(item1.type, item2.type);
-            }
-            return item1.name.compareToIgnoreCase(item2.name);
-        });
+    private void filterCompletions(CharSequence text, int prefixStart, int prefixEnd) {
+        // Results come back already ranked, written into the reused list
+        completionIndex.query(text, prefixStart, prefixEnd, filteredCompletions);
     }
     
     private void showCompletionPopup(int position) {
@@ -270,6 +257,8 @@ public class AutoCompleteHandler {
         public static final int TYPE_SNIPPET = 3;
         public static final int TYPE_VARIABLE = 4;
         public static final int TYPE_METHOD = 5;
+        public static final int TYPE_CLASS = 6;
+        public static final int TYPE_MODULE = 7;
         
         public String name;
         public String description;
@@ -296,6 +285,8 @@ public class AutoCompleteHandler {
                 case TYPE_SNIPPET: return "#238755"; // Green
                 case TYPE_VARIABLE: return "#FF6B47"; // Red
                 case TYPE_METHOD: return "#9C27B0"; // Deep Purple
+                case TYPE_CLASS: return "#E6A23C"; // Amber
+                case TYPE_MODULE: return "#00897B"; // Teal
                 default: return "#666666";
             }
         }
@@ -0,0 +1,222 @@
+package com.pythonide.editor;
+
+import java.util.Arrays;
+
+/**
+ * فهرس الأقواس (Bracket Index)
+ * يحتفظ بمواضع الأقواس الواقعة خارج النصوص والتعليقات في مصفوفات أولية مرتبة.
+ * يُزاح الفهرس عند كل تعديل ثم تُستبدل أقواس الأسطر التي أُعيد تحليلها فقط،
+ * وتُحسب الأزواج مرة واحدة عند أول استعلام بعد التعديل
+ */
+public class BracketIndex {
+    
+    private int[] positions = new int[256];
+    private char[] chars = new char[256];
+    private int[] partners = new int[256];
+    private int size = 0;
+    
+    private boolean pairsValid = true;
+    private int[] pairStack = new int[64];
+    
+    /**
+     * حذف جميع الأقواس
+     */
+    public void clear() {
+        size = 0;
+        pairsValid = true;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * إزاحة الفهرس بعد استبدال before حرفاً عند start بـ count حرفاً
+     * الأقواس داخل النطاق المحذوف تُزال؛ النص المُدرج يُضاف عند إعادة تحليل أسطره
+     */
+    public void onTextChanged(int start, int before, int count) {
+        int from = lowerBound(start);
+        int to = lowerBound(start + before);
+        removeRange(from, to);
+        
+        int delta = count - before;
+        if (delta != 0) {
+            for (int i = from; i < size; i++) {
+                positions[i] += delta;
+            }
+        }
+        pairsValid = false;
+    }
+    
+    /**
+     * استبدال أقواس النطاق [start, end) بأقواس الرموز الموجودة حالياً في المحلل
+     */
+    public void replaceRange(int start, int end, PythonLexer lexer) {
+        int from = lowerBound(start);
+        int to = lowerBound(end);
+        
+        int tokenCount = lexer.getTokenCount();
+        int inserted = 0;
+        for (int i = 0; i < tokenCount; i++) {
+            if (isBracketToken(lexer, i, start, end)) {
+                inserted++;
+            }
+        }
+        if (inserted == 0 && from == to) return;
+        
+        // Open a gap of the right size, then fill it in token order
+        int shift = inserted - (to - from);
+        ensureCapacity(size + Math.max(0, shift));
+        System.arraycopy(positions, to, positions, to + shift, size - to);
+        System.arraycopy(chars, to, chars, to + shift, size - to);
+        size += shift;
+        
+        int index = from;
+        for (int i = 0; i < tokenCount; i++) {
+            if (isBracketToken(lexer, i, start, end)) {
+                positions[index] = lexer.getTokenStart(i);
+                chars[index] = lexer.getTokenChar(i);
+                index++;
+            }
+        }
+        pairsValid = false;
+    }
+    
+    /**
+     * إعادة بناء الفهرس من تحليل كامل للمستند
+     */
+    public void rebuild(PythonLexer lexer) {
+        size = 0;
+        replaceRange(0, Integer.MAX_VALUE, lexer);
+    }
+    
+    /**
+     * إعادة بناء الفهرس من مواضع محسوبة مسبقاً (مثلاً من التحليل في الخلفية)
+     */
+    public void rebuild(int[] bracketPositions, char[] bracketChars, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bracketPositions, 0, positions, 0, count);
+        System.arraycopy(bracketChars, 0, chars, 0, count);
+        size = count;
+        pairsValid = false;
+    }
+    
+    /**
+     * فهرس القوس الموجود عند الموضع أو -1
+     */
+    public int findBracketAt(int offset) {
+        int index = lowerBound(offset);
+        return index < size && positions[index] == offset ? index : -1;
+    }
+    
+    /**
+     * موضع القوس المقابل للقوس عند offset أو -1 إذا لم يكن له مقابل
+     */
+    public int findMatch(int offset) {
+        int index = findBracketAt(offset);
+        if (index < 0) return -1;
+        
+        ensurePairs();
+        int partner = partners[index];
+        return partner >= 0 ? positions[partner] : -1;
+    }
+    
+    /**
+     * هل القوس عند offset مغلق بقوس من نفس النوع
+     */
+    public boolean isMatchedPair(int offset) {
+        int index = findBracketAt(offset);
+        if (index < 0) return false;
+        
+        ensurePairs();
+        int partner = partners[index];
+        if (partner < 0) return false;
+        
+        int open = Math.min(index, partner);
+        int close = Math.max(index, partner);
+        return closingFor(chars[open]) == chars[close];
+    }
+    
+    public int getPosition(int index) {
+        return positions[index];
+    }
+    
+    public char getChar(int index) {
+        return chars[index];
+    }
+    
+    private void ensurePairs() {
+        if (pairsValid) return;
+        
+        // Pair by nesting; mismatched kinds are reported by isMatchedPair
+        int depth = 0;
+        for (int i = 0; i < size; i++) {
+            if (isOpening(chars[i])) {
+                if (depth == pairStack.length) {
+                    pairStack = Arrays.copyOf(pairStack, depth * 2);
+                }
+                pairStack[depth++] = i;
+                partners[i] = -1;
+            } else if (depth > 0) {
+                int open = pairStack[--depth];
+                partners[open] = i;
+                partners[i] = open;
+            } else {
+                partners[i] = -1;
+            }
+        }
+        pairsValid = true;
+    }
+    
+    private static boolean isBracketToken(PythonLexer lexer, int token, int start, int end) {
+        int type = lexer.getTokenType(token);
+        if (type != PythonLexer.TOKEN_BRACKET_OPEN && type != PythonLexer.TOKEN_BRACKET_CLOSE) {
+            return false;
+        }
+        int position = lexer.getTokenStart(token);
+        return position >= start && position < end;
+    }
+    
+    private static boolean isOpening(char c) {
+        return c == '(' || c == '[' || c == '{';
+    }
+    
+    private static char closingFor(char open) {
+        switch (open) {
+            case '(': return ')';
+            case '[': return ']';
+            case '{': return '}';
+            default: return 0;
+        }
+    }
+    
+    private void removeRange(int from, int to) {
+        if (to <= from) return;
+        System.arraycopy(positions, to, positions, from, size - to);
+        System.arraycopy(chars, to, chars, from, size - to);
+        size -= to - from;
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (positions.length < capacity) {
+            int newCapacity = Math.max(capacity, positions.length * 2);
+            positions = Arrays.copyOf(positions, newCapacity);
+            chars = Arrays.copyOf(chars, newCapacity);
+            partners = Arrays.copyOf(partners, newCapacity);
+        }
+    }
+    
+    private int lowerBound(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
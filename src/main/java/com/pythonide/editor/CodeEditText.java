@@ -8,6 +8,7 @@ import android.graphics.Typeface;
 import android.os.Handler;
 import android.text.Editable;
 import android.text.InputType;
+import android.text.Layout;
 import android.text.Selection;
 import android.text.Spannable;
 import android.text.TextWatcher;
@@ -26,11 +27,6 @@ import androidx.appcompat.widget.AppCompatEditText;
 import androidx.core.content.ContextCompat;
 import androidx.core.widget.TextViewCompat;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Stack;
 
 /**
  * مكون محرر الكود المخصص مع دعم Monaco Editor
@@ -47,6 +43,8 @@ public class CodeEditText extends AppCompatEditText {
     private Paint errorPaint;
     
     private float lineNumberWidth;
+    // Digits of the line number being drawn, filled from the end
+    private final char[] lineNumberChars = new char[10];
     private boolean showLineNumbers = true;
     private boolean highlightMatchingBrackets = true;
     private boolean autoIndentEnabled = true;
@@ -63,14 +61,32 @@ public class CodeEditText extends AppCompatEditText {
     private UndoRedoManager undoRedoManager;
     private SearchReplaceManager searchReplaceManager;
     
-    private List<Bracket> brackets = new ArrayList<>();
-    private Stack<Integer> bracketStack = new Stack<>();
+    // Piece-table mirror of the Editable, shared with search, undo and analysis
+    private final PieceTableDocument document = new PieceTableDocument();
     
-    // Bracket types
-    private static final char[] BRACKETS = {'(', ')', '[', ']', '{', '}'};
-    private static final char[][] BRACKET_PAIRS = {{'(', ')'}, {'[', ']'}, {'{', '}'}};
+    // Brackets outside strings and comments, kept up to date by the highlighter's re-lexing
+    private final BracketIndex bracketIndex = new BracketIndex();
+    private boolean bracketIndexPending = false;
+    // Last pair reported to bracketMatchListener, -1 when none
+    private int notifiedOpenBracket = -1;
+    private int notifiedCloseBracket = -1;
     
-    private interface BracketMatchListener {
+    // Lexes the line above the caret for auto-indent; whole-document lexing runs in analysisScheduler
+    private final PythonLexer documentLexer = new PythonLexer();
+    private boolean newlineTyped = false;
+    
+    // Debounced background analysis of document snapshots
+    private AnalysisScheduler analysisScheduler;
+    private AnalysisScheduler.AnalysisResult lastAnalysis;
+    
+    // Coalesces viewport updates after edits into one per frame
+    private boolean viewportUpdatePosted = false;
+    private final Runnable viewportUpdater = () -> {
+        viewportUpdatePosted = false;
+        updateHighlightViewport();
+    };
+    
+    public interface BracketMatchListener {
         void onBracketMatch(int start, int end, boolean hasMatch);
     }
     
@@ -82,22 +98,7 @@ public class CodeEditText extends AppCompatEditText {
     }
     
     public interface TextChangedListener {
-        void onTextChanged(String text);
-    }
-    
-    public static class Bracket {
-        public int start;
-        public int end;
-        public char openChar;
-        public char closeChar;
-        public boolean isMatch;
-        
-        public Bracket(int start, int end, char openChar, char closeChar) {
-            this.start = start;
-            this.end = end;
-            this.openChar = openChar;
-            this.closeChar = closeChar;
-        }
+        void onTextChanged(TextDocument document);
     }
     
     public CodeEditText(@NonNull Context context) {
@@ -129,26 +130,43 @@ public class CodeEditText extends AppCompatEditText {
         // Initialize paints
         initPaints();
         
+        analysisScheduler = new AnalysisScheduler(document);
+        analysisScheduler.setAnalysisListener(this::onAnalysisComplete);
+        
         // Add text watcher for real-time processing
         addTextChangedListener(new TextWatcher() {
-            private String previousText = "";
-            
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-                previousText = s.toString();
             }
             
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
+                // Mirror the edit into the document first so later watchers see it updated
+                if (document.length() == s.length() - count + before) {
+                    document.replace(start, start + before, s.subSequence(start, start + count));
+                } else {
+                    // Text set before this watcher was attached (e.g. from XML); resync once
+                    document.setText(s);
+                }
+                
+                // Only record the damaged region here; spans are updated in afterTextChanged
+                if (syntaxHighlighter != null) {
+                    syntaxHighlighter.onTextChanged(s, start, before, count);
+                } else {
+                    bracketIndex.onTextChanged(start, before, count);
+                }
+                // A newline replayed by undo/redo is not typed; its indentation is a step of its own
+                newlineTyped = before == 0 && count == 1 && s.charAt(start) == '\n' && !isReplayingHistory();
+                bracketIndexPending = true;
+                analysisScheduler.schedule();
                 if (textChangedListener != null) {
-                    textChangedListener.onTextChanged(s.toString());
+                    textChangedListener.onTextChanged(document);
                 }
-                processTextChange(s.toString());
             }
             
             @Override
             public void afterTextChanged(Editable s) {
-                // Handle text changes
+                processTextChange(s);
             }
         });
     }
@@ -192,6 +210,35 @@ public class CodeEditText extends AppCompatEditText {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         calculateLineNumberWidth();
+        updateHighlightViewport();
+    }
+    
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        analysisScheduler.cancel();
+    }
+    
+    @Override
+    protected void onScrollChanged(int horiz, int vert, int oldHoriz, int oldVert) {
+        super.onScrollChanged(horiz, vert, oldHoriz, oldVert);
+        if (vert != oldVert) {
+            updateHighlightViewport();
+        }
+    }
+    
+    /**
+     * إبلاغ المظلل بنطاق النص الظاهر حتى لا تحمل spans إلا الأسطر المرئية
+     */
+    private void updateHighlightViewport() {
+        Layout layout = getLayout();
+        if (layout == null || syntaxHighlighter == null || getText() == null) return;
+        
+        int top = getScrollY() - getTotalPaddingTop();
+        int bottom = top + getHeight();
+        int firstOffset = layout.getLineStart(layout.getLineForVertical(Math.max(0, top)));
+        int lastOffset = layout.getLineEnd(layout.getLineForVertical(Math.max(0, bottom)));
+        syntaxHighlighter.setVisibleRange(firstOffset, Math.min(lastOffset, getText().length()));
     }
     
     private void calculateLineNumberWidth() {
@@ -215,157 +262,214 @@ public class CodeEditText extends AppCompatEditText {
     }
     
     private void drawLineNumbers(Canvas canvas) {
-        if (getLayout() == null) return;
+        Layout layout = getLayout();
+        if (layout == null) return;
         
-        int baseline = getBaseline();
-        int lineCount = getLayout().getLineCount();
         int textColor = getCurrentTextColor();
-        
         lineNumberPaint.setColor(textColor);
         lineNumberPaint.setAlpha(128); // Semi-transparent
         
-        for (int i = 0; i < lineCount; i++) {
-            float x = getPaddingLeft() - lineNumberWidth + 8;
-            float y = getLayout().getLineBaseline(i) + baseline - getLayout().getLineTop(i);
-            String lineNumber = String.valueOf(i + 1);
-            canvas.drawText(lineNumber, x, y, lineNumberPaint);
+        // Only the lines inside the viewport; the canvas is already in scrolled content coordinates
+        int paddingTop = getTotalPaddingTop();
+        int top = getScrollY() - paddingTop;
+        int firstLine = layout.getLineForVertical(Math.max(0, top));
+        int lastLine = layout.getLineForVertical(Math.max(0, top + getHeight()));
+        
+        float x = getPaddingLeft() - lineNumberWidth + 8;
+        for (int i = firstLine; i <= lastLine; i++) {
+            int start = formatLineNumber(i + 1);
+            float y = paddingTop + layout.getLineBaseline(i);
+            canvas.drawText(lineNumberChars, start, lineNumberChars.length - start, x, y, lineNumberPaint);
         }
     }
     
+    /**
+     * كتابة رقم السطر في نهاية lineNumberChars دون إنشاء String
+     * @return موضع أول رقم
+     */
+    private int formatLineNumber(int number) {
+        int position = lineNumberChars.length;
+        do {
+            lineNumberChars[--position] = (char) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        return position;
+    }
+    
     private void drawBracketHighlighting(Canvas canvas) {
         // This would be implemented to draw bracket matching highlights
         // For now, it's a placeholder
     }
     
-    private void processTextChange(String text) {
+    private void processTextChange(Editable text) {
         if (syntaxHighlighter != null) {
             syntaxHighlighter.updateHighlighting();
-        }
-        
-        detectBrackets(text);
-        detectFunctionsAndKeywords(text);
-        
-        if (autoIndentEnabled) {
-            handleAutoIndent();
-        }
-    }
-    
-    private void detectBrackets(String text) {
-        brackets.clear();
-        bracketStack.clear();
-        
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
             
-            // Check for opening brackets
-            for (char[] pair : BRACKET_PAIRS) {
-                if (c == pair[0]) {
-                    bracketStack.push(i);
-                }
-            }
-            
-            // Check for closing brackets
-            for (char[] pair : BRACKET_PAIRS) {
-                if (c == pair[1] && !bracketStack.isEmpty()) {
-                    int openIndex = bracketStack.pop();
-                    brackets.add(new Bracket(openIndex, i, text.charAt(openIndex), c));
-                }
+            // The layout is rebuilt after the edit; refresh the visible window once it settles
+            if (!viewportUpdatePosted) {
+                viewportUpdatePosted = true;
+                post(viewportUpdater);
             }
         }
         
-        // Check bracket matches
-        checkBracketMatches();
+        bracketIndexPending = false;
+        // Offsets moved with the edit; force the caret pair to be reported again
+        notifiedOpenBracket = -2;
+        notifiedCloseBracket = -2;
+        updateCaretBracketMatch();
+        
+        if (autoIndentEnabled && newlineTyped) {
+            newlineTyped = false;
+            handleAutoIndent(text);
+        }
     }
     
-    private void checkBracketMatches() {
-        for (Bracket bracket : brackets) {
-            boolean hasMatch = true; // Simplified logic
-            if (bracketMatchListener != null) {
-                bracketMatchListener.onBracketMatch(bracket.start, bracket.end, hasMatch);
-            }
+    @Override
+    protected void onSelectionChanged(int selStart, int selEnd) {
+        super.onSelectionChanged(selStart, selEnd);
+        // Called from the super constructor before fields exist, and mid-edit before the index is updated
+        if (bracketIndex != null && !bracketIndexPending) {
+            updateCaretBracketMatch();
         }
     }
     
-    private void detectFunctionsAndKeywords(String text) {
-        if (functionDetectionListener == null) return;
-        
-        // Detect functions
-        Pattern functionPattern = Pattern.compile("\\b(def|class)\\s+(\\w+)\\s*\\(");
-        Matcher functionMatcher = functionPattern.matcher(text);
+    /**
+     * إبلاغ المستمع بزوج الأقواس المحيط بالمؤشر فقط
+     */
+    private void updateCaretBracketMatch() {
+        if (bracketMatchListener == null) return;
         
-        while (functionMatcher.find()) {
-            int start = functionMatcher.start();
-            int end = functionMatcher.end();
-            String functionName = functionMatcher.group(2);
-            functionDetectionListener.onFunctionDetected(start, end, functionName);
+        // Prefer the bracket after the caret, then the one before it
+        int caret = getSelectionStart();
+        int bracket = -1;
+        if (bracketIndex.findBracketAt(caret) >= 0) {
+            bracket = caret;
+        } else if (caret > 0 && bracketIndex.findBracketAt(caret - 1) >= 0) {
+            bracket = caret - 1;
         }
         
-        // Detect strings
-        Pattern stringPattern = Pattern.compile("[\"'].*?[\"']");
-        Matcher stringMatcher = stringPattern.matcher(text);
+        int match = bracket >= 0 ? bracketIndex.findMatch(bracket) : -1;
+        int open = match >= 0 ? Math.min(bracket, match) : -1;
+        int close = match >= 0 ? Math.max(bracket, match) : -1;
+        if (open == notifiedOpenBracket && close == notifiedCloseBracket) return;
         
-        while (stringMatcher.find()) {
-            functionDetectionListener.onStringDetected(stringMatcher.start(), stringMatcher.end());
+        notifiedOpenBracket = open;
+        notifiedCloseBracket = close;
+        if (match >= 0) {
+            bracketMatchListener.onBracketMatch(open, close, bracketIndex.isMatchedPair(bracket));
+        } else {
+            bracketMatchListener.onBracketMatch(caret, caret, false);
+        }
+    }
+    
+    /**
+     * موضع القوس المقابل للقوس عند offset أو -1
+     */
+    public int findMatchingBracket(int offset) {
+        return bracketIndex.findMatch(offset);
+    }
+    
+    /**
+     * تطبيق نتيجة التحليل في الخلفية (على خيط الواجهة، والنص لم يتغير منذ اللقطة)
+     */
+    private void onAnalysisComplete(AnalysisScheduler.AnalysisResult result) {
+        if (syntaxHighlighter != null) {
+            syntaxHighlighter.applyLineStates(result.lineStates, result.lineCount);
         }
         
-        // Detect comments
-        Pattern commentPattern = Pattern.compile("#.*");
-        Matcher commentMatcher = commentPattern.matcher(text);
+        // Lines outside the window may have been skipped on edit; the full pass is authoritative
+        bracketIndex.rebuild(result.bracketPositions, result.bracketChars, result.bracketCount);
+        notifiedOpenBracket = -2;
+        notifiedCloseBracket = -2;
+        updateCaretBracketMatch();
         
-        while (commentMatcher.find()) {
-            functionDetectionListener.onCommentDetected(commentMatcher.start(), commentMatcher.end());
-        }
+        reportDetections(result, lastAnalysis);
+        lastAnalysis = result;
     }
     
-    private void handleAutoIndent() {
-        Editable text = getText();
-        if (text == null) return;
-        
-        int cursorPosition = getSelectionStart();
-        int lineStart = findLineStart(text, cursorPosition);
+    /**
+     * إبلاغ مستمع الاكتشاف بالتعريفات والنصوص والتعليقات الجديدة فقط مقارنة بالتحليل السابق
+     */
+    private void reportDetections(AnalysisScheduler.AnalysisResult result, AnalysisScheduler.AnalysisResult previous) {
+        if (functionDetectionListener == null) return;
         
-        // Check if Enter was pressed
-        if (cursorPosition > lineStart && text.charAt(cursorPosition - 1) == '\n') {
-            // Add indentation based on previous line
-            String previousLine = getPreviousLine(text, cursorPosition);
-            int indentLevel = calculateIndentLevel(previousLine);
-            
-            // Add appropriate indentation
-            StringBuilder indent = new StringBuilder();
-            for (int i = 0; i < indentLevel; i++) {
-                indent.append("    "); // 4 spaces per indent level
+        AnalysisScheduler.RangeList definitions = result.definitions;
+        for (int i = 0; i < definitions.size(); i++) {
+            int start = definitions.getStart(i);
+            int end = definitions.getEnd(i);
+            int old = previous != null ? previous.definitions.indexOf(start, end) : -1;
+            if (old < 0 || !previous.definitionNames[old].equals(result.definitionNames[i])) {
+                functionDetectionListener.onFunctionDetected(start, end, result.definitionNames[i]);
             }
-            
-            text.insert(cursorPosition, indent.toString());
         }
-    }
-    
-    private String findLineStart(Editable text, int position) {
-        int lineStart = position;
-        while (lineStart > 0 && text.charAt(lineStart - 1) != '\n') {
-            lineStart--;
+        for (int i = 0; i < result.strings.size(); i++) {
+            int start = result.strings.getStart(i);
+            int end = result.strings.getEnd(i);
+            if (previous == null || previous.strings.indexOf(start, end) < 0) {
+                functionDetectionListener.onStringDetected(start, end);
+            }
+        }
+        for (int i = 0; i < result.comments.size(); i++) {
+            int start = result.comments.getStart(i);
+            int end = result.comments.getEnd(i);
+            if (previous == null || previous.comments.indexOf(start, end) < 0) {
+                functionDetectionListener.onCommentDetected(start, end);
+            }
         }
-        return lineStart;
-    }
-    
-    private String getPreviousLine(Editable text, int position) {
-        int lineStart = findLineStart(text, position);
-        int previousLineStart = findLineStart(text, lineStart - 1);
-        return text.subSequence(previousLineStart, lineStart).toString().trim();
     }
     
-    private int calculateIndentLevel(String line) {
-        int indentLevel = 0;
-        for (int i = 0; i < line.length(); i++) {
-            if (line.charAt(i) == ' ') {
-                indentLevel++;
-            } else if (line.charAt(i) == '\t') {
-                indentLevel += tabWidth;
+    private void handleAutoIndent(Editable text) {
+        int cursorPosition = getSelectionStart();
+        if (cursorPosition <= 0 || text.charAt(cursorPosition - 1) != '\n') return;
+        
+        int previousLineEnd = cursorPosition - 1;
+        int previousLineStart = document.getLineStart(document.getLineForOffset(previousLineEnd));
+        
+        // Start from the indentation of the previous line
+        int indentColumns = 0;
+        for (int i = previousLineStart; i < previousLineEnd; i++) {
+            char c = text.charAt(i);
+            if (c == ' ') {
+                indentColumns++;
+            } else if (c == '\t') {
+                indentColumns += tabWidth;
             } else {
                 break;
             }
         }
-        return indentLevel / 4; // Each indent level is 4 spaces
+        
+        // Inspect the previous line's tokens, ignoring comments
+        int entryState = syntaxHighlighter != null
+            ? syntaxHighlighter.getLineEntryState(previousLineStart) : PythonLexer.STATE_NORMAL;
+        documentLexer.tokenizeLine(document, previousLineStart, previousLineEnd, entryState);
+        int firstToken = 0;
+        int lastToken = documentLexer.getTokenCount() - 1;
+        while (lastToken >= firstToken && documentLexer.getTokenType(lastToken) == PythonLexer.TOKEN_COMMENT) {
+            lastToken--;
+        }
+        
+        if (lastToken >= firstToken) {
+            if (documentLexer.getTokenType(lastToken) == PythonLexer.TOKEN_PUNCTUATION
+                    && documentLexer.getTokenChar(lastToken) == ':') {
+                indentColumns += 4;
+            } else if (documentLexer.getTokenType(firstToken) == PythonLexer.TOKEN_KEYWORD
+                    && (documentLexer.tokenEquals(firstToken, "return")
+                        || documentLexer.tokenEquals(firstToken, "pass")
+                        || documentLexer.tokenEquals(firstToken, "break")
+                        || documentLexer.tokenEquals(firstToken, "continue")
+                        || documentLexer.tokenEquals(firstToken, "raise"))) {
+                indentColumns = Math.max(0, indentColumns - 4);
+            }
+        }
+        
+        if (indentColumns == 0) return;
+        
+        // Add indentation in whole levels of 4 spaces
+        StringBuilder indent = new StringBuilder();
+        for (int i = 0; i < indentColumns / 4; i++) {
+            indent.append("    ");
+        }
+        text.insert(cursorPosition, indent.toString());
     }
     
     // Public setter methods for editor configuration
@@ -443,12 +547,32 @@ public class CodeEditText extends AppCompatEditText {
         this.functionDetectionListener = listener;
     }
     
+    /**
+     * المستند المرافق للنص المعروض (جدول القطع)
+     */
+    public TextDocument getDocument() {
+        return document;
+    }
+    
     public void setOnTextChangedListener(TextChangedListener listener) {
         this.textChangedListener = listener;
     }
     
     public void setSyntaxHighlighter(SyntaxHighlighter highlighter) {
         this.syntaxHighlighter = highlighter;
+        if (highlighter != null) {
+            highlighter.setBracketIndex(bracketIndex);
+            highlighter.setBackgroundPropagation(true);
+        }
+    }
+    
+    /**
+     * تفعيل تظليل الأسطر المرئية فقط (مفعّل افتراضياً)
+     */
+    public void setViewportHighlighting(boolean enabled) {
+        if (syntaxHighlighter != null) {
+            syntaxHighlighter.setViewportMode(enabled);
+        }
     }
     
     public void setAutoCompleteHandler(AutoCompleteHandler handler) {
@@ -459,6 +583,17 @@ public class CodeEditText extends AppCompatEditText {
         this.undoRedoManager = manager;
     }
     
+    public UndoRedoManager getUndoRedoManager() {
+        return undoRedoManager;
+    }
+    
+    /**
+     * هل التعديل الجاري إعادة تطبيق من سجل التراجع وليس إدخالاً من المستخدم
+     */
+    public boolean isReplayingHistory() {
+        return undoRedoManager != null && undoRedoManager.isReplaying();
+    }
+    
     public void setSearchReplaceManager(SearchReplaceManager manager) {
         this.searchReplaceManager = manager;
     }
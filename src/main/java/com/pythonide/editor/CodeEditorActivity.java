@@ -23,6 +23,12 @@ import android.text.style.BackgroundColorSpan;
 import android.text.style.ForegroundColorSpan;
 import android.text.style.StyleSpan;
 import android.text.style.UnderlineSpan;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.ArrayList;
@@ -68,12 +74,19 @@ public class CodeEditorActivity extends AppCompatActivity {
         "str", "sum", "super", "tuple", "type", "vars", "zip"
     };
     
+    // Files that mark the folder holding them as a project root
+    private static final String[] PROJECT_MARKERS = {
+        ".git", "pyproject.toml", "setup.py", "setup.cfg", "requirements.txt", "Pipfile"
+    };
+    
     private SyntaxHighlighter syntaxHighlighter;
     private AutoCompleteHandler autoCompleteHandler;
+    private ProjectSymbolIndex projectSymbolIndex;
     private UndoRedoManager undoRedoManager;
     private SearchReplaceManager searchReplaceManager;
     private FileExplorerAdapter fileExplorerAdapter;
     private List<String> pythonFiles;
+    private int displayedLineCount = -1;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -87,8 +100,10 @@ public class CodeEditorActivity extends AppCompatActivity {
         setupFloatingActionButton();
         setupManagers();
         
-        // Load default Python file
-        loadDefaultFile();
+        // Open the file passed by the file manager, or the sample file; a restored state replaces either
+        if (savedInstanceState != null || !loadIntentFile(getIntent())) {
+            loadDefaultFile();
+        }
     }
     
     private void initializeViews() {
@@ -142,6 +157,9 @@ public class CodeEditorActivity extends AppCompatActivity {
         autoCompleteHandler = new AutoCompleteHandler(this, codeEditText, PYTHON_KEYWORDS, PYTHON_BUILTINS);
         codeEditText.setAutoCompleteHandler(autoCompleteHandler);
         
+        // Project-wide symbols feed completion; only files changed since the cached index are parsed
+        setProjectRoot(resolveProjectRoot(getIntent()));
+        
         // Setup undo/redo
         undoRedoManager = new UndoRedoManager(codeEditText);
         codeEditText.setUndoRedoManager(undoRedoManager);
@@ -153,24 +171,121 @@ public class CodeEditorActivity extends AppCompatActivity {
         // Set up bracket matching
         setupBracketMatching();
         
-        // Set up function and keyword highlighting
-        setupFunctionHighlighting();
-        
         // Set up editor listeners
         setupEditorListeners();
     }
     
+    /**
+     * جذر المشروع المحرَّر: المسار الممرَّر في "project_path"، وإلا أقرب مجلد فوق الملف المفتوح في "file_path"
+     * يحوي علامة مشروع (.git، pyproject.toml...)؛ ملف خارج أي مشروع لا يُفهرس ما حوله
+     */
+    private File resolveProjectRoot(Intent intent) {
+        if (intent == null) return null;
+        String projectPath = intent.getStringExtra("project_path");
+        if (projectPath != null) {
+            return new File(projectPath);
+        }
+        String filePath = intent.getStringExtra("file_path");
+        if (filePath != null) {
+            for (File dir = new File(filePath).getAbsoluteFile().getParentFile(); dir != null; dir = dir.getParentFile()) {
+                if (hasProjectMarker(dir)) return dir;
+            }
+        }
+        return null;
+    }
+    
+    private static boolean hasProjectMarker(File dir) {
+        for (String marker : PROJECT_MARKERS) {
+            if (new File(dir, marker).exists()) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * فتح الملف الممرَّر في "file_path" إن وُجد؛ يُقرأ خارج الخيط الرئيسي
+     * @return false إذا لم يُمرَّر ملف
+     */
+    private boolean loadIntentFile(Intent intent) {
+        String filePath = intent != null ? intent.getStringExtra("file_path") : null;
+        if (filePath == null) return false;
+        
+        File file = new File(filePath);
+        new Thread(() -> {
+            try {
+                String text = readText(file);
+                runOnUiThread(() -> {
+                    if (isDestroyed()) return;
+                    codeEditText.setText(text);
+                    undoRedoManager.clearHistory();
+                    if (getSupportActionBar() != null) {
+                        getSupportActionBar().setSubtitle(file.getName());
+                    }
+                });
+            } catch (IOException e) {
+                runOnUiThread(() -> Snackbar.make(codeEditText,
+                    "تعذر فتح الملف: " + file.getName(), Snackbar.LENGTH_SHORT).show());
+            }
+        }, "editor-load").start();
+        return true;
+    }
+    
+    private static String readText(File file) throws IOException {
+        StringBuilder text = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE));
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, read);
+            }
+        }
+        return text.toString();
+    }
+    
+    /**
+     * إعادة بناء فهرس الرموز عند تغيّر المشروع؛ لكل جذر ملف تخزين مؤقت خاص به
+     */
+    private void setProjectRoot(File root) {
+        if (root != null && projectSymbolIndex != null && root.equals(projectSymbolIndex.getProjectRoot())) {
+            return;
+        }
+        if (projectSymbolIndex != null) {
+            projectSymbolIndex.setIndexListener(null);
+            projectSymbolIndex = null;
+            // Symbols of the previous project must not be offered in this one
+            autoCompleteHandler.setAdditionalCompletions(new ArrayList<>());
+        }
+        // Without a file or project there is nothing on disk to index
+        if (root == null || !root.isDirectory()) return;
+        
+        String cacheName = "symbol_index_" + Integer.toHexString(root.getAbsolutePath().hashCode()) + ".bin";
+        projectSymbolIndex = new ProjectSymbolIndex(root, new File(getCacheDir(), cacheName));
+        projectSymbolIndex.setIndexListener(index ->
+            autoCompleteHandler.setAdditionalCompletions(index.getCompletionItems()));
+        projectSymbolIndex.refresh();
+    }
+    
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        // A file outside any project drops the previous project's symbols
+        if (intent.hasExtra("project_path") || intent.hasExtra("file_path")) {
+            setProjectRoot(resolveProjectRoot(intent));
+        }
+        loadIntentFile(intent);
+    }
+    
     private void setupFloatingActionButton() {
         fabRun.setOnClickListener(v -> runPythonCode());
     }
     
     private void setupManagers() {
-        undoRedoManager = new UndoRedoManager(codeEditText);
-        searchReplaceManager = new SearchReplaceManager(this, codeEditText);
+        // UndoRedoManager and SearchReplaceManager are created once in setupCodeEditor();
+        // a second instance would record every edit twice and keep a second match set in sync
     }
     
     private void setupBracketMatching() {
-        codeEditText.setOnBracketMatchListener(new CodeEditText.OnBracketMatchListener() {
+        codeEditText.setOnBracketMatchListener(new CodeEditText.BracketMatchListener() {
             @Override
             public void onBracketMatch(int start, int end, boolean hasMatch) {
                 if (hasMatch) {
@@ -184,46 +299,14 @@ public class CodeEditorActivity extends AppCompatActivity {
         });
     }
     
-    private void setupFunctionHighlighting() {
-        codeEditText.setOnFunctionDetectionListener(new CodeEditText.OnFunctionDetectionListener() {
-            @Override
-            public void onFunctionDetected(int start, int end, String functionName) {
-                codeEditText.highlightFunction(start, end);
-            }
-            
-            @Override
-            public void onKeywordDetected(int start, int end, String keyword) {
-                codeEditText.highlightKeyword(start, end);
-            }
-            
-            @Override
-            public void onStringDetected(int start, int end) {
-                codeEditText.highlightString(start, end);
-            }
-            
-            @Override
-            public void onCommentDetected(int start, int end) {
-                codeEditText.highlightComment(start, end);
-            }
-        });
-    }
-    
     private void setupEditorListeners() {
-        codeEditText.setOnTextChangedListener(new CodeEditText.OnTextChangedListener() {
+        codeEditText.setOnTextChangedListener(new CodeEditText.TextChangedListener() {
             @Override
-            public void onTextChanged(String text) {
+            public void onTextChanged(TextDocument document) {
                 // Update line numbers
-                updateLineNumbers(text);
-                
-                // Update syntax highlighting
-                if (syntaxHighlighter != null) {
-                    syntaxHighlighter.updateHighlighting();
-                }
+                updateLineNumbers(document);
                 
-                // Save to undo stack
-                if (undoRedoManager != null) {
-                    undoRedoManager.onTextChanged(text);
-                }
+                // Syntax highlighting and undo history are updated incrementally by CodeEditText's watchers
             }
         });
         
@@ -267,12 +350,17 @@ public class CodeEditorActivity extends AppCompatActivity {
             "    print(result)";
         
         codeEditText.setText(sampleCode);
+        undoRedoManager.clearHistory();
     }
     
-    private void updateLineNumbers(String text) {
-        String[] lines = text.split("\n");
+    private void updateLineNumbers(TextDocument document) {
+        // Line count comes from the document's line index; rebuild the gutter only when it changes
+        int lineCount = document.getLineCount();
+        if (lineCount == displayedLineCount) return;
+        displayedLineCount = lineCount;
+        
         StringBuilder lineNumbersText = new StringBuilder();
-        for (int i = 0; i < lines.length; i++) {
+        for (int i = 0; i < lineCount; i++) {
             lineNumbersText.append(i + 1).append("\n");
         }
         
@@ -288,6 +376,7 @@ public class CodeEditorActivity extends AppCompatActivity {
             "def " + fileName.replace(".py", "") + "_main():\n" +
             "    print(f\"تشغيل {fileName}\")\n" +
             "    return True");
+        undoRedoManager.clearHistory();
         
         Snackbar.make(codeEditText, "تم تحميل: " + fileName, Snackbar.LENGTH_SHORT).show();
     }
@@ -376,6 +465,23 @@ public class CodeEditorActivity extends AppCompatActivity {
         Snackbar.make(codeEditText, "تم تنسيق الكود", Snackbar.LENGTH_SHORT).show();
     }
     
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Files may have changed outside the editor; unchanged files come from the cache
+        if (projectSymbolIndex != null) {
+            projectSymbolIndex.refresh();
+        }
+    }
+    
+    @Override
+    protected void onDestroy() {
+        if (projectSymbolIndex != null) {
+            projectSymbolIndex.setIndexListener(null);
+        }
+        super.onDestroy();
+    }
+    
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -206,34 +206,47 @@ public class CodeEditorUtils {
             return false;
         }
         
-        // Basic validation - check for balanced brackets and quotes
-        return isBalancedBrackets(code) && isBalancedQuotes(code);
+        // Basic validation - check for balanced brackets and quotes from a single lexer pass
+        PythonLexer lexer = new PythonLexer();
+        int exitState = lexer.tokenize(code);
+        return hasBalancedBrackets(lexer) && hasBalancedQuotes(lexer, exitState);
     }
     
     /**
-     * التحقق من توازن الأقواس
+     * التحقق من توازن الأقواس (يتجاهل الأقواس داخل النصوص والتعليقات)
      */
     public static boolean isBalancedBrackets(String text) {
-        java.util.Stack<Character> stack = new java.util.Stack<>();
+        PythonLexer lexer = new PythonLexer();
+        lexer.tokenize(text);
+        return hasBalancedBrackets(lexer);
+    }
+    
+    private static boolean hasBalancedBrackets(PythonLexer lexer) {
+        int tokenCount = lexer.getTokenCount();
+        char[] stack = new char[16];
+        int depth = 0;
         
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
+        for (int i = 0; i < tokenCount; i++) {
+            int type = lexer.getTokenType(i);
             
-            if (c == '(' || c == '[' || c == '{') {
-                stack.push(c);
-            } else if (c == ')' || c == ']' || c == '}') {
-                if (stack.isEmpty()) {
+            if (type == PythonLexer.TOKEN_BRACKET_OPEN) {
+                if (depth == stack.length) {
+                    stack = java.util.Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = lexer.getTokenChar(i);
+            } else if (type == PythonLexer.TOKEN_BRACKET_CLOSE) {
+                if (depth == 0) {
                     return false;
                 }
                 
-                char open = stack.pop();
-                if (!isMatchingBracket(open, c)) {
+                char open = stack[--depth];
+                if (!isMatchingBracket(open, lexer.getTokenChar(i))) {
                     return false;
                 }
             }
         }
         
-        return stack.isEmpty();
+        return depth == 0;
     }
     
     /**
@@ -249,34 +262,14 @@ public class CodeEditorUtils {
      * التحقق من توازن علامات الاقتباس
      */
     public static boolean isBalancedQuotes(String text) {
-        boolean inSingleQuote = false;
-        boolean inDoubleQuote = false;
-        boolean inTripleQuote = false;
-        
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            char nextChar = i + 1 < text.length() ? text.charAt(i + 1) : 0;
-            char prevChar = i > 0 ? text.charAt(i - 1) : 0;
-            
-            // Handle triple quotes first
-            if (c == '"' && nextChar == '"' && text.length() > i + 2 && text.charAt(i + 2) == '"') {
-                if (!inSingleQuote) {
-                    inTripleQuote = !inTripleQuote;
-                    i += 2; // Skip the next two quotes
-                }
-            } else if (c == '\'' && nextChar == '\'' && text.length() > i + 2 && text.charAt(i + 2) == '\'') {
-                if (!inDoubleQuote) {
-                    inTripleQuote = !inTripleQuote;
-                    i += 2; // Skip the next two quotes
-                }
-            } else if (c == '"' && prevChar != '\\' && !inSingleQuote) {
-                inDoubleQuote = !inDoubleQuote;
-            } else if (c == '\'' && prevChar != '\\' && !inDoubleQuote) {
-                inSingleQuote = !inSingleQuote;
-            }
-        }
-        
-        return !inSingleQuote && !inDoubleQuote && !inTripleQuote;
+        PythonLexer lexer = new PythonLexer();
+        int exitState = lexer.tokenize(text);
+        return hasBalancedQuotes(lexer, exitState);
+    }
+    
+    private static boolean hasBalancedQuotes(PythonLexer lexer, int exitState) {
+        // An open triple-quoted string leaves the lexer in a non-normal state
+        return exitState == PythonLexer.STATE_NORMAL && lexer.getUnterminatedStringCount() == 0;
     }
     
     /**
@@ -0,0 +1,355 @@
+package com.pythonide.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * فهرس الإكمال التلقائي (Completion Index)
+ * فهرس ثابت يُبنى مرة واحدة: المفاتيح مرتبة بأحرف صغيرة مع trie للبادئات القصيرة يحفظ أفضل النتائج
+ * مسبقاً، وفهرس ثانٍ للأحرف الأولى من أجزاء الاسم (getName ← gn، get_attr ← ga) للمطابقة التقريبية.
+ * الاستعلام لا ينشئ كائنات ويعيد النتائج مرتبة حسب ترتيب محسوب مسبقاً
+ */
+public class CompletionIndex {
+    
+    // Trie depth; longer prefixes are narrowed by binary search inside the node's range
+    private static final int MAX_TRIE_DEPTH = 4;
+    // Ranges up to this size are scanned; larger trie nodes keep a precomputed top list
+    private static final int SCAN_LIMIT = 64;
+    
+    private final AutoCompleteHandler.CompletionItem[] items;
+    // Rank of each item, lower is better: type priority, then shorter names, then name
+    private final int[] itemRanks;
+    private final int maxResults;
+    
+    private final PrefixTable nameTable;
+    private final PrefixTable initialsTable;
+    
+    // Query scratch, reused between keystrokes
+    private final int[] resultItems;
+    private final int[] resultRanks;
+    private int resultCount;
+    
+    public CompletionIndex(Collection<AutoCompleteHandler.CompletionItem> completions, int maxResults) {
+        this.items = completions.toArray(new AutoCompleteHandler.CompletionItem[0]);
+        this.maxResults = maxResults;
+        this.resultItems = new int[maxResults];
+        this.resultRanks = new int[maxResults];
+        
+        // Precompute ranking once
+        Integer[] order = new Integer[items.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator
+            .comparingInt((Integer i) -> items[i].type)
+            .thenComparingInt(i -> items[i].name.length())
+            .thenComparing(i -> items[i].name, String.CASE_INSENSITIVE_ORDER));
+        itemRanks = new int[items.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            itemRanks[order[rank]] = rank;
+        }
+        
+        String[] names = new String[items.length];
+        String[] initials = new String[items.length];
+        for (int i = 0; i < items.length; i++) {
+            names[i] = items[i].name.toLowerCase(Locale.ROOT);
+            initials[i] = initialsOf(items[i].name);
+        }
+        nameTable = new PrefixTable(names, itemRanks, maxResults);
+        initialsTable = new PrefixTable(initials, itemRanks, maxResults);
+    }
+    
+    public int size() {
+        return items.length;
+    }
+    
+    /**
+     * البحث عن أفضل النتائج للبادئة text[start, end) دون مراعاة حالة الأحرف
+     * تُضاف مطابقات البادئة أولاً ثم مطابقات الأحرف الأولى إلى out (تُفرّغ قبل الإضافة)؛
+     * البادئة الفارغة تعيد أفضل العناصر ترتيباً
+     * @return عدد النتائج
+     */
+    public int query(CharSequence text, int start, int end, List<AutoCompleteHandler.CompletionItem> out) {
+        out.clear();
+        if (end < start) return 0;
+        
+        resultCount = 0;
+        nameTable.collect(text, start, end, this);
+        int prefixMatches = resultCount;
+        for (int i = 0; i < prefixMatches; i++) {
+            out.add(items[resultItems[i]]);
+        }
+        
+        // Fill remaining slots with camelCase / snake_case initial matches
+        if (prefixMatches < maxResults && end - start >= 2) {
+            resultCount = 0;
+            initialsTable.collect(text, start, end, this);
+            for (int i = 0; i < resultCount && out.size() < maxResults; i++) {
+                AutoCompleteHandler.CompletionItem item = items[resultItems[i]];
+                if (!out.contains(item)) {
+                    out.add(item);
+                }
+            }
+        }
+        return out.size();
+    }
+    
+    /**
+     * إضافة عنصر إلى أفضل النتائج الحالية (ترتيب بالإدراج؛ عددها صغير)
+     */
+    private void offer(int item) {
+        int rank = itemRanks[item];
+        if (resultCount == maxResults && rank >= resultRanks[resultCount - 1]) return;
+        
+        int position = resultCount < maxResults ? resultCount++ : resultCount - 1;
+        while (position > 0 && resultRanks[position - 1] > rank) {
+            resultRanks[position] = resultRanks[position - 1];
+            resultItems[position] = resultItems[position - 1];
+            position--;
+        }
+        resultRanks[position] = rank;
+        resultItems[position] = item;
+    }
+    
+    /**
+     * الأحرف الأولى لأجزاء الاسم: بداية الاسم، ما بعد '_'، وبداية كل جزء بحرف كبير
+     */
+    static String initialsOf(String name) {
+        StringBuilder initials = new StringBuilder(4);
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c == '_') continue;
+            
+            boolean boundary;
+            if (i == 0 || name.charAt(i - 1) == '_') {
+                boundary = true;
+            } else if (Character.isUpperCase(c)) {
+                char previous = name.charAt(i - 1);
+                // getName -> N; HTTPServer -> S (an upper case letter followed by lower case)
+                boundary = !Character.isUpperCase(previous)
+                    || (i + 1 < length && Character.isLowerCase(name.charAt(i + 1)));
+            } else {
+                boundary = false;
+            }
+            
+            if (boundary) {
+                initials.append(Character.toLowerCase(c));
+            }
+        }
+        // Single-part names are already covered by the name table
+        return initials.length() >= 2 ? initials.toString() : "";
+    }
+    
+    /**
+     * جدول مفاتيح مرتبة مع trie محدود العمق فوقها
+     * كل عقدة تغطي نطاقاً متصلاً من المفاتيح المرتبة
+     */
+    private static class PrefixTable {
+        private final String[] keys;      // sorted
+        private final int[] keyItems;     // item index of each sorted key
+        
+        private int nodeCount = 0;
+        private char[] nodeChar = new char[64];
+        private int[] nodeFirstChild = new int[64];
+        private int[] nodeNextSibling = new int[64];
+        private int[] nodeRangeStart = new int[64];
+        private int[] nodeRangeEnd = new int[64];
+        private int[] nodeTopOffset = new int[64];
+        
+        // Precomputed top items of large nodes, maxResults slots per node (-1 padded)
+        private int[] topItems = new int[64];
+        private int topSize = 0;
+        private final int maxResults;
+        
+        PrefixTable(String[] allKeys, int[] ranks, int maxResults) {
+            this.maxResults = maxResults;
+            
+            // Empty keys are not indexed
+            List<Integer> indexed = new ArrayList<>();
+            for (int i = 0; i < allKeys.length; i++) {
+                if (!allKeys[i].isEmpty()) {
+                    indexed.add(i);
+                }
+            }
+            indexed.sort(Comparator.comparing((Integer i) -> allKeys[i]).thenComparingInt(i -> ranks[i]));
+            
+            keys = new String[indexed.size()];
+            keyItems = new int[indexed.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keyItems[i] = indexed.get(i);
+                keys[i] = allKeys[keyItems[i]];
+            }
+            
+            int root = newNode((char) 0, 0, keys.length);
+            buildChildren(root, 0, ranks);
+        }
+        
+        private void buildChildren(int node, int depth, int[] ranks) {
+            int start = nodeRangeStart[node];
+            int end = nodeRangeEnd[node];
+            
+            if (end - start > SCAN_LIMIT) {
+                nodeTopOffset[node] = precomputeTop(start, end, ranks);
+            }
+            if (depth == MAX_TRIE_DEPTH) return;
+            
+            // Keys equal to the prefix sort first; the rest group by their next character
+            int i = start;
+            while (i < end && keys[i].length() == depth) {
+                i++;
+            }
+            int previousChild = -1;
+            while (i < end) {
+                char c = keys[i].charAt(depth);
+                int groupEnd = i + 1;
+                while (groupEnd < end && keys[groupEnd].charAt(depth) == c) {
+                    groupEnd++;
+                }
+                
+                int child = newNode(c, i, groupEnd);
+                if (previousChild < 0) {
+                    nodeFirstChild[node] = child;
+                } else {
+                    nodeNextSibling[previousChild] = child;
+                }
+                previousChild = child;
+                buildChildren(child, depth + 1, ranks);
+                i = groupEnd;
+            }
+        }
+        
+        private int precomputeTop(int start, int end, int[] ranks) {
+            int offset = topSize;
+            topSize += maxResults;
+            if (topSize > topItems.length) {
+                topItems = Arrays.copyOf(topItems, Math.max(topSize, topItems.length * 2));
+            }
+            Arrays.fill(topItems, offset, offset + maxResults, -1);
+            
+            int count = 0;
+            for (int k = start; k < end; k++) {
+                int item = keyItems[k];
+                if (count == maxResults && ranks[item] >= ranks[topItems[offset + count - 1]]) continue;
+                
+                int position = count < maxResults ? count++ : count - 1;
+                while (position > 0 && ranks[topItems[offset + position - 1]] > ranks[item]) {
+                    topItems[offset + position] = topItems[offset + position - 1];
+                    position--;
+                }
+                topItems[offset + position] = item;
+            }
+            return offset;
+        }
+        
+        private int newNode(char c, int rangeStart, int rangeEnd) {
+            if (nodeCount == nodeChar.length) {
+                int capacity = nodeCount * 2;
+                nodeChar = Arrays.copyOf(nodeChar, capacity);
+                nodeFirstChild = Arrays.copyOf(nodeFirstChild, capacity);
+                nodeNextSibling = Arrays.copyOf(nodeNextSibling, capacity);
+                nodeRangeStart = Arrays.copyOf(nodeRangeStart, capacity);
+                nodeRangeEnd = Arrays.copyOf(nodeRangeEnd, capacity);
+                nodeTopOffset = Arrays.copyOf(nodeTopOffset, capacity);
+            }
+            int node = nodeCount++;
+            nodeChar[node] = c;
+            nodeFirstChild[node] = -1;
+            nodeNextSibling[node] = -1;
+            nodeRangeStart[node] = rangeStart;
+            nodeRangeEnd[node] = rangeEnd;
+            nodeTopOffset[node] = -1;
+            return node;
+        }
+        
+        /**
+         * تمرير أفضل عناصر البادئة إلى index.offer()
+         */
+        void collect(CharSequence text, int start, int end, CompletionIndex index) {
+            int length = end - start;
+            int node = 0;
+            int depth = 0;
+            while (depth < length && depth < MAX_TRIE_DEPTH) {
+                char c = Character.toLowerCase(text.charAt(start + depth));
+                int child = nodeFirstChild[node];
+                while (child >= 0 && nodeChar[child] != c) {
+                    child = nodeNextSibling[child];
+                }
+                if (child < 0) return;
+                node = child;
+                depth++;
+            }
+            
+            int rangeStart = nodeRangeStart[node];
+            int rangeEnd = nodeRangeEnd[node];
+            if (depth == length && nodeTopOffset[node] >= 0) {
+                for (int k = 0; k < maxResults; k++) {
+                    int item = topItems[nodeTopOffset[node] + k];
+                    if (item < 0) break;
+                    index.offer(item);
+                }
+                return;
+            }
+            
+            // Past the trie, binary search the node's sorted range on the full prefix before ranking
+            if (depth < length) {
+                rangeStart = lowerBound(rangeStart, rangeEnd, text, start, end);
+                rangeEnd = upperBound(rangeStart, rangeEnd, text, start, end);
+            }
+            
+            for (int k = rangeStart; k < rangeEnd; k++) {
+                index.offer(keyItems[k]);
+            }
+        }
+        
+        /**
+         * أول مفتاح في [low, high) لا يسبق البادئة
+         */
+        private int lowerBound(int low, int high, CharSequence text, int start, int end) {
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (comparePrefix(keys[mid], text, start, end) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        /**
+         * أول مفتاح في [low, high) يلي كل المفاتيح التي تبدأ بالبادئة
+         */
+        private int upperBound(int low, int high, CharSequence text, int start, int end) {
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (comparePrefix(keys[mid], text, start, end) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        /**
+         * مقارنة أول (end - start) حرفاً من المفتاح بالبادئة؛ 0 إذا بدأ المفتاح بها
+         */
+        private static int comparePrefix(String key, CharSequence text, int start, int end) {
+            int length = end - start;
+            int common = Math.min(length, key.length());
+            for (int i = 0; i < common; i++) {
+                char a = key.charAt(i);
+                char b = Character.toLowerCase(text.charAt(start + i));
+                if (a != b) {
+                    return a < b ? -1 : 1;
+                }
+            }
+            return key.length() < length ? -1 : 0;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.pythonide.editor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * البحث الحي (Live Search)
+ * يحتفظ بمجموعة التطابقات مرتبة في مصفوفات أولية ويحدّثها دون إعادة مسح المستند:
+ * إطالة الاستعلام تُرشّح التطابقات الحالية، والتعديل يُزيح المواضع ويعيد البحث في الأسطر المتضررة فقط.
+ * المسح الكامل يعمل على لقطة في خيط خلفي ويُلغى عند أي تغيير جديد
+ */
+public class LiveSearch {
+    
+    // Full scans check for cancellation between regions of about this many chars (line aligned)
+    private static final int SCAN_REGION_CHARS = 64 * 1024;
+    
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    public interface MatchListener {
+        void onMatchesChanged(LiveSearch search);
+    }
+    
+    private final TextDocument document;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private MatchListener listener;
+    
+    private String query = "";
+    private boolean caseSensitive;
+    private boolean useRegex;
+    private boolean wholeWords;
+    private Pattern pattern;
+    
+    private MatchArray matches = new MatchArray();
+    private boolean complete = true;
+    private Future<?> runningScan;
+    // Bumped whenever a scan result would no longer apply
+    private int scanGeneration = 0;
+    
+    public LiveSearch(TextDocument document) {
+        this.document = document;
+    }
+    
+    public void setMatchListener(MatchListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * تعيين الاستعلام؛ إطالة استعلام نصي سابق تُرشّح التطابقات الحالية فوراً، وغير ذلك يبدأ مسحاً في الخلفية
+     * @return false إذا كان التعبير النمطي غير صالح
+     */
+    public boolean setQuery(String newQuery, boolean newCaseSensitive, boolean newUseRegex, boolean newWholeWords) {
+        if (newQuery == null || newQuery.isEmpty()) {
+            clear();
+            return true;
+        }
+        
+        Pattern newPattern;
+        try {
+            newPattern = createPattern(newQuery, newCaseSensitive, newUseRegex, newWholeWords);
+        } catch (PatternSyntaxException e) {
+            Log.e("LiveSearch", "Invalid search pattern", e);
+            clear();
+            return false;
+        }
+        
+        boolean narrow = pattern != null && complete
+            && !useRegex && !newUseRegex && !wholeWords && !newWholeWords
+            && caseSensitive == newCaseSensitive
+            && newQuery.length() > query.length()
+            && newQuery.regionMatches(!caseSensitive, 0, query, 0, query.length())
+            && !hasBorder(query, caseSensitive);
+        
+        query = newQuery;
+        caseSensitive = newCaseSensitive;
+        useRegex = newUseRegex;
+        wholeWords = newWholeWords;
+        pattern = newPattern;
+        
+        if (narrow) {
+            narrowMatches(matches, pattern, document);
+            notifyChanged();
+        } else {
+            startScan();
+        }
+        return true;
+    }
+    
+    /**
+     * إلغاء البحث وحذف التطابقات
+     */
+    public void clear() {
+        cancelScan();
+        query = "";
+        pattern = null;
+        matches.count = 0;
+        complete = true;
+        notifyChanged();
+    }
+    
+    public int getMatchCount() {
+        return matches.count;
+    }
+    
+    public int getMatchStart(int index) {
+        return matches.starts[index];
+    }
+    
+    public int getMatchEnd(int index) {
+        return matches.ends[index];
+    }
+    
+    /**
+     * هل انتهى المسح الكامل (عدد التطابقات نهائي)
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+    
+    public String getQuery() {
+        return query;
+    }
+    
+    /**
+     * فهرس أول تطابق يبدأ عند offset أو بعده، أو getMatchCount()
+     */
+    public int findMatchAtOrAfter(int offset) {
+        return matches.lowerBound(offset);
+    }
+    
+    /**
+     * تحديث التطابقات بعد استبدال before حرفاً عند start بـ count حرفاً (المستند محدّث مسبقاً)
+     */
+    public void onTextChanged(int start, int before, int count) {
+        if (pattern == null) return;
+        
+        // A running scan read the old text; start over on the new one
+        if (!complete) {
+            startScan();
+            return;
+        }
+        
+        updateMatches(matches, pattern, document, start, before, count);
+        notifyChanged();
+    }
+    
+    /**
+     * إعادة البحث في الأسطر المتضررة من التعديل فقط وإزاحة التطابقات التي بعدها
+     */
+    static void updateMatches(MatchArray matches, Pattern pattern, TextDocument document,
+                              int start, int before, int count) {
+        int delta = count - before;
+        int length = document.length();
+        int damageStart = document.getLineStart(document.getLineForOffset(start));
+        // Include the line break after the damaged lines so patterns ending in \n are rechecked
+        int damageEnd = Math.min(length, document.getLineEnd(document.getLineForOffset(start + count)) + 1);
+        int oldDamageEnd = damageEnd - delta;
+        
+        // Matches touching the damaged lines are dropped; at most one can straddle its start
+        int from = matches.lowerBound(damageStart);
+        if (from > 0 && matches.ends[from - 1] > damageStart) {
+            from--;
+            damageStart = matches.starts[from];
+        }
+        int to = matches.lowerBound(oldDamageEnd);
+        
+        MatchArray found = new MatchArray();
+        Matcher matcher = pattern.matcher(document);
+        matcher.useTransparentBounds(true).useAnchoringBounds(false);
+        collect(matcher, damageStart, damageEnd, found);
+        
+        matches.splice(from, to, found, delta);
+    }
+    
+    /**
+     * إبقاء التطابقات التي ما زالت تطابق الاستعلام الأطول عند نفس الموضع
+     */
+    static void narrowMatches(MatchArray matches, Pattern pattern, CharSequence text) {
+        Matcher matcher = pattern.matcher(text);
+        matcher.useTransparentBounds(true).useAnchoringBounds(false);
+        int length = text.length();
+        int kept = 0;
+        int lastEnd = 0;
+        for (int i = 0; i < matches.count; i++) {
+            int start = matches.starts[i];
+            if (start < lastEnd) continue;
+            
+            matcher.region(start, length);
+            if (matcher.lookingAt()) {
+                matches.starts[kept] = start;
+                matches.ends[kept] = matcher.end();
+                kept++;
+                lastEnd = matcher.end();
+            }
+        }
+        matches.count = kept;
+    }
+    
+    private void startScan() {
+        cancelScan();
+        complete = false;
+        matches.count = 0;
+        notifyChanged();
+        
+        final int generation = ++scanGeneration;
+        final TextDocument snapshot = document.snapshot();
+        final Pattern scanPattern = pattern;
+        runningScan = SEARCH_EXECUTOR.submit(() -> {
+            long startTime = System.currentTimeMillis();
+            MatchArray found = scan(snapshot, scanPattern);
+            if (found == null) return;
+            
+            Log.d("LiveSearch", "Found " + found.count + " matches in "
+                + (System.currentTimeMillis() - startTime) + "ms");
+            mainHandler.post(() -> deliver(generation, found));
+        });
+    }
+    
+    private void deliver(int generation, MatchArray found) {
+        if (generation != scanGeneration) return;
+        
+        runningScan = null;
+        matches = found;
+        complete = true;
+        notifyChanged();
+    }
+    
+    private void cancelScan() {
+        scanGeneration++;
+        if (runningScan != null) {
+            runningScan.cancel(true);
+            runningScan = null;
+        }
+    }
+    
+    /**
+     * مسح اللقطة كاملة على مناطق متتالية (يعمل على خيط البحث)
+     * @return التطابقات أو null إذا أُلغي المسح
+     */
+    static MatchArray scan(TextDocument snapshot, Pattern pattern) {
+        MatchArray found = new MatchArray();
+        Matcher matcher = pattern.matcher(snapshot);
+        matcher.useTransparentBounds(true).useAnchoringBounds(false);
+        
+        int length = snapshot.length();
+        int regionStart = 0;
+        do {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            int regionEnd = Math.min(length, regionStart + SCAN_REGION_CHARS);
+            if (regionEnd < length) {
+                regionEnd = Math.min(length, snapshot.getLineEnd(snapshot.getLineForOffset(regionEnd)) + 1);
+            }
+            collect(matcher, regionStart, regionEnd, found);
+            regionStart = regionEnd;
+        } while (regionStart < length);
+        return found;
+    }
+    
+    private static void collect(Matcher matcher, int start, int end, MatchArray out) {
+        matcher.region(start, end);
+        while (matcher.find()) {
+            out.add(matcher.start(), matcher.end());
+        }
+    }
+    
+    private void notifyChanged() {
+        if (listener != null) {
+            listener.onMatchesChanged(this);
+        }
+    }
+    
+    static Pattern createPattern(String query, boolean caseSensitive, boolean useRegex, boolean wholeWords) {
+        String patternString;
+        
+        if (useRegex) {
+            patternString = query;
+        } else {
+            // Escape special regex characters if not using regex
+            patternString = Pattern.quote(query);
+            
+            if (wholeWords) {
+                patternString = "\\b" + patternString + "\\b";
+            }
+        }
+        
+        int flags = Pattern.MULTILINE;
+        if (!caseSensitive) {
+            flags |= Pattern.CASE_INSENSITIVE;
+        }
+        
+        return Pattern.compile(patternString, flags);
+    }
+    
+    /**
+     * هل للنص بادئة مطابقة للاحقته ("aa"، "abab")
+     * عندها قد يطابق الاستعلام الأطول مواضع تخطاها المسح السابق، فلا يصح الترشيح
+     */
+    static boolean hasBorder(String text, boolean caseSensitive) {
+        int length = text.length();
+        for (int k = 1; k < length; k++) {
+            if (text.regionMatches(!caseSensitive, 0, text, length - k, k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * تطابقات [start, end) مرتبة وغير متداخلة في مصفوفتين أوليتين
+     */
+    static class MatchArray {
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        int count = 0;
+        
+        void add(int start, int end) {
+            // Empty matches at a region edge are found by both regions
+            if (count > 0 && starts[count - 1] == start && ends[count - 1] == end) return;
+            
+            ensureCapacity(count + 1);
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+        
+        /**
+         * استبدال [from, to) بتطابقات other، وإزاحة ما بعدها بمقدار delta
+         */
+        void splice(int from, int to, MatchArray other, int delta) {
+            int shift = other.count - (to - from);
+            ensureCapacity(count + Math.max(0, shift));
+            System.arraycopy(starts, to, starts, to + shift, count - to);
+            System.arraycopy(ends, to, ends, to + shift, count - to);
+            count += shift;
+            
+            System.arraycopy(other.starts, 0, starts, from, other.count);
+            System.arraycopy(other.ends, 0, ends, from, other.count);
+            if (delta != 0) {
+                for (int i = from + other.count; i < count; i++) {
+                    starts[i] += delta;
+                    ends[i] += delta;
+                }
+            }
+        }
+        
+        int lowerBound(int offset) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] < offset) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        private void ensureCapacity(int capacity) {
+            if (starts.length < capacity) {
+                int newCapacity = Math.max(capacity, starts.length * 2);
+                starts = Arrays.copyOf(starts, newCapacity);
+                ends = Arrays.copyOf(ends, newCapacity);
+            }
+        }
+    }
+}
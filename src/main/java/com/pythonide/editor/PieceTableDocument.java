@@ -0,0 +1,535 @@
+package com.pythonide.editor;
+
+import java.util.Arrays;
+
+/**
+ * مستند بجدول القطع (Piece Table Document)
+ * يحتفظ بالنص الأصلي كما هو وبمخزن إضافة لا يُكتب فيه إلا بالإلحاق، ويصف المستند كقائمة قطع
+ * تشير إلى أجزاء من المخزنين. كل مخزن يحتفظ بمواضع محارف نهاية السطر، فيتم التحويل بين
+ * الأسطر والمواضع ببحث ثنائي. اللقطات تشارك المصفوفات وتُنسخ عند أول تعديل فقط (copy-on-write).
+ *
+ * المستند الحي يُستخدم من خيط الواجهة فقط؛ اللقطة يمكن قراءتها من خيط آخر بعد تمريرها إليه
+ */
+public class PieceTableDocument implements TextDocument {
+    
+    private static final int CHUNK_SHIFT = 14; // 16K chars per add-buffer chunk
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    // Flatten the table when it fragments too much
+    private static final int COMPACT_PIECE_THRESHOLD = 4096;
+    private static final int COMPACT_MIN_ADD_LENGTH = 1 << 20;
+    
+    private static final byte SOURCE_ORIGINAL = 0;
+    private static final byte SOURCE_ADD = 1;
+    
+    // Original buffer and the offsets of its line breaks
+    private String original;
+    private int[] originalBreaks;
+    private int originalBreakCount;
+    
+    // Append-only add buffer; existing chunks and break entries are never rewritten
+    private char[][] addChunks;
+    private int addLength;
+    private int[] addBreaks;
+    private int addBreakCount;
+    
+    // Piece table as parallel arrays
+    private int pieceCount;
+    private byte[] pieceSource;
+    private int[] pieceStart;      // offset in its buffer
+    private int[] pieceLength;
+    private int[] pieceBreaks;     // line breaks inside the piece
+    private int[] pieceOffset;     // document offset of the piece
+    private int[] pieceLineBreaks; // line breaks before the piece
+    private boolean piecesShared = false;
+    
+    private int length;
+    private int lineBreakCount;
+    private long version;
+    private final boolean readOnly;
+    
+    // Last piece hit by charAt(), makes sequential reads O(1)
+    private int cachedPiece = 0;
+    
+    public PieceTableDocument() {
+        this("");
+    }
+    
+    public PieceTableDocument(CharSequence text) {
+        this.readOnly = false;
+        setText(text);
+    }
+    
+    /**
+     * إنشاء لقطة تشارك مصفوفات المستند الحي
+     */
+    private PieceTableDocument(PieceTableDocument source) {
+        this.readOnly = true;
+        this.original = source.original;
+        this.originalBreaks = source.originalBreaks;
+        this.originalBreakCount = source.originalBreakCount;
+        this.addChunks = source.addChunks;
+        this.addLength = source.addLength;
+        this.addBreaks = source.addBreaks;
+        this.addBreakCount = source.addBreakCount;
+        this.pieceCount = source.pieceCount;
+        this.pieceSource = source.pieceSource;
+        this.pieceStart = source.pieceStart;
+        this.pieceLength = source.pieceLength;
+        this.pieceBreaks = source.pieceBreaks;
+        this.pieceOffset = source.pieceOffset;
+        this.pieceLineBreaks = source.pieceLineBreaks;
+        this.length = source.length;
+        this.lineBreakCount = source.lineBreakCount;
+        this.version = source.version;
+    }
+    
+    // CharSequence
+    
+    @Override
+    public int length() {
+        return length;
+    }
+    
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        int piece = cachedPiece;
+        if (piece >= pieceCount || index < pieceOffset[piece] || index >= pieceOffset[piece] + pieceLength[piece]) {
+            piece = findPiece(index);
+            cachedPiece = piece;
+        }
+        return bufferChar(pieceSource[piece], pieceStart[piece] + index - pieceOffset[piece]);
+    }
+    
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return getText(start, end);
+    }
+    
+    @Override
+    public String toString() {
+        return getText(0, length);
+    }
+    
+    // TextDocument
+    
+    @Override
+    public int getLineCount() {
+        return lineBreakCount + 1;
+    }
+    
+    @Override
+    public int getLineStart(int line) {
+        if (line <= 0) return 0;
+        if (line > lineBreakCount) return length;
+        
+        // Find the piece holding break number (line - 1)
+        int breakIndex = line - 1;
+        int low = 0;
+        int high = pieceCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (pieceLineBreaks[mid] <= breakIndex) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        
+        int piece = low;
+        int[] breaks = pieceSource[piece] == SOURCE_ORIGINAL ? originalBreaks : addBreaks;
+        int breakCount = pieceSource[piece] == SOURCE_ORIGINAL ? originalBreakCount : addBreakCount;
+        int firstBreak = lowerBound(breaks, breakCount, pieceStart[piece]);
+        int bufferOffset = breaks[firstBreak + breakIndex - pieceLineBreaks[piece]];
+        return pieceOffset[piece] + (bufferOffset - pieceStart[piece]) + 1;
+    }
+    
+    @Override
+    public int getLineEnd(int line) {
+        return line + 1 < getLineCount() ? getLineStart(line + 1) - 1 : length;
+    }
+    
+    @Override
+    public int getLineForOffset(int offset) {
+        if (offset <= 0 || pieceCount == 0) return 0;
+        if (offset >= length) return lineBreakCount;
+        
+        int piece = findPiece(offset);
+        int[] breaks = pieceSource[piece] == SOURCE_ORIGINAL ? originalBreaks : addBreaks;
+        int breakCount = pieceSource[piece] == SOURCE_ORIGINAL ? originalBreakCount : addBreakCount;
+        int bufferOffset = pieceStart[piece] + offset - pieceOffset[piece];
+        return pieceLineBreaks[piece]
+            + lowerBound(breaks, breakCount, bufferOffset)
+            - lowerBound(breaks, breakCount, pieceStart[piece]);
+    }
+    
+    @Override
+    public void getChars(int start, int end, char[] dest, int destStart) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("range " + start + ".." + end + ", length " + length);
+        }
+        if (start == end) return;
+        
+        int piece = findPiece(start);
+        int position = start;
+        int out = destStart;
+        while (position < end) {
+            int pieceEnd = pieceOffset[piece] + pieceLength[piece];
+            int copyEnd = Math.min(end, pieceEnd);
+            int bufferStart = pieceStart[piece] + position - pieceOffset[piece];
+            int count = copyEnd - position;
+            
+            if (pieceSource[piece] == SOURCE_ORIGINAL) {
+                original.getChars(bufferStart, bufferStart + count, dest, out);
+            } else {
+                copyFromAddBuffer(bufferStart, count, dest, out);
+            }
+            
+            out += count;
+            position = copyEnd;
+            piece++;
+        }
+    }
+    
+    @Override
+    public String getText(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+    
+    @Override
+    public int indexOf(CharSequence needle, int fromIndex) {
+        int needleLength = needle.length();
+        if (needleLength == 0) return Math.max(0, Math.min(fromIndex, length));
+        
+        char first = needle.charAt(0);
+        int last = length - needleLength;
+        for (int i = Math.max(0, fromIndex); i <= last; i++) {
+            if (charAt(i) != first) continue;
+            
+            int j = 1;
+            while (j < needleLength && charAt(i + j) == needle.charAt(j)) {
+                j++;
+            }
+            if (j == needleLength) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public void replace(int start, int end, CharSequence text) {
+        checkWritable();
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("range " + start + ".." + end + ", length " + length);
+        }
+        
+        // Replacing everything is cheaper as a fresh original buffer
+        if (start == 0 && end == length) {
+            setText(text);
+            return;
+        }
+        
+        ensurePiecesOwned();
+        if (end > start) {
+            delete(start, end);
+        }
+        if (text.length() > 0) {
+            insert(start, text);
+        }
+        version++;
+        
+        if (pieceCount > COMPACT_PIECE_THRESHOLD
+                || addLength > Math.max(COMPACT_MIN_ADD_LENGTH, 4 * length)) {
+            compact();
+        }
+    }
+    
+    @Override
+    public void setText(CharSequence text) {
+        checkWritable();
+        
+        original = text.toString();
+        originalBreaks = new int[16];
+        originalBreakCount = 0;
+        for (int i = 0; i < original.length(); i++) {
+            if (original.charAt(i) == '\n') {
+                if (originalBreakCount == originalBreaks.length) {
+                    originalBreaks = Arrays.copyOf(originalBreaks, originalBreakCount * 2);
+                }
+                originalBreaks[originalBreakCount++] = i;
+            }
+        }
+        
+        // Fresh arrays: snapshots may still reference the old ones
+        addChunks = new char[4][];
+        addLength = 0;
+        addBreaks = new int[64];
+        addBreakCount = 0;
+        
+        pieceSource = new byte[16];
+        pieceStart = new int[16];
+        pieceLength = new int[16];
+        pieceBreaks = new int[16];
+        pieceOffset = new int[16];
+        pieceLineBreaks = new int[16];
+        piecesShared = false;
+        pieceCount = 0;
+        if (original.length() > 0) {
+            pieceSource[0] = SOURCE_ORIGINAL;
+            pieceStart[0] = 0;
+            pieceLength[0] = original.length();
+            pieceBreaks[0] = originalBreakCount;
+            pieceCount = 1;
+        }
+        recomputePrefix(0);
+        cachedPiece = 0;
+        version++;
+    }
+    
+    @Override
+    public TextDocument snapshot() {
+        if (readOnly) return this;
+        
+        piecesShared = true;
+        return new PieceTableDocument(this);
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+    
+    @Override
+    public long getVersion() {
+        return version;
+    }
+    
+    // Piece table editing
+    
+    private void delete(int start, int end) {
+        int first = splitAt(start);
+        int last = splitAt(end);
+        removePieces(first, last);
+        recomputePrefix(first);
+    }
+    
+    private void insert(int offset, CharSequence text) {
+        int addStart = addLength;
+        int breaksBefore = addBreakCount;
+        appendToAddBuffer(text);
+        int insertedBreaks = addBreakCount - breaksBefore;
+        
+        // Typing at the end of the newest add piece just extends it
+        if (offset > 0) {
+            int previous = findPiece(offset - 1);
+            if (pieceSource[previous] == SOURCE_ADD
+                    && pieceOffset[previous] + pieceLength[previous] == offset
+                    && pieceStart[previous] + pieceLength[previous] == addStart) {
+                pieceLength[previous] += text.length();
+                pieceBreaks[previous] += insertedBreaks;
+                recomputePrefix(previous + 1);
+                return;
+            }
+        }
+        
+        int index = splitAt(offset);
+        insertPiece(index, SOURCE_ADD, addStart, text.length(), insertedBreaks);
+        recomputePrefix(index);
+    }
+    
+    /**
+     * تقسيم القطعة عند الموضع إن لزم
+     * @return فهرس القطعة التي تبدأ عند offset (أو pieceCount عند نهاية المستند)
+     */
+    private int splitAt(int offset) {
+        if (offset >= length) return pieceCount;
+        
+        int piece = findPiece(offset);
+        if (pieceOffset[piece] == offset) return piece;
+        
+        int headLength = offset - pieceOffset[piece];
+        byte source = pieceSource[piece];
+        int tailStart = pieceStart[piece] + headLength;
+        int tailLength = pieceLength[piece] - headLength;
+        int headBreaks = countBreaks(source, pieceStart[piece], tailStart);
+        int tailBreaks = pieceBreaks[piece] - headBreaks;
+        
+        pieceLength[piece] = headLength;
+        pieceBreaks[piece] = headBreaks;
+        insertPiece(piece + 1, source, tailStart, tailLength, tailBreaks);
+        
+        pieceOffset[piece + 1] = offset;
+        pieceLineBreaks[piece + 1] = pieceLineBreaks[piece] + headBreaks;
+        return piece + 1;
+    }
+    
+    private void insertPiece(int index, byte source, int start, int pieceLen, int breaks) {
+        if (pieceCount == pieceSource.length) {
+            int capacity = pieceCount * 2;
+            pieceSource = Arrays.copyOf(pieceSource, capacity);
+            pieceStart = Arrays.copyOf(pieceStart, capacity);
+            pieceLength = Arrays.copyOf(pieceLength, capacity);
+            pieceBreaks = Arrays.copyOf(pieceBreaks, capacity);
+            pieceOffset = Arrays.copyOf(pieceOffset, capacity);
+            pieceLineBreaks = Arrays.copyOf(pieceLineBreaks, capacity);
+        }
+        int moved = pieceCount - index;
+        System.arraycopy(pieceSource, index, pieceSource, index + 1, moved);
+        System.arraycopy(pieceStart, index, pieceStart, index + 1, moved);
+        System.arraycopy(pieceLength, index, pieceLength, index + 1, moved);
+        System.arraycopy(pieceBreaks, index, pieceBreaks, index + 1, moved);
+        System.arraycopy(pieceOffset, index, pieceOffset, index + 1, moved);
+        System.arraycopy(pieceLineBreaks, index, pieceLineBreaks, index + 1, moved);
+        
+        pieceSource[index] = source;
+        pieceStart[index] = start;
+        pieceLength[index] = pieceLen;
+        pieceBreaks[index] = breaks;
+        pieceCount++;
+    }
+    
+    private void removePieces(int from, int to) {
+        int removed = to - from;
+        if (removed <= 0) return;
+        
+        int moved = pieceCount - to;
+        System.arraycopy(pieceSource, to, pieceSource, from, moved);
+        System.arraycopy(pieceStart, to, pieceStart, from, moved);
+        System.arraycopy(pieceLength, to, pieceLength, from, moved);
+        System.arraycopy(pieceBreaks, to, pieceBreaks, from, moved);
+        System.arraycopy(pieceOffset, to, pieceOffset, from, moved);
+        System.arraycopy(pieceLineBreaks, to, pieceLineBreaks, from, moved);
+        pieceCount -= removed;
+    }
+    
+    private void recomputePrefix(int from) {
+        int offset = from > 0 ? pieceOffset[from - 1] + pieceLength[from - 1] : 0;
+        int breaks = from > 0 ? pieceLineBreaks[from - 1] + pieceBreaks[from - 1] : 0;
+        for (int i = from; i < pieceCount; i++) {
+            pieceOffset[i] = offset;
+            pieceLineBreaks[i] = breaks;
+            offset += pieceLength[i];
+            breaks += pieceBreaks[i];
+        }
+        length = offset;
+        lineBreakCount = breaks;
+        cachedPiece = 0;
+    }
+    
+    private void ensurePiecesOwned() {
+        if (!piecesShared) return;
+        
+        pieceSource = pieceSource.clone();
+        pieceStart = pieceStart.clone();
+        pieceLength = pieceLength.clone();
+        pieceBreaks = pieceBreaks.clone();
+        pieceOffset = pieceOffset.clone();
+        pieceLineBreaks = pieceLineBreaks.clone();
+        piecesShared = false;
+    }
+    
+    private void compact() {
+        long previousVersion = version;
+        char[] chars = new char[length];
+        getChars(0, length, chars, 0);
+        setText(new String(chars));
+        // Same text, so the edit that triggered compaction already counted the change
+        version = previousVersion;
+    }
+    
+    // Buffers
+    
+    private void appendToAddBuffer(CharSequence text) {
+        int textLength = text.length();
+        for (int i = 0; i < textLength; i++) {
+            int chunk = addLength >>> CHUNK_SHIFT;
+            if (chunk == addChunks.length) {
+                addChunks = Arrays.copyOf(addChunks, chunk * 2);
+            }
+            if (addChunks[chunk] == null) {
+                addChunks[chunk] = new char[CHUNK_SIZE];
+            }
+            
+            char c = text.charAt(i);
+            addChunks[chunk][addLength & CHUNK_MASK] = c;
+            if (c == '\n') {
+                if (addBreakCount == addBreaks.length) {
+                    addBreaks = Arrays.copyOf(addBreaks, addBreakCount * 2);
+                }
+                addBreaks[addBreakCount++] = addLength;
+            }
+            addLength++;
+        }
+    }
+    
+    private void copyFromAddBuffer(int bufferStart, int count, char[] dest, int destStart) {
+        int position = bufferStart;
+        int out = destStart;
+        int remaining = count;
+        while (remaining > 0) {
+            int inChunk = position & CHUNK_MASK;
+            int n = Math.min(remaining, CHUNK_SIZE - inChunk);
+            System.arraycopy(addChunks[position >>> CHUNK_SHIFT], inChunk, dest, out, n);
+            position += n;
+            out += n;
+            remaining -= n;
+        }
+    }
+    
+    private char bufferChar(byte source, int bufferOffset) {
+        if (source == SOURCE_ORIGINAL) {
+            return original.charAt(bufferOffset);
+        }
+        return addChunks[bufferOffset >>> CHUNK_SHIFT][bufferOffset & CHUNK_MASK];
+    }
+    
+    private int countBreaks(byte source, int start, int end) {
+        int[] breaks = source == SOURCE_ORIGINAL ? originalBreaks : addBreaks;
+        int breakCount = source == SOURCE_ORIGINAL ? originalBreakCount : addBreakCount;
+        return lowerBound(breaks, breakCount, end) - lowerBound(breaks, breakCount, start);
+    }
+    
+    /**
+     * فهرس القطعة التي تحتوي الموضع (0 <= offset < length)
+     */
+    private int findPiece(int offset) {
+        int low = 0;
+        int high = pieceCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (pieceOffset[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    private static int lowerBound(int[] values, int count, int value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Document snapshot is read-only");
+        }
+    }
+}
@@ -0,0 +1,574 @@
+package com.pythonide.editor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * فهرس رموز المشروع (Project Symbol Index)
+ * يمسح ملفات .py في مجلد المشروع على خيط خلفي ويستخرج الدوال والأصناف والاستيرادات ومتغيرات الوحدة.
+ * يُحفظ الفهرس في ملف ثنائي مضغوط يمكن ربطه بالذاكرة، مفتاحه المسار ووقت التعديل والحجم،
+ * فلا يُعاد تحليل إلا الملفات التي تغيرت منذ آخر فهرسة
+ */
+public class ProjectSymbolIndex {
+    
+    public static final int KIND_FUNCTION = 1;
+    public static final int KIND_CLASS = 2;
+    public static final int KIND_IMPORT = 3;
+    public static final int KIND_VARIABLE = 4;
+    
+    private static final int CACHE_MAGIC = 0x50594958; // "PYIX"
+    private static final int CACHE_FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int FILE_RECORD_BYTES = 32;
+    private static final int SYMBOL_RECORD_BYTES = 16;
+    
+    // Generated or oversized sources are not worth parsing on a phone
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+    
+    private static final ExecutorService INDEX_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    public interface IndexListener {
+        void onIndexUpdated(ProjectSymbolIndex index);
+    }
+    
+    private final File projectRoot;
+    private final File cacheFile;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean refreshQueued = new AtomicBoolean(false);
+    
+    // Replaced as a whole by the index thread; readers never see a partial update
+    private volatile Map<String, FileSymbols> files = Collections.emptyMap();
+    private boolean cacheLoaded = false;
+    private IndexListener listener;
+    
+    public ProjectSymbolIndex(File projectRoot, File cacheFile) {
+        this.projectRoot = projectRoot;
+        this.cacheFile = cacheFile;
+    }
+    
+    public File getProjectRoot() {
+        return projectRoot;
+    }
+    
+    public void setIndexListener(IndexListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * طلب تحديث الفهرس في الخلفية؛ الطلبات المتكررة أثناء انتظار تحديث تُدمج فيه
+     */
+    public void refresh() {
+        if (!refreshQueued.compareAndSet(false, true)) return;
+        
+        INDEX_EXECUTOR.execute(() -> {
+            refreshQueued.set(false);
+            try {
+                if (update()) {
+                    mainHandler.post(() -> {
+                        if (listener != null) {
+                            listener.onIndexUpdated(this);
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                Log.e("ProjectSymbolIndex", "Error indexing project", e);
+            }
+        });
+    }
+    
+    /**
+     * مواضع تعريف الاسم في جميع ملفات المشروع (للانتقال إلى التعريف)
+     */
+    public List<Symbol> findDefinitions(String name) {
+        List<Symbol> result = new ArrayList<>();
+        for (FileSymbols file : files.values()) {
+            for (Symbol symbol : file.symbols) {
+                if (symbol.name.equals(name) && symbol.kind != KIND_IMPORT) {
+                    result.add(symbol);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * رموز ملف واحد بترتيب ظهورها (لعرض المخطط)
+     */
+    public List<Symbol> getOutline(String path) {
+        FileSymbols file = files.get(path);
+        return file != null ? Collections.unmodifiableList(file.symbols) : Collections.<Symbol>emptyList();
+    }
+    
+    /**
+     * عناصر إكمال فريدة لكل الأسماء المعرّفة في المشروع
+     */
+    public List<AutoCompleteHandler.CompletionItem> getCompletionItems() {
+        Set<String> seen = new HashSet<>();
+        List<AutoCompleteHandler.CompletionItem> items = new ArrayList<>();
+        for (FileSymbols file : files.values()) {
+            String fileName = new File(file.path).getName();
+            for (Symbol symbol : file.symbols) {
+                if (!seen.add(symbol.name)) continue;
+                items.add(new AutoCompleteHandler.CompletionItem(symbol.name, completionType(symbol.kind),
+                    fileName + ":" + (symbol.line + 1)));
+            }
+        }
+        return items;
+    }
+    
+    public int getFileCount() {
+        return files.size();
+    }
+    
+    private static int completionType(int kind) {
+        switch (kind) {
+            case KIND_FUNCTION: return AutoCompleteHandler.CompletionItem.TYPE_METHOD;
+            case KIND_CLASS: return AutoCompleteHandler.CompletionItem.TYPE_CLASS;
+            case KIND_IMPORT: return AutoCompleteHandler.CompletionItem.TYPE_MODULE;
+            default: return AutoCompleteHandler.CompletionItem.TYPE_VARIABLE;
+        }
+    }
+    
+    /**
+     * مسح المشروع وإعادة تحليل الملفات المتغيرة فقط (يعمل على خيط الفهرسة)
+     * @return true إذا تغير الفهرس
+     */
+    boolean update() {
+        long startTime = System.currentTimeMillis();
+        boolean changed = false;
+        if (!cacheLoaded) {
+            cacheLoaded = true;
+            Map<String, FileSymbols> cached = readCache();
+            if (!cached.isEmpty()) {
+                files = cached;
+                changed = true;
+            }
+        }
+        
+        List<File> sources = new ArrayList<>();
+        try {
+            collectSources(projectRoot.getCanonicalFile(), sources);
+        } catch (IOException e) {
+            Log.e("ProjectSymbolIndex", "Error resolving " + projectRoot, e);
+        }
+        
+        Map<String, FileSymbols> previous = files;
+        Map<String, FileSymbols> updated = new HashMap<>(sources.size() * 2);
+        PythonLexer lexer = new PythonLexer();
+        int parsed = 0;
+        for (File source : sources) {
+            String path = source.getAbsolutePath();
+            FileSymbols entry = previous.get(path);
+            if (entry == null || entry.lastModified != source.lastModified() || entry.length != source.length()) {
+                entry = parse(source, lexer);
+                if (entry == null) continue;
+                parsed++;
+            }
+            updated.put(path, entry);
+        }
+        
+        if (parsed == 0 && updated.size() == previous.size()) {
+            return changed;
+        }
+        files = updated;
+        writeCache(updated);
+        Log.d("ProjectSymbolIndex", "Indexed " + parsed + " of " + updated.size() + " files in "
+            + (System.currentTimeMillis() - startTime) + "ms");
+        return true;
+    }
+    
+    /**
+     * @param directory مسار قانوني (canonical)، فيُعرف الرابط الرمزي باختلاف مساره القانوني عن مساره
+     */
+    private static void collectSources(File directory, List<File> out) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) return;
+        
+        // A virtualenv is recognised by its config file, whatever it is called
+        for (File child : children) {
+            if (child.getName().equals("pyvenv.cfg")) return;
+        }
+        
+        for (File child : children) {
+            String name = child.getName();
+            if (child.isDirectory()) {
+                // Hidden folders, caches and installed packages hold no project code
+                if (name.startsWith(".") || name.equals("__pycache__") || name.equals("venv")
+                        || name.equals("site-packages")) {
+                    continue;
+                }
+                // Linked folders may point back up the tree or far outside the project
+                if (!child.getCanonicalFile().equals(child)) {
+                    continue;
+                }
+                collectSources(child, out);
+            } else if (name.endsWith(".py") && child.length() <= MAX_FILE_SIZE) {
+                out.add(child);
+            }
+        }
+    }
+    
+    /**
+     * استخراج رموز ملف واحد سطراً بسطر بمحلل المحرر نفسه
+     */
+    private static FileSymbols parse(File source, PythonLexer lexer) {
+        long lastModified = source.lastModified();
+        long length = source.length();
+        String text;
+        try {
+            text = readText(source);
+        } catch (IOException e) {
+            Log.e("ProjectSymbolIndex", "Error reading " + source, e);
+            return null;
+        }
+        
+        FileSymbols file = new FileSymbols(source.getAbsolutePath(), lastModified, length);
+        int state = PythonLexer.STATE_NORMAL;
+        // Parenthesized "from x import (a, b)" may continue over several lines
+        boolean importContinues = false;
+        int line = 0;
+        int lineStart = 0;
+        int textLength = text.length();
+        while (lineStart <= textLength) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = textLength;
+            
+            boolean topLevel = state == PythonLexer.STATE_NORMAL
+                && (lineStart == lineEnd || !Character.isWhitespace(text.charAt(lineStart)));
+            boolean inCode = state == PythonLexer.STATE_NORMAL;
+            state = lexer.tokenizeLine(text, lineStart, lineEnd, state);
+            if (inCode) {
+                importContinues = extractSymbols(text, lexer, line, topLevel, importContinues, file);
+            }
+            
+            lineStart = lineEnd + 1;
+            line++;
+        }
+        return file;
+    }
+    
+    /**
+     * إضافة رموز السطر الذي حلله المحلل للتو
+     * @return true إذا كان السطر داخل استيراد بين أقواس لم يُغلق بعد
+     */
+    private static boolean extractSymbols(String text, PythonLexer lexer, int line, boolean topLevel,
+                                          boolean importContinues, FileSymbols file) {
+        int tokenCount = lexer.getTokenCount();
+        if (tokenCount == 0) return importContinues;
+        
+        if (importContinues) {
+            return addImportedNames(text, lexer, 0, line, file);
+        }
+        
+        int firstType = lexer.getTokenType(0);
+        if (firstType == PythonLexer.TOKEN_KEYWORD && lexer.tokenEquals(0, "import")) {
+            addModuleImports(text, lexer, line, file);
+            return false;
+        }
+        if (firstType == PythonLexer.TOKEN_KEYWORD && lexer.tokenEquals(0, "from")) {
+            for (int i = 1; i < tokenCount; i++) {
+                if (lexer.getTokenType(i) == PythonLexer.TOKEN_KEYWORD && lexer.tokenEquals(i, "import")) {
+                    return addImportedNames(text, lexer, i + 1, line, file);
+                }
+            }
+            return false;
+        }
+        
+        for (int i = 0; i < tokenCount; i++) {
+            int type = lexer.getTokenType(i);
+            if (type == PythonLexer.TOKEN_FUNCTION_NAME) {
+                file.add(tokenText(text, lexer, i), KIND_FUNCTION, line);
+                return false;
+            }
+            if (type == PythonLexer.TOKEN_CLASS_NAME) {
+                file.add(tokenText(text, lexer, i), KIND_CLASS, line);
+                return false;
+            }
+        }
+        
+        // Module level "name = ..." and "a, b = ..."
+        if (topLevel && firstType == PythonLexer.TOKEN_IDENTIFIER) {
+            int i = 0;
+            while (i < tokenCount && lexer.getTokenType(i) == PythonLexer.TOKEN_IDENTIFIER) {
+                i++;
+                if (i < tokenCount && lexer.getTokenType(i) == PythonLexer.TOKEN_PUNCTUATION
+                        && lexer.getTokenChar(i) == ',') {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            if (i < tokenCount && lexer.getTokenType(i) == PythonLexer.TOKEN_OPERATOR && lexer.tokenEquals(i, "=")) {
+                for (int k = 0; k < i; k++) {
+                    if (lexer.getTokenType(k) == PythonLexer.TOKEN_IDENTIFIER) {
+                        file.add(tokenText(text, lexer, k), KIND_VARIABLE, line);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * import a.b.c → a، import a.b as c → c
+     */
+    private static void addModuleImports(String text, PythonLexer lexer, int line, FileSymbols file) {
+        int tokenCount = lexer.getTokenCount();
+        int i = 1;
+        while (i < tokenCount) {
+            if (lexer.getTokenType(i) != PythonLexer.TOKEN_IDENTIFIER) {
+                i++;
+                continue;
+            }
+            String bound = tokenText(text, lexer, i);
+            // Skip the rest of a dotted name
+            i++;
+            while (i + 1 < tokenCount && lexer.getTokenChar(i) == '.'
+                    && lexer.getTokenType(i + 1) == PythonLexer.TOKEN_IDENTIFIER) {
+                i += 2;
+            }
+            if (i + 1 < tokenCount && lexer.tokenEquals(i, "as")) {
+                bound = tokenText(text, lexer, i + 1);
+                i += 2;
+            }
+            file.add(bound, KIND_IMPORT, line);
+            // Move past the separating comma
+            while (i < tokenCount && lexer.getTokenChar(i) != ',') {
+                i++;
+            }
+        }
+    }
+    
+    /**
+     * from m import a, b as c → a، c (الأسماء من الرمز from حتى نهاية السطر)
+     * @return true إذا بقي قوس الاستيراد مفتوحاً
+     */
+    private static boolean addImportedNames(String text, PythonLexer lexer, int from, int line, FileSymbols file) {
+        int tokenCount = lexer.getTokenCount();
+        boolean open = false;
+        for (int i = from; i < tokenCount; i++) {
+            int type = lexer.getTokenType(i);
+            if (type == PythonLexer.TOKEN_BRACKET_OPEN) {
+                open = true;
+            } else if (type == PythonLexer.TOKEN_BRACKET_CLOSE) {
+                return false;
+            } else if (type == PythonLexer.TOKEN_IDENTIFIER || type == PythonLexer.TOKEN_BUILTIN) {
+                boolean aliased = i + 2 < tokenCount && lexer.tokenEquals(i + 1, "as");
+                if (!aliased) {
+                    file.add(tokenText(text, lexer, i), KIND_IMPORT, line);
+                }
+            } else if (type == PythonLexer.TOKEN_KEYWORD && lexer.tokenEquals(i, "as") && i + 1 < tokenCount) {
+                file.add(tokenText(text, lexer, i + 1), KIND_IMPORT, line);
+                i++;
+            }
+        }
+        // Only an opening bracket without its close carries the import to the next line
+        return open;
+    }
+    
+    private static String tokenText(String text, PythonLexer lexer, int token) {
+        return text.substring(lexer.getTokenStart(token), lexer.getTokenEnd(token));
+    }
+    
+    private static String readText(File source) throws IOException {
+        StringBuilder text = new StringBuilder((int) Math.min(source.length(), MAX_FILE_SIZE));
+        char[] buffer = new char[8192];
+        try (Reader reader = new InputStreamReader(new FileInputStream(source), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, read);
+            }
+        }
+        return text.toString();
+    }
+    
+    /**
+     * قراءة ملف الفهرس عبر ربطه بالذاكرة
+     * التخطيط: ترويسة، جدول الملفات، جدول الرموز، ثم مخزن النصوص بترميز UTF-8
+     */
+    private Map<String, FileSymbols> readCache() {
+        if (!cacheFile.exists()) return Collections.emptyMap();
+        
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != CACHE_MAGIC
+                    || buffer.getInt(4) != CACHE_FORMAT_VERSION) {
+                Log.d("ProjectSymbolIndex", "Ignoring incompatible index cache");
+                return Collections.emptyMap();
+            }
+            int fileCount = buffer.getInt(8);
+            int symbolCount = buffer.getInt(12);
+            int symbolTable = HEADER_BYTES + fileCount * FILE_RECORD_BYTES;
+            int stringPool = symbolTable + symbolCount * SYMBOL_RECORD_BYTES;
+            
+            Map<String, FileSymbols> cached = new HashMap<>(fileCount * 2);
+            for (int f = 0; f < fileCount; f++) {
+                int record = HEADER_BYTES + f * FILE_RECORD_BYTES;
+                String path = readString(buffer, stringPool + buffer.getInt(record), buffer.getInt(record + 4));
+                FileSymbols file = new FileSymbols(path, buffer.getLong(record + 8), buffer.getLong(record + 16));
+                int firstSymbol = buffer.getInt(record + 24);
+                int count = buffer.getInt(record + 28);
+                for (int s = firstSymbol; s < firstSymbol + count; s++) {
+                    int symbol = symbolTable + s * SYMBOL_RECORD_BYTES;
+                    String name = readString(buffer, stringPool + buffer.getInt(symbol), buffer.getInt(symbol + 4));
+                    file.add(name, buffer.getInt(symbol + 8), buffer.getInt(symbol + 12));
+                }
+                cached.put(path, file);
+            }
+            Log.d("ProjectSymbolIndex", "Loaded " + fileCount + " files from index cache");
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt cache only costs a full reindex
+            Log.e("ProjectSymbolIndex", "Error reading index cache", e);
+            return Collections.emptyMap();
+        }
+    }
+    
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * كتابة الفهرس إلى ملف مؤقت ثم استبدال الملف القديم به
+     */
+    private void writeCache(Map<String, FileSymbols> snapshot) {
+        int symbolCount = 0;
+        for (FileSymbols file : snapshot.values()) {
+            symbolCount += file.symbols.size();
+        }
+        
+        // Names repeat across files; the pool stores each distinct string once
+        Map<String, int[]> pooled = new HashMap<>();
+        ByteBuffer pool = ByteBuffer.allocate(4096);
+        ByteBuffer tables = ByteBuffer.allocate(HEADER_BYTES + snapshot.size() * FILE_RECORD_BYTES
+            + symbolCount * SYMBOL_RECORD_BYTES);
+        tables.putInt(CACHE_MAGIC).putInt(CACHE_FORMAT_VERSION).putInt(snapshot.size()).putInt(symbolCount).putInt(0);
+        
+        int symbolTable = HEADER_BYTES + snapshot.size() * FILE_RECORD_BYTES;
+        int nextSymbol = 0;
+        for (FileSymbols file : snapshot.values()) {
+            int[] path = pooled.get(file.path);
+            if (path == null) {
+                pool = appendString(pool, pooled, file.path);
+                path = pooled.get(file.path);
+            }
+            tables.putInt(path[0]).putInt(path[1]).putLong(file.lastModified).putLong(file.length)
+                .putInt(nextSymbol).putInt(file.symbols.size());
+            
+            int position = tables.position();
+            tables.position(symbolTable + nextSymbol * SYMBOL_RECORD_BYTES);
+            for (Symbol symbol : file.symbols) {
+                int[] name = pooled.get(symbol.name);
+                if (name == null) {
+                    pool = appendString(pool, pooled, symbol.name);
+                    name = pooled.get(symbol.name);
+                }
+                tables.putInt(name[0]).putInt(name[1]).putInt(symbol.kind).putInt(symbol.line);
+            }
+            tables.position(position);
+            nextSymbol += file.symbols.size();
+        }
+        tables.putInt(16, pool.position());
+        tables.position(tables.capacity());
+        tables.flip();
+        pool.flip();
+        
+        File parent = cacheFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            while (tables.hasRemaining()) {
+                channel.write(tables);
+            }
+            while (pool.hasRemaining()) {
+                channel.write(pool);
+            }
+        } catch (IOException e) {
+            Log.e("ProjectSymbolIndex", "Error writing index cache", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(cacheFile)) {
+            Log.e("ProjectSymbolIndex", "Could not replace index cache " + cacheFile);
+            temp.delete();
+        }
+    }
+    
+    private static ByteBuffer appendString(ByteBuffer pool, Map<String, int[]> pooled, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (pool.remaining() < bytes.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pool.capacity() * 2, pool.position() + bytes.length));
+            pool.flip();
+            larger.put(pool);
+            pool = larger;
+        }
+        pooled.put(value, new int[] {pool.position(), bytes.length});
+        pool.put(bytes);
+        return pool;
+    }
+    
+    /**
+     * رمز واحد معرّف في ملف
+     */
+    public static class Symbol {
+        public final String name;
+        public final int kind;
+        public final String path;
+        public final int line; // zero based
+        
+        Symbol(String name, int kind, String path, int line) {
+            this.name = name;
+            this.kind = kind;
+            this.path = path;
+            this.line = line;
+        }
+    }
+    
+    private static class FileSymbols {
+        final String path;
+        final long lastModified;
+        final long length;
+        final List<Symbol> symbols = new ArrayList<>();
+        
+        FileSymbols(String path, long lastModified, long length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+        
+        void add(String name, int kind, int line) {
+            symbols.add(new Symbol(name, kind, path, line));
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package com.pythonide.editor;
+
+import java.util.Arrays;
+
+/**
+ * محلل Python اللغوي (Python Lexer)
+ * محلل مكتوب يدوياً يعمل على مصفوفة أحرف في مرور واحد ويُخرج تدفق رموز مضغوطاً
+ * (النوع، البداية، الطول) داخل int[] واحدة. يعيد استخدام مخازنه بين الاستدعاءات فلا يخصص ذاكرة
+ * أثناء التحليل، ويستهلك نتائجه كل من المظلل وكاشف الأقواس وكاشف الدوال والمسافة البادئة التلقائية.
+ */
+public class PythonLexer {
+    
+    // Lexer state at the start of a line
+    public static final int STATE_NORMAL = 0;
+    public static final int STATE_TRIPLE_SINGLE = 1; // inside '''...'''
+    public static final int STATE_TRIPLE_DOUBLE = 2; // inside """..."""
+    
+    // Token types
+    public static final int TOKEN_IDENTIFIER = 1;
+    public static final int TOKEN_KEYWORD = 2;
+    public static final int TOKEN_BUILTIN = 3;
+    public static final int TOKEN_STRING = 4;
+    public static final int TOKEN_COMMENT = 5;
+    public static final int TOKEN_NUMBER = 6;
+    public static final int TOKEN_FUNCTION_NAME = 7;
+    public static final int TOKEN_CLASS_NAME = 8;
+    public static final int TOKEN_OPERATOR = 9;
+    public static final int TOKEN_BRACKET_OPEN = 10;
+    public static final int TOKEN_BRACKET_CLOSE = 11;
+    public static final int TOKEN_DECORATOR = 12;
+    public static final int TOKEN_PUNCTUATION = 13; // : , ; .
+    public static final int TOKEN_NEWLINE = 14;
+    
+    // Each token occupies three consecutive ints in the stream
+    public static final int TOKEN_STRIDE = 3;
+    private static final int OFFSET_TYPE = 0;
+    private static final int OFFSET_START = 1;
+    private static final int OFFSET_LENGTH = 2;
+    
+    private static final String[] DEFAULT_KEYWORDS = {
+        "False", "None", "True", "and", "as", "assert", "async", "await",
+        "break", "class", "continue", "def", "del", "elif", "else", "except",
+        "finally", "for", "from", "global", "if", "import", "in", "is",
+        "lambda", "nonlocal", "not", "or", "pass", "raise", "return",
+        "try", "while", "with", "yield"
+    };
+    
+    private final WordTable keywords;
+    private final WordTable builtins;
+    
+    private int[] tokens = new int[TOKEN_STRIDE * 256];
+    private int tokenCount = 0;
+    private char[] buffer = new char[1024];
+    private int bufferOffset = 0; // document offset of buffer[0]
+    private int unterminatedStrings = 0;
+    
+    // Exit state of the last string scanned by scanString()
+    private int scanExitState = STATE_NORMAL;
+    
+    public PythonLexer() {
+        this(DEFAULT_KEYWORDS, null);
+    }
+    
+    public PythonLexer(String[] keywords, String[] builtins) {
+        this.keywords = new WordTable(keywords != null ? keywords : DEFAULT_KEYWORDS);
+        this.builtins = new WordTable(builtins != null ? builtins : new String[0]);
+    }
+    
+    /**
+     * تحليل النص بالكامل بدءاً من الحالة العادية
+     * @return حالة المحلل في نهاية النص
+     */
+    public int tokenize(CharSequence text) {
+        return tokenize(text, 0, text.length(), STATE_NORMAL, true);
+    }
+    
+    /**
+     * تحليل سطر واحد (دون محرف نهاية السطر) بدءاً من حالة معروفة
+     * @return حالة المحلل في نهاية السطر
+     */
+    public int tokenizeLine(CharSequence text, int start, int end, int entryState) {
+        return tokenize(text, start, end, entryState, false);
+    }
+    
+    private int tokenize(CharSequence text, int start, int end, int entryState, boolean emitNewlines) {
+        tokenCount = 0;
+        unterminatedStrings = 0;
+        loadChars(text, start, end);
+        
+        int state = entryState;
+        int lineStart = 0;
+        int length = end - start;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || buffer[i] == '\n') {
+                state = scanLine(lineStart, i, state);
+                if (emitNewlines && i < length) {
+                    addToken(TOKEN_NEWLINE, i, i + 1);
+                }
+                lineStart = i + 1;
+            }
+        }
+        return state;
+    }
+    
+    private void loadChars(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, buffer, 0);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, buffer, 0);
+        } else if (text instanceof TextDocument) {
+            ((TextDocument) text).getChars(start, end, buffer, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                buffer[i] = text.charAt(start + i);
+            }
+        }
+        bufferOffset = start;
+    }
+    
+    /**
+     * تحليل سطر داخل المخزن [start, end)
+     */
+    private int scanLine(int start, int end, int state) {
+        int i = start;
+        
+        // Continue a triple-quoted string opened on a previous line
+        if (state == STATE_TRIPLE_SINGLE || state == STATE_TRIPLE_DOUBLE) {
+            char quote = state == STATE_TRIPLE_SINGLE ? '\'' : '"';
+            int close = findTripleQuoteEnd(start, end, quote);
+            if (close < 0) {
+                addToken(TOKEN_STRING, start, end);
+                return state;
+            }
+            addToken(TOKEN_STRING, start, close);
+            i = close;
+        }
+        
+        int expectedName = 0; // TOKEN_FUNCTION_NAME / TOKEN_CLASS_NAME after def / class
+        
+        while (i < end) {
+            char c = buffer[i];
+            
+            if (c == '#') {
+                addToken(TOKEN_COMMENT, i, end);
+                break;
+            }
+            
+            if (c == '\'' || c == '"') {
+                i = scanString(i, i, end);
+                if (scanExitState != STATE_NORMAL) {
+                    return scanExitState;
+                }
+                expectedName = 0;
+                continue;
+            }
+            
+            if (isIdentifierStart(c)) {
+                int wordEnd = i + 1;
+                while (wordEnd < end && isIdentifierPart(buffer[wordEnd])) {
+                    wordEnd++;
+                }
+                
+                // String prefixes such as r'', b"", f''' ...
+                if (wordEnd < end && wordEnd - i <= 2 && isQuote(buffer[wordEnd]) && isStringPrefix(i, wordEnd)) {
+                    i = scanString(i, wordEnd, end);
+                    if (scanExitState != STATE_NORMAL) {
+                        return scanExitState;
+                    }
+                    expectedName = 0;
+                    continue;
+                }
+                
+                if (expectedName != 0) {
+                    addToken(expectedName, i, wordEnd);
+                    expectedName = 0;
+                } else if (keywords.contains(buffer, i, wordEnd)) {
+                    addToken(TOKEN_KEYWORD, i, wordEnd);
+                    if (matches(i, wordEnd, "def")) {
+                        expectedName = TOKEN_FUNCTION_NAME;
+                    } else if (matches(i, wordEnd, "class")) {
+                        expectedName = TOKEN_CLASS_NAME;
+                    }
+                } else if (builtins.contains(buffer, i, wordEnd)) {
+                    addToken(TOKEN_BUILTIN, i, wordEnd);
+                } else {
+                    addToken(TOKEN_IDENTIFIER, i, wordEnd);
+                }
+                i = wordEnd;
+                continue;
+            }
+            
+            if (c != ' ' && c != '\t') {
+                expectedName = 0;
+            }
+            
+            if (isDigit(c) || (c == '.' && i + 1 < end && isDigit(buffer[i + 1]))) {
+                int numberEnd = i + 1;
+                while (numberEnd < end && (isIdentifierPart(buffer[numberEnd]) || buffer[numberEnd] == '.')) {
+                    numberEnd++;
+                }
+                addToken(TOKEN_NUMBER, i, numberEnd);
+                i = numberEnd;
+                continue;
+            }
+            
+            if (c == '@' && i + 1 < end && isIdentifierStart(buffer[i + 1])) {
+                int decoratorEnd = i + 1;
+                while (decoratorEnd < end && (isIdentifierPart(buffer[decoratorEnd]) || buffer[decoratorEnd] == '.')) {
+                    decoratorEnd++;
+                }
+                addToken(TOKEN_DECORATOR, i, decoratorEnd);
+                i = decoratorEnd;
+                continue;
+            }
+            
+            if (c == '(' || c == '[' || c == '{') {
+                addToken(TOKEN_BRACKET_OPEN, i, i + 1);
+                i++;
+                continue;
+            }
+            
+            if (c == ')' || c == ']' || c == '}') {
+                addToken(TOKEN_BRACKET_CLOSE, i, i + 1);
+                i++;
+                continue;
+            }
+            
+            if (isOperator(c)) {
+                int operatorEnd = i + 1;
+                while (operatorEnd < end && isOperator(buffer[operatorEnd])) {
+                    operatorEnd++;
+                }
+                addToken(TOKEN_OPERATOR, i, operatorEnd);
+                i = operatorEnd;
+                continue;
+            }
+            
+            if (c == ':' || c == ',' || c == ';' || c == '.') {
+                addToken(TOKEN_PUNCTUATION, i, i + 1);
+            }
+            i++;
+        }
+        
+        return STATE_NORMAL;
+    }
+    
+    /**
+     * تحليل نص يبدأ عند quotePos (قد يسبقه prefix يبدأ عند tokenStart)
+     * @return الموضع بعد نهاية النص داخل السطر، ويضبط scanExitState إذا بقي نص ثلاثي مفتوحاً
+     */
+    private int scanString(int tokenStart, int quotePos, int end) {
+        char quote = buffer[quotePos];
+        scanExitState = STATE_NORMAL;
+        
+        if (quotePos + 2 < end && buffer[quotePos + 1] == quote && buffer[quotePos + 2] == quote) {
+            int close = findTripleQuoteEnd(quotePos + 3, end, quote);
+            if (close < 0) {
+                addToken(TOKEN_STRING, tokenStart, end);
+                scanExitState = quote == '\'' ? STATE_TRIPLE_SINGLE : STATE_TRIPLE_DOUBLE;
+                return end;
+            }
+            addToken(TOKEN_STRING, tokenStart, close);
+            return close;
+        }
+        
+        int i = quotePos + 1;
+        boolean terminated = false;
+        while (i < end) {
+            char c = buffer[i];
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            i++;
+            if (c == quote) {
+                terminated = true;
+                break;
+            }
+        }
+        if (!terminated) {
+            unterminatedStrings++;
+        }
+        i = Math.min(i, end);
+        addToken(TOKEN_STRING, tokenStart, i);
+        return i;
+    }
+    
+    private int findTripleQuoteEnd(int from, int end, char quote) {
+        for (int i = from; i + 2 < end; i++) {
+            char c = buffer[i];
+            if (c == '\\') {
+                i++;
+                continue;
+            }
+            if (c == quote && buffer[i + 1] == quote && buffer[i + 2] == quote) {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+    
+    private void addToken(int type, int start, int end) {
+        if (start >= end) return;
+        
+        int index = tokenCount * TOKEN_STRIDE;
+        if (index + TOKEN_STRIDE > tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        tokens[index + OFFSET_TYPE] = type;
+        tokens[index + OFFSET_START] = bufferOffset + start;
+        tokens[index + OFFSET_LENGTH] = end - start;
+        tokenCount++;
+    }
+    
+    // Token stream accessors
+    public int getTokenCount() {
+        return tokenCount;
+    }
+    
+    /**
+     * التدفق الخام: لكل رمز ثلاث قيم متتالية (النوع، البداية، الطول)
+     * المصفوفة يُعاد استخدامها في التحليل التالي
+     */
+    public int[] getTokens() {
+        return tokens;
+    }
+    
+    public int getTokenType(int index) {
+        return tokens[index * TOKEN_STRIDE + OFFSET_TYPE];
+    }
+    
+    public int getTokenStart(int index) {
+        return tokens[index * TOKEN_STRIDE + OFFSET_START];
+    }
+    
+    public int getTokenLength(int index) {
+        return tokens[index * TOKEN_STRIDE + OFFSET_LENGTH];
+    }
+    
+    public int getTokenEnd(int index) {
+        return getTokenStart(index) + getTokenLength(index);
+    }
+    
+    /**
+     * الحرف الأول من الرمز (مفيد للأقواس وعلامات الترقيم)
+     */
+    public char getTokenChar(int index) {
+        return buffer[getTokenStart(index) - bufferOffset];
+    }
+    
+    /**
+     * مقارنة نص الرمز بكلمة دون إنشاء String
+     */
+    public boolean tokenEquals(int index, String word) {
+        int start = getTokenStart(index) - bufferOffset;
+        return matches(start, start + getTokenLength(index), word);
+    }
+    
+    /**
+     * البحث الثنائي عن أول رمز يبدأ عند offset أو بعده
+     * @return فهرس الرمز، أو getTokenCount() إذا لم يوجد
+     */
+    public int findFirstTokenAtOrAfter(int offset) {
+        int low = 0;
+        int high = tokenCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTokenStart(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * عدد النصوص أحادية السطر غير المغلقة في آخر تحليل
+     */
+    public int getUnterminatedStringCount() {
+        return unterminatedStrings;
+    }
+    
+    // Helper methods
+    private boolean matches(int start, int end, String word) {
+        if (end - start != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (buffer[start + i] != word.charAt(i)) return false;
+        }
+        return true;
+    }
+    
+    private boolean isStringPrefix(int start, int end) {
+        for (int i = start; i < end; i++) {
+            switch (buffer[i]) {
+                case 'r': case 'R': case 'b': case 'B':
+                case 'f': case 'F': case 'u': case 'U':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+            || (c > 0x7f && Character.isLetter(c));
+    }
+    
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c) || (c > 0x7f && Character.isLetterOrDigit(c));
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static boolean isQuote(char c) {
+        return c == '\'' || c == '"';
+    }
+    
+    private static boolean isOperator(char c) {
+        switch (c) {
+            case '+': case '-': case '*': case '/': case '%':
+            case '=': case '<': case '>': case '!':
+            case '&': case '|': case '^': case '~':
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * جدول كلمات بعنونة مفتوحة يُستعلم عنه بمقطع من مصفوفة أحرف دون إنشاء String
+     */
+    private static class WordTable {
+        private final char[][] slots;
+        private final int mask;
+        
+        WordTable(String[] words) {
+            int capacity = Integer.highestOneBit(Math.max(4, words.length * 2) - 1) << 1;
+            slots = new char[capacity][];
+            mask = capacity - 1;
+            for (String word : words) {
+                char[] chars = word.toCharArray();
+                int slot = hash(chars, 0, chars.length) & mask;
+                while (slots[slot] != null && !Arrays.equals(slots[slot], chars)) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = chars;
+            }
+        }
+        
+        boolean contains(char[] text, int start, int end) {
+            int slot = hash(text, start, end) & mask;
+            char[] candidate;
+            while ((candidate = slots[slot]) != null) {
+                if (regionEquals(candidate, text, start, end)) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+        
+        private static int hash(char[] text, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + text[i];
+            }
+            return h ^ (h >>> 16);
+        }
+        
+        private static boolean regionEquals(char[] word, char[] text, int start, int end) {
+            if (word.length != end - start) return false;
+            for (int i = 0; i < word.length; i++) {
+                if (word[i] != text[start + i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -41,6 +41,8 @@ public class SearchReplaceDialog extends Dialog {
     private LinearLayout replaceLayout;
     
     private boolean isReplaceMode = false;
+    // Set by performSearch(); the "no results" message waits for the scan to finish
+    private boolean awaitingResults = false;
     
     public SearchReplaceDialog(@NonNull Context context, SearchReplaceManager searchManager) {
         super(context);
@@ -84,6 +86,17 @@ public class SearchReplaceDialog extends Dialog {
     }
     
     private void setupListeners() {
+        // Results arrive as the search narrows, completes in the background or follows edits
+        searchManager.setSearchListener((count, complete) -> {
+            updateResultCount();
+            if (complete && awaitingResults) {
+                awaitingResults = false;
+                if (count == 0) {
+                    showNoResultsMessage();
+                }
+            }
+        });
+        
         // Search text listeners
         searchEditText.setOnEditorActionListener((textView, actionId, event) -> {
             if (actionId == EditorInfo.IME_ACTION_SEARCH) {
@@ -231,23 +244,16 @@ public class SearchReplaceDialog extends Dialog {
             return;
         }
         
-        // Perform search
-        SearchReplaceManager.SearchResult[] results = searchManager.search(
+        // Perform search; the count is updated by the search listener
+        awaitingResults = true;
+        searchManager.search(
             query,
             caseSensitiveCheckBox.isChecked(),
             useRegexCheckBox.isChecked(),
             wholeWordsCheckBox.isChecked()
-        ).toArray(new SearchReplaceManager.SearchResult[0]);
+        );
         
-        updateResultCount();
         updateButtonStates();
-        
-        if (results.length == 0) {
-            showNoResultsMessage();
-        } else {
-            // Focus back on editor
-            searchEditText.clearFocus();
-        }
     }
     
     private void updateResultCount() {
@@ -257,6 +263,9 @@ public class SearchReplaceDialog extends Dialog {
         if (count > 0) {
             resultCountTextView.setText("النتائج: " + (currentIndex + 1) + " من " + count);
             resultCountTextView.setVisibility(View.VISIBLE);
+        } else if (!searchManager.isSearchComplete()) {
+            resultCountTextView.setText("جارٍ البحث...");
+            resultCountTextView.setVisibility(View.VISIBLE);
         } else {
             resultCountTextView.setVisibility(View.GONE);
         }
@@ -303,6 +312,7 @@ public class SearchReplaceDialog extends Dialog {
         super.dismiss();
         // Clear search highlights when dialog is closed
         if (searchManager != null) {
+            searchManager.setSearchListener(null);
             searchManager.clearSearch();
         }
     }
@@ -2,6 +2,8 @@ package com.pythonide.editor;
 
 import android.content.Context;
 import android.content.Intent;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.inputmethod.EditorInfo;
 import android.widget.EditText;
@@ -11,6 +13,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * معالج البحث والاستبدال (Search & Replace Manager)
@@ -22,22 +25,53 @@ public class SearchReplaceManager {
     private CodeEditText codeEditText;
     
     private String lastSearchQuery = "";
-    private int lastSearchPosition = 0;
-    private boolean isSearching = false;
     private boolean searchCaseSensitive = false;
     private boolean searchUseRegex = false;
     private boolean searchWholeWords = false;
     
-    private List<SearchResult> searchResults = new ArrayList<>();
+    // Match set kept current across query changes and edits instead of rescanning
+    private final LiveSearch liveSearch;
     private int currentResultIndex = -1;
+    // Jump to the first match once the results of a new query arrive
+    private boolean selectFirstResult = false;
+    private SearchListener searchListener;
+    
+    public interface SearchListener {
+        void onSearchResultsChanged(int count, boolean complete);
+    }
     
     public SearchReplaceManager(Context context, CodeEditText codeEditText) {
         this.context = context;
         this.codeEditText = codeEditText;
+        
+        liveSearch = new LiveSearch(codeEditText.getDocument());
+        liveSearch.setMatchListener(search -> onMatchesChanged());
+        setupTextWatcher();
+    }
+    
+    private void setupTextWatcher() {
+        // Registered after CodeEditText's own watcher, so the document already holds the edit
+        codeEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+            
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                liveSearch.onTextChanged(start, before, count);
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {}
+        });
+    }
+    
+    public void setSearchListener(SearchListener listener) {
+        this.searchListener = listener;
     }
     
     /**
      * البحث عن نص في الكود
+     * إطالة الاستعلام السابق تُرشّح النتائج فوراً؛ غير ذلك يُمسح في الخلفية وتصل النتائج عبر SearchListener
      */
     public List<SearchResult> search(String query, boolean caseSensitive, boolean useRegex, boolean wholeWords) {
         if (query == null || query.isEmpty()) {
@@ -50,74 +84,58 @@ public class SearchReplaceManager {
         this.searchUseRegex = useRegex;
         this.searchWholeWords = wholeWords;
         
-        searchResults.clear();
         currentResultIndex = -1;
-        
-        String text = codeEditText.getText().toString();
-        
-        try {
-            Pattern pattern = createSearchPattern(query, caseSensitive, useRegex, wholeWords);
-            Matcher matcher = pattern.matcher(text);
-            
-            while (matcher.find()) {
-                SearchResult result = new SearchResult(
-                    matcher.start(),
-                    matcher.end(),
-                    matcher.group(),
-                    matcher.group(0) // full match
-                );
-                searchResults.add(result);
-            }
-            
-            Log.d("SearchReplaceManager", "Found " + searchResults.size() + " matches for: " + query);
-            
-            // Highlight first result if found
-            if (!searchResults.isEmpty()) {
-                highlightResult(0);
-            }
-            
-            return searchResults;
-            
-        } catch (Exception e) {
-            Log.e("SearchReplaceManager", "Error during search", e);
+        selectFirstResult = true;
+        if (!liveSearch.setQuery(query, caseSensitive, useRegex, wholeWords)) {
             return new ArrayList<>();
         }
+        return getResults();
     }
     
-    /**
-     * إنشاء pattern للبحث
-     */
-    private Pattern createSearchPattern(String query, boolean caseSensitive, boolean useRegex, boolean wholeWords) {
-        String patternString;
-        
-        if (useRegex) {
-            patternString = query;
-        } else {
-            // Escape special regex characters if not using regex
-            patternString = Pattern.quote(query);
-            
-            if (wholeWords) {
-                patternString = "\\b" + patternString + "\\b";
-            }
+    private void onMatchesChanged() {
+        int count = liveSearch.getMatchCount();
+        if (currentResultIndex >= count) {
+            currentResultIndex = count - 1;
         }
         
-        int flags = Pattern.MULTILINE;
-        if (!caseSensitive) {
-            flags |= Pattern.CASE_INSENSITIVE;
+        if (selectFirstResult && count > 0) {
+            selectFirstResult = false;
+            currentResultIndex = 0;
+            highlightResult(0);
+        } else if (liveSearch.isComplete()) {
+            selectFirstResult = false;
         }
         
-        return Pattern.compile(patternString, flags);
+        if (searchListener != null) {
+            searchListener.onSearchResultsChanged(count, liveSearch.isComplete());
+        }
+    }
+    
+    /**
+     * النتائج الحالية ككائنات (تُنشأ عند الطلب فقط)
+     */
+    public List<SearchResult> getResults() {
+        TextDocument text = codeEditText.getDocument();
+        int count = liveSearch.getMatchCount();
+        List<SearchResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int start = liveSearch.getMatchStart(i);
+            int end = liveSearch.getMatchEnd(i);
+            String matched = text.getText(start, end);
+            results.add(new SearchResult(start, end, matched, matched));
+        }
+        return results;
     }
     
     /**
      * الانتقال إلى النتيجة التالية
      */
     public boolean goToNext() {
-        if (searchResults.isEmpty()) {
+        if (liveSearch.getMatchCount() == 0) {
             return false;
         }
         
-        currentResultIndex = (currentResultIndex + 1) % searchResults.size();
+        currentResultIndex = (currentResultIndex + 1) % liveSearch.getMatchCount();
         highlightResult(currentResultIndex);
         
         return true;
@@ -127,12 +145,12 @@ public class SearchReplaceManager {
      * الانتقال إلى النتيجة السابقة
      */
     public boolean goToPrevious() {
-        if (searchResults.isEmpty()) {
+        if (liveSearch.getMatchCount() == 0) {
             return false;
         }
         
         currentResultIndex = currentResultIndex <= 0 ? 
-            searchResults.size() - 1 : currentResultIndex - 1;
+            liveSearch.getMatchCount() - 1 : currentResultIndex - 1;
         highlightResult(currentResultIndex);
         
         return true;
@@ -142,62 +160,89 @@ public class SearchReplaceManager {
      * تظليل نتيجة معينة
      */
     private void highlightResult(int index) {
-        if (index < 0 || index >= searchResults.size()) {
+        if (index < 0 || index >= liveSearch.getMatchCount()) {
             clearSearchHighlights();
             return;
         }
         
-        SearchResult result = searchResults.get(index);
-        codeEditText.setSelection(result.start, result.end);
+        int start = liveSearch.getMatchStart(index);
+        int end = liveSearch.getMatchEnd(index);
+        codeEditText.setSelection(start, end);
         
         // Scroll to the selected result
         codeEditText.requestFocus();
         codeEditText.post(() -> {
             // Scroll to the selection
-            int line = codeEditText.getLayout().getLineForOffset(result.start);
+            int line = codeEditText.getLayout().getLineForOffset(start);
             codeEditText.requestFocusFromTouch();
-            codeEditText.setSelection(result.start);
+            codeEditText.setSelection(start);
         });
         
-        Log.d("SearchReplaceManager", "Highlighted result " + (index + 1) + " of " + searchResults.size());
+        Log.d("SearchReplaceManager", "Highlighted result " + (index + 1) + " of " + liveSearch.getMatchCount());
     }
     
     /**
      * الاستبدال في النتيجة الحالية
      */
     public boolean replaceCurrent(String replacement) {
-        if (currentResultIndex < 0 || currentResultIndex >= searchResults.size()) {
+        if (currentResultIndex < 0 || currentResultIndex >= liveSearch.getMatchCount()) {
             return false;
         }
         
-        SearchResult result = searchResults.get(currentResultIndex);
-        return replaceAt(result.start, result.end, replacement);
+        // The text watcher updates the match set around the replaced range
+        return replaceAt(liveSearch.getMatchStart(currentResultIndex), liveSearch.getMatchEnd(currentResultIndex),
+            replacement);
     }
     
     /**
      * الاستبدال في جميع النتائج
+     * يُبنى النص الجديد في مرور واحد ثم يُطبق كتعديل واحد: خطوة تراجع واحدة وإعادة تظليل واحدة
      */
     public int replaceAll(String query, String replacement, boolean caseSensitive, boolean useRegex) {
-        List<SearchResult> results = search(query, caseSensitive, useRegex, false);
+        if (query == null || query.isEmpty()) {
+            return 0;
+        }
         
-        if (results.isEmpty()) {
+        Pattern pattern;
+        try {
+            pattern = LiveSearch.createPattern(query, caseSensitive, useRegex, false);
+        } catch (PatternSyntaxException e) {
+            Log.e("SearchReplaceManager", "Invalid search pattern", e);
             return 0;
         }
         
+        // Copy the text between matches and the replacements into one buffer covering first to last match
+        TextDocument text = codeEditText.getDocument().snapshot();
+        Matcher matcher = pattern.matcher(text);
+        StringBuilder replaced = null;
+        int firstStart = 0;
+        int copiedTo = 0;
         int replaceCount = 0;
-        Editable text = codeEditText.getText();
-        int offset = 0; // Track position changes due to replacements
-        
-        // Replace from end to start to maintain positions
-        for (int i = results.size() - 1; i >= 0; i--) {
-            SearchResult result = results.get(i);
-            int adjustedStart = result.start + offset;
-            int adjustedEnd = result.end + offset;
-            
-            if (replaceAt(adjustedStart, adjustedEnd, replacement)) {
-                replaceCount++;
-                offset += replacement.length() - (result.end - result.start);
+        while (matcher.find()) {
+            if (replaced == null) {
+                replaced = new StringBuilder(text.length() - matcher.start());
+                firstStart = matcher.start();
+                copiedTo = firstStart;
             }
+            replaced.append(text, copiedTo, matcher.start()).append(replacement);
+            copiedTo = matcher.end();
+            replaceCount++;
+        }
+        
+        if (replaceCount == 0) {
+            return 0;
+        }
+        
+        // A single replace runs every TextWatcher once; keep it out of any typing batch in the undo history
+        UndoRedoManager undoRedoManager = codeEditText.getUndoRedoManager();
+        if (undoRedoManager != null) {
+            undoRedoManager.breakCoalescing();
+        }
+        if (!replaceAt(firstStart, copiedTo, replaced)) {
+            return 0;
+        }
+        if (undoRedoManager != null) {
+            undoRedoManager.breakCoalescing();
         }
         
         Log.d("SearchReplaceManager", "Replaced " + replaceCount + " occurrences");
@@ -211,7 +256,7 @@ public class SearchReplaceManager {
     /**
      * تنفيذ الاستبدال في موقع محدد
      */
-    private boolean replaceAt(int start, int end, String replacement) {
+    private boolean replaceAt(int start, int end, CharSequence replacement) {
         try {
             Editable text = codeEditText.getText();
             text.replace(start, end, replacement);
@@ -226,8 +271,9 @@ public class SearchReplaceManager {
      * مسح البحث والتظليل
      */
     public void clearSearch() {
-        searchResults.clear();
+        liveSearch.clear();
         currentResultIndex = -1;
+        selectFirstResult = false;
         clearSearchHighlights();
         
         Log.d("SearchReplaceManager", "Search cleared");
@@ -246,7 +292,14 @@ public class SearchReplaceManager {
      * الحصول على عدد النتائج
      */
     public int getResultCount() {
-        return searchResults.size();
+        return liveSearch.getMatchCount();
+    }
+    
+    /**
+     * هل اكتمل البحث (عدد النتائج نهائي)
+     */
+    public boolean isSearchComplete() {
+        return liveSearch.isComplete();
     }
     
     /**
@@ -260,7 +313,7 @@ public class SearchReplaceManager {
      * الانتقال إلى نتيجة محددة
      */
     public boolean goToResult(int index) {
-        if (index < 0 || index >= searchResults.size()) {
+        if (index < 0 || index >= liveSearch.getMatchCount()) {
             return false;
         }
         
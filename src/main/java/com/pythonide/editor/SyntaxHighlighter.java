@@ -1,31 +1,26 @@
 package com.pythonide.editor;
 
 import android.graphics.Color;
-import android.text.Spannable;
-import android.text.SpannableString;
+import android.graphics.Typeface;
+import android.text.Editable;
 import android.text.Spanned;
 import android.text.style.BackgroundColorSpan;
 import android.text.style.ForegroundColorSpan;
 import android.text.style.StyleSpan;
-import android.text.style.TypefaceSpan;
 import android.util.Log;
 
-import androidx.core.content.ContextCompat;
-
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * معالج تظليل الكود (Syntax Highlighter) للغة Python
- * يوفر تظليلاً متقدماً للكود مع دعم جميع عناصر Python
+ * يعمل بشكل تزايدي: يحتفظ بحالة المحلل في بداية كل سطر (مثل وجود نص ثلاثي الاقتباس مفتوح)
+ * ويعيد تحليل الأسطر التي لمسها التعديل فقط عبر PythonLexer، ثم يحدّث الـ spans مباشرة على الـ Editable دون setText()
+ * في وضع منفذ العرض (viewport) لا تحمل spans إلا الأسطر المرئية مع هامش تمرير، وتُعاد spans الأسطر
+ * الخارجة من العرض إلى مجمّع لإعادة استخدامها، فيبقى عدد الـ spans ثابتاً مهما كبر حجم الملف
  */
 public class SyntaxHighlighter {
     
     private CodeEditText codeEditText;
-    private String[] keywords;
-    private String[] builtins;
     
     // Color constants
     private static final int KEYWORD_COLOR = Color.rgb(159, 68, 245); // Purple
@@ -41,385 +36,508 @@ public class SyntaxHighlighter {
     private static final int ERROR_COLOR = Color.rgb(244, 67, 54);    // Red
     private static final int HOVER_COLOR = Color.rgb(96, 125, 139);   // Blue Gray
     
-    // Pattern definitions
-    private static final Pattern KEYWORD_PATTERN = Pattern.compile(
-        "\\b(False|None|True|and|as|assert|async|await|break|class|continue|def|del|elif|else|except|finally|for|from|global|if|import|in|is|lambda|nonlocal|not|or|pass|raise|return|try|while|with|yield)\\b"
-    );
+    // Lexer state at the start of a line; the other states come from PythonLexer
+    private static final int STATE_UNKNOWN = -1;
+    private static final int STATE_NORMAL = PythonLexer.STATE_NORMAL;
     
-    private static final Pattern BUILTIN_PATTERN = Pattern.compile(
-        "\\b(abs|all|any|bin|bool|bytearray|bytes|chr|classmethod|compile|complex|delattr|dict|dir|divmod|enumerate|eval|exec|filter|float|format|frozenset|getattr|globals|hasattr|hash|help|hex|id|input|int|isinstance|issubclass|iter|len|list|locals|map|max|memoryview|min|next|object|oct|open|ord|pow|print|property|range|repr|reversed|round|set|setattr|slice|sorted|staticmethod|str|super|tuple|type|vars|zip)\\b"
-    );
+    private final PythonLexer lexer;
     
-    private static final Pattern STRING_PATTERN = Pattern.compile(
-        "('''[\\s\\S]*?'''|\"\"\"[\\s\\S]*?\"\"\"|'[^'\\\\]*(?:\\\\.[^'\\\\]*)*'|\"[^\"\\\\]*(?:\\\\.[^\"\\\\]*)*\")"
-    );
+    // Line index: start offset of each line and the lexer state on entry to it.
+    // lineStates[lineCount] holds the exit state of the last line.
+    private int[] lineStarts = new int[64];
+    private int[] lineStates = new int[65];
+    private int lineCount = 1;
+    private boolean lineIndexValid = false;
     
-    private static final Pattern COMMENT_PATTERN = Pattern.compile(
-        "#[^\\n]*"
-    );
+    // Damaged line range waiting to be re-lexed (inclusive), -1 when clean
+    private int damageStartLine = -1;
+    private int damageEndLine = -1;
     
-    private static final Pattern NUMBER_PATTERN = Pattern.compile(
-        "\\b\\d+\\.?\\d*[fF]?\\b"
-    );
+    // Viewport: only lines in the target window carry spans
+    private static final int VIEWPORT_MARGIN_LINES = 50;
+    private static final int MAX_POOLED_SPANS = 2048;
+    private boolean viewportMode = true;
+    private int targetFirstLine = 0;
+    private int targetLastLine = 2 * VIEWPORT_MARGIN_LINES;
+    // Lines that currently carry spans (inclusive), -1 when none; moves with the content on edits
+    private int spannedFirstLine = -1;
+    private int spannedLastLine = -1;
     
-    private static final Pattern FUNCTION_PATTERN = Pattern.compile(
-        "\\b(def)\\s+(\\w+)\\s*\\("
-    );
+    private final SpanPool spanPool = new SpanPool();
     
-    private static final Pattern CLASS_PATTERN = Pattern.compile(
-        "\\b(class)\\s+(\\w+)\\s*(\\(|:)"
-    );
+    // Fed with the brackets of every re-lexed line, so it stays in sync without a full scan
+    private BracketIndex bracketIndex;
     
-    private static final Pattern OPERATOR_PATTERN = Pattern.compile(
-        "(\\+|\\-|\\*|/|%|==|!=|<=|>=|<|>|=|\\|\\||&&|\\|\\||\\+=|\\-=|\\*=|/=)"
-    );
+    // When set, state changes are only propagated through the window on edits; the background
+    // analysis supplies the remaining line states through applyLineStates()
+    private boolean backgroundPropagation = false;
     
-    private static final Pattern BRACKET_PATTERN = Pattern.compile(
-        "([\\(\\{\\[\\]\\}])"
-    );
+    private BackgroundColorSpan openBracketMatchSpan;
+    private BackgroundColorSpan closeBracketMatchSpan;
     
-    private static final Pattern DECORATOR_PATTERN = Pattern.compile(
-        "@[\\w\\.]+"
-    );
+    public SyntaxHighlighter(CodeEditText codeEditText, String[] keywords, String[] builtins) {
+        this.codeEditText = codeEditText;
+        this.lexer = new PythonLexer(keywords, builtins);
+    }
     
-    private static final Pattern TRIPLE_QUOTE_PATTERN = Pattern.compile(
-        "('''[\\s\\S]*?'''|\"\"\"[\\s\\S]*?\"\"\")"
-    );
+    /**
+     * تسجيل تعديل على النص (يُستدعى من onTextChanged)
+     * يحدّث فهرس الأسطر ويعلّم الأسطر المتأثرة كتالفة دون تحليلها بعد
+     */
+    public void onTextChanged(CharSequence text, int start, int before, int count) {
+        if (!lineIndexValid) {
+            rebuildLineIndex(text);
+            return;
+        }
+        
+        if (bracketIndex != null) {
+            bracketIndex.onTextChanged(start, before, count);
+        }
+        
+        int line = getLineForOffset(start);
+        
+        // Lines whose start falls inside the removed range disappear
+        int removedEnd = start + before;
+        int lastRemovedLine = line;
+        while (lastRemovedLine + 1 < lineCount && lineStarts[lastRemovedLine + 1] <= removedEnd) {
+            lastRemovedLine++;
+        }
+        int removedLines = lastRemovedLine - line;
+        
+        int insertedLines = 0;
+        for (int i = start; i < start + count; i++) {
+            if (text.charAt(i) == '\n') {
+                insertedLines++;
+            }
+        }
+        
+        int newLineCount = lineCount - removedLines + insertedLines;
+        ensureLineCapacity(newLineCount + 1);
+        
+        // Move the untouched tail of the index and shift its offsets
+        int tailFrom = lastRemovedLine + 1;
+        int tailTo = line + 1 + insertedLines;
+        int tailLength = lineCount - tailFrom;
+        System.arraycopy(lineStarts, tailFrom, lineStarts, tailTo, tailLength);
+        System.arraycopy(lineStates, tailFrom, lineStates, tailTo, tailLength + 1);
+        int delta = count - before;
+        for (int i = tailTo; i < newLineCount; i++) {
+            lineStarts[i] += delta;
+        }
+        
+        // Record the lines created by the inserted text
+        int newLine = line + 1;
+        for (int i = start; i < start + count; i++) {
+            if (text.charAt(i) == '\n') {
+                lineStarts[newLine] = i + 1;
+                lineStates[newLine] = STATE_UNKNOWN;
+                newLine++;
+            }
+        }
+        lineCount = newLineCount;
+        
+        // Keep the pending damage range and the spanned lines attached to their content
+        int shift = insertedLines - removedLines;
+        if (damageStartLine >= 0) {
+            damageStartLine = shiftRangeStart(damageStartLine, line, lastRemovedLine, shift);
+            damageEndLine = shiftRangeEnd(damageEndLine, line, lastRemovedLine, insertedLines, shift);
+        }
+        if (spannedFirstLine >= 0) {
+            spannedFirstLine = shiftRangeStart(spannedFirstLine, line, lastRemovedLine, shift);
+            spannedLastLine = shiftRangeEnd(spannedLastLine, line, lastRemovedLine, insertedLines, shift);
+        }
+        
+        // The visible window only follows edits made above it
+        if (lastRemovedLine < targetFirstLine) {
+            targetFirstLine += shift;
+            targetLastLine += shift;
+        }
+        markDamaged(line, line + insertedLines);
+    }
     
-    private Map<String, Integer> keywordSpans = new HashMap<>();
-    private Map<String, Integer> functionSpans = new HashMap<>();
-    private Map<String, Integer> bracketSpans = new HashMap<>();
+    private static int shiftRangeStart(int value, int editLine, int lastRemovedLine, int shift) {
+        if (value > lastRemovedLine) {
+            return value + shift;
+        }
+        return value > editLine ? editLine : value;
+    }
     
-    public SyntaxHighlighter(CodeEditText codeEditText, String[] keywords, String[] builtins) {
-        this.codeEditText = codeEditText;
-        this.keywords = keywords != null ? keywords : new String[0];
-        this.builtins = builtins != null ? builtins : new String[0];
+    private static int shiftRangeEnd(int value, int editLine, int lastRemovedLine, int insertedLines, int shift) {
+        if (value > lastRemovedLine) {
+            return value + shift;
+        }
+        return value > editLine ? editLine + insertedLines : value;
     }
     
     /**
-     * تحديث التظليل للكود
+     * تحديث التظليل للأسطر المتأثرة بالتعديلات الأخيرة
      */
     public void updateHighlighting() {
         if (codeEditText == null) return;
         
-        CharSequence text = codeEditText.getText();
-        if (text == null || text.length() == 0) return;
+        Editable text = codeEditText.getText();
+        if (text == null) return;
         
         try {
-            applySyntaxHighlighting(text);
+            if (!lineIndexValid) {
+                rebuildLineIndex(text);
+            }
+            if (damageStartLine >= 0) {
+                rehighlightDamagedLines(text);
+            }
+            reconcileViewport(text);
         } catch (Exception e) {
             Log.e("SyntaxHighlighter", "Error updating highlighting", e);
+            lineIndexValid = false;
         }
     }
     
     /**
-     * تطبيق تظليل الكود
+     * تحديث نطاق النص المرئي (إزاحات الحرف الأول والأخير الظاهرين)
+     * يُستدعى من CodeEditText عند التمرير أو تغيير الحجم
      */
-    private void applySyntaxHighlighting(CharSequence text) {
-        SpannableString spannableString = new SpannableString(text);
+    public void setVisibleRange(int firstVisibleOffset, int lastVisibleOffset) {
+        if (!lineIndexValid) return;
         
-        // Reset previous spans
-        resetSpans(spannableString);
+        targetFirstLine = getLineForOffset(firstVisibleOffset) - VIEWPORT_MARGIN_LINES;
+        targetLastLine = getLineForOffset(lastVisibleOffset) + VIEWPORT_MARGIN_LINES;
         
-        // Apply highlighting in order of priority
-        highlightStrings(spannableString);
-        highlightComments(spannableString);
-        highlightNumbers(spannableString);
-        highlightDecorators(spannableString);
-        highlightFunctions(spannableString);
-        highlightClasses(spannableString);
-        highlightKeywords(spannableString);
-        highlightBuiltins(spannableString);
-        highlightOperators(spannableString);
-        highlightBrackets(spannableString);
-        
-        // Set the highlighted text
-        codeEditText.setText(spannableString);
-        
-        // Restore cursor position
-        codeEditText.setSelection(codeEditText.getSelectionStart());
+        // Pending damage is handled by the next updateHighlighting() call
+        if (damageStartLine < 0 && codeEditText != null && codeEditText.getText() != null) {
+            reconcileViewport(codeEditText.getText());
+        }
     }
     
-    private void resetSpans(Spannable spannableString) {
-        // Remove all existing spans
-        Object[] spans = spannableString.getSpans(0, spannableString.length(), Object.class);
-        for (Object span : spans) {
-            spannableString.removeSpan(span);
+    /**
+     * تفعيل أو تعطيل وضع منفذ العرض (عند التعطيل تحمل جميع الأسطر spans)
+     */
+    public void setViewportMode(boolean enabled) {
+        if (viewportMode == enabled) return;
+        viewportMode = enabled;
+        if (lineIndexValid && damageStartLine < 0 && codeEditText != null && codeEditText.getText() != null) {
+            reconcileViewport(codeEditText.getText());
         }
-        
-        keywordSpans.clear();
-        functionSpans.clear();
-        bracketSpans.clear();
     }
     
-    private void highlightStrings(SpannableString spannableString) {
-        Matcher matcher = STRING_PATTERN.matcher(spannableString);
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
+    public boolean isViewportMode() {
+        return viewportMode;
+    }
+    
+    /**
+     * ترك انتشار حالة المحلل خارج نافذة العرض للتحليل في الخلفية
+     */
+    public void setBackgroundPropagation(boolean enabled) {
+        this.backgroundPropagation = enabled;
+    }
+    
+    /**
+     * تطبيق حالات بداية الأسطر المحسوبة في الخلفية من لقطة مطابقة للنص الحالي
+     * تُعاد تظليل الأسطر الحاملة للـ spans التي تغيّرت حالتها فقط
+     */
+    public void applyLineStates(int[] states, int stateLineCount) {
+        if (!lineIndexValid || damageStartLine >= 0 || stateLineCount != lineCount || codeEditText == null) return;
+        
+        Editable text = codeEditText.getText();
+        if (text == null) return;
+        
+        int changed = 0;
+        for (int line = 0; line <= lineCount; line++) {
+            if (lineStates[line] == states[line]) continue;
             
-            // Check if this string is not already highlighted
-            if (!isSpanOverlap(start, end, stringSpans())) {
-                spannableString.setSpan(
-                    new ForegroundColorSpan(STRING_COLOR),
-                    start, end,
-                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-                );
+            lineStates[line] = states[line];
+            changed++;
+            if (line < lineCount && isSpanned(line)) {
+                highlightLine(text, line, states[line]);
             }
         }
+        if (changed > 0) {
+            Log.d("SyntaxHighlighter", "Background analysis corrected " + changed + " line states");
+        }
     }
     
-    private void highlightComments(SpannableString spannableString) {
-        Matcher matcher = COMMENT_PATTERN.matcher(spannableString);
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
-            
-            if (!isSpanOverlap(start, end, commentSpans())) {
-                spannableString.setSpan(
-                    new ForegroundColorSpan(COMMENT_COLOR),
-                    start, end,
-                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-                );
+    /**
+     * حالة المحلل في بداية السطر الذي يحتوي الموضع
+     */
+    public int getLineEntryState(int offset) {
+        if (!lineIndexValid) return STATE_NORMAL;
+        int state = lineStates[getLineForOffset(offset)];
+        return state == STATE_UNKNOWN ? STATE_NORMAL : state;
+    }
+    
+    /**
+     * ربط فهرس الأقواس بالتحليل التزايدي؛ يُعاد بناؤه بالكامل عند التحديث التالي
+     */
+    public void setBracketIndex(BracketIndex index) {
+        this.bracketIndex = index;
+        lineIndexValid = false;
+    }
+    
+    /**
+     * إعادة تظليل المستند بالكامل (مثلاً بعد تغيير الكلمات المفتاحية أو السمة)
+     */
+    public void invalidateAll() {
+        lineIndexValid = false;
+        updateHighlighting();
+    }
+    
+    private void rebuildLineIndex(CharSequence text) {
+        // Drop every token span in one sweep; the viewport is re-applied afterwards
+        if (text instanceof Editable) {
+            Editable editable = (Editable) text;
+            for (TokenColorSpan span : editable.getSpans(0, editable.length(), TokenColorSpan.class)) {
+                editable.removeSpan(span);
+                spanPool.recycle(span);
+            }
+            for (TokenStyleSpan span : editable.getSpans(0, editable.length(), TokenStyleSpan.class)) {
+                editable.removeSpan(span);
+                spanPool.recycle(span);
             }
         }
+        spannedFirstLine = -1;
+        spannedLastLine = -1;
+        
+        // Every line is re-lexed next, which refills the bracket index
+        if (bracketIndex != null) {
+            bracketIndex.clear();
+        }
+        
+        lineCount = 1;
+        lineStarts[0] = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                ensureLineCapacity(lineCount + 2);
+                lineStarts[lineCount++] = i + 1;
+            }
+        }
+        Arrays.fill(lineStates, 0, lineCount + 1, STATE_UNKNOWN);
+        lineStates[0] = STATE_NORMAL;
+        lineIndexValid = true;
+        
+        damageStartLine = -1;
+        markDamaged(0, lineCount - 1);
     }
     
-    private void highlightNumbers(SpannableString spannableString) {
-        Matcher matcher = NUMBER_PATTERN.matcher(spannableString);
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
-            
-            // Check if not inside a string
-            if (!isInString(spannableString, start, end)) {
-                spannableString.setSpan(
-                    new ForegroundColorSpan(NUMBER_COLOR),
-                    start, end,
-                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-                );
-            }
+    private void ensureLineCapacity(int capacity) {
+        if (lineStates.length < capacity + 1) {
+            int newCapacity = Math.max(capacity + 1, lineStates.length * 2);
+            lineStarts = Arrays.copyOf(lineStarts, newCapacity);
+            lineStates = Arrays.copyOf(lineStates, newCapacity + 1);
         }
     }
     
-    private void highlightFunctions(SpannableString spannableString) {
-        Matcher matcher = FUNCTION_PATTERN.matcher(spannableString);
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
-            
-            spannableString.setSpan(
-                new ForegroundColorSpan(FUNCTION_COLOR),
-                start, end,
-                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-            );
-            
-            // Highlight the function name specifically
-            int nameStart = matcher.start(2);
-            int nameEnd = matcher.end(2);
-            spannableString.setSpan(
-                new StyleSpan(Typeface.BOLD),
-                nameStart, nameEnd,
-                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-            );
-        }
-    }
-    
-    private void highlightClasses(SpannableString spannableString) {
-        Matcher matcher = CLASS_PATTERN.matcher(spannableString);
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
-            
-            spannableString.setSpan(
-                new ForegroundColorSpan(CLASS_COLOR),
-                start, end,
-                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-            );
-            
-            // Highlight the class name specifically
-            int nameStart = matcher.start(2);
-            int nameEnd = matcher.end(2);
-            spannableString.setSpan(
-                new StyleSpan(Typeface.BOLD),
-                nameStart, nameEnd,
-                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-            );
+    private void markDamaged(int fromLine, int toLine) {
+        if (damageStartLine < 0) {
+            damageStartLine = fromLine;
+            damageEndLine = toLine;
+        } else {
+            damageStartLine = Math.min(damageStartLine, fromLine);
+            damageEndLine = Math.max(damageEndLine, toLine);
         }
     }
     
-    private void highlightKeywords(SpannableString spannableString) {
-        if (keywords == null || keywords.length == 0) return;
-        
-        for (String keyword : keywords) {
-            Pattern pattern = Pattern.compile("\\b" + keyword + "\\b");
-            Matcher matcher = pattern.matcher(spannableString);
-            
-            while (matcher.find()) {
-                int start = matcher.start();
-                int end = matcher.end();
-                
-                // Check if not in a string
-                if (!isInString(spannableString, start, end)) {
-                    spannableString.setSpan(
-                        new ForegroundColorSpan(KEYWORD_COLOR),
-                        start, end,
-                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-                    );
-                    
-                    // Make keywords bold
-                    spannableString.setSpan(
-                        new StyleSpan(Typeface.BOLD),
-                        start, end,
-                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-                    );
-                }
+    private int getLineForOffset(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
             }
         }
+        return low;
+    }
+    
+    private int getLineEnd(CharSequence text, int line) {
+        return line + 1 < lineCount ? lineStarts[line + 1] - 1 : text.length();
     }
     
-    private void highlightBuiltins(SpannableString spannableString) {
-        if (builtins == null || builtins.length == 0) return;
+    /**
+     * إعادة تحليل الأسطر التالفة ومتابعة التحليل طالما تغيّرت حالة بداية السطر التالي
+     */
+    private void rehighlightDamagedLines(Editable text) {
+        int line = Math.min(damageStartLine, lineCount - 1);
+        int lastDamagedLine = Math.min(damageEndLine, lineCount - 1);
+        damageStartLine = -1;
+        damageEndLine = -1;
+        
+        // Resume from the nearest line whose entry state is known
+        while (line > 0 && lineStates[line] == STATE_UNKNOWN) {
+            line--;
+        }
+        int state = line == 0 ? STATE_NORMAL : lineStates[line];
+        lineStates[0] = STATE_NORMAL;
         
-        for (String builtin : builtins) {
-            Pattern pattern = Pattern.compile("\\b" + builtin + "\\b");
-            Matcher matcher = pattern.matcher(spannableString);
+        int relexed = 0;
+        while (line < lineCount) {
+            int exitState;
+            if (isSpanned(line)) {
+                exitState = highlightLine(text, line, state);
+            } else {
+                // Outside the window only the line state matters
+                exitState = lexer.tokenizeLine(text, lineStarts[line], getLineEnd(text, line), state);
+            }
+            if (bracketIndex != null) {
+                bracketIndex.replaceRange(lineStarts[line], getLineEnd(text, line), lexer);
+            }
+            relexed++;
+            line++;
+            if (line > lastDamagedLine && lineStates[line] == exitState) {
+                break;
+            }
+            lineStates[line] = exitState;
+            state = exitState;
             
-            while (matcher.find()) {
-                int start = matcher.start();
-                int end = matcher.end();
-                
-                if (!isInString(spannableString, start, end)) {
-                    spannableString.setSpan(
-                        new ForegroundColorSpan(BUILTIN_COLOR),
-                        start, end,
-                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-                    );
-                }
+            // Past the edit, lines outside the window keep their old state until the analysis catches up
+            if (backgroundPropagation && line > lastDamagedLine
+                    && (line < getWindowFirstLine() || line > getWindowLastLine())) {
+                break;
             }
         }
+        
+        Log.d("SyntaxHighlighter", "Re-lexed " + relexed + " of " + lineCount + " lines");
     }
     
-    private void highlightOperators(SpannableString spannableString) {
-        Matcher matcher = OPERATOR_PATTERN.matcher(spannableString);
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
-            
-            if (!isInString(spannableString, start, end)) {
-                spannableString.setSpan(
-                    new ForegroundColorSpan(OPERATOR_COLOR),
-                    start, end,
-                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-                );
-            }
-        }
+    private boolean isSpanned(int line) {
+        return line >= spannedFirstLine && line <= spannedLastLine
+            && line >= getWindowFirstLine() && line <= getWindowLastLine();
     }
     
-    private void highlightBrackets(SpannableString spannableString) {
-        Matcher matcher = BRACKET_PATTERN.matcher(spannableString);
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
-            
-            spannableString.setSpan(
-                new ForegroundColorSpan(BRACKET_COLOR),
-                start, end,
-                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-            );
-        }
+    private int getWindowFirstLine() {
+        return viewportMode ? Math.max(0, targetFirstLine) : 0;
     }
     
-    private void highlightDecorators(SpannableString spannableString) {
-        Matcher matcher = DECORATOR_PATTERN.matcher(spannableString);
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
-            
-            spannableString.setSpan(
-                new ForegroundColorSpan(COMMENT_COLOR),
-                start, end,
-                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-            );
-            
-            spannableString.setSpan(
-                new StyleSpan(Typeface.BOLD),
-                start, end,
-                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-            );
-        }
+    private int getWindowLastLine() {
+        return viewportMode ? Math.min(lineCount - 1, targetLastLine) : lineCount - 1;
     }
     
-    // Helper methods
-    private boolean isSpanOverlap(int start, int end, Object[] spans) {
-        for (Object span : spans) {
-            int spanStart = spannableGetSpanStart(span);
-            int spanEnd = spannableGetSpanEnd(span);
-            if (!(end <= spanStart || start >= spanEnd)) {
-                return true; // Overlap found
+    /**
+     * مطابقة الأسطر الحاملة للـ spans مع نافذة العرض: إزالة spans الأسطر الخارجة وتطبيقها على الداخلة
+     * يفترض أن حالات الأسطر محدثة (لا يوجد تلف معلّق)
+     */
+    private void reconcileViewport(Editable text) {
+        int windowFirst = getWindowFirstLine();
+        int windowLast = getWindowLastLine();
+        
+        if (spannedFirstLine >= 0) {
+            int spannedLast = Math.min(spannedLastLine, lineCount - 1);
+            // Lines leaving the window give their spans back to the pool
+            for (int line = spannedFirstLine; line <= spannedLast; line++) {
+                if (line < windowFirst || line > windowLast) {
+                    clearTokenSpans(text, lineStarts[line], getLineEnd(text, line));
+                }
             }
         }
-        return false;
-    }
-    
-    private boolean isInString(SpannableString spannableString, int start, int end) {
-        Object[] spans = spannableString.getSpans(start, end, ForegroundColorSpan.class);
-        for (Object span : spans) {
-            if (spannableGetSpanColor(span) == STRING_COLOR) {
-                return true;
+        
+        // Lines entering the window get spans from their stored entry state
+        for (int line = windowFirst; line <= windowLast; line++) {
+            if (line < spannedFirstLine || line > spannedLastLine) {
+                highlightLine(text, line, lineStates[line]);
             }
         }
-        return false;
-    }
-    
-    private Object[] stringSpans() {
-        return new Object[0]; // Placeholder
+        
+        spannedFirstLine = windowFirst;
+        spannedLastLine = windowLast;
     }
     
-    private Object[] commentSpans() {
-        return new Object[0]; // Placeholder
+    private int highlightLine(Editable text, int line, int entryState) {
+        int start = lineStarts[line];
+        int end = getLineEnd(text, line);
+        clearTokenSpans(text, start, end);
+        return applyLineTokens(text, start, end, entryState);
     }
     
-    private int spannableGetSpanStart(Object span) {
-        if (span instanceof CharacterStyle) {
-            return 0; // Placeholder
+    private void clearTokenSpans(Editable text, int start, int end) {
+        // A span replaced wholesale by an edit can start on the line break itself
+        int queryEnd = Math.min(end + 1, text.length());
+        TokenColorSpan[] colorSpans = text.getSpans(start, queryEnd, TokenColorSpan.class);
+        for (TokenColorSpan span : colorSpans) {
+            int spanStart = text.getSpanStart(span);
+            if (spanStart >= start && spanStart <= end) {
+                text.removeSpan(span);
+                spanPool.recycle(span);
+            }
+        }
+        
+        TokenStyleSpan[] styleSpans = text.getSpans(start, queryEnd, TokenStyleSpan.class);
+        for (TokenStyleSpan span : styleSpans) {
+            int spanStart = text.getSpanStart(span);
+            if (spanStart >= start && spanStart <= end) {
+                text.removeSpan(span);
+                spanPool.recycle(span);
+            }
         }
-        return 0;
     }
     
-    private int spannableGetSpanEnd(Object span) {
-        if (span instanceof CharacterStyle) {
-            return 0; // Placeholder
+    /**
+     * تطبيق spans رموز السطر الناتجة عن المحلل
+     * @return حالة المحلل في نهاية السطر
+     */
+    private int applyLineTokens(Editable text, int start, int end, int entryState) {
+        int exitState = lexer.tokenizeLine(text, start, end, entryState);
+        int tokenCount = lexer.getTokenCount();
+        for (int i = 0; i < tokenCount; i++) {
+            emit(text, lexer.getTokenType(i), lexer.getTokenStart(i), lexer.getTokenEnd(i));
         }
-        return 0;
+        return exitState;
     }
     
-    private int spannableGetSpanColor(Object span) {
-        if (span instanceof ForegroundColorSpan) {
-            return ((ForegroundColorSpan) span).getForegroundColor();
+    private void emit(Editable text, int tokenType, int start, int end) {
+        int color;
+        boolean bold = false;
+        switch (tokenType) {
+            case PythonLexer.TOKEN_KEYWORD: color = KEYWORD_COLOR; bold = true; break;
+            case PythonLexer.TOKEN_BUILTIN: color = BUILTIN_COLOR; break;
+            case PythonLexer.TOKEN_STRING: color = STRING_COLOR; break;
+            case PythonLexer.TOKEN_COMMENT: color = COMMENT_COLOR; break;
+            case PythonLexer.TOKEN_NUMBER: color = NUMBER_COLOR; break;
+            case PythonLexer.TOKEN_FUNCTION_NAME: color = FUNCTION_COLOR; bold = true; break;
+            case PythonLexer.TOKEN_CLASS_NAME: color = CLASS_COLOR; bold = true; break;
+            case PythonLexer.TOKEN_OPERATOR: color = OPERATOR_COLOR; break;
+            case PythonLexer.TOKEN_BRACKET_OPEN:
+            case PythonLexer.TOKEN_BRACKET_CLOSE: color = BRACKET_COLOR; break;
+            case PythonLexer.TOKEN_DECORATOR: color = COMMENT_COLOR; bold = true; break;
+            default: return;
+        }
+        
+        text.setSpan(spanPool.obtainColorSpan(tokenType, color), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        if (bold) {
+            text.setSpan(spanPool.obtainBoldSpan(), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
         }
-        return 0;
     }
     
     // Public highlighting methods
     public void highlightBracketPair(int start, int end) {
-        CharSequence text = codeEditText.getText();
+        Editable text = codeEditText.getText();
         if (text == null || text.length() == 0) return;
         
-        SpannableString spannableString = new SpannableString(text);
+        clearBracketMatchSpans(text);
+        if (start < 0 || end >= text.length()) return;
         
-        // Highlight the bracket pair
-        spannableString.setSpan(
-            new BackgroundColorSpan(BRACKET_MATCH_COLOR),
-            start, end,
-            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-        );
-        
-        codeEditText.setText(spannableString);
+        openBracketMatchSpan = new BackgroundColorSpan(BRACKET_MATCH_COLOR);
+        closeBracketMatchSpan = new BackgroundColorSpan(BRACKET_MATCH_COLOR);
+        text.setSpan(openBracketMatchSpan, start, start + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(closeBracketMatchSpan, end, end + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
     }
     
     public void clearBracketHighlighting() {
-        updateHighlighting(); // This will clear and reapply highlighting
+        Editable text = codeEditText.getText();
+        if (text != null) {
+            clearBracketMatchSpans(text);
+        }
+    }
+    
+    private void clearBracketMatchSpans(Editable text) {
+        if (openBracketMatchSpan != null) {
+            text.removeSpan(openBracketMatchSpan);
+            openBracketMatchSpan = null;
+        }
+        if (closeBracketMatchSpan != null) {
+            text.removeSpan(closeBracketMatchSpan);
+            closeBracketMatchSpan = null;
+        }
     }
     
     public void highlightFunction(int start, int end) {
@@ -439,26 +557,92 @@ public class SyntaxHighlighter {
     }
     
     private void highlightText(int start, int end, int color, int style) {
-        CharSequence text = codeEditText.getText();
-        if (text == null || text.length() == 0) return;
+        Editable text = codeEditText.getText();
+        if (text == null || start < 0 || end > text.length() || start >= end) return;
         
-        SpannableString spannableString = new SpannableString(text);
-        
-        spannableString.setSpan(
-            new ForegroundColorSpan(color),
-            start, end,
-            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-        );
+        // Token spans are cleared the next time the line is re-lexed or leaves the viewport;
+        // lines outside the viewport must stay span-free
+        if (lineIndexValid && !isSpanned(getLineForOffset(start))) return;
         
+        clearTokenSpans(text, start, end);
+        text.setSpan(new TokenColorSpan(0, color), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
         if (style != Typeface.NORMAL) {
-            spannableString.setSpan(
-                new StyleSpan(style),
-                start, end,
-                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE
-            );
+            text.setSpan(new TokenStyleSpan(style), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+    
+    /**
+     * Span لون خاص بالمظلل حتى يمكن تمييزه عن spans أخرى (البحث، الأخطاء...) عند الإزالة
+     */
+    private static class TokenColorSpan extends ForegroundColorSpan {
+        final int tokenType; // 0 for spans that are not pooled
+        
+        TokenColorSpan(int tokenType, int color) {
+            super(color);
+            this.tokenType = tokenType;
+        }
+    }
+    
+    private static class TokenStyleSpan extends StyleSpan {
+        TokenStyleSpan(int style) {
+            super(style);
+        }
+    }
+    
+    /**
+     * مجمّع spans لإعادة استخدام الكائنات بدلاً من إنشائها عند كل تمرير
+     * الـ span لا يعود إلى المجمّع إلا بعد إزالته من النص
+     */
+    private static class SpanPool {
+        private final TokenColorSpan[][] colorSpans = new TokenColorSpan[PythonLexer.TOKEN_NEWLINE + 1][];
+        private final int[] colorCounts = new int[PythonLexer.TOKEN_NEWLINE + 1];
+        private TokenStyleSpan[] boldSpans = new TokenStyleSpan[64];
+        private int boldCount = 0;
+        
+        TokenColorSpan obtainColorSpan(int tokenType, int color) {
+            if (colorCounts[tokenType] > 0) {
+                TokenColorSpan[] pool = colorSpans[tokenType];
+                TokenColorSpan span = pool[--colorCounts[tokenType]];
+                pool[colorCounts[tokenType]] = null;
+                return span;
+            }
+            return new TokenColorSpan(tokenType, color);
         }
         
-        codeEditText.setText(spannableString);
+        TokenStyleSpan obtainBoldSpan() {
+            if (boldCount > 0) {
+                TokenStyleSpan span = boldSpans[--boldCount];
+                boldSpans[boldCount] = null;
+                return span;
+            }
+            return new TokenStyleSpan(Typeface.BOLD);
+        }
+        
+        void recycle(TokenColorSpan span) {
+            int type = span.tokenType;
+            if (type <= 0 || type >= colorSpans.length) return;
+            
+            TokenColorSpan[] pool = colorSpans[type];
+            if (pool == null) {
+                pool = colorSpans[type] = new TokenColorSpan[64];
+            }
+            int count = colorCounts[type];
+            if (count == MAX_POOLED_SPANS) return;
+            if (count == pool.length) {
+                pool = colorSpans[type] = Arrays.copyOf(pool, Math.min(count * 2, MAX_POOLED_SPANS));
+            }
+            pool[count] = span;
+            colorCounts[type] = count + 1;
+        }
+        
+        void recycle(TokenStyleSpan span) {
+            if (span.getStyle() != Typeface.BOLD || boldCount == MAX_POOLED_SPANS) return;
+            
+            if (boldCount == boldSpans.length) {
+                boldSpans = Arrays.copyOf(boldSpans, Math.min(boldCount * 2, MAX_POOLED_SPANS));
+            }
+            boldSpans[boldCount++] = span;
+        }
     }
     
     /**
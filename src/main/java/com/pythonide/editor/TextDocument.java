@@ -0,0 +1,67 @@
+package com.pythonide.editor;
+
+/**
+ * نموذج المستند النصي (Text Document)
+ * الواجهة المشتركة التي تصل عبرها مكونات المحرر إلى النص دون نسخه بـ toString():
+ * بحث سريع بين الأسطر والمواضع، ونسخ أجزاء من النص، ولقطات ثابتة رخيصة يمكن قراءتها من خيط آخر
+ */
+public interface TextDocument extends CharSequence {
+    
+    /**
+     * عدد الأسطر (مستند فارغ يحتوي سطراً واحداً)
+     */
+    int getLineCount();
+    
+    /**
+     * موضع بداية السطر (يبدأ الترقيم من 0)
+     */
+    int getLineStart(int line);
+    
+    /**
+     * موضع نهاية السطر دون محرف نهاية السطر
+     */
+    int getLineEnd(int line);
+    
+    /**
+     * رقم السطر الذي يحتوي الموضع
+     */
+    int getLineForOffset(int offset);
+    
+    /**
+     * نسخ جزء من النص إلى مصفوفة أحرف
+     */
+    void getChars(int start, int end, char[] dest, int destStart);
+    
+    /**
+     * الحصول على جزء من النص كـ String (يُنسخ الجزء المطلوب فقط)
+     */
+    String getText(int start, int end);
+    
+    /**
+     * البحث عن نص بدءاً من موضع معين
+     * @return موضع أول تطابق أو -1
+     */
+    int indexOf(CharSequence needle, int fromIndex);
+    
+    /**
+     * استبدال النطاق [start, end) بالنص المعطى
+     */
+    void replace(int start, int end, CharSequence text);
+    
+    /**
+     * استبدال محتوى المستند بالكامل
+     */
+    void setText(CharSequence text);
+    
+    /**
+     * لقطة ثابتة للمحتوى الحالي لا تتأثر بالتعديلات اللاحقة
+     */
+    TextDocument snapshot();
+    
+    boolean isReadOnly();
+    
+    /**
+     * رقم إصدار يزداد مع كل تعديل
+     */
+    long getVersion();
+}
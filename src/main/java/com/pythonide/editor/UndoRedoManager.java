@@ -1,96 +1,188 @@
 package com.pythonide.editor;
 
 import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 
-import java.util.Stack;
+import java.util.ArrayDeque;
 
 /**
  * معالج التراجع وإعادة التنفيذ (Undo/Redo Manager)
- * يوفر إمكانية التراجع وإعادة التنفيذ للتغييرات في محرر الكود
+ * يسجل التعديلات كعمليات (الموضع، النص المحذوف، النص المُدرج) بدلاً من نسخ المستند كاملاً،
+ * ويدمج دفعات الكتابة المتتالية في خطوة واحدة، ويحفظ السجل في مخزن دائري محدود بعدد البايتات
  */
 public class UndoRedoManager {
     
     private static final int MAX_UNDO_STEPS = 100;
+    private static final long MAX_HISTORY_BYTES = 2L * 1024 * 1024; // removed + inserted text
+    private static final long COALESCE_WINDOW_MS = 1000;
+    
+    /**
+     * النص الذي يُسجَّل سجله؛ CodeEditText في التطبيق ونص بسيط في الاختبارات
+     */
+    interface EditTarget {
+        void addTextChangedListener(TextWatcher watcher);
+        String getText(int start, int end);
+        void replace(int start, int end, CharSequence text);
+        void setSelection(int offset);
+    }
+    
+    private final EditTarget target;
+    
+    // Ring buffer of undo steps: oldest at undoHead, newest at undoHead + undoSize - 1
+    private final EditOperation[] undoRing = new EditOperation[MAX_UNDO_STEPS];
+    private int undoHead = 0;
+    private int undoSize = 0;
+    private long undoBytes = 0;
+    
+    private final ArrayDeque<EditOperation> redoStack = new ArrayDeque<>();
+    private long redoBytes = 0;
     
-    private CodeEditText codeEditText;
-    private Stack<TextSnapshot> undoStack = new Stack<>();
-    private Stack<TextSnapshot> redoStack = new Stack<>();
-    private String lastSnapshot = "";
     private boolean isUndoRedo = false;
+    private boolean coalescingBroken = false;
+    private String pendingRemovedText = "";
     
     public UndoRedoManager(CodeEditText codeEditText) {
-        this.codeEditText = codeEditText;
+        this(new EditTarget() {
+            @Override
+            public void addTextChangedListener(TextWatcher watcher) {
+                codeEditText.addTextChangedListener(watcher);
+            }
+            
+            @Override
+            public String getText(int start, int end) {
+                return codeEditText.getDocument().getText(start, end);
+            }
+            
+            @Override
+            public void replace(int start, int end, CharSequence text) {
+                codeEditText.getText().replace(start, end, text);
+            }
+            
+            @Override
+            public void setSelection(int offset) {
+                codeEditText.setSelection(offset);
+            }
+        });
+    }
+    
+    UndoRedoManager(EditTarget target) {
+        this.target = target;
         setupTextWatcher();
     }
     
     private void setupTextWatcher() {
-        codeEditText.addTextChangedListener(new android.text.TextWatcher() {
+        target.addTextChangedListener(new TextWatcher() {
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {
                 // Do nothing during undo/redo
                 if (isUndoRedo) return;
+                
+                // Copy only the text about to be removed
+                pendingRemovedText = count > 0 ? target.getText(start, start + count) : "";
             }
             
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
                 // Do nothing during undo/redo
                 if (isUndoRedo) return;
+                
+                String inserted = count > 0 ? target.getText(start, start + count) : "";
+                recordEdit(start, pendingRemovedText, inserted);
+                pendingRemovedText = "";
             }
             
             @Override
             public void afterTextChanged(Editable s) {
-                // Do nothing during undo/redo
-                if (isUndoRedo) return;
-                
-                String currentText = s.toString();
-                
-                // Only save snapshot if text actually changed
-                if (!currentText.equals(lastSnapshot)) {
-                    saveSnapshot(currentText);
-                    lastSnapshot = currentText;
-                    
-                    // Clear redo stack when new changes are made
-                    redoStack.clear();
-                }
+                // Nothing to compare: the edit was recorded in onTextChanged
             }
         });
     }
     
     /**
-     * حفظ لقطة شاشة للنص الحالي
+     * تسجيل عملية تعديل، مع دمجها في الخطوة الأخيرة إذا كانت استمراراً لنفس دفعة الكتابة
      */
-    private void saveSnapshot(String text) {
-        if (undoStack.size() >= MAX_UNDO_STEPS) {
-            undoStack.remove(0); // Remove oldest entry
-        }
+    private void recordEdit(int offset, String removed, String inserted) {
+        if (removed.isEmpty() && inserted.isEmpty()) return;
         
-        undoStack.push(new TextSnapshot(text, System.currentTimeMillis()));
+        long now = System.currentTimeMillis();
+        
+        // New changes invalidate the redo history
+        redoStack.clear();
+        redoBytes = 0;
+        
+        EditOperation last = undoSize > 0 ? undoRing[ringIndex(undoSize - 1)] : null;
+        if (last != null && !coalescingBroken && now - last.timestamp <= COALESCE_WINDOW_MS) {
+            long bytesBefore = last.byteSize();
+            if (last.tryMerge(offset, removed, inserted, now)) {
+                undoBytes += last.byteSize() - bytesBefore;
+                trimToBudget();
+                return;
+            }
+        }
+        coalescingBroken = false;
         
-        Log.d("UndoRedoManager", "Saved snapshot. Undo stack size: " + undoStack.size());
+        pushUndo(new EditOperation(offset, removed, inserted, now));
+    }
+    
+    private void pushUndo(EditOperation operation) {
+        if (undoSize == MAX_UNDO_STEPS) {
+            dropOldestUndo();
+        }
+        undoRing[ringIndex(undoSize)] = operation;
+        undoSize++;
+        undoBytes += operation.byteSize();
+        trimToBudget();
+    }
+    
+    /**
+     * إسقاط أقدم الخطوات حتى يعود حجم السجل ضمن الحد (مع الإبقاء على أحدث خطوة دائماً)
+     */
+    private void trimToBudget() {
+        while (undoSize > 1 && undoBytes + redoBytes > MAX_HISTORY_BYTES) {
+            dropOldestUndo();
+        }
+    }
+    
+    private void dropOldestUndo() {
+        EditOperation oldest = undoRing[undoHead];
+        undoRing[undoHead] = null;
+        undoHead = (undoHead + 1) % MAX_UNDO_STEPS;
+        undoSize--;
+        undoBytes -= oldest.byteSize();
+    }
+    
+    private int ringIndex(int position) {
+        return (undoHead + position) % MAX_UNDO_STEPS;
     }
     
     /**
      * تنفيذ عملية التراجع
      */
     public void undo() {
-        if (undoStack.size() <= 1) {
+        if (undoSize == 0) {
             Log.d("UndoRedoManager", "Nothing to undo");
             return;
         }
         
+        int index = ringIndex(undoSize - 1);
+        EditOperation operation = undoRing[index];
+        undoRing[index] = null;
+        undoSize--;
+        undoBytes -= operation.byteSize();
+        
         isUndoRedo = true;
         
         try {
-            // Move current state to redo stack
-            TextSnapshot currentState = undoStack.pop();
-            redoStack.push(currentState);
+            // Revert only the edited range
+            target.replace(operation.offset, operation.offset + operation.inserted.length(), operation.removed);
+            target.setSelection(operation.offset + operation.removed.length());
             
-            // Restore previous state
-            TextSnapshot previousState = undoStack.peek();
-            codeEditText.setText(previousState.text);
+            redoStack.push(operation);
+            redoBytes += operation.byteSize();
+            coalescingBroken = true;
             
-            Log.d("UndoRedoManager", "Undo performed. Undo stack: " + undoStack.size() + 
+            Log.d("UndoRedoManager", "Undo performed. Undo stack: " + undoSize + 
                 ", Redo stack: " + redoStack.size());
             
         } finally {
@@ -107,17 +199,20 @@ public class UndoRedoManager {
             return;
         }
         
+        EditOperation operation = redoStack.pop();
+        redoBytes -= operation.byteSize();
+        
         isUndoRedo = true;
         
         try {
-            // Move from redo stack to undo stack
-            TextSnapshot stateToRestore = redoStack.pop();
-            undoStack.push(stateToRestore);
+            // Re-apply only the edited range
+            target.replace(operation.offset, operation.offset + operation.removed.length(), operation.inserted);
+            target.setSelection(operation.offset + operation.inserted.length());
             
-            // Restore the text
-            codeEditText.setText(stateToRestore.text);
+            pushUndo(operation);
+            coalescingBroken = true;
             
-            Log.d("UndoRedoManager", "Redo performed. Undo stack: " + undoStack.size() + 
+            Log.d("UndoRedoManager", "Redo performed. Undo stack: " + undoSize + 
                 ", Redo stack: " + redoStack.size());
             
         } finally {
@@ -125,11 +220,19 @@ public class UndoRedoManager {
         }
     }
     
+    /**
+     * هل يُعاد الآن تطبيق خطوة من السجل؛ التعديلات الناتجة ليست كتابة من المستخدم،
+     * فلا يجب أن تطلق المسافة البادئة التلقائية أو الإكمال أو أي إعادة كتابة أخرى
+     */
+    public boolean isReplaying() {
+        return isUndoRedo;
+    }
+    
     /**
      * التحقق من إمكانية التراجع
      */
     public boolean canUndo() {
-        return undoStack.size() > 1;
+        return undoSize > 0;
     }
     
     /**
@@ -143,17 +246,28 @@ public class UndoRedoManager {
      * مسح سجل التراجع وإعادة التنفيذ
      */
     public void clearHistory() {
-        undoStack.clear();
+        while (undoSize > 0) {
+            dropOldestUndo();
+        }
+        undoHead = 0;
+        undoBytes = 0;
         redoStack.clear();
-        saveSnapshot(codeEditText.getText().toString());
+        redoBytes = 0;
         Log.d("UndoRedoManager", "History cleared");
     }
     
+    /**
+     * إنهاء دفعة الكتابة الحالية بحيث يبدأ التعديل التالي خطوة تراجع جديدة
+     */
+    public void breakCoalescing() {
+        coalescingBroken = true;
+    }
+    
     /**
      * الحصول على عدد خطوات التراجع المتاحة
      */
     public int getUndoStepCount() {
-        return Math.max(0, undoStack.size() - 1); // -1 because current state is always in stack
+        return undoSize;
     }
     
     /**
@@ -164,30 +278,62 @@ public class UndoRedoManager {
     }
     
     /**
-     * تحديث snapshot بعد تغيير النص
+     * الحجم التقريبي للسجل بالبايت
      */
-    public void onTextChanged(String text) {
-        if (!isUndoRedo && !text.equals(lastSnapshot)) {
-            saveSnapshot(text);
-            lastSnapshot = text;
-        }
+    public long getHistorySizeBytes() {
+        return undoBytes + redoBytes;
     }
     
     /**
-     * فئة لتخزين حالة النص
+     * فئة لتخزين عملية تعديل واحدة (أو دفعة كتابة مدمجة)
      */
-    private static class TextSnapshot {
-        public final String text;
-        public final long timestamp;
+    private static class EditOperation {
+        int offset;
+        String removed;
+        String inserted;
+        long timestamp;
         
-        public TextSnapshot(String text, long timestamp) {
-            this.text = text;
+        EditOperation(int offset, String removed, String inserted, long timestamp) {
+            this.offset = offset;
+            this.removed = removed;
+            this.inserted = inserted;
             this.timestamp = timestamp;
         }
         
+        long byteSize() {
+            // Two bytes per char plus a small fixed overhead per operation
+            return 2L * (removed.length() + inserted.length()) + 32;
+        }
+        
+        /**
+         * دمج تعديل من حرف واحد إذا كان يكمل نفس دفعة الكتابة أو الحذف
+         */
+        boolean tryMerge(int newOffset, String newRemoved, String newInserted, long now) {
+            boolean singleInsert = newRemoved.isEmpty() && newInserted.length() == 1 && newInserted.charAt(0) != '\n';
+            boolean singleDelete = newInserted.isEmpty() && newRemoved.length() == 1 && newRemoved.charAt(0) != '\n';
+            
+            if (singleInsert && removed.isEmpty() && newOffset == offset + inserted.length()) {
+                // Typing forward
+                inserted = inserted + newInserted;
+            } else if (singleDelete && inserted.isEmpty() && newOffset + 1 == offset) {
+                // Backspace burst
+                removed = newRemoved + removed;
+                offset = newOffset;
+            } else if (singleDelete && inserted.isEmpty() && newOffset == offset) {
+                // Forward delete burst
+                removed = removed + newRemoved;
+            } else {
+                return false;
+            }
+            
+            timestamp = now;
+            return true;
+        }
+        
         @Override
         public String toString() {
-            return "TextSnapshot{length=" + text.length() + ", timestamp=" + timestamp + "}";
+            return "EditOperation{offset=" + offset + ", removed=" + removed.length() +
+                ", inserted=" + inserted.length() + ", timestamp=" + timestamp + "}";
         }
     }
-}
\ No newline at end of file
+}
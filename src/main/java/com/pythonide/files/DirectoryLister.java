@@ -0,0 +1,485 @@
+package com.pythonide.files;
+
+import android.os.Build;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * DirectoryLister - قراءة محتوى المجلدات في الخلفية
+ * يقرأ المدخلات كتدفق مع خصائص كل مدخل في استدعاء واحد، ويرتبها بمفاتيح ترتيب محسوبة مسبقاً،
+ * وينشر صفحات جزئية للمجلدات البطيئة؛ كل تحميل جديد يلغي السابق فلا تصل نتائج مجلد قديم.
+ * آخر المجلدات المقروءة تبقى في ذاكرة مؤقتة (LRU) تراقبها FileObserver، فتُعرض فوراً عند العودة إليها
+ * ولا يُعاد قراءة إلا المدخلات التي تغيرت
+ */
+public class DirectoryLister {
+    
+    // An unfinished listing is published at most this often
+    private static final long PAGE_INTERVAL_MS = 100;
+    // Entries read between cancellation and publish checks
+    private static final int CHECK_INTERVAL = 64;
+    
+    // Cache bounds: directories (one inotify watch each) and entries across all of them
+    private static final int MAX_CACHED_DIRECTORIES = 32;
+    private static final int MAX_CACHED_ENTRIES = 50000;
+    // Past this many changed names a full relist is cheaper than patching
+    private static final int MAX_PENDING_CHANGES = 256;
+    // Bursts of file system events are applied together
+    private static final long CHANGE_DELAY_MS = 100;
+    
+    private static final int WATCH_MASK = FileObserver.CREATE | FileObserver.DELETE
+        | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE
+        | FileObserver.ATTRIB | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+    
+    private static final ExecutorService LIST_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    public interface Listener {
+        /**
+         * قائمة مرتبة لمحتوى المجلد (على خيط الواجهة)
+         * @param complete false إذا كانت صفحة جزئية أو نسخة مخزنة وستتبعها قائمة أحدث
+         */
+        void onEntries(File directory, List<FileItem> items, boolean complete);
+        
+        void onError(File directory, Exception error);
+    }
+    
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Future<?> runningLoad;
+    // Bumped on every load so results of an older one are dropped
+    private int generation = 0;
+    
+    // Most recently shown last; used only on the main thread
+    private final LinkedHashMap<String, Snapshot> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private File currentDirectory;
+    private Listener currentListener;
+    private final Runnable reloadCurrent = () -> {
+        if (currentDirectory != null) {
+            start(currentDirectory, currentListener, false);
+        }
+    };
+    
+    /**
+     * بدء قراءة مجلد (يلغي أي قراءة جارية)؛ المجلد المخزن يُعرض فوراً ثم تُطبق تغييراته
+     */
+    public void load(File directory, Listener listener) {
+        start(directory, listener, true);
+    }
+    
+    /**
+     * إسقاط النسخة المخزنة لمجلد لتُقرأ كاملة في المرة القادمة
+     */
+    public void invalidate(File directory) {
+        Snapshot snapshot = cache.remove(directory.getAbsolutePath());
+        if (snapshot != null) {
+            snapshot.release();
+        }
+    }
+    
+    public void cancel() {
+        generation++;
+        mainHandler.removeCallbacks(reloadCurrent);
+        if (runningLoad != null) {
+            runningLoad.cancel(true);
+            runningLoad = null;
+        }
+    }
+    
+    /**
+     * إيقاف كل المراقبات وتفريغ الذاكرة المؤقتة
+     */
+    public void release() {
+        cancel();
+        currentDirectory = null;
+        currentListener = null;
+        for (Snapshot snapshot : cache.values()) {
+            snapshot.release();
+        }
+        cache.clear();
+    }
+    
+    private void start(File directory, Listener listener, boolean showCached) {
+        cancel();
+        currentDirectory = directory;
+        currentListener = listener;
+        final int loadGeneration = generation;
+        
+        Snapshot cached = cache.get(directory.getAbsolutePath());
+        if (cached != null) {
+            Set<String> changes = cached.pendingChanges();
+            if (changes != null && changes.isEmpty()) {
+                listener.onEntries(directory, cached.toItems(), true);
+                return;
+            }
+            if (showCached) {
+                listener.onEntries(directory, cached.toItems(), false);
+            }
+            if (changes != null) {
+                List<Entry> entries = cached.entries;
+                runningLoad = LIST_EXECUTOR.submit(() -> {
+                    List<Entry> updated = applyChanges(directory, entries, changes);
+                    if (updated == null) return;
+                    mainHandler.post(() -> deliverUpdate(loadGeneration, cached, updated, changes, listener));
+                });
+                return;
+            }
+            // Too many changes to patch; drop it and list again. Released first, since before
+            // API 29 observers of the same path share one watch and stopping either stops both
+            invalidate(directory);
+        }
+        
+        runningLoad = LIST_EXECUTOR.submit(() -> {
+            Listing listing = new Listing(directory, loadGeneration, listener);
+            try {
+                list(listing);
+            } catch (Exception e) {
+                listing.snapshot.release();
+                if (Thread.currentThread().isInterrupted()) return;
+                Log.e("DirectoryLister", "Error listing " + directory, e);
+                mainHandler.post(() -> {
+                    if (loadGeneration == generation) {
+                        listener.onError(directory, e);
+                    }
+                });
+            }
+        });
+    }
+    
+    /**
+     * مدخل مع مفتاح ترتيب محسوب مرة واحدة بدلاً من تحويل الاسم في كل مقارنة
+     */
+    private static class Entry implements Comparable<Entry> {
+        final FileItem item;
+        final CollationKey key;
+        
+        Entry(FileItem item, CollationKey key) {
+            this.item = item;
+            this.key = key;
+        }
+        
+        @Override
+        public int compareTo(Entry other) {
+            // Directories first
+            if (item.isDirectory() != other.item.isDirectory()) {
+                return item.isDirectory() ? -1 : 1;
+            }
+            return key.compareTo(other.key);
+        }
+    }
+    
+    private static Collator newCollator() {
+        // Ignores case like the old lower-case comparison, but orders accents and scripts by locale
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+        return collator;
+    }
+    
+    /**
+     * خصائص مدخل واحد باستدعاء واحد
+     * @return null إذا لم يعد المدخل موجوداً
+     */
+    private static FileItem readItem(File file) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Path path = file.toPath();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileItem(file, attributes.isDirectory(), attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+            } catch (NoSuchFileException e) {
+                // A dangling symlink is still listed, like listFiles() does
+                return Files.isSymbolicLink(path) ? new FileItem(file, false, 0, 0) : null;
+            } catch (IOException e) {
+                return new FileItem(file, false, 0, 0);
+            }
+        }
+        if (!file.exists()) return null;
+        return new FileItem(file, file.isDirectory(), file.length(), file.lastModified());
+    }
+    
+    private void list(Listing listing) throws IOException {
+        long startTime = System.currentTimeMillis();
+        File directory = listing.directory;
+        
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+                for (Path path : stream) {
+                    FileItem item = readItem(path.toFile());
+                    if (item != null && !listing.add(item)) {
+                        listing.snapshot.release();
+                        return;
+                    }
+                }
+            }
+        } else {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                throw new IOException("Cannot read " + directory);
+            }
+            for (File file : files) {
+                if (!listing.add(new FileItem(file, file.isDirectory(), file.length(), file.lastModified()))) {
+                    listing.snapshot.release();
+                    return;
+                }
+            }
+        }
+        
+        if (Thread.currentThread().isInterrupted()) {
+            listing.snapshot.release();
+            return;
+        }
+        listing.publish(true);
+        Log.d("DirectoryLister", "Listed " + listing.entries.size() + " entries of " + directory.getName()
+            + " in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+    
+    /**
+     * إعادة قراءة المدخلات المتغيرة فقط ودمجها في القائمة المخزنة (على خيط القراءة)
+     * @return القائمة المحدثة أو null إذا أُلغيت
+     */
+    private static List<Entry> applyChanges(File directory, List<Entry> entries, Set<String> changes) {
+        List<Entry> updated = new ArrayList<>(entries.size() + changes.size());
+        for (Entry entry : entries) {
+            if (!changes.contains(entry.item.getName())) {
+                updated.add(entry);
+            }
+        }
+        
+        Collator collator = newCollator();
+        for (String name : changes) {
+            if (Thread.currentThread().isInterrupted()) return null;
+            FileItem item = readItem(new File(directory, name));
+            if (item != null) {
+                updated.add(new Entry(item, collator.getCollationKey(name)));
+            }
+        }
+        // Mostly sorted already, so this is close to linear
+        Collections.sort(updated);
+        return updated;
+    }
+    
+    private void deliverUpdate(int loadGeneration, Snapshot snapshot, List<Entry> entries,
+                               Set<String> applied, Listener listener) {
+        if (loadGeneration != generation) return;
+        
+        runningLoad = null;
+        snapshot.entries = entries;
+        snapshot.removeChanges(applied);
+        listener.onEntries(snapshot.directory, snapshot.toItems(), true);
+        if (snapshot.hasChanges()) {
+            scheduleReload();
+        }
+    }
+    
+    private void deliverListing(int loadGeneration, Snapshot snapshot, Listener listener) {
+        if (loadGeneration != generation) {
+            snapshot.release();
+            return;
+        }
+        
+        runningLoad = null;
+        Snapshot previous = cache.put(snapshot.directory.getAbsolutePath(), snapshot);
+        if (previous != null && previous != snapshot) {
+            previous.release();
+        }
+        trimCache();
+        listener.onEntries(snapshot.directory, snapshot.toItems(), true);
+        // Events that arrived while reading were recorded but not yet applied
+        if (snapshot.hasChanges()) {
+            scheduleReload();
+        }
+    }
+    
+    /**
+     * إخراج أقدم المجلدات حتى تعود الذاكرة المؤقتة ضمن حدودها (المجلد الأحدث يبقى دائماً)
+     */
+    private void trimCache() {
+        int entries = 0;
+        for (Snapshot snapshot : cache.values()) {
+            entries += snapshot.entries.size();
+        }
+        Iterator<Map.Entry<String, Snapshot>> iterator = cache.entrySet().iterator();
+        while (cache.size() > 1 && (cache.size() > MAX_CACHED_DIRECTORIES || entries > MAX_CACHED_ENTRIES)) {
+            Snapshot eldest = iterator.next().getValue();
+            iterator.remove();
+            entries -= eldest.entries.size();
+            eldest.release();
+        }
+    }
+    
+    /**
+     * تغيّر مجلد مخزن (على خيط الواجهة)؛ المعروض حالياً يُحدّث بعد تجميع الأحداث المتلاحقة
+     */
+    private void onDirectoryChanged(Snapshot snapshot) {
+        if (currentDirectory == null) return;
+        // Not through get(), which would count as a visit
+        for (Snapshot cached : cache.values()) {
+            if (cached == snapshot) {
+                if (snapshot.directory.equals(currentDirectory)) {
+                    scheduleReload();
+                }
+                return;
+            }
+        }
+    }
+    
+    private void scheduleReload() {
+        mainHandler.removeCallbacks(reloadCurrent);
+        mainHandler.postDelayed(reloadCurrent, CHANGE_DELAY_MS);
+    }
+    
+    /**
+     * نسخة مخزنة من محتوى مجلد مع مراقب يسجل أسماء المدخلات التي تغيرت منذ قراءتها
+     */
+    private class Snapshot {
+        final File directory;
+        final FileItem parentItem;
+        // Sorted; replaced as a whole on the main thread
+        volatile List<Entry> entries = Collections.emptyList();
+        private final FileObserver observer;
+        // Guarded by this; null when the changes are too many or the directory itself moved
+        private Set<String> changes = new HashSet<>();
+        
+        Snapshot(File directory) {
+            this.directory = directory;
+            File parent = directory.getParentFile();
+            parentItem = parent != null ? new FileItem(parent, true) : null;
+            
+            // Watching starts before reading, so nothing changed during the listing is missed
+            observer = new FileObserver(directory.getAbsolutePath(), WATCH_MASK) {
+                @Override
+                public void onEvent(int event, String path) {
+                    onChange(event & FileObserver.ALL_EVENTS, path);
+                }
+            };
+            observer.startWatching();
+        }
+        
+        private void onChange(int event, String name) {
+            synchronized (this) {
+                boolean wholeDirectory = (event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0
+                    || name == null;
+                if (changes != null) {
+                    if (wholeDirectory || changes.size() >= MAX_PENDING_CHANGES) {
+                        changes = null;
+                    } else {
+                        changes.add(name);
+                    }
+                }
+            }
+            mainHandler.post(() -> onDirectoryChanged(this));
+        }
+        
+        /**
+         * نسخة من الأسماء المتغيرة، أو null إذا وجبت إعادة القراءة كاملة
+         */
+        synchronized Set<String> pendingChanges() {
+            return changes == null ? null : new HashSet<>(changes);
+        }
+        
+        synchronized boolean hasChanges() {
+            return changes == null || !changes.isEmpty();
+        }
+        
+        synchronized void removeChanges(Set<String> applied) {
+            if (changes != null) {
+                changes.removeAll(applied);
+            }
+        }
+        
+        List<FileItem> toItems() {
+            List<Entry> current = entries;
+            List<FileItem> items = new ArrayList<>(current.size() + 1);
+            if (parentItem != null) {
+                items.add(parentItem);
+            }
+            for (Entry entry : current) {
+                items.add(entry.item);
+            }
+            return items;
+        }
+        
+        void release() {
+            observer.stopWatching();
+        }
+    }
+    
+    /**
+     * حالة قراءة مجلد واحد على خيط القراءة
+     */
+    private class Listing {
+        final File directory;
+        final int loadGeneration;
+        final Listener listener;
+        final Snapshot snapshot;
+        final List<Entry> entries = new ArrayList<>();
+        final Collator collator = newCollator();
+        long lastPublish = System.currentTimeMillis();
+        
+        Listing(File directory, int loadGeneration, Listener listener) {
+            this.directory = directory;
+            this.loadGeneration = loadGeneration;
+            this.listener = listener;
+            this.snapshot = new Snapshot(directory);
+        }
+        
+        /**
+         * @return false إذا أُلغيت القراءة
+         */
+        boolean add(FileItem item) {
+            entries.add(new Entry(item, collator.getCollationKey(item.getName())));
+            if (entries.size() % CHECK_INTERVAL == 0) {
+                if (Thread.currentThread().isInterrupted()) return false;
+                long now = System.currentTimeMillis();
+                if (now - lastPublish >= PAGE_INTERVAL_MS) {
+                    publish(false);
+                    lastPublish = now;
+                }
+            }
+            return true;
+        }
+        
+        void publish(boolean complete) {
+            Collections.sort(entries);
+            
+            if (complete) {
+                snapshot.entries = new ArrayList<>(entries);
+                mainHandler.post(() -> deliverListing(loadGeneration, snapshot, listener));
+                return;
+            }
+            
+            List<FileItem> items = new ArrayList<>(entries.size() + 1);
+            if (snapshot.parentItem != null) {
+                items.add(snapshot.parentItem);
+            }
+            for (Entry entry : entries) {
+                items.add(entry.item);
+            }
+            mainHandler.post(() -> {
+                if (loadGeneration == generation) {
+                    listener.onEntries(directory, items, false);
+                }
+            });
+        }
+    }
+}
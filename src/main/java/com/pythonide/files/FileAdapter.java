@@ -11,32 +11,44 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.pythonide.files.icons.IconProvider;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
 
 /**
  * FileAdapter - محول البيانات لعرض الملفات في RecyclerView
- * يدعم عرض القائمة والشبكة
+ * يدعم عرض القائمة والشبكة؛ القوائم الجديدة تُقارن بالحالية في الخلفية وتُطبق الفروق فقط
  */
-public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder> {
+public class FileAdapter extends ListAdapter<FileItem, FileAdapter.FileViewHolder> {
     
     public enum ViewMode {
         LIST, GRID
     }
     
+    private static final DiffUtil.ItemCallback<FileItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<FileItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull FileItem oldItem, @NonNull FileItem newItem) {
+            return oldItem.isParentLink() == newItem.isParentLink() && oldItem.equals(newItem);
+        }
+        
+        @Override
+        public boolean areContentsTheSame(@NonNull FileItem oldItem, @NonNull FileItem newItem) {
+            return oldItem.isDirectory() == newItem.isDirectory()
+                && oldItem.getSize() == newItem.getSize()
+                && oldItem.getLastModified() == newItem.getLastModified();
+        }
+    };
+    
     private Context context;
-    private List<FileItem> files;
     private OnFileClickListener clickListener;
     private OnFileLongClickListener longClickListener;
     private ViewMode currentViewMode = ViewMode.LIST;
     private IconProvider iconProvider;
+    private ThumbnailLoader thumbnailLoader;
     
     public interface OnFileClickListener {
         void onFileClick(FileItem fileItem, int position);
@@ -46,14 +58,15 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
         void onFileLongClick(FileItem fileItem, int position);
     }
     
-    public FileAdapter(Context context, List<FileItem> files, 
+    public FileAdapter(Context context, 
                       OnFileClickListener clickListener, 
                       OnFileLongClickListener longClickListener) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.files = files;
         this.clickListener = clickListener;
         this.longClickListener = longClickListener;
         this.iconProvider = new IconProvider(context);
+        this.thumbnailLoader = new ThumbnailLoader(context);
     }
     
     @NonNull
@@ -70,13 +83,15 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
     
     @Override
     public void onBindViewHolder(@NonNull FileViewHolder holder, int position) {
-        FileItem fileItem = files.get(position);
+        FileItem fileItem = getItem(position);
         holder.bind(fileItem);
     }
     
     @Override
-    public int getItemCount() {
-        return files.size();
+    public void onViewRecycled(@NonNull FileViewHolder holder) {
+        super.onViewRecycled(holder);
+        // Stop a thumbnail still loading for the item this view showed before
+        thumbnailLoader.cancel(holder.iconImageView);
     }
     
     public void setViewMode(ViewMode viewMode) {
@@ -118,8 +133,8 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
             // Set size and date for list view
             if (currentViewMode == ViewMode.LIST) {
                 if (!fileItem.isDirectory() && !fileItem.isParentLink()) {
-                    sizeTextView.setText(formatFileSize(fileItem.getFile().length()));
-                    dateTextView.setText(formatDate(fileItem.getFile().lastModified()));
+                    sizeTextView.setText(fileItem.getFormattedSize());
+                    dateTextView.setText(fileItem.getFormattedDate());
                     sizeTextView.setVisibility(View.VISIBLE);
                     dateTextView.setVisibility(View.VISIBLE);
                 } else {
@@ -158,23 +173,17 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
     }
     
     private void setFileIcon(ImageView iconImageView, FileItem fileItem) {
-        Drawable icon = iconProvider.getIconForFile(
-            fileItem.getName(), 
+        // Drawn once per file type; binding gets its own drawable over the shared bitmap
+        Drawable icon = iconProvider.getIconForExtension(
+            fileItem.getExtension(), 
             fileItem.isDirectory(), 
             fileItem.isParentLink()
         );
-        iconImageView.setImageDrawable(icon);
-    }
-    
-    private String formatFileSize(long bytes) {
-        if (bytes < 1024) return bytes + " بايت";
-        if (bytes < 1024 * 1024) return String.format(Locale.getDefault(), "%.1f كيلوبايت", bytes / 1024.0);
-        if (bytes < 1024 * 1024 * 1024) return String.format(Locale.getDefault(), "%.1f ميغابايت", bytes / (1024.0 * 1024));
-        return String.format(Locale.getDefault(), "%.1f غيغابايت", bytes / (1024.0 * 1024 * 1024));
-    }
-    
-    private String formatDate(long timestamp) {
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
-        return sdf.format(new Date(timestamp));
+        if (ThumbnailLoader.hasThumbnail(fileItem)) {
+            thumbnailLoader.load(iconImageView, fileItem, icon);
+        } else {
+            thumbnailLoader.cancel(iconImageView);
+            iconImageView.setImageDrawable(icon);
+        }
     }
 }
\ No newline at end of file
@@ -5,18 +5,29 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
+import android.text.method.KeyListener;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.EditText;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
+import com.pythonide.editor.PieceTableDocument;
+import com.pythonide.editor.TextDocument;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -29,6 +40,12 @@ import java.util.Locale;
 public class FileContentEditor extends AppCompatActivity {
     
     private static final int SAVE_DELAY = 2000; // 2 seconds
+    // The first chunk is small so the first screen shows at once; the rest streams in larger reads
+    private static final int FIRST_CHUNK_BYTES = 16 * 1024;
+    private static final int LOAD_CHUNK_BYTES = 256 * 1024;
+    // Larger files open in a read-only memory-mapped viewer instead of the editor
+    private static final long MAPPED_VIEW_THRESHOLD = 4 * 1024 * 1024;
+    private static final int VIEWER_PAGE_LINES = 1000;
     
     private EditText contentEditText;
     private TextView fileNameTextView;
@@ -38,10 +55,24 @@ public class FileContentEditor extends AppCompatActivity {
     private Toolbar toolbar;
     
     private File currentFile;
-    private String originalContent = "";
+    // Mirror of the EditText content; dirty state is tracked by document version
+    private final PieceTableDocument document = new PieceTableDocument();
+    private long savedVersion = 0;
     private boolean hasUnsavedChanges = false;
     private boolean isAutoSave = true;
     private Runnable saveTask;
+    private FileSaveService saveService;
+    
+    // Streaming load: appended chunks are not user edits
+    private boolean isLoading = false;
+    private volatile boolean isDestroyed = false;
+    // The buffer holds only part of the file; writing it back would truncate the original
+    private boolean loadFailed = false;
+    private KeyListener editKeyListener;
+    
+    // Read-only viewer for large files; only one page of lines is held as text
+    private MappedTextFile mappedFile;
+    private int viewerFirstLine = 0;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -83,6 +114,7 @@ public class FileContentEditor extends AppCompatActivity {
         
         if (filePath != null) {
             currentFile = new File(filePath);
+            setupSaveService();
             readFileContent();
             updateFileInfo();
         } else {
@@ -91,37 +123,201 @@ public class FileContentEditor extends AppCompatActivity {
         }
     }
     
+    private void setupSaveService() {
+        saveService = new FileSaveService(currentFile);
+        saveService.setSaveListener(new FileSaveService.SaveListener() {
+            @Override
+            public void onSaved(long version, boolean written) {
+                // Coalesced saves report only the newest snapshot they wrote
+                savedVersion = Math.max(savedVersion, version);
+                hasUnsavedChanges = document.getVersion() != savedVersion;
+                updateFileInfo();
+                updateStatus("تم حفظ الملف");
+            }
+            
+            @Override
+            public void onSaveFailed(long version, IOException error) {
+                showError("خطأ في حفظ الملف: " + error.getMessage());
+            }
+        });
+    }
+    
     private void readFileContent() {
+        if (currentFile.length() > MAPPED_VIEW_THRESHOLD) {
+            openMappedViewer();
+            return;
+        }
+        
+        // No typing until the whole file is in; the watcher ignores the appended chunks
+        isLoading = true;
+        editKeyListener = contentEditText.getKeyListener();
+        contentEditText.setKeyListener(null);
+        updateStatus("جارٍ تحميل الملف...");
+        
         new Thread(() -> {
-            try {
-                StringBuilder content = new StringBuilder();
+            try (FileChannel channel = new FileInputStream(currentFile).getChannel()) {
+                CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                ByteBuffer bytes = ByteBuffer.allocateDirect(LOAD_CHUNK_BYTES);
+                // UTF-8 never decodes to more chars than bytes
+                CharBuffer chars = CharBuffer.allocate(LOAD_CHUNK_BYTES);
+                bytes.limit(FIRST_CHUNK_BYTES);
                 
-                try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(new FileInputStream(currentFile), StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        content.append(line).append("\n");
+                boolean firstChunk = true;
+                boolean endOfInput = false;
+                while (!endOfInput && !isDestroyed) {
+                    endOfInput = channel.read(bytes) < 0;
+                    bytes.flip();
+                    // A multi-byte sequence split by the read stays in the buffer for the next chunk
+                    decoder.decode(bytes, chars, endOfInput);
+                    if (endOfInput) {
+                        decoder.flush(chars);
                     }
+                    bytes.compact();
+                    
+                    chars.flip();
+                    if (chars.hasRemaining() || firstChunk) {
+                        String chunk = chars.toString();
+                        boolean replace = firstChunk;
+                        runOnUiThread(() -> appendLoadedChunk(chunk, replace));
+                        firstChunk = false;
+                    }
+                    chars.clear();
                 }
                 
-                // Remove last newline if exists
-                if (content.length() > 0 && content.charAt(content.length() - 1) == '\n') {
-                    content.deleteCharAt(content.length() - 1);
-                }
-                
-                originalContent = content.toString();
-                
+                runOnUiThread(this::finishLoading);
+            
+            } catch (IOException e) {
+                runOnUiThread(() -> failLoading(e));
+            }
+        }).start();
+    }
+    
+    private void appendLoadedChunk(String chunk, boolean replace) {
+        if (isDestroyed) return;
+        
+        if (replace) {
+            contentEditText.setText(chunk);
+        } else {
+            contentEditText.getText().append(chunk);
+        }
+    }
+    
+    private void finishLoading() {
+        if (isDestroyed || !isLoading) return;
+        
+        isLoading = false;
+        contentEditText.setKeyListener(editKeyListener);
+        savedVersion = document.getVersion();
+        hasUnsavedChanges = false;
+        // Lets the save service skip autosaves that would write back the same content
+        saveService.markSaved(document.snapshot());
+        updateStatus("تم تحميل الملف");
+    }
+    
+    /**
+     * فشل القراءة في منتصف الملف: يبقى المحرر للقراءة فقط ولا يُحفظ شيء فوق الملف الأصلي
+     */
+    private void failLoading(IOException error) {
+        if (isDestroyed) return;
+        
+        isLoading = false;
+        loadFailed = true;
+        // The key listener stays null and savedVersion/markSaved are left alone on purpose
+        if (saveTask != null) {
+            contentEditText.removeCallbacks(saveTask);
+        }
+        updateStatus("قراءة فقط: تعذر تحميل الملف كاملاً");
+        showError("خطأ في قراءة الملف: " + error.getMessage());
+    }
+    
+    /**
+     * فتح ملف كبير للقراءة فقط عبر ربطه بالذاكرة وعرض صفحة من الأسطر في كل مرة
+     */
+    private void openMappedViewer() {
+        contentEditText.setKeyListener(null);
+        updateStatus("جارٍ فتح الملف...");
+        
+        new Thread(() -> {
+            try {
+                MappedTextFile mapped = new MappedTextFile(currentFile);
                 runOnUiThread(() -> {
-                    contentEditText.setText(originalContent);
-                    updateStatus("تم تحميل الملف");
+                    if (isDestroyed) {
+                        closeMappedFile(mapped);
+                        return;
+                    }
+                    mappedFile = mapped;
+                    setupViewerPaging();
+                    showViewerPage(0);
                 });
-                
             } catch (IOException e) {
                 runOnUiThread(() -> showError("خطأ في قراءة الملف: " + e.getMessage()));
             }
         }).start();
     }
     
+    private void setupViewerPaging() {
+        ScrollView scrollView = (ScrollView) contentEditText.getParent();
+        scrollView.setOnScrollChangeListener((v, scrollX, scrollY, oldScrollX, oldScrollY) -> {
+            int visibleBottom = scrollY + v.getHeight();
+            int contentHeight = contentEditText.getHeight();
+            int lastLine = viewerFirstLine + VIEWER_PAGE_LINES;
+            
+            if (scrollY > oldScrollY && visibleBottom >= contentHeight - v.getHeight()
+                    && lastLine < mappedFile.getLineCount()) {
+                // Slide half a page forward, keeping the visible text where it is
+                shiftViewerPage(viewerFirstLine + VIEWER_PAGE_LINES / 2, scrollView);
+            } else if (scrollY < oldScrollY && scrollY <= v.getHeight() && viewerFirstLine > 0) {
+                shiftViewerPage(Math.max(0, viewerFirstLine - VIEWER_PAGE_LINES / 2), scrollView);
+            }
+        });
+    }
+    
+    private void shiftViewerPage(int firstLine, ScrollView scrollView) {
+        if (contentEditText.getLayout() == null) return;
+        
+        // A line present in both pages anchors the scroll position
+        int anchorLine = Math.max(firstLine, viewerFirstLine);
+        int oldTop = getPageLineTop(anchorLine - viewerFirstLine);
+        int offsetFromAnchor = scrollView.getScrollY() - oldTop;
+        
+        showViewerPage(firstLine);
+        contentEditText.post(() -> {
+            if (contentEditText.getLayout() == null) return;
+            scrollView.scrollTo(0, getPageLineTop(anchorLine - viewerFirstLine) + offsetFromAnchor);
+        });
+    }
+    
+    private int getPageLineTop(int pageLine) {
+        CharSequence text = contentEditText.getText();
+        int offset = 0;
+        for (int line = 0; line < pageLine && offset >= 0; line++) {
+            offset = TextUtils.indexOf(text, '\n', offset);
+            if (offset >= 0) offset++;
+        }
+        android.text.Layout layout = contentEditText.getLayout();
+        int layoutLine = layout.getLineForOffset(Math.max(0, offset));
+        return layout.getLineTop(layoutLine) + contentEditText.getPaddingTop();
+    }
+    
+    private void showViewerPage(int firstLine) {
+        viewerFirstLine = Math.max(0, Math.min(firstLine, mappedFile.getLineCount() - 1));
+        contentEditText.setText(mappedFile.getLines(viewerFirstLine, VIEWER_PAGE_LINES));
+        
+        int lastLine = Math.min(mappedFile.getLineCount(), viewerFirstLine + VIEWER_PAGE_LINES);
+        updateStatus(String.format(Locale.getDefault(), "قراءة فقط (ملف كبير): الأسطر %d-%d من %d",
+            viewerFirstLine + 1, lastLine, mappedFile.getLineCount()));
+    }
+    
+    private void closeMappedFile(MappedTextFile mapped) {
+        try {
+            mapped.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+    
     private void setupTextWatcher() {
         contentEditText.addTextChangedListener(new TextWatcher() {
             @Override
@@ -129,7 +325,17 @@ public class FileContentEditor extends AppCompatActivity {
             
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                hasUnsavedChanges = !s.toString().equals(originalContent);
+                // Viewer pages are not part of the document
+                if (mappedFile != null) return;
+                
+                if (document.length() == s.length() - count + before) {
+                    document.replace(start, start + before, s.subSequence(start, start + count));
+                } else {
+                    document.setText(s);
+                }
+                if (isLoading || loadFailed) return;
+                
+                hasUnsavedChanges = document.getVersion() != savedVersion;
                 updateStatus();
                 scheduleAutoSave();
             }
@@ -144,7 +350,7 @@ public class FileContentEditor extends AppCompatActivity {
             contentEditText.removeCallbacks(saveTask);
         }
         
-        if (isAutoSave && hasUnsavedChanges) {
+        if (isAutoSave && hasUnsavedChanges && !loadFailed) {
             saveTask = () -> {
                 if (hasUnsavedChanges) {
                     saveFile();
@@ -159,28 +365,13 @@ public class FileContentEditor extends AppCompatActivity {
             showError("لا يوجد ملف للحفظ");
             return;
         }
+        if (mappedFile != null || isLoading || loadFailed) {
+            showToast("الملف مفتوح للقراءة فقط");
+            return;
+        }
         
-        new Thread(() -> {
-            try {
-                String newContent = contentEditText.getText().toString();
-                
-                try (BufferedWriter writer = new BufferedWriter(
-                    new OutputStreamWriter(new FileOutputStream(currentFile), StandardCharsets.UTF_8))) {
-                    writer.write(newContent);
-                }
-                
-                originalContent = newContent;
-                hasUnsavedChanges = false;
-                
-                runOnUiThread(() -> {
-                    updateFileInfo();
-                    updateStatus("تم حفظ الملف");
-                });
-                
-            } catch (IOException e) {
-                runOnUiThread(() -> showError("خطأ في حفظ الملف: " + e.getMessage()));
-            }
-        }).start();
+        // Capture an immutable snapshot on the UI thread; the save thread never touches the view
+        saveService.save(document.snapshot());
     }
     
     private void updateFileInfo() {
@@ -247,29 +438,29 @@ public class FileContentEditor extends AppCompatActivity {
             case android.R.id.home:
                 onBackPressed();
                 return true;
-                
+            
             case R.id.action_save:
                 saveFile();
                 return true;
-                
+            
             case R.id.action_find_replace:
                 showFindReplaceDialog();
                 return true;
-                
+            
             case R.id.action_auto_save:
                 isAutoSave = !isAutoSave;
                 item.setChecked(isAutoSave);
                 showToast(isAutoSave ? "تم تفعيل الحفظ التلقائي" : "تم إلغاء الحفظ التلقائي");
                 return true;
-                
+            
             case R.id.action_share:
                 shareFile();
                 return true;
-                
+            
             case R.id.action_properties:
                 showFileProperties();
                 return true;
-                
+            
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -316,8 +507,10 @@ public class FileContentEditor extends AppCompatActivity {
     }
     
     private void findInText(String searchText) {
-        String content = contentEditText.getText().toString();
-        int index = content.indexOf(searchText);
+        // The viewer only searches the page on screen
+        int index = mappedFile != null
+            ? TextUtils.indexOf(contentEditText.getText(), searchText)
+            : document.indexOf(searchText, 0);
         
         if (index >= 0) {
             contentEditText.setSelection(index, index + searchText.length());
@@ -328,14 +521,16 @@ public class FileContentEditor extends AppCompatActivity {
     }
     
     private void replaceOne(String searchText, String replaceText) {
-        String content = contentEditText.getText().toString();
-        int index = content.indexOf(searchText);
+        if (mappedFile != null || isLoading || loadFailed) {
+            showToast("الملف مفتوح للقراءة فقط");
+            return;
+        }
+        
+        int index = document.indexOf(searchText, 0);
         
         if (index >= 0) {
-            String newContent = content.substring(0, index) + 
-                              replaceText + 
-                              content.substring(index + searchText.length());
-            contentEditText.setText(newContent);
+            // Replace only the matched range instead of resetting the whole text
+            contentEditText.getText().replace(index, index + searchText.length(), replaceText);
             contentEditText.setSelection(index, index + replaceText.length());
         } else {
             showToast("النص غير موجود");
@@ -343,6 +538,11 @@ public class FileContentEditor extends AppCompatActivity {
     }
     
     private void replaceAll(String searchText, String replaceText) {
+        if (mappedFile != null || isLoading || loadFailed) {
+            showToast("الملف مفتوح للقراءة فقط");
+            return;
+        }
+        
         String content = contentEditText.getText().toString();
         String newContent = content.replace(searchText, replaceText);
         
@@ -408,6 +608,20 @@ public class FileContentEditor extends AppCompatActivity {
         }
     }
     
+    @Override
+    protected void onDestroy() {
+        // Stops a streaming load and releases the viewer's mapping
+        isDestroyed = true;
+        // Pending saves still finish; only their UI callbacks are dropped
+        if (saveService != null) {
+            saveService.setSaveListener(null);
+        }
+        if (mappedFile != null) {
+            closeMappedFile(mappedFile);
+        }
+        super.onDestroy();
+    }
+    
     @Override
     protected void onResume() {
         super.onResume();
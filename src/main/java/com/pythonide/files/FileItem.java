@@ -10,19 +10,37 @@ public class FileItem implements Serializable {
     
     private File file;
     private boolean isParentLink;
+    private boolean isDirectory;
     private long size;
     private long lastModified;
     
+    // Derived once on first use; items are rebound many times while scrolling
+    private transient String extension;
+    private transient String formattedSize;
+    private transient String formattedDate;
+    
     public FileItem(File file, boolean isParentLink) {
         this.file = file;
         this.isParentLink = isParentLink;
         
         if (file != null) {
+            this.isDirectory = file.isDirectory();
             this.size = file.length();
             this.lastModified = file.lastModified();
         }
     }
     
+    /**
+     * عنصر بخصائص مقروءة مسبقاً (من قراءة المجلد) دون استعلام إضافي من نظام الملفات
+     */
+    public FileItem(File file, boolean isDirectory, long size, long lastModified) {
+        this.file = file;
+        this.isParentLink = false;
+        this.isDirectory = isDirectory;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+    
     public File getFile() {
         return file;
     }
@@ -41,17 +59,21 @@ public class FileItem implements Serializable {
     }
     
     public String getExtension() {
-        if (file == null) return "";
-        String name = file.getName();
-        int lastDot = name.lastIndexOf('.');
-        if (lastDot > 0 && lastDot < name.length() - 1) {
-            return name.substring(lastDot + 1).toLowerCase();
+        if (extension == null) {
+            extension = "";
+            if (file != null) {
+                String name = file.getName();
+                int lastDot = name.lastIndexOf('.');
+                if (lastDot > 0 && lastDot < name.length() - 1) {
+                    extension = name.substring(lastDot + 1).toLowerCase();
+                }
+            }
         }
-        return "";
+        return extension;
     }
     
     public boolean isDirectory() {
-        return file != null && file.isDirectory();
+        return isDirectory;
     }
     
     public boolean isParentLink() {
@@ -59,7 +81,7 @@ public class FileItem implements Serializable {
     }
     
     public boolean isFile() {
-        return file != null && file.isFile();
+        return file != null && !isDirectory;
     }
     
     public long getSize() {
@@ -71,11 +93,17 @@ public class FileItem implements Serializable {
     }
     
     public String getFormattedSize() {
-        return formatFileSize(size);
+        if (formattedSize == null) {
+            formattedSize = formatFileSize(size);
+        }
+        return formattedSize;
     }
     
     public String getFormattedDate() {
-        return formatDate(lastModified);
+        if (formattedDate == null) {
+            formattedDate = formatDate(lastModified);
+        }
+        return formattedDate;
     }
     
     public boolean canRead() {
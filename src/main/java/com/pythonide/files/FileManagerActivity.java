@@ -31,6 +31,7 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
+import com.pythonide.editor.CodeEditorActivity;
 
 import java.io.*;
 import java.util.*;
@@ -69,6 +70,7 @@ public class FileManagerActivity extends AppCompatActivity {
     // Data
     private FileAdapter fileAdapter;
     private List<FileItem> currentFiles = new ArrayList<>();
+    private final DirectoryLister directoryLister = new DirectoryLister();
     private File currentDirectory;
     private Stack<String> navigationHistory = new Stack<>();
     
@@ -79,6 +81,7 @@ public class FileManagerActivity extends AppCompatActivity {
     // Search functionality
     private EditText searchEditText;
     private SearchView searchView;
+    private FindInFiles findInFiles;
     
     // Drag & Drop
     private GestureDetector gestureDetector;
@@ -117,6 +120,10 @@ public class FileManagerActivity extends AppCompatActivity {
         
         // Setup swipe refresh
         swipeRefreshLayout.setOnRefreshListener(() -> {
+            // An explicit refresh rereads the directory instead of trusting the cache
+            if (currentDirectory != null) {
+                directoryLister.invalidate(currentDirectory);
+            }
             loadFiles(currentDirectory);
             swipeRefreshLayout.setRefreshing(false);
         });
@@ -149,7 +156,7 @@ public class FileManagerActivity extends AppCompatActivity {
     }
     
     private void setupRecyclerView() {
-        fileAdapter = new FileAdapter(this, currentFiles, this::onFileClick, this::onFileLongClick);
+        fileAdapter = new FileAdapter(this, this::onFileClick, this::onFileLongClick);
         fileRecyclerView.setAdapter(fileAdapter);
         fileRecyclerView.setLayoutManager(listLayoutManager);
         
@@ -184,7 +191,9 @@ public class FileManagerActivity extends AppCompatActivity {
             searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
                 @Override
                 public boolean onQueryTextSubmit(String query) {
-                    return false;
+                    // Typing filters names; submitting searches file contents
+                    searchInFiles(query);
+                    return true;
                 }
                 
                 @Override
@@ -241,52 +250,21 @@ public class FileManagerActivity extends AppCompatActivity {
         this.currentDirectory = directory;
         currentPathTextView.setText(directory.getAbsolutePath());
         
-        new Thread(() -> {
-            try {
-                File[] files = directory.listFiles();
-                if (files != null) {
-                    List<FileItem> fileList = new ArrayList<>();
-                    
-                    // Add parent directory link
-                    if (directory.getParentFile() != null) {
-                        fileList.add(new FileItem(directory.getParentFile(), true));
-                    }
-                    
-                    // Add directories first, then files
-                    List<FileItem> directories = new ArrayList<>();
-                    List<FileItem> regularFiles = new ArrayList<>();
-                    
-                    for (File file : files) {
-                        FileItem item = new FileItem(file, false);
-                        if (file.isDirectory()) {
-                            directories.add(item);
-                        } else {
-                            regularFiles.add(item);
-                        }
-                    }
-                    
-                    // Sort directories and files
-                    Collections.sort(directories, (a, b) -> 
-                        a.getName().toLowerCase().compareTo(b.getName().toLowerCase()));
-                    Collections.sort(regularFiles, (a, b) -> 
-                        a.getName().toLowerCase().compareTo(b.getName().toLowerCase()));
-                    
-                    fileList.addAll(directories);
-                    fileList.addAll(regularFiles);
-                    
-                    // Update UI on main thread
-                    runOnUiThread(() -> {
-                        currentFiles.clear();
-                        currentFiles.addAll(fileList);
-                        fileAdapter.notifyDataSetChanged();
-                        updateStatusText();
-                    });
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading files", e);
-                runOnUiThread(() -> showError("خطأ في تحميل الملفات: " + e.getMessage()));
+        // Listing, sorting and diffing run off the main thread; navigating again cancels this load
+        directoryLister.load(directory, new DirectoryLister.Listener() {
+            @Override
+            public void onEntries(File listedDirectory, List<FileItem> items, boolean complete) {
+                currentFiles.clear();
+                currentFiles.addAll(items);
+                fileAdapter.submitList(items);
+                updateStatusText();
             }
-        }).start();
+            
+            @Override
+            public void onError(File listedDirectory, Exception error) {
+                showError("خطأ في تحميل الملفات: " + error.getMessage());
+            }
+        });
     }
     
     private void updateStatusText() {
@@ -528,6 +506,13 @@ public class FileManagerActivity extends AppCompatActivity {
     }
     
     private void openFile(FileItem fileItem) {
+        // Python sources open in the code editor, which indexes the project around them
+        if (fileItem.getName().toLowerCase().endsWith(".py")) {
+            Intent intent = new Intent(this, CodeEditorActivity.class);
+            intent.putExtra("file_path", fileItem.getFile().getAbsolutePath());
+            startActivity(intent);
+            return;
+        }
         try {
             Intent intent = new Intent(Intent.ACTION_VIEW);
             Uri uri = android.support.v4.content.FileProvider.getUriForFile(
@@ -587,12 +572,70 @@ public class FileManagerActivity extends AppCompatActivity {
             runOnUiThread(() -> {
                 currentFiles.clear();
                 currentFiles.addAll(filteredList);
-                fileAdapter.notifyDataSetChanged();
+                fileAdapter.submitList(filteredList);
                 updateStatusText();
             });
         }).start();
     }
     
+    private void searchInFiles(String query) {
+        if (query.isEmpty() || currentDirectory == null) return;
+        
+        if (findInFiles != null) {
+            findInFiles.cancel();
+        }
+        findInFiles = new FindInFiles(currentDirectory);
+        
+        List<FindInFiles.Match> results = new ArrayList<>();
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        ListView listView = new ListView(this);
+        listView.setAdapter(adapter);
+        
+        AlertDialog dialog = new AlertDialog.Builder(this)
+            .setTitle("جارٍ البحث عن \"" + query + "\"...")
+            .setView(listView)
+            .setNegativeButton("إغلاق", null)
+            .create();
+        
+        final FindInFiles search = findInFiles;
+        dialog.setOnDismissListener(d -> search.cancel());
+        listView.setOnItemClickListener((parent, view, position, id) -> {
+            FindInFiles.Match match = results.get(position);
+            Intent intent = new Intent(this, FileContentEditor.class);
+            intent.putExtra("file_path", match.file.getAbsolutePath());
+            startActivity(intent);
+            dialog.dismiss();
+        });
+        dialog.show();
+        
+        String rootPath = currentDirectory.getAbsolutePath();
+        search.start(query, false, false, new FindInFiles.ResultListener() {
+            @Override
+            public void onMatches(List<FindInFiles.Match> matches) {
+                List<String> lines = new ArrayList<>(matches.size());
+                for (FindInFiles.Match match : matches) {
+                    String path = match.file.getAbsolutePath();
+                    if (path.startsWith(rootPath + File.separator)) {
+                        path = path.substring(rootPath.length() + 1);
+                    }
+                    lines.add(path + ":" + (match.line + 1) + ": " + match.lineText.trim());
+                }
+                results.addAll(matches);
+                adapter.addAll(lines);
+                dialog.setTitle("البحث: " + results.size() + " نتيجة");
+            }
+            
+            @Override
+            public void onComplete(int filesSearched, int matchCount, boolean truncated) {
+                String title = matchCount + " نتيجة في " + filesSearched + " ملف";
+                if (truncated) {
+                    title += " (تم الاكتفاء بأول النتائج)";
+                }
+                dialog.setTitle(title);
+            }
+        });
+    }
+    
     private void goBack() {
         if (!navigationHistory.isEmpty()) {
             String previousPath = navigationHistory.pop();
@@ -900,6 +943,10 @@ public class FileManagerActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         stopAutoSave();
+        directoryLister.release();
+        if (findInFiles != null) {
+            findInFiles.cancel();
+        }
     }
     
     @Override
@@ -0,0 +1,236 @@
+package com.pythonide.files;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.pythonide.editor.TextDocument;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * FileSaveService - خدمة حفظ آمنة لملف واحد
+ * كل عمليات الكتابة تمر بخيط واحد، وطلبات الحفظ المتراكمة أثناء الكتابة تُدمج في آخرها.
+ * يُكتب المحتوى إلى ملف مؤقت ثم يُزامن مع القرص ويُعاد تسميته فوق الأصلي، فلا يبقى ملف نصف مكتوب عند الانهيار،
+ * ولا يُكتب شيء إذا لم تتغير بصمة المحتوى منذ آخر حفظ
+ */
+public class FileSaveService {
+    
+    private static final int CHAR_CHUNK = 8192;
+    private static final int BYTE_CHUNK = 64 * 1024;
+    
+    // One writer thread for every file, so two saves can never overlap
+    private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor();
+    
+    public interface SaveListener {
+        /**
+         * @param written false إذا كان المحتوى مطابقاً لآخر حفظ ولم يُكتب شيء
+         */
+        void onSaved(long version, boolean written);
+        void onSaveFailed(long version, IOException error);
+    }
+    
+    private final File target;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private SaveListener listener;
+    
+    // Guarded by this; a newer snapshot replaces one that has not started writing yet
+    private TextDocument pending;
+    private boolean drainScheduled = false;
+    
+    // Used only on the save thread
+    private long savedHash;
+    private boolean hasSavedHash = false;
+    
+    public FileSaveService(File target) {
+        this.target = target;
+    }
+    
+    public void setSaveListener(SaveListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * تسجيل محتوى مطابق لما على القرص (بعد التحميل) دون كتابته
+     */
+    public void markSaved(TextDocument snapshot) {
+        SAVE_EXECUTOR.execute(() -> {
+            savedHash = hash(snapshot);
+            hasSavedHash = true;
+        });
+    }
+    
+    /**
+     * طلب حفظ لقطة ثابتة من المستند؛ يحل محل أي طلب لم تبدأ كتابته بعد
+     */
+    public void save(TextDocument snapshot) {
+        synchronized (this) {
+            pending = snapshot;
+            if (drainScheduled) return;
+            drainScheduled = true;
+        }
+        SAVE_EXECUTOR.execute(this::drain);
+    }
+    
+    private void drain() {
+        boolean drained = false;
+        try {
+            while (true) {
+                TextDocument content;
+                synchronized (this) {
+                    content = pending;
+                    pending = null;
+                    if (content == null) {
+                        drainScheduled = false;
+                        drained = true;
+                        return;
+                    }
+                }
+                writeSnapshot(content);
+            }
+        } finally {
+            if (!drained) {
+                // Left by an unexpected error; a stuck flag would silently drop every later save()
+                boolean reschedule;
+                synchronized (this) {
+                    reschedule = pending != null;
+                    drainScheduled = reschedule;
+                }
+                if (reschedule) {
+                    SAVE_EXECUTOR.execute(this::drain);
+                }
+            }
+        }
+    }
+    
+    private void writeSnapshot(TextDocument content) {
+        long version = content.getVersion();
+        long contentHash = hash(content);
+        if (hasSavedHash && contentHash == savedHash) {
+            mainHandler.post(() -> {
+                if (listener != null) {
+                    listener.onSaved(version, false);
+                }
+            });
+            return;
+        }
+        
+        try {
+            writeAtomically(content);
+            savedHash = contentHash;
+            hasSavedHash = true;
+            mainHandler.post(() -> {
+                if (listener != null) {
+                    listener.onSaved(version, true);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            Log.e("FileSaveService", "Error saving " + target, e);
+            IOException error = e instanceof IOException ? (IOException) e : new IOException(e);
+            mainHandler.post(() -> {
+                if (listener != null) {
+                    listener.onSaveFailed(version, error);
+                }
+            });
+        }
+    }
+    
+    /**
+     * كتابة المحتوى إلى ملف مؤقت بجوار الهدف، مزامنته، ثم استبدال الهدف به
+     */
+    private void writeAtomically(TextDocument content) throws IOException {
+        // Same directory, so the rename never crosses file systems
+        File temp = new File(target.getParentFile(), "." + target.getName() + ".saving");
+        boolean replaced = false;
+        try {
+            try (FileOutputStream output = new FileOutputStream(temp);
+                 FileChannel channel = output.getChannel()) {
+                CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                char[] chars = new char[CHAR_CHUNK];
+                CharBuffer charBuffer = CharBuffer.wrap(chars);
+                ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_CHUNK);
+                
+                int length = content.length();
+                for (int start = 0; start < length; start += CHAR_CHUNK) {
+                    int end = Math.min(length, start + CHAR_CHUNK);
+                    content.getChars(start, end, chars, 0);
+                    charBuffer.limit(end - start).position(0);
+                    encode(encoder, charBuffer, bytes, channel, end == length);
+                    // A surrogate pair split at the chunk edge is re-read with the next chunk
+                    start -= charBuffer.remaining();
+                    charBuffer.clear();
+                }
+                if (length == 0) {
+                    // flush() is only legal after an end-of-input encode, which the loop skips for empty content
+                    encode(encoder, CharBuffer.allocate(0), bytes, channel, true);
+                }
+                while (true) {
+                    CoderResult result = encoder.flush(bytes);
+                    flushBytes(bytes, channel);
+                    if (!result.isOverflow()) break;
+                }
+                channel.force(true);
+            }
+            
+            if (!temp.renameTo(target)) {
+                throw new IOException("Could not replace " + target);
+            }
+            replaced = true;
+        } finally {
+            if (!replaced) {
+                temp.delete();
+            }
+        }
+    }
+    
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes,
+                               FileChannel channel, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (!result.isOverflow()) return;
+            flushBytes(bytes, channel);
+        }
+    }
+    
+    private static void flushBytes(ByteBuffer bytes, FileChannel channel) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+    
+    /**
+     * بصمة 64 بت للمحتوى (FNV-1a على المحارف)
+     */
+    private static long hash(TextDocument content) {
+        long hash = 0xcbf29ce484222325L;
+        char[] chars = new char[CHAR_CHUNK];
+        int length = content.length();
+        for (int start = 0; start < length; start += CHAR_CHUNK) {
+            int end = Math.min(length, start + CHAR_CHUNK);
+            content.getChars(start, end, chars, 0);
+            for (int i = 0; i < end - start; i++) {
+                hash ^= chars[i];
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash ^ length;
+    }
+}
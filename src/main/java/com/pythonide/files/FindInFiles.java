@@ -0,0 +1,333 @@
+package com.pythonide.files;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * FindInFiles - البحث في محتوى ملفات المشروع
+ * يمر على المجلدات بالتوازي عبر مجمّع عمل محدود يتبادل المهام (work stealing)،
+ * ويقرأ الملفات بـ NIO (ربط بالذاكرة للملفات الكبيرة)، ويتخطى الملفات الثنائية والمجلدات المهملة،
+ * ويرسل النتائج إلى الواجهة على دفعات أثناء البحث مع إمكانية الإلغاء
+ */
+public class FindInFiles {
+    
+    private static final String TAG = "FindInFiles";
+    
+    // Larger files are mapped instead of read into a buffer
+    private static final int MAP_THRESHOLD = 64 * 1024;
+    private static final long MAX_FILE_SIZE = 16 * 1024 * 1024;
+    // A NUL byte in the first block marks the file as binary
+    private static final int BINARY_CHECK_BYTES = 8 * 1024;
+    private static final int MAX_LINE_PREVIEW = 200;
+    // Stop once this many matches are found; the list is for reading, not exporting
+    private static final int MAX_RESULTS = 10000;
+    private static final long FLUSH_INTERVAL_MS = 100;
+    // Buffers up to this size are kept per worker; larger files get a one-off buffer
+    private static final int CACHED_BUFFER_LIMIT = 1024 * 1024;
+    
+    private static final ForkJoinPool SEARCH_POOL =
+        new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    
+    // Per worker buffers, grown on demand and reused across files
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = new ThreadLocal<>();
+    private static final ThreadLocal<CharBuffer> DECODE_BUFFER = new ThreadLocal<>();
+    
+    public interface ResultListener {
+        /**
+         * دفعة نتائج جديدة (على خيط الواجهة)
+         */
+        void onMatches(List<Match> matches);
+        
+        /**
+         * @param truncated true إذا توقف البحث عند الحد الأقصى للنتائج
+         */
+        void onComplete(int filesSearched, int matchCount, boolean truncated);
+    }
+    
+    private final File root;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Search currentSearch;
+    
+    public FindInFiles(File root) {
+        this.root = root;
+    }
+    
+    /**
+     * بدء بحث جديد (يلغي أي بحث جارٍ)
+     */
+    public void start(String query, boolean caseSensitive, boolean useRegex, ResultListener listener) {
+        cancel();
+        
+        int flags = Pattern.MULTILINE;
+        if (!caseSensitive) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        if (!useRegex) {
+            flags |= Pattern.LITERAL;
+        }
+        Search search = new Search(Pattern.compile(query, flags), listener);
+        currentSearch = search;
+        SEARCH_POOL.execute(() -> search.run(root));
+    }
+    
+    /**
+     * إلغاء البحث الجاري؛ لا تصل بعده أي نتائج
+     */
+    public void cancel() {
+        if (currentSearch != null) {
+            currentSearch.cancelled.set(true);
+            currentSearch = null;
+        }
+    }
+    
+    /**
+     * نتيجة واحدة: سطر في ملف
+     */
+    public static class Match {
+        public final File file;
+        public final int line; // zero based
+        public final int column;
+        public final String lineText;
+        
+        Match(File file, int line, int column, String lineText) {
+            this.file = file;
+            this.line = line;
+            this.column = column;
+            this.lineText = lineText;
+        }
+    }
+    
+    /**
+     * حالة بحث واحد مشتركة بين مهام المجلدات
+     */
+    private class Search {
+        final Pattern pattern;
+        final ResultListener listener;
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        final AtomicBoolean truncated = new AtomicBoolean(false);
+        final AtomicInteger filesSearched = new AtomicInteger();
+        final AtomicInteger matchCount = new AtomicInteger();
+        final ConcurrentLinkedQueue<Match> pending = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        
+        Search(Pattern pattern, ResultListener listener) {
+            this.pattern = pattern;
+            this.listener = listener;
+        }
+        
+        void run(File directory) {
+            long startTime = System.currentTimeMillis();
+            try {
+                new DirectoryTask(this, directory).invoke();
+            } catch (Exception e) {
+                Log.e(TAG, "Error searching " + directory, e);
+            }
+            Log.d(TAG, "Searched " + filesSearched.get() + " files in "
+                + (System.currentTimeMillis() - startTime) + "ms, " + matchCount.get() + " matches");
+            
+            mainHandler.post(() -> {
+                if (cancelled.get()) return;
+                
+                flush();
+                if (currentSearch == this) {
+                    currentSearch = null;
+                }
+                listener.onComplete(filesSearched.get(), matchCount.get(), truncated.get());
+            });
+        }
+        
+        boolean isStopped() {
+            return cancelled.get() || truncated.get();
+        }
+        
+        void publish(List<Match> matches) {
+            pending.addAll(matches);
+            if (matchCount.addAndGet(matches.size()) >= MAX_RESULTS) {
+                truncated.set(true);
+            }
+            // Batch results so the UI sees at most one update per interval
+            if (flushScheduled.compareAndSet(false, true)) {
+                mainHandler.postDelayed(this::flush, FLUSH_INTERVAL_MS);
+            }
+        }
+        
+        /**
+         * تسليم النتائج المتراكمة (على خيط الواجهة)
+         */
+        void flush() {
+            flushScheduled.set(false);
+            if (pending.isEmpty() || cancelled.get()) return;
+            
+            List<Match> batch = new ArrayList<>();
+            Match match;
+            while ((match = pending.poll()) != null) {
+                batch.add(match);
+            }
+            listener.onMatches(batch);
+        }
+    }
+    
+    /**
+     * مهمة مجلد: تُفرّع المجلدات الفرعية كمهام مستقلة ثم تبحث في ملفاته
+     */
+    private static class DirectoryTask extends RecursiveAction {
+        private final Search search;
+        private final File directory;
+        
+        DirectoryTask(Search search, File directory) {
+            this.search = search;
+            this.directory = directory;
+        }
+        
+        @Override
+        protected void compute() {
+            if (search.isStopped()) return;
+            
+            File[] children = directory.listFiles();
+            if (children == null) return;
+            
+            // A virtualenv is recognised by its config file, whatever it is called
+            for (File child : children) {
+                if (child.getName().equals("pyvenv.cfg")) return;
+            }
+            
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    if (!isIgnoredDirectory(child.getName())) {
+                        DirectoryTask task = new DirectoryTask(search, child);
+                        task.fork();
+                        subtasks.add(task);
+                    }
+                } else if (child.length() <= MAX_FILE_SIZE) {
+                    if (search.isStopped()) break;
+                    searchFile(search, child);
+                }
+            }
+            for (DirectoryTask task : subtasks) {
+                task.join();
+            }
+        }
+    }
+    
+    private static boolean isIgnoredDirectory(String name) {
+        return name.startsWith(".") || name.equals("__pycache__") || name.equals("node_modules")
+            || name.equals("site-packages") || name.equals("venv");
+    }
+    
+    private static void searchFile(Search search, File file) {
+        CharBuffer text;
+        try {
+            text = readText(file);
+        } catch (IOException e) {
+            Log.d(TAG, "Skipping unreadable file " + file);
+            return;
+        }
+        if (text == null) return; // binary
+        search.filesSearched.incrementAndGet();
+        
+        Matcher matcher = search.pattern.matcher(text);
+        List<Match> matches = null;
+        // Line numbers are counted incrementally between matches
+        int line = 0;
+        int lineStart = 0;
+        int scanned = 0;
+        int lastReportedLine = -1;
+        while (matcher.find()) {
+            int start = matcher.start();
+            for (; scanned < start; scanned++) {
+                if (text.get(scanned) == '\n') {
+                    line++;
+                    lineStart = scanned + 1;
+                }
+            }
+            // One entry per line, however many times it matches
+            if (line == lastReportedLine) continue;
+            lastReportedLine = line;
+            
+            int lineEnd = lineStart;
+            int limit = Math.min(text.limit(), lineStart + MAX_LINE_PREVIEW);
+            while (lineEnd < limit && text.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (matches == null) {
+                matches = new ArrayList<>();
+            }
+            matches.add(new Match(file, line, start - lineStart, text.subSequence(lineStart, lineEnd).toString()));
+        }
+        if (matches != null) {
+            search.publish(matches);
+        }
+    }
+    
+    /**
+     * قراءة الملف وفك ترميزه إلى مخزن المحارف الخاص بالخيط
+     * @return null إذا كان الملف ثنائياً
+     */
+    private static CharBuffer readText(File file) throws IOException {
+        try (FileInputStream input = new FileInputStream(file);
+             FileChannel channel = input.getChannel()) {
+            int size = (int) channel.size();
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = READ_BUFFER.get();
+                if (bytes == null || bytes.capacity() < size) {
+                    bytes = ByteBuffer.allocate(Math.max(size, 16 * 1024));
+                    if (size <= CACHED_BUFFER_LIMIT) {
+                        READ_BUFFER.set(bytes);
+                    }
+                }
+                bytes.clear();
+                bytes.limit(size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // Keep reading until the buffer is full or the file ends
+                }
+                bytes.flip();
+            }
+            
+            int checkLimit = Math.min(bytes.limit(), BINARY_CHECK_BYTES);
+            for (int i = 0; i < checkLimit; i++) {
+                if (bytes.get(i) == 0) return null;
+            }
+            
+            CharBuffer chars = DECODE_BUFFER.get();
+            if (chars == null || chars.capacity() < bytes.limit()) {
+                // UTF-8 never decodes to more chars than bytes
+                chars = CharBuffer.allocate(Math.max(bytes.limit(), 16 * 1024));
+                if (bytes.limit() <= CACHED_BUFFER_LIMIT) {
+                    DECODE_BUFFER.set(chars);
+                }
+            }
+            chars.clear();
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            chars.flip();
+            return chars;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.pythonide.files;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * MappedTextFile - ملف نصي مربوط بالذاكرة للقراءة فقط
+ * يُقرأ المحتوى مباشرة من الملف المربوط ولا يُفك ترميز إلا الأسطر المعروضة.
+ * فهرس الأسطر متناثر (موضع كل سطر رقم LINE_STRIDE) فتبقى الذاكرة شبه ثابتة مهما كبر الملف
+ */
+public class MappedTextFile implements Closeable {
+    
+    // Byte offset of every LINE_STRIDE-th line is kept; lines in between are found by scanning
+    private static final int LINE_STRIDE = 128;
+    
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private int[] checkpoints = new int[1024];
+    private int lineCount;
+    
+    /**
+     * ربط الملف ومسحه مرة واحدة لعد الأسطر (يُستدعى من خيط خلفي)
+     */
+    public MappedTextFile(File source) throws IOException {
+        if (source.length() > Integer.MAX_VALUE) {
+            throw new IOException("File too large to map: " + source.length());
+        }
+        file = new RandomAccessFile(source, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            size = (int) channel.size();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        buildLineIndex();
+    }
+    
+    private void buildLineIndex() {
+        int lines = 1;
+        checkpoints[0] = 0;
+        for (int i = 0; i < size; i++) {
+            if (buffer.get(i) == '\n') {
+                if (lines % LINE_STRIDE == 0) {
+                    int slot = lines / LINE_STRIDE;
+                    if (slot == checkpoints.length) {
+                        checkpoints = Arrays.copyOf(checkpoints, slot * 2);
+                    }
+                    checkpoints[slot] = i + 1;
+                }
+                lines++;
+            }
+        }
+        lineCount = lines;
+    }
+    
+    public int getLineCount() {
+        return lineCount;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * نص الأسطر [firstLine, firstLine + count) مفكوك الترميز من UTF-8
+     */
+    public String getLines(int firstLine, int count) {
+        firstLine = Math.max(0, Math.min(firstLine, lineCount - 1));
+        int endLine = Math.min(lineCount, firstLine + count);
+        int start = getLineOffset(firstLine);
+        int end = endLine == lineCount ? size : getLineOffset(endLine) - 1;
+        
+        ByteBuffer range = buffer.duplicate();
+        range.limit(end);
+        range.position(start);
+        return StandardCharsets.UTF_8.decode(range).toString();
+    }
+    
+    /**
+     * موضع بداية السطر بالبايت: أقرب نقطة مرجعية ثم مسح حتى LINE_STRIDE سطراً
+     */
+    private int getLineOffset(int line) {
+        int offset = checkpoints[line / LINE_STRIDE];
+        for (int remaining = line % LINE_STRIDE; remaining > 0; offset++) {
+            if (buffer.get(offset) == '\n') {
+                remaining--;
+            }
+        }
+        return offset;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        // The mapping itself is released when the buffer is collected
+        file.close();
+    }
+}
@@ -0,0 +1,150 @@
+package com.pythonide.files;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.drawable.Drawable;
+import android.graphics.pdf.PdfRenderer;
+import android.os.ParcelFileDescriptor;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.Option;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.IOException;
+
+/**
+ * ThumbnailLoader - مصغرات الصور والفيديو وملفات PDF في مدير الملفات
+ * يمر عبر Glide: فك ترميز مُصغَّر بحجم الأيقونة، ذاكرة LRU في الذاكرة وذاكرة على القرص داخل مجلد التخزين المؤقت،
+ * ومجمّع خيوط محدود؛ الطلب مربوط بالـ ImageView فيُلغى عند إعادة استخدامه
+ */
+public class ThumbnailLoader {
+    
+    // Matches the largest icon view, so one cached thumbnail serves list and grid
+    private static final int THUMBNAIL_SIZE_DP = 48;
+    // Frame used for video thumbnails; the very first frame is often black
+    private static final long VIDEO_FRAME_MICROS = 1_000_000;
+    
+    private static final Option<Boolean> PDF_FIRST_PAGE =
+        Option.memory("com.pythonide.files.ThumbnailLoader.PdfFirstPage", false);
+    
+    private static boolean pdfDecoderRegistered = false;
+    
+    private final RequestManager glide;
+    private final RequestOptions thumbnailOptions;
+    
+    public ThumbnailLoader(Context context) {
+        glide = Glide.with(context);
+        registerPdfDecoder(context);
+        
+        int size = Math.round(THUMBNAIL_SIZE_DP * context.getResources().getDisplayMetrics().density);
+        thumbnailOptions = new RequestOptions()
+            .override(size)
+            .centerCrop()
+            // Thumbnails need no alpha; half the memory of ARGB_8888
+            .format(DecodeFormat.PREFER_RGB_565)
+            // Keep the small decoded result on disk, not a copy of the local source
+            .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+            .dontAnimate()
+            // Per-file options below then work on a copy
+            .autoClone();
+    }
+    
+    /**
+     * هل للملف مصغرة
+     */
+    public static boolean hasThumbnail(FileItem fileItem) {
+        return !fileItem.isDirectory() && !fileItem.isParentLink()
+            && (fileItem.isImage() || fileItem.isVideo() || fileItem.isPdf());
+    }
+    
+    /**
+     * تحميل مصغرة الملف في الـ ImageView مع عرض الأيقونة حتى تجهز أو إذا فشل التحميل
+     */
+    public void load(ImageView imageView, FileItem fileItem, Drawable icon) {
+        RequestOptions options = thumbnailOptions
+            // A changed file gets a new cache key instead of a stale thumbnail
+            .signature(new ObjectKey(fileItem.getLastModified() + ":" + fileItem.getSize()))
+            .placeholder(icon)
+            .error(icon);
+        if (fileItem.isVideo()) {
+            options = options.frame(VIDEO_FRAME_MICROS);
+        } else if (fileItem.isPdf()) {
+            options = options.set(PDF_FIRST_PAGE, true);
+        }
+        glide.load(fileItem.getFile()).apply(options).into(imageView);
+    }
+    
+    /**
+     * إلغاء أي تحميل جارٍ للـ ImageView (عند إعادة استخدامه لعنصر آخر)
+     */
+    public void cancel(ImageView imageView) {
+        glide.clear(imageView);
+    }
+    
+    private static synchronized void registerPdfDecoder(Context context) {
+        if (pdfDecoderRegistered) return;
+        pdfDecoderRegistered = true;
+        
+        Glide glideInstance = Glide.get(context);
+        glideInstance.getRegistry().append(ParcelFileDescriptor.class, Bitmap.class,
+            new PdfPageDecoder(glideInstance.getBitmapPool()));
+    }
+    
+    /**
+     * رسم الصفحة الأولى من ملف PDF بـ PdfRenderer، لطلبات المصغرات التي تحمل PDF_FIRST_PAGE فقط
+     */
+    private static class PdfPageDecoder implements ResourceDecoder<ParcelFileDescriptor, Bitmap> {
+        private final BitmapPool bitmapPool;
+        
+        PdfPageDecoder(BitmapPool bitmapPool) {
+            this.bitmapPool = bitmapPool;
+        }
+        
+        @Override
+        public boolean handles(@NonNull ParcelFileDescriptor source, @NonNull Options options) {
+            Boolean pdf = options.get(PDF_FIRST_PAGE);
+            return pdf != null && pdf;
+        }
+        
+        @Nullable
+        @Override
+        public Resource<Bitmap> decode(@NonNull ParcelFileDescriptor source, int width, int height,
+                                       @NonNull Options options) throws IOException {
+            // The renderer closes the descriptor it is given; Glide closes the original
+            try (PdfRenderer renderer = new PdfRenderer(source.dup());
+                 PdfRenderer.Page page = renderer.openPage(0)) {
+                float scale = 1f;
+                if (width != Target.SIZE_ORIGINAL && height != Target.SIZE_ORIGINAL) {
+                    // Cover the requested size; centerCrop trims the rest
+                    scale = Math.max(width / (float) page.getWidth(), height / (float) page.getHeight());
+                }
+                int bitmapWidth = Math.max(1, Math.round(page.getWidth() * scale));
+                int bitmapHeight = Math.max(1, Math.round(page.getHeight() * scale));
+                
+                Bitmap bitmap = bitmapPool.get(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+                // Pages are transparent where nothing is drawn
+                bitmap.eraseColor(Color.WHITE);
+                Matrix matrix = new Matrix();
+                matrix.setScale(scale, scale);
+                page.render(bitmap, null, matrix, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                return BitmapResource.obtain(bitmap, bitmapPool);
+            }
+        }
+    }
+}
@@ -9,16 +9,36 @@ import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
 
 /**
  * IconProvider - مزود الأيقونات لنظام إدارة الملفات
- * ينشئ أيقونات ديناميكية للملفات والمجلدات
+ * ينشئ أيقونات ديناميكية للملفات والمجلدات؛ كل نوع يُرسم مرة واحدة لكل كثافة شاشة
+ * ثم يحصل كل ربط أثناء التمرير على Drawable جديد يشارك الصورة نفسها
  */
 public class IconProvider {
     
+    // Icons are drawn in ICON_SIZE units and rasterized at RASTER_SIZE_DP, the largest icon view
     private static final int ICON_SIZE = 64;
+    private static final int RASTER_SIZE_DP = 48;
     private static final int TEXT_SIZE = 12;
     
+    private static final int TYPE_FOLDER = 0;
+    private static final int TYPE_PARENT = 1;
+    private static final int TYPE_IMAGE = 2;
+    private static final int TYPE_VIDEO = 3;
+    private static final int TYPE_AUDIO = 4;
+    private static final int TYPE_TEXT = 5;
+    private static final int TYPE_PDF = 6;
+    private static final int TYPE_ARCHIVE = 7;
+    private static final int TYPE_CODE = 8;
+    private static final int TYPE_FILE = 9;
+    private static final int TYPE_COUNT = 10;
+    
+    // Keyed by densityDpi * TYPE_COUNT + type; shared by every provider, used on the main thread only.
+    // Holds constant states, not drawables: a view may tint, mutate or set the alpha or bounds of its own
+    private static final SparseArray<Drawable.ConstantState> ICON_CACHE = new SparseArray<>();
+    
     private Context context;
     private Paint textPaint;
     private Paint iconPaint;
@@ -40,12 +60,66 @@ public class IconProvider {
         iconPaint.setAntiAlias(true);
     }
     
+    private Bitmap createIconBitmap() {
+        float density = context.getResources().getDisplayMetrics().density;
+        int size = Math.round(RASTER_SIZE_DP * density);
+        return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    }
+    
+    /**
+     * لوحة رسم بإحداثيات ICON_SIZE مهما كان حجم الصورة الفعلي
+     */
+    private Canvas createIconCanvas(Bitmap bitmap) {
+        Canvas canvas = new Canvas(bitmap);
+        float scale = bitmap.getWidth() / (float) ICON_SIZE;
+        canvas.scale(scale, scale);
+        return canvas;
+    }
+    
+    /**
+     * أيقونة نوع من الذاكرة المؤقتة، تُرسم عند أول طلب فقط
+     */
+    private Drawable getCachedIcon(int type) {
+        int key = context.getResources().getDisplayMetrics().densityDpi * TYPE_COUNT + type;
+        Drawable.ConstantState state = ICON_CACHE.get(key);
+        if (state == null) {
+            state = createIcon(type).getConstantState();
+            ICON_CACHE.put(key, state);
+        }
+        return state.newDrawable(context.getResources());
+    }
+    
+    private Drawable createIcon(int type) {
+        switch (type) {
+            case TYPE_FOLDER:
+                return createFolderIcon();
+            case TYPE_PARENT:
+                return createParentIcon();
+            case TYPE_IMAGE:
+                return createImageIcon();
+            case TYPE_VIDEO:
+                return createVideoIcon();
+            case TYPE_AUDIO:
+                return createAudioIcon();
+            case TYPE_TEXT:
+                return createTextIcon();
+            case TYPE_PDF:
+                return createPdfIcon();
+            case TYPE_ARCHIVE:
+                return createArchiveIcon();
+            case TYPE_CODE:
+                return createCodeIcon();
+            default:
+                return createFileIcon();
+        }
+    }
+    
     /**
      * إنشاء أيقونة للمجلد
      */
     public Drawable createFolderIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية المجلد
         iconPaint.setColor(Color.parseColor("#FFC107"));
@@ -62,8 +136,8 @@ public class IconProvider {
      * إنشاء أيقونة للصور
      */
     public Drawable createImageIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية الصورة
         iconPaint.setColor(Color.parseColor("#4CAF50"));
@@ -83,8 +157,8 @@ public class IconProvider {
      * إنشاء أيقونة للفيديوهات
      */
     public Drawable createVideoIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية الفيديو
         iconPaint.setColor(Color.parseColor("#2196F3"));
@@ -111,8 +185,8 @@ public class IconProvider {
      * إنشاء أيقونة للصوتيات
      */
     public Drawable createAudioIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية الصوت
         iconPaint.setColor(Color.parseColor("#9C27B0"));
@@ -136,8 +210,8 @@ public class IconProvider {
      * إنشاء أيقونة للنصوص
      */
     public Drawable createTextIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية النص
         iconPaint.setColor(Color.parseColor("#607D8B"));
@@ -156,8 +230,8 @@ public class IconProvider {
      * إنشاء أيقونة لملفات PDF
      */
     public Drawable createPdfIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية PDF
         iconPaint.setColor(Color.parseColor("#F44336"));
@@ -175,8 +249,8 @@ public class IconProvider {
      * إنشاء أيقونة للأرشيف
      */
     public Drawable createArchiveIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية الأرشيف
         iconPaint.setColor(Color.parseColor("#FF9800"));
@@ -201,8 +275,8 @@ public class IconProvider {
      * إنشاء أيقونة للملفات العامة
      */
     public Drawable createFileIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية الملف
         iconPaint.setColor(Color.parseColor("#9E9E9E"));
@@ -219,8 +293,8 @@ public class IconProvider {
      * إنشاء أيقونة لملفات الكود
      */
     public Drawable createCodeIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية الكود
         iconPaint.setColor(Color.parseColor("#3F51B5"));
@@ -237,8 +311,8 @@ public class IconProvider {
      * إنشاء أيقونة للمجلد الأب (العودة)
      */
     public Drawable createParentIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية المجلد الأب
         iconPaint.setColor(Color.parseColor("#9E9E9E"));
@@ -263,8 +337,8 @@ public class IconProvider {
      * إنشاء أيقونة فارغة للمجلدات
      */
     public Drawable createEmptyFolderIcon() {
-        Bitmap bitmap = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        Bitmap bitmap = createIconBitmap();
+        Canvas canvas = createIconCanvas(bitmap);
         
         // خلفية المجلد الفارغ
         iconPaint.setColor(Color.parseColor("#BDBDBD"));
@@ -287,16 +361,21 @@ public class IconProvider {
      * الحصول على أيقونة حسب نوع الملف
      */
     public Drawable getIconForFile(String fileName, boolean isDirectory, boolean isParentLink) {
+        return getIconForExtension(getFileExtension(fileName.toLowerCase()), isDirectory, isParentLink);
+    }
+    
+    /**
+     * الحصول على أيقونة حسب الامتداد (بأحرف صغيرة) دون رسم بعد أول مرة
+     */
+    public Drawable getIconForExtension(String extension, boolean isDirectory, boolean isParentLink) {
         if (isParentLink) {
-            return createParentIcon();
+            return getCachedIcon(TYPE_PARENT);
         }
         
         if (isDirectory) {
-            return createFolderIcon();
+            return getCachedIcon(TYPE_FOLDER);
         }
         
-        String extension = getFileExtension(fileName.toLowerCase());
-        
         switch (extension) {
             case "jpg":
             case "jpeg":
@@ -304,7 +383,7 @@ public class IconProvider {
             case "gif":
             case "bmp":
             case "webp":
-                return createImageIcon();
+                return getCachedIcon(TYPE_IMAGE);
                 
             case "mp4":
             case "avi":
@@ -312,7 +391,7 @@ public class IconProvider {
             case "mov":
             case "wmv":
             case "flv":
-                return createVideoIcon();
+                return getCachedIcon(TYPE_VIDEO);
                 
             case "mp3":
             case "wav":
@@ -320,17 +399,17 @@ public class IconProvider {
             case "aac":
             case "ogg":
             case "wma":
-                return createAudioIcon();
+                return getCachedIcon(TYPE_AUDIO);
                 
             case "txt":
             case "log":
             case "md":
             case "rtf":
             case "csv":
-                return createTextIcon();
+                return getCachedIcon(TYPE_TEXT);
                 
             case "pdf":
-                return createPdfIcon();
+                return getCachedIcon(TYPE_PDF);
                 
             case "zip":
             case "rar":
@@ -338,7 +417,7 @@ public class IconProvider {
             case "tar":
             case "gz":
             case "bz2":
-                return createArchiveIcon();
+                return getCachedIcon(TYPE_ARCHIVE);
                 
             case "html":
             case "htm":
@@ -352,10 +431,10 @@ public class IconProvider {
             case "c":
             case "php":
             case "sql":
-                return createCodeIcon();
+                return getCachedIcon(TYPE_CODE);
                 
             default:
-                return createFileIcon();
+                return getCachedIcon(TYPE_FILE);
         }
     }
     
@@ -310,10 +310,13 @@ public class LibraryManagerActivity extends AppCompatActivity implements
      */
     private void setupManagers() {
         packageManager = new PackageManager(this, this);
+        // pip من الطرفية أو من شاشة أخرى يغيّر القائمة أيضاً
+        packageManager.watchInstalledLibraries(this::refreshInstalledLibraries);
         pyPIService = new PyPIService(this, this);
         dependencyResolver = new DependencyResolver();
         compatibilityChecker = new CompatibleLibraryChecker();
         pythonExecutor = new PythonExecutor(this);
+        pythonExecutor.prewarm();
         
         // تحميل رسم التبعيات
         loadDependencyGraph();
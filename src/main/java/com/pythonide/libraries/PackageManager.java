@@ -34,6 +34,8 @@ public class PackageManager {
     private ExecutorService executorService;
     private SharedPreferences sharedPreferences;
     private PythonExecutor pythonExecutor;
+    private PipOperations pipOperations;
+    private SitePackagesScanner.Watcher sitePackagesWatcher;
     
     /**
      * واجهة الاستماع لأحداث التثبيت
@@ -53,6 +55,7 @@ public class PackageManager {
         this.executorService = Executors.newFixedThreadPool(2);
         this.sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         this.pythonExecutor = new PythonExecutor(context);
+        this.pipOperations = new PipOperations(pythonExecutor);
     }
     
     /**
@@ -78,37 +81,34 @@ public class PackageManager {
                     }
                 }
                 
-                // خطوة 2: حل التبعيات
-                updateProgress(options.getPackageName(), 30, "حل التبعيات");
-                List<String> dependencies = new ArrayList<>();
-                
-                if (options.isInstallDependencies()) {
-                    dependencies = resolveDependencies(options.getPackageName());
+                // خطوة 2: التثبيت باستدعاء pip واحد؛ pip نفسه يحل التبعيات ويثبتها في نفس العملية
+                updateProgress(options.getPackageName(), 30, "تحضير التثبيت");
+                List<String> installCommand = options.buildInstallCommand();
+                if (!options.isInstallDependencies()) {
+                    installCommand.add("--no-deps");
                 }
                 
-                // خطوة 3: إنشاء قائمة التثبيت
-                updateProgress(options.getPackageName(), 50, "تحضير التثبيت");
-                List<String> packagesToInstall = new ArrayList<>();
-                packagesToInstall.add(options.getPackageName());
-                packagesToInstall.addAll(dependencies);
+                PipOperations.BatchResult result = pipOperations.install(installCommand,
+                    (packageName, step, collected) -> {
+                        // The number of dependencies is only known once pip has resolved them
+                        int progress = 30 + collected * 60 / (collected + 2);
+                        updateProgress(options.getPackageName(), progress, step + " " + packageName);
+                    });
                 
-                // خطوة 4: تثبيت كل مكتبة
                 List<String> failedPackages = new ArrayList<>();
+                if (!result.isSatisfied(options.getPackageName())) {
+                    failedPackages.add(options.getPackageName());
+                }
                 
-                for (int i = 0; i < packagesToInstall.size(); i++) {
-                    String packageName = packagesToInstall.get(i);
-                    int progress = 50 + (i * 40 / packagesToInstall.size());
-                    updateProgress(options.getPackageName(), progress, 
-                        "تثبيت " + packageName + " (" + (i + 1) + "/" + packagesToInstall.size() + ")");
-                    
-                    boolean success = installSinglePackage(packageName, options);
-                    if (!success) {
-                        failedPackages.add(packageName);
+                // حفظ حالة التثبيت للمكتبة المطلوبة وكل تبعية ثبتها pip
+                List<String> installedPackages = new ArrayList<>();
+                installedPackages.add(options.getPackageName());
+                for (String dependency : result.changed.keySet()) {
+                    if (!PipOperations.normalizeName(options.getPackageName()).equals(dependency)) {
+                        installedPackages.add(dependency);
                     }
-                    
-                    // حفظ حالة التثبيت
-                    saveInstallationStatus(packageName, success);
                 }
+                saveInstallationStatus(installedPackages, failedPackages);
                 
                 // خطوة 5: التحقق النهائي
                 updateProgress(options.getPackageName(), 95, "التحقق من التثبيت");
@@ -120,7 +120,11 @@ public class PackageManager {
                 } else {
                     String errorMessage = failedPackages.isEmpty() ? 
                         "فشل في التحقق من التثبيت" : 
-                        "فشل في تثبيت: " + String.join(", ", failedPackages);
+                        "فشل في تثبيت " + options.getPackageName();
+                    String error = result.getErrorFor(options.getPackageName());
+                    if (error != null) {
+                        errorMessage += ": " + error;
+                    }
                     listener.onInstallationComplete(options.getPackageName(), false, errorMessage);
                 }
                 
@@ -132,45 +136,6 @@ public class PackageManager {
         });
     }
     
-    /**
-     * تثبيت مكتبة واحدة
-     */
-    private boolean installSinglePackage(String packageName, InstallOptions options) {
-        try {
-            // بناء أمر pip install
-            List<String> command = new ArrayList<>();
-            command.add("pip");
-            command.add("install");
-            
-            // إضافة معاملات الإصدار
-            if (options.getVersion() != null) {
-                command.add(packageName + "==" + options.getVersion());
-            } else {
-                command.add("latest");
-                command.add(packageName);
-            }
-            
-            // إضافة معاملات إضافية
-            command.add("--user"); // تثبيت في مجلد المستخدم
-            command.add("--no-warn-script-location"); // تجاهل تحذيرات الموقع
-            
-            // تنفيذ الأمر
-            int exitCode = pythonExecutor.executeCommand(command, options.getPythonVersion());
-            
-            if (exitCode == 0) {
-                Log.i(TAG, "تم تثبيت " + packageName + " بنجاح");
-                return true;
-            } else {
-                Log.e(TAG, "فشل في تثبيت " + packageName);
-                return false;
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "خطأ في تثبيت " + packageName, e);
-            return false;
-        }
-    }
-    
     /**
      * إلغاء تثبيت مكتبة
      */
@@ -207,12 +172,27 @@ public class PackageManager {
      */
     public List<String> uninstallMultiplePackages(List<String> packageNames) {
         List<String> failedPackages = new ArrayList<>();
+        if (packageNames.isEmpty()) {
+            return failedPackages;
+        }
+        
+        // استدعاء pip واحد لكل المكتبات
+        PipOperations.BatchResult result = pipOperations.uninstall(packageNames, null);
         
+        List<LibraryItem> installed = getInstalledLibraries();
         for (String packageName : packageNames) {
-            if (!uninstallPackage(packageName)) {
+            // Exit 0 also covers names pip skipped as not installed
+            if (result.isSuccessful() || result.isSatisfied(packageName)) {
+                String name = PipOperations.normalizeName(packageName);
+                installed.removeIf(library -> PipOperations.normalizeName(library.getName()).equals(name));
+                removeUnusedDependencies(packageName);
+            } else {
                 failedPackages.add(packageName);
+                String error = result.getErrorFor(packageName);
+                Log.e(TAG, "فشل في إلغاء تثبيت " + packageName + (error != null ? ": " + error : ""));
             }
         }
+        saveInstalledLibraries(installed);
         
         return failedPackages;
     }
@@ -221,6 +201,18 @@ public class PackageManager {
      * الحصول على المكتبات المثبتة
      */
     public List<LibraryItem> getInstalledLibraries() {
+        // قراءة site-packages مباشرة؛ لا يُعاد إلا قراءة ما تغير منذ آخر مرة
+        List<File> siteDirs = pythonExecutor.getSitePackagesDirs();
+        if (!siteDirs.isEmpty()) {
+            List<LibraryItem> libraries = new ArrayList<>();
+            for (SitePackagesScanner.PackageInfo info : SitePackagesScanner.scan(siteDirs)) {
+                libraries.add(toLibraryItem(info));
+            }
+            Collections.sort(libraries, (a, b) -> a.getName().compareToIgnoreCase(b.getName()));
+            return libraries;
+        }
+        
+        // بدون Python: آخر قائمة محفوظة
         List<LibraryItem> libraries = new ArrayList<>();
         
         try {
@@ -243,10 +235,61 @@ public class PackageManager {
         return libraries;
     }
     
+    /**
+     * تحويل بيانات dist-info إلى LibraryItem
+     */
+    private LibraryItem toLibraryItem(SitePackagesScanner.PackageInfo info) {
+        LibraryItem library = new LibraryItem(
+            info.name,
+            info.summary.isEmpty() ? "مكتبة مثبتة" : info.summary,
+            info.version,
+            info.author.isEmpty() ? "غير محدد" : info.author,
+            info.authorEmail,
+            info.license.isEmpty() ? "غير محدد" : info.license,
+            info.homePage,
+            "https://pypi.org/project/" + info.name + "/",
+            info.dependencies, info.classifiers,
+            Arrays.asList("3.8", "3.9", "3.10", "3.11", "3.12"),
+            true, 0, new Date(info.modified), false
+        );
+        library.setInstallationPath(info.distInfoDirectory.getParent());
+        library.setInstallationDate(info.modified);
+        library.setCurrentVersion(info.version);
+        return library;
+    }
+    
+    /**
+     * مراقبة مجلدات site-packages وإشعار listener (على خيط الواجهة) عند تثبيت أو حذف مكتبة من أي مكان
+     */
+    public void watchInstalledLibraries(Runnable listener) {
+        executorService.execute(() -> {
+            List<File> siteDirs = pythonExecutor.getSitePackagesDirs();
+            if (siteDirs.isEmpty()) return;
+            
+            synchronized (this) {
+                if (executorService.isShutdown()) return;
+                stopWatchingInstalledLibraries();
+                sitePackagesWatcher = SitePackagesScanner.watch(siteDirs, listener);
+            }
+        });
+    }
+    
+    public synchronized void stopWatchingInstalledLibraries() {
+        if (sitePackagesWatcher != null) {
+            sitePackagesWatcher.stop();
+            sitePackagesWatcher = null;
+        }
+    }
+    
     /**
      * تحديث المكتبات المثبتة
      */
     public void refreshInstalledLibraries() {
+        // getInstalledLibraries() تقرأ التغييرات مباشرة من site-packages، فلا حاجة لـ pip list
+        if (!pythonExecutor.getSitePackagesDirs().isEmpty()) {
+            return;
+        }
+        
         executorService.execute(() -> {
             try {
                 // تنفيذ pip list للحصول على قائمة المكتبات المثبتة
@@ -284,33 +327,6 @@ public class PackageManager {
         });
     }
     
-    /**
-     * حل التبعيات للمكتبة
-     */
-    private List<String> resolveDependencies(String packageName) {
-        List<String> dependencies = new ArrayList<>();
-        
-        try {
-            // الحصول على معلومات المكتبة من PyPI
-            PyPIService pyPIService = new PyPIService(context, null);
-            LibraryItem library = pyPIService.getLibraryDetails(packageName);
-            
-            if (library != null && !library.getDependencies().isEmpty()) {
-                for (String dependency : library.getDependencies()) {
-                    String cleanDep = parseDependencyName(dependency);
-                    if (!cleanDep.isEmpty() && !dependencies.contains(cleanDep)) {
-                        dependencies.add(cleanDep);
-                    }
-                }
-            }
-            
-        } catch (Exception e) {
-            Log.w(TAG, "خطأ في حل التبعيات لـ " + packageName, e);
-        }
-        
-        return dependencies;
-    }
-    
     /**
      * فحص توافق المكتبة
      */
@@ -338,13 +354,9 @@ public class PackageManager {
      */
     private boolean verifyInstallation(String packageName) {
         try {
-            // تنفيذ pip show للتحقق من التثبيت
-            List<String> command = Arrays.asList("pip", "show", packageName);
-            String output = pythonExecutor.executeCommandWithOutput(command, null);
+            // من قائمة pip list المحفوظة (تُقرأ مرة واحدة بعد التثبيت)
+            return pipOperations.isInstalled(packageName);
             
-            return output != null && !output.isEmpty() && 
-                   output.contains("Name: " + packageName);
-                   
         } catch (Exception e) {
             Log.e(TAG, "خطأ في التحقق من التثبيت", e);
             return false;
@@ -361,39 +373,41 @@ public class PackageManager {
     }
     
     /**
-     * حفظ حالة التثبيت
+     * حفظ حالة التثبيت لمجموعة مكتبات بقراءة وكتابة واحدة
      */
-    private void saveInstallationStatus(String packageName, boolean success) {
+    private void saveInstallationStatus(List<String> packageNames, List<String> failedPackages) {
         try {
             // الحصول على المكتبات الحالية
             List<LibraryItem> installed = getInstalledLibraries();
             
-            if (success) {
-                // إضافة أو تحديث المكتبة
-                boolean found = false;
-                for (LibraryItem library : installed) {
-                    if (library.getName().equals(packageName)) {
-                        library.setInstalled(true);
-                        library.setLastUpdated(new Date());
-                        found = true;
-                        break;
+            for (String packageName : packageNames) {
+                if (!failedPackages.contains(packageName)) {
+                    // إضافة أو تحديث المكتبة
+                    boolean found = false;
+                    for (LibraryItem library : installed) {
+                        if (library.getName().equals(packageName)) {
+                            library.setInstalled(true);
+                            library.setLastUpdated(new Date());
+                            found = true;
+                            break;
+                        }
                     }
+                    
+                    if (!found) {
+                        // إنشاء مكتبة جديدة
+                        LibraryItem newLibrary = new LibraryItem(
+                            packageName, "مكتبة مثبتة", "0.0.0",
+                            "غير محدد", "", "غير محدد", "", "",
+                            new ArrayList<>(), new ArrayList<>(),
+                            Arrays.asList("3.8", "3.9", "3.10", "3.11", "3.12"),
+                            true, 0, new Date(), false
+                        );
+                        installed.add(newLibrary);
+                    }
+                } else {
+                    // إزالة المكتبة في حالة الفشل
+                    installed.removeIf(library -> library.getName().equals(packageName));
                 }
-                
-                if (!found) {
-                    // إنشاء مكتبة جديدة
-                    LibraryItem newLibrary = new LibraryItem(
-                        packageName, "مكتبة مثبتة", "0.0.0",
-                        "غير محدد", "", "غير محدد", "", "",
-                        new ArrayList<>(), new ArrayList<>(),
-                        Arrays.asList("3.8", "3.9", "3.10", "3.11", "3.12"),
-                        true, 0, new Date(), false
-                    );
-                    installed.add(newLibrary);
-                }
-            } else {
-                // إزالة المكتبة في حالة الفشل
-                installed.removeIf(library -> library.getName().equals(packageName));
             }
             
             // حفظ القائمة المحدثة
@@ -457,23 +471,6 @@ public class PackageManager {
         // يمكن تنفيذها لاحقاً
     }
     
-    /**
-     * تحليل اسم التبعيات
-     */
-    private String parseDependencyName(String dependency) {
-        // إزالة شروط الإصدار والرموز الخاصة
-        String cleanDep = dependency.replaceAll("[<>=!~].*", "").trim();
-        cleanDep = cleanDep.replaceAll("[\\[\\]\\(\\)]", "").trim();
-        
-        // الحصول على الاسم الأساسي فقط
-        String[] parts = cleanDep.split("[\\s\\-:]+");
-        if (parts.length > 0) {
-            return parts[0].trim();
-        }
-        
-        return cleanDep;
-    }
-    
     /**
      * تحليل JSON إلى LibraryItem
      */
@@ -613,8 +610,11 @@ public class PackageManager {
      * تنظيف الموارد
      */
     public void cleanup() {
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
+        synchronized (this) {
+            if (executorService != null && !executorService.isShutdown()) {
+                executorService.shutdown();
+            }
+            stopWatchingInstalledLibraries();
         }
     }
 }
\ No newline at end of file
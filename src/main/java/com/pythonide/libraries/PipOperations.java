@@ -0,0 +1,330 @@
+package com.pythonide.libraries;
+
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.pythonide.terminal.ProcessIO;
+import java.io.File;
+import java.util.*;
+
+/**
+ * PipOperations - عمليات pip المجمّعة
+ * يثبّت أو يحذف مجموعة مكتبات كاملة باستدعاء pip واحد ويقرأ تقدم كل مكتبة من مخرجاته أثناء التنفيذ،
+ * ويجيب عن أسئلة "هل المكتبة مثبتة" و"ما إصدارها" من site-packages مباشرة (أو pip list واحدة محفوظة)
+ * بدلاً من pip show لكل مكتبة
+ */
+public class PipOperations {
+    
+    private static final String TAG = "PipOperations";
+    
+    // Shared by every PythonExecutor/PackageManager instance; null until loaded or after a change
+    private static Map<String, String> installedVersions;
+    
+    private final PythonExecutor pythonExecutor;
+    
+    /**
+     * واجهة الاستماع لتقدم العملية
+     */
+    public interface ProgressListener {
+        /**
+         * @param packageName المكتبة التي يعمل عليها pip الآن
+         * @param step الخطوة (تحميل، تثبيت...)
+         * @param collected عدد المكتبات التي جُمعت حتى الآن، بما فيها التبعيات التي اكتشفها pip
+         */
+        void onPackageProgress(String packageName, String step, int collected);
+    }
+    
+    /**
+     * نتيجة عملية مجمّعة
+     */
+    public static class BatchResult {
+        public int exitCode;
+        // المكتبات التي ثبّتها أو حذفها pip مع إصداراتها (الأسماء موحّدة)
+        public final Map<String, String> changed = new LinkedHashMap<>();
+        // المكتبات المطلوبة الموجودة مسبقاً
+        public final Set<String> alreadySatisfied = new LinkedHashSet<>();
+        public final List<String> errors = new ArrayList<>();
+        
+        public boolean isSuccessful() {
+            return exitCode == 0;
+        }
+        
+        /**
+         * هل انتهت المكتبة مثبتة (ثُبّتت الآن أو كانت موجودة)
+         */
+        public boolean isSatisfied(String packageName) {
+            String name = normalizeName(packageName);
+            return changed.containsKey(name) || alreadySatisfied.contains(name);
+        }
+        
+        /**
+         * رسالة الخطأ الخاصة بالمكتبة، أو آخر خطأ عام إذا لم يذكرها أي خطأ، أو null
+         */
+        public String getErrorFor(String packageName) {
+            String name = normalizeName(packageName);
+            for (String error : errors) {
+                if (normalizeName(error).contains(name)) {
+                    return error;
+                }
+            }
+            return errors.isEmpty() ? null : errors.get(errors.size() - 1);
+        }
+    }
+    
+    public PipOperations(PythonExecutor pythonExecutor) {
+        this.pythonExecutor = pythonExecutor;
+    }
+    
+    /**
+     * تثبيت متطلب مع كل تبعياته باستدعاء pip واحد (pip يحل التبعيات بنفسه)
+     * @param installCommand أمر pip install كما يبنيه InstallOptions.buildInstallCommand()
+     */
+    public BatchResult install(List<String> installCommand, ProgressListener listener) {
+        List<String> args = new ArrayList<>(stripPip(installCommand));
+        args.add("--no-warn-script-location");
+        // The bar redraws with \r many times a second; lines are all we parse
+        args.add("--progress-bar");
+        args.add("off");
+        return run(args, listener);
+    }
+    
+    /**
+     * حذف عدة مكتبات باستدعاء pip واحد
+     */
+    public BatchResult uninstall(List<String> packageNames, ProgressListener listener) {
+        List<String> args = new ArrayList<>();
+        args.add("uninstall");
+        args.add("-y");
+        args.addAll(packageNames);
+        return run(args, listener);
+    }
+    
+    private BatchResult run(List<String> args, ProgressListener listener) {
+        BatchResult result = new BatchResult();
+        String pythonPath = pythonExecutor.getPythonPath();
+        if (pythonPath == null) {
+            result.exitCode = -1;
+            result.errors.add("لم يتم العثور على Python");
+            return result;
+        }
+        
+        List<String> command = new ArrayList<>();
+        command.add(pythonPath);
+        command.add("-m");
+        command.add("pip");
+        command.addAll(args);
+        
+        OutputParser parser = new OutputParser(result, listener);
+        try {
+            result.exitCode = pythonExecutor.executeCommandStreaming(command, parser);
+        } finally {
+            parser.finish();
+            // Even a failed run may have changed some packages
+            invalidateInstalled();
+        }
+        return result;
+    }
+    
+    /**
+     * إزالة "pip" من بداية أمر مبني مسبقاً
+     */
+    private static List<String> stripPip(List<String> command) {
+        if (!command.isEmpty()) {
+            String first = command.get(0);
+            if (first.equals("pip") || first.equals("pip3")) {
+                return command.subList(1, command.size());
+            }
+        }
+        return command;
+    }
+    
+    /**
+     * المكتبات المثبتة وإصداراتها (أسماء موحّدة)؛ من dist-info مباشرة، أو pip list واحد ثم من الذاكرة
+     */
+    public Map<String, String> getInstalledVersions() {
+        synchronized (PipOperations.class) {
+            if (installedVersions != null) {
+                return installedVersions;
+            }
+        }
+        
+        // The scanner keeps its own cache keyed by directory mtime, so no subprocess is needed
+        List<File> siteDirs = pythonExecutor.getSitePackagesDirs();
+        if (!siteDirs.isEmpty()) {
+            Map<String, String> versions = new HashMap<>();
+            for (SitePackagesScanner.PackageInfo info : SitePackagesScanner.scan(siteDirs)) {
+                versions.put(info.getNormalizedName(), info.version);
+            }
+            return versions;
+        }
+        
+        String pythonPath = pythonExecutor.getPythonPath();
+        if (pythonPath == null) {
+            return Collections.emptyMap();
+        }
+        String output = pythonExecutor.executeCommandWithOutput(
+            Arrays.asList(pythonPath, "-m", "pip", "list", "--format=json", "--disable-pip-version-check"), null);
+        if (output == null) {
+            // Not cached so the next query tries again
+            return Collections.emptyMap();
+        }
+        
+        Map<String, String> versions = new HashMap<>();
+        try {
+            JSONArray packageList = new JSONArray(output.trim());
+            for (int i = 0; i < packageList.length(); i++) {
+                JSONObject packageJson = packageList.getJSONObject(i);
+                versions.put(normalizeName(packageJson.getString("name")), packageJson.getString("version"));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "خطأ في تحليل pip list", e);
+            return Collections.emptyMap();
+        }
+        
+        versions = Collections.unmodifiableMap(versions);
+        synchronized (PipOperations.class) {
+            installedVersions = versions;
+        }
+        return versions;
+    }
+    
+    /**
+     * إصدار المكتبة المثبتة، أو null
+     */
+    public String getInstalledVersion(String packageName) {
+        return getInstalledVersions().get(normalizeName(packageName));
+    }
+    
+    public boolean isInstalled(String packageName) {
+        return getInstalledVersion(packageName) != null;
+    }
+    
+    /**
+     * إسقاط قائمة المكتبات المحفوظة بعد أي تغيير في البيئة
+     */
+    public static synchronized void invalidateInstalled() {
+        installedVersions = null;
+    }
+    
+    /**
+     * توحيد اسم المكتبة (PEP 503): أحرف صغيرة و"-" بدل "_" و"."
+     */
+    public static String normalizeName(String packageName) {
+        return packageName.trim().toLowerCase(Locale.ROOT).replaceAll("[-_.]+", "-");
+    }
+    
+    /**
+     * تحليل مخرجات pip سطراً بسطر أثناء وصولها
+     */
+    private static class OutputParser implements ProcessIO.OutputListener {
+        private final BatchResult result;
+        private final ProgressListener listener;
+        private final StringBuilder stdoutLine = new StringBuilder();
+        private final StringBuilder stderrLine = new StringBuilder();
+        private final Set<String> collected = new LinkedHashSet<>();
+        
+        OutputParser(BatchResult result, ProgressListener listener) {
+            this.result = result;
+            this.listener = listener;
+        }
+        
+        @Override
+        public void onOutput(CharSequence text, boolean isError) {
+            StringBuilder line = isError ? stderrLine : stdoutLine;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n' || c == '\r') {
+                    if (line.length() > 0) {
+                        parseLine(line.toString().trim(), isError);
+                        line.setLength(0);
+                    }
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+        
+        void finish() {
+            if (stdoutLine.length() > 0) {
+                parseLine(stdoutLine.toString().trim(), false);
+            }
+            if (stderrLine.length() > 0) {
+                parseLine(stderrLine.toString().trim(), true);
+            }
+        }
+        
+        private void parseLine(String line, boolean isError) {
+            if (isError) {
+                // "ERROR: ..." and, for environment errors, "error: ..."
+                if (line.regionMatches(true, 0, "error:", 0, 6)) {
+                    result.errors.add(line.substring(6).trim());
+                }
+                return;
+            }
+            
+            if (line.startsWith("Collecting ")) {
+                String name = requirementName(line.substring(11));
+                collected.add(name);
+                notifyProgress(name, "تحليل");
+            } else if (line.startsWith("Requirement already satisfied: ")) {
+                String name = requirementName(line.substring(31));
+                result.alreadySatisfied.add(name);
+                collected.add(name);
+                notifyProgress(name, "موجودة مسبقاً");
+            } else if (line.startsWith("Downloading ") || line.startsWith("Using cached ")) {
+                // "Downloading numpy-1.26.4-cp311-...whl (18.3 MB)"
+                String file = line.substring(line.indexOf(' ') + 1);
+                int slash = file.lastIndexOf('/', file.indexOf(' ') > 0 ? file.indexOf(' ') : file.length());
+                file = file.substring(slash + 1);
+                int dash = file.indexOf('-');
+                if (dash > 0) {
+                    notifyProgress(normalizeName(file.substring(0, dash)), "تحميل");
+                }
+            } else if (line.startsWith("Installing collected packages: ")) {
+                for (String name : line.substring(31).split(",")) {
+                    notifyProgress(normalizeName(name), "تثبيت");
+                }
+            } else if (line.startsWith("Successfully installed ")) {
+                // "Successfully installed a-1.0 b_c-2.0"; the version follows the last '-'
+                for (String item : line.substring(23).trim().split("\\s+")) {
+                    int dash = item.lastIndexOf('-');
+                    if (dash > 0) {
+                        result.changed.put(normalizeName(item.substring(0, dash)), item.substring(dash + 1));
+                    }
+                }
+            } else if (line.startsWith("Successfully uninstalled ")) {
+                String item = line.substring(25).trim();
+                int dash = item.lastIndexOf('-');
+                if (dash > 0) {
+                    String name = normalizeName(item.substring(0, dash));
+                    result.changed.put(name, item.substring(dash + 1));
+                    notifyProgress(name, "تم الحذف");
+                }
+            } else if (line.startsWith("Found existing installation: ")) {
+                String item = line.substring(29).trim();
+                int space = item.indexOf(' ');
+                notifyProgress(normalizeName(space > 0 ? item.substring(0, space) : item), "حذف");
+            }
+        }
+        
+        private void notifyProgress(String name, String step) {
+            if (listener != null) {
+                listener.onPackageProgress(name, step, collected.size());
+            }
+        }
+        
+        /**
+         * اسم المكتبة من بداية متطلب مثل "numpy>=1.20 in ./site-packages" أو "requests[socks]==2.31"
+         */
+        private static String requirementName(String requirement) {
+            int end = 0;
+            while (end < requirement.length()) {
+                char c = requirement.charAt(end);
+                if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != '.') break;
+                end++;
+            }
+            return normalizeName(requirement.substring(0, end));
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.pythonide.libraries;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
+import com.pythonide.terminal.ProcessIO;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -22,12 +27,36 @@ import java.util.concurrent.Executors;
 public class PythonExecutor {
     
     private static final String TAG = "PythonExecutor";
+    private static final String PREFS_NAME = "python_executor_prefs";
+    private static final String SITE_PACKAGES_KEY = "site_packages_dirs";
+    
+    // Lists site-packages directories in sys.path order, including the user site even if absent from sys.path
+    private static final String SITE_PACKAGES_SCRIPT =
+        "import site, sys\n"
+        + "dirs = [p for p in sys.path if p.endswith(('site-packages', 'dist-packages'))]\n"
+        + "user = site.getusersitepackages()\n"
+        + "print('\\n'.join(dirs + ([user] if user not in dirs else [])))\n";
+    
+    // Per interpreter path; also kept in preferences so a restart does not need Python
+    private static final Map<String, List<File>> sitePackagesDirs = new HashMap<>();
+    
+    // One set of warm interpreters for the whole app, whichever screen created the executor
+    private static PythonWorkerPool sharedWorkerPool;
+    
+    private static final PythonWorkerPool.OutputListener LOG_OUTPUT = (text, isError) -> {
+        if (isError) {
+            Log.w(TAG, "[ERROR] " + text);
+        } else {
+            Log.d(TAG, "[OUTPUT] " + text);
+        }
+    };
     
     private Context context;
     private ExecutorService executorService;
     private String pythonPath;
     private String pipPath;
     private boolean isInitialized;
+    private PythonWorkerPool workerPool;
     
     /**
      * إنشاء مشغل Python
@@ -53,6 +82,10 @@ public class PythonExecutor {
             
             isInitialized = pythonPath != null && pipPath != null;
             
+            if (pythonPath != null) {
+                workerPool = getWorkerPool(pythonPath);
+            }
+            
             if (isInitialized) {
                 Log.i(TAG, "تم العثور على Python في: " + pythonPath);
                 Log.i(TAG, "تم العثور على pip في: " + pipPath);
@@ -196,14 +229,51 @@ public class PythonExecutor {
             // إعداد البيئة
             Process process = processBuilder.start();
             
-            // قراءة المخرجات في خيط منفصل
-            readProcessOutput(process);
+            // قراءة المخرجات من خيوط الضخ المشتركة
+            ProcessIO.Pump pump = ProcessIO.start(process, null);
             
             // انتظار انتهاء العملية
-            int exitCode = process.waitFor();
+            int exitCode = pump.waitFor();
+            
+            Log.i(TAG, "انتهى الأمر برمز الخروج: " + exitCode);
+            
+            if (exitCode != 0 && pump.getStderr().getLength() > 0) {
+                Log.e(TAG, "أخطاء الأمر: " + pump.getStderr().getText());
+            }
+            pump.discard();
+            
+            onCommandFinished(fullCommand, exitCode);
+            
+            return exitCode;
+            
+        } catch (Exception e) {
+            Log.e(TAG, "خطأ في تنفيذ الأمر", e);
+            return -1;
+        }
+    }
+    
+    /**
+     * تنفيذ أمر مع تمرير المخرجات إلى المستمع أثناء التنفيذ (على خيط الضخ)
+     */
+    public int executeCommandStreaming(List<String> command, ProcessIO.OutputListener listener) {
+        if (!isInitialized) {
+            Log.e(TAG, "لم يتم تهيئة PythonExecutor");
+            return -1;
+        }
+        
+        try {
+            Log.i(TAG, "تنفيذ الأمر: " + String.join(" ", command));
+            
+            Process process = new ProcessBuilder(command).start();
+            
+            // المستمع يحصل على كل المخرجات، فلا حاجة لحفظها هنا
+            ProcessIO.Pump pump = ProcessIO.start(process, listener, 0);
+            int exitCode = pump.waitFor();
             
             Log.i(TAG, "انتهى الأمر برمز الخروج: " + exitCode);
             
+            onCommandFinished(command, exitCode);
+            
             return exitCode;
             
         } catch (Exception e) {
@@ -212,6 +282,20 @@ public class PythonExecutor {
         }
     }
     
+    private void onCommandFinished(List<String> command, int exitCode) {
+        if (!changesPackages(command)) return;
+        
+        // A failed batch may still have installed part of it
+        PipOperations.invalidateInstalled();
+        // pip may have created the user site or added a .pth path; ask Python again next time
+        forgetSitePackagesDirs();
+        
+        // Warm workers may hold the old version of a changed package in memory
+        if (exitCode == 0 && workerPool != null) {
+            workerPool.recycleAll();
+        }
+    }
+    
     /**
      * تنفيذ أمر مع إرجاع المخرجات
      */
@@ -254,52 +338,20 @@ public class PythonExecutor {
             Process process = processBuilder.start();
             
             // قراءة المخرجات
-            StringBuilder output = new StringBuilder();
-            StringBuilder errorOutput = new StringBuilder();
-            
-            // خيط لقراءة المخرجات العادية
-            Thread outputThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        output.append(line).append("\n");
-                        Log.d(TAG, "[OUTPUT] " + line);
-                    }
-                } catch (IOException e) {
-                    Log.e(TAG, "خطأ في قراءة المخرجات", e);
-                }
-            });
-            
-            // خيط لقراءة أخطاء
-            Thread errorThread = new Thread(() -> {
-                try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                    String line;
-                    while ((line = errorReader.readLine()) != null) {
-                        errorOutput.append(line).append("\n");
-                        Log.w(TAG, "[ERROR] " + line);
-                    }
-                } catch (IOException e) {
-                    Log.e(TAG, "خطأ في قراءة الأخطاء", e);
-                }
-            });
-            
-            outputThread.start();
-            errorThread.start();
-            
-            // انتظار انتهاء العملية
-            int exitCode = process.waitFor();
+            ProcessIO.Pump pump = ProcessIO.start(process, null);
             
-            // انتظار انتهاء خيوط القراءة
-            outputThread.join();
-            errorThread.join();
+            // انتظار انتهاء العملية وقراءة المخرجات
+            int exitCode = pump.waitFor();
             
             Log.i(TAG, "انتهى الأمر برمز الخروج: " + exitCode);
             
-            if (exitCode != 0 && errorOutput.length() > 0) {
-                Log.e(TAG, "أخطاء الأمر: " + errorOutput.toString());
+            if (exitCode != 0 && pump.getStderr().getLength() > 0) {
+                Log.e(TAG, "أخطاء الأمر: " + pump.getStderr().getText());
             }
             
-            return exitCode == 0 ? output.toString() : null;
+            String output = exitCode == 0 ? pump.getStdout().getText() : null;
+            pump.discard();
+            return output;
             
         } catch (Exception e) {
             Log.e(TAG, "خطأ في تنفيذ الأمر", e);
@@ -410,21 +462,8 @@ public class PythonExecutor {
             return null;
         }
         
-        List<String> command = Arrays.asList(pipPath, "show", packageName);
-        
-        Log.i(TAG, "فحص إصدار " + packageName);
-        
-        String output = executeCommandWithOutput(command, null);
-        if (output != null) {
-            String[] lines = output.split("\n");
-            for (String line : lines) {
-                if (line.startsWith("Version: ")) {
-                    return line.substring(9).trim();
-                }
-            }
-        }
-        
-        return null;
+        // من قائمة pip list المحفوظة بدلاً من pip show لكل مكتبة
+        return new PipOperations(this).getInstalledVersion(packageName);
     }
     
     /**
@@ -451,6 +490,16 @@ public class PythonExecutor {
             return -1;
         }
         
+        Log.i(TAG, "تشغيل سكريبت Python: " + scriptPath);
+        
+        if (workerPool != null) {
+            try {
+                return workerPool.runScript(scriptPath, arguments, workingDirectory, LOG_OUTPUT);
+            } catch (IOException e) {
+                Log.w(TAG, "تعذر التشغيل في عامل Python، تشغيل عملية جديدة", e);
+            }
+        }
+        
         List<String> command = new ArrayList<>();
         command.add(pythonPath);
         command.add(scriptPath);
@@ -459,8 +508,6 @@ public class PythonExecutor {
             command.addAll(arguments);
         }
         
-        Log.i(TAG, "تشغيل سكريبت Python: " + scriptPath);
-        
         return executeCommand(command, null, workingDirectory);
     }
     
@@ -468,11 +515,27 @@ public class PythonExecutor {
      * تنفيذ كود Python مباشرة
      */
     public int executePythonCode(String code) {
+        return executePythonCode(code, LOG_OUTPUT);
+    }
+    
+    /**
+     * تنفيذ كود Python في عامل جاهز مع استقبال المخرجات
+     */
+    public int executePythonCode(String code, PythonWorkerPool.OutputListener listener) {
         if (!isInitialized) {
             Log.e(TAG, "لم يتم تهيئة PythonExecutor");
             return -1;
         }
         
+        if (workerPool != null) {
+            try {
+                Log.i(TAG, "تنفيذ كود Python");
+                return workerPool.runCode(code, null, listener);
+            } catch (IOException e) {
+                Log.w(TAG, "تعذر التشغيل في عامل Python، تشغيل عملية جديدة", e);
+            }
+        }
+        
         try {
             // إنشاء ملف مؤقت للكود
             File tempFile = File.createTempFile("python_code", ".py");
@@ -544,42 +607,121 @@ public class PythonExecutor {
     }
     
     /**
-     * التحقق من صحة التهيئة
+     * تشغيل مفسّر Python في الخلفية مسبقاً حتى يبدأ أول تشغيل دون انتظار
      */
-    public boolean isReady() {
-        return isInitialized && pythonPath != null && pipPath != null;
+    public void prewarm() {
+        if (workerPool != null) {
+            workerPool.prewarm();
+        }
     }
     
     /**
-     * قراءة مخرجات العملية
+     * إيقاف الكود الجاري في عمّال Python
      */
-    private void readProcessOutput(Process process) {
-        // خيط لقراءة المخرجات العادية
-        Thread outputThread = new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    Log.d(TAG, "[OUTPUT] " + line);
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "خطأ في قراءة المخرجات", e);
+    public void cancelExecution() {
+        if (workerPool != null) {
+            workerPool.cancel();
+        }
+    }
+    
+    private static synchronized PythonWorkerPool getWorkerPool(String pythonPath) {
+        if (sharedWorkerPool == null) {
+            sharedWorkerPool = new PythonWorkerPool(pythonPath);
+        }
+        return sharedWorkerPool;
+    }
+    
+    /**
+     * هل يثبّت الأمر مكتبات أو يحذفها (pip install/uninstall)
+     */
+    private static boolean changesPackages(List<String> command) {
+        boolean pip = false;
+        for (String part : command) {
+            String name = new File(part).getName();
+            if (name.equals("pip") || name.equals("pip3")) {
+                pip = true;
+            } else if (pip && (part.equals("install") || part.equals("uninstall"))) {
+                return true;
             }
-        });
+        }
+        return false;
+    }
+    
+    public String getPythonPath() {
+        return pythonPath;
+    }
+    
+    /**
+     * مجلدات site-packages لمفسّر Python الحالي بترتيب sys.path، بما فيها غير الموجودة بعد
+     * (مثل مجلد المستخدم قبل أول pip install --user) حتى تُقرأ وتُراقب عند إنشائها
+     */
+    public List<File> getSitePackagesDirs() {
+        if (pythonPath == null) {
+            return Collections.emptyList();
+        }
+        synchronized (PythonExecutor.class) {
+            List<File> cached = sitePackagesDirs.get(pythonPath);
+            if (cached != null) {
+                return cached;
+            }
+        }
         
-        // خيط لقراءة الأخطاء
-        Thread errorThread = new Thread(() -> {
-            try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                String line;
-                while ((line = errorReader.readLine()) != null) {
-                    Log.w(TAG, "[ERROR] " + line);
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "خطأ في قراءة الأخطاء", e);
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = SITE_PACKAGES_KEY + ":" + pythonPath;
+        List<File> dirs = parseDirs(preferences.getString(key, ""));
+        
+        // None of the remembered directories exist: the environment was replaced
+        if (!anyDirectoryExists(dirs)) {
+            String output = executeCommandWithOutput(Arrays.asList(pythonPath, "-c", SITE_PACKAGES_SCRIPT), null);
+            if (output == null) {
+                return Collections.emptyList();
             }
-        });
+            preferences.edit().putString(key, output.trim()).apply();
+            dirs = parseDirs(output);
+        }
         
-        outputThread.start();
-        errorThread.start();
+        dirs = Collections.unmodifiableList(dirs);
+        synchronized (PythonExecutor.class) {
+            sitePackagesDirs.put(pythonPath, dirs);
+        }
+        return dirs;
+    }
+    
+    private void forgetSitePackagesDirs() {
+        if (pythonPath == null) return;
+        
+        synchronized (PythonExecutor.class) {
+            sitePackagesDirs.remove(pythonPath);
+        }
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .remove(SITE_PACKAGES_KEY + ":" + pythonPath)
+            .apply();
+    }
+    
+    private static List<File> parseDirs(String paths) {
+        List<File> dirs = new ArrayList<>();
+        for (String path : paths.split("\n")) {
+            if (!path.trim().isEmpty()) {
+                dirs.add(new File(path.trim()));
+            }
+        }
+        return dirs;
+    }
+    
+    private static boolean anyDirectoryExists(List<File> dirs) {
+        for (File dir : dirs) {
+            if (dir.isDirectory()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * التحقق من صحة التهيئة
+     */
+    public boolean isReady() {
+        return isInitialized && pythonPath != null && pipPath != null;
     }
     
     /**
@@ -0,0 +1,519 @@
+package com.pythonide.libraries;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PythonWorkerPool - عمليات Python دائمة جاهزة لتشغيل الكود
+ * بدل تشغيل مفسّر جديد لكل تنفيذ، يُرسل الكود إلى عامل يعمل مسبقاً عبر بروتوكول إطارات على stdin/stdout،
+ * فتبقى الوحدات المستوردة (numpy، pandas...) محمّلة بين مرات التشغيل. يُستبدل العامل عند تضخم ذاكرته
+ * أو بعد عدد من التشغيلات أو عند موته، ويُعاد تشغيل كل العمال بعد تغيير المكتبات المثبتة
+ */
+public class PythonWorkerPool {
+    
+    private static final String TAG = "PythonWorkerPool";
+    
+    private static final int MAX_WORKERS = 2;
+    // Idle workers kept started ahead of the next run
+    private static final int WARM_WORKERS = 1;
+    private static final long MAX_WORKER_RSS_KB = 384 * 1024;
+    // Leaked threads and module state pile up; start over now and then
+    private static final int MAX_RUNS_PER_WORKER = 100;
+    // Past this, a run starts its own interpreter instead of queueing behind long-running code
+    private static final long ACQUIRE_TIMEOUT_MS = 5000;
+    
+    // Frames from the worker: kind byte, big endian length, payload
+    private static final byte FRAME_STDOUT = 'O';
+    private static final byte FRAME_STDERR = 'E';
+    private static final byte FRAME_EXIT = 'X';
+    
+    /**
+     * حلقة العامل: تقرأ طلباً (طول + JSON)، تنفّذه في فضاء أسماء __main__ جديد وترسل المخرجات على دفعات ثم رمز الخروج.
+     * واصفا البروتوكول نسخ عن 0 و1؛ stdin الكود يصبح /dev/null وكتابات fd 1 المباشرة تذهب إلى stderr.
+     * بعد كل تشغيل تُحذف من sys.modules الوحدات التي استوردها خارج المكتبة القياسية وsite-packages،
+     * فيُعاد تحميل ملفات المشروع المعدّلة بينما تبقى المكتبات الخارجية محمّلة
+     */
+    private static final String WORKER_SCRIPT = String.join("\n",
+        "import importlib, io, json, os, runpy, site, struct, sys, sysconfig, threading, time, traceback",
+        "proto_in = os.fdopen(os.dup(0), 'rb', 0)",
+        "proto_out = os.fdopen(os.dup(1), 'wb', 0)",
+        "os.dup2(os.open(os.devnull, os.O_RDONLY), 0)",
+        "os.dup2(2, 1)",
+        "send_lock = threading.Lock()",
+        "def send(kind, data):",
+        "    with send_lock:",
+        "        proto_out.write(struct.pack('>ci', kind, len(data)) + data)",
+        "class Stream(io.TextIOBase):",
+        "    def __init__(self, kind):",
+        "        self.kind = kind",
+        "        self.parts = []",
+        "        self.size = 0",
+        "        self.last = time.monotonic()",
+        "        self.lock = threading.Lock()",
+        "    def writable(self):",
+        "        return True",
+        "    def write(self, s):",
+        "        if not isinstance(s, str):",
+        "            raise TypeError('write() argument must be str')",
+        "        if s:",
+        "            with self.lock:",
+        "                self.parts.append(s)",
+        "                self.size += len(s)",
+        "                if self.size >= 8192 or ('\\n' in s and time.monotonic() - self.last >= 0.02):",
+        "                    self._flush()",
+        "        return len(s)",
+        "    def flush(self):",
+        "        with self.lock:",
+        "            self._flush()",
+        "    def _flush(self):",
+        "        self.last = time.monotonic()",
+        "        if self.parts:",
+        "            data = ''.join(self.parts).encode('utf-8', 'replace')",
+        "            self.parts = []",
+        "            self.size = 0",
+        "            send(self.kind, data)",
+        "out = Stream(b'O')",
+        "err = Stream(b'E')",
+        "def flusher():",
+        "    while True:",
+        "        time.sleep(0.1)",
+        "        out.flush()",
+        "        err.flush()",
+        "threading.Thread(target=flusher, daemon=True).start()",
+        "def read_exact(n):",
+        "    data = b''",
+        "    while len(data) < n:",
+        "        chunk = proto_in.read(n - len(data))",
+        "        if not chunk:",
+        "            os._exit(0)",
+        "        data += chunk",
+        "    return data",
+        "def rss_kb():",
+        "    try:",
+        "        with open('/proc/self/status') as f:",
+        "            for line in f:",
+        "                if line.startswith('VmRSS:'):",
+        "                    return int(line.split()[1])",
+        "    except (OSError, ValueError):",
+        "        pass",
+        "    return 0",
+        "def library_roots():",
+        "    paths = set(sysconfig.get_paths().get(k) for k in ('stdlib', 'platstdlib', 'purelib', 'platlib'))",
+        "    try:",
+        "        paths.update(site.getsitepackages())",
+        "        paths.add(site.getusersitepackages())",
+        "    except AttributeError:",
+        "        pass",
+        "    return tuple(os.path.realpath(p) + os.sep for p in paths if p)",
+        "LIBRARY_ROOTS = library_roots()",
+        "def is_library(module):",
+        "    path = getattr(module, '__file__', None)",
+        "    if not path:",
+        "        path = next(iter(getattr(module, '__path__', None) or []), None)",
+        "    if not path or not isinstance(path, str):",
+        "        return True",
+        "    path = os.path.realpath(path)",
+        "    parts = path.split(os.sep)",
+        "    return path.startswith(LIBRARY_ROOTS) or 'site-packages' in parts or 'dist-packages' in parts",
+        "def forget_project_modules(before):",
+        "    for name in [n for n in sys.modules if n not in before]:",
+        "        module = sys.modules.get(name)",
+        "        if module is not None and not is_library(module):",
+        "            del sys.modules[name]",
+        "def run(req):",
+        "    saved = (os.getcwd(), sys.argv, sys.path[:])",
+        "    before = set(sys.modules)",
+        "    importlib.invalidate_caches()",
+        "    sys.stdout, sys.stderr = out, err",
+        "    try:",
+        "        if req.get('cwd'):",
+        "            os.chdir(req['cwd'])",
+        "        if 'path' in req:",
+        "            sys.argv = [req['path']] + req.get('args', [])",
+        "            sys.path[0] = os.path.dirname(os.path.abspath(req['path']))",
+        "            runpy.run_path(req['path'], run_name='__main__')",
+        "        else:",
+        "            sys.argv = ['-c']",
+        "            sys.path[0] = ''",
+        "            code = compile(req['code'], '<string>', 'exec')",
+        "            exec(code, {'__name__': '__main__', '__builtins__': __builtins__})",
+        "        return 0",
+        "    except SystemExit as e:",
+        "        if e.code is None:",
+        "            return 0",
+        "        if isinstance(e.code, int):",
+        "            return e.code",
+        "        err.write(str(e.code) + '\\n')",
+        "        return 1",
+        "    except BaseException as e:",
+        "        traceback.print_exception(type(e), e, e.__traceback__.tb_next, file=err)",
+        "        return 1",
+        "    finally:",
+        "        os.chdir(saved[0])",
+        "        sys.argv = saved[1]",
+        "        sys.path[:] = saved[2]",
+        "        forget_project_modules(before)",
+        "while True:",
+        "    length, = struct.unpack('>i', read_exact(4))",
+        "    request = json.loads(read_exact(length).decode('utf-8'))",
+        "    code = run(request)",
+        "    out.flush()",
+        "    err.flush()",
+        "    send(b'X', json.dumps({'exit': code, 'rss': rss_kb()}).encode('utf-8'))"
+    );
+    
+    public interface OutputListener {
+        /**
+         * دفعة من مخرجات الكود (على خيط التشغيل)
+         */
+        void onOutput(String text, boolean isError);
+    }
+    
+    private final String pythonPath;
+    private final ExecutorService warmupExecutor = Executors.newSingleThreadExecutor();
+    // Most recently used on top, so the worker with the most imports is reused first
+    private final ArrayDeque<Worker> idleWorkers = new ArrayDeque<>();
+    private final Set<Worker> busyWorkers = new HashSet<>();
+    // Idle, busy and starting workers
+    private int workerCount = 0;
+    // Bumped by recycleAll(); busy workers from an older generation are not reused
+    private int generation = 0;
+    private boolean shutdown = false;
+    
+    public PythonWorkerPool(String pythonPath) {
+        this.pythonPath = pythonPath;
+    }
+    
+    /**
+     * تشغيل عامل مسبقاً في الخلفية حتى يجد أول تنفيذ مفسّراً جاهزاً
+     */
+    public void prewarm() {
+        scheduleWarmup();
+    }
+    
+    /**
+     * تنفيذ كود Python في عامل
+     * @return رمز الخروج (SystemExit أو 1 عند استثناء غير معالج)
+     * @throws IOException إذا تعذر تشغيل عامل أو لم يتحرر عامل خلال المهلة
+     */
+    public int runCode(String code, String workingDirectory, OutputListener listener) throws IOException {
+        JSONObject request = new JSONObject();
+        try {
+            request.put("code", code);
+            putWorkingDirectory(request, workingDirectory);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        return run(request, listener);
+    }
+    
+    /**
+     * تشغيل سكريبت كأنه __main__ مع معاملاته
+     */
+    public int runScript(String scriptPath, List<String> arguments, String workingDirectory,
+                         OutputListener listener) throws IOException {
+        JSONObject request = new JSONObject();
+        try {
+            request.put("path", scriptPath);
+            request.put("args", new JSONArray(arguments != null ? arguments : new ArrayList<String>()));
+            putWorkingDirectory(request, workingDirectory);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        return run(request, listener);
+    }
+    
+    private static void putWorkingDirectory(JSONObject request, String workingDirectory) throws JSONException {
+        if (workingDirectory != null && new File(workingDirectory).isDirectory()) {
+            request.put("cwd", workingDirectory);
+        }
+    }
+    
+    private int run(JSONObject request, OutputListener listener) throws IOException {
+        Worker worker;
+        try {
+            worker = acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a Python worker");
+        }
+        
+        boolean reusable = false;
+        try {
+            int exitCode = worker.run(request, listener);
+            reusable = worker.rssKb < MAX_WORKER_RSS_KB && worker.runs < MAX_RUNS_PER_WORKER;
+            if (!reusable) {
+                Log.d(TAG, "Recycling worker after " + worker.runs + " runs, " + worker.rssKb + "kB");
+            }
+            return exitCode;
+        } catch (EOFException e) {
+            // The code killed the interpreter (os._exit, a crash in native code)
+            Log.w(TAG, "Python worker exited during a run");
+            return worker.exitCode();
+        } catch (IOException e) {
+            // A cancelled run must not be repeated in a fresh process by the caller
+            if (!worker.cancelled) throw e;
+            return worker.exitCode();
+        } finally {
+            release(worker, reusable);
+        }
+    }
+    
+    /**
+     * عامل جاهز، أو عامل جديد إذا لم يبلغ العدد الحد، أو انتظار عامل يتحرر حتى المهلة
+     */
+    private Worker acquire() throws IOException, InterruptedException {
+        int workerGeneration;
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT_MS;
+            while (true) {
+                if (shutdown) {
+                    throw new IOException("Python worker pool is shut down");
+                }
+                Worker worker = idleWorkers.poll();
+                if (worker != null) {
+                    if (worker.isAlive()) {
+                        busyWorkers.add(worker);
+                        scheduleWarmup();
+                        return worker;
+                    }
+                    workerCount--;
+                    worker.destroy();
+                    continue;
+                }
+                if (workerCount < MAX_WORKERS) {
+                    workerCount++;
+                    workerGeneration = generation;
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for a Python worker");
+                }
+                wait(remaining);
+            }
+        }
+        
+        // Cold start outside the lock so finished runs can still hand workers back
+        try {
+            Worker worker = startWorker(workerGeneration);
+            synchronized (this) {
+                busyWorkers.add(worker);
+            }
+            return worker;
+        } catch (IOException e) {
+            synchronized (this) {
+                workerCount--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+    
+    private void release(Worker worker, boolean reusable) {
+        synchronized (this) {
+            busyWorkers.remove(worker);
+            if (reusable && !shutdown && worker.generation == generation && worker.isAlive()) {
+                idleWorkers.push(worker);
+                notifyAll();
+                return;
+            }
+            workerCount--;
+            notifyAll();
+        }
+        worker.destroy();
+        scheduleWarmup();
+    }
+    
+    private void scheduleWarmup() {
+        if (shutdown) return;
+        warmupExecutor.execute(this::fillWarmWorkers);
+    }
+    
+    private void fillWarmWorkers() {
+        int workerGeneration;
+        synchronized (this) {
+            if (shutdown || idleWorkers.size() >= WARM_WORKERS || workerCount >= MAX_WORKERS) return;
+            workerCount++;
+            workerGeneration = generation;
+        }
+        
+        Worker worker = null;
+        try {
+            worker = startWorker(workerGeneration);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start Python worker", e);
+        }
+        synchronized (this) {
+            if (worker != null && !shutdown && workerGeneration == generation) {
+                // Behind any worker handed back meanwhile, which has more imports
+                idleWorkers.addLast(worker);
+                notifyAll();
+                return;
+            }
+            workerCount--;
+            notifyAll();
+        }
+        if (worker != null) {
+            worker.destroy();
+        }
+    }
+    
+    private Worker startWorker(int workerGeneration) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Process process = new ProcessBuilder(pythonPath, "-c", WORKER_SCRIPT).start();
+        Worker worker = new Worker(process, workerGeneration);
+        Log.d(TAG, "Started Python worker in " + (System.currentTimeMillis() - startTime) + "ms");
+        return worker;
+    }
+    
+    /**
+     * إيقاف كل العمال الحاليين (بعد تثبيت مكتبة أو حذفها مثلاً)؛ العمال المشغولون يُستبدلون حين ينتهون
+     */
+    public void recycleAll() {
+        List<Worker> stopped = new ArrayList<>();
+        synchronized (this) {
+            generation++;
+            stopped.addAll(idleWorkers);
+            idleWorkers.clear();
+            workerCount -= stopped.size();
+            notifyAll();
+        }
+        for (Worker worker : stopped) {
+            worker.destroy();
+        }
+        scheduleWarmup();
+    }
+    
+    /**
+     * إيقاف التشغيلات الجارية بإنهاء عمّالها؛ تعود runCode/runScript برمز خروج العملية المنهاة
+     */
+    public void cancel() {
+        List<Worker> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(busyWorkers);
+        }
+        for (Worker worker : cancelled) {
+            worker.cancelled = true;
+            worker.destroy();
+        }
+    }
+    
+    /**
+     * إيقاف كل العمال ورفض أي تشغيل جديد
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        recycleAll();
+        warmupExecutor.shutdownNow();
+    }
+    
+    /**
+     * عملية Python واحدة تنفّذ طلباً واحداً في كل مرة
+     */
+    private static class Worker {
+        final Process process;
+        final int generation;
+        final DataInputStream input;
+        final DataOutputStream output;
+        int runs = 0;
+        long rssKb = 0;
+        volatile boolean cancelled = false;
+        
+        Worker(Process process, int generation) {
+            this.process = process;
+            this.generation = generation;
+            this.input = new DataInputStream(new BufferedInputStream(process.getInputStream(), 64 * 1024));
+            this.output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            drainErrors();
+        }
+        
+        /**
+         * stderr العملية نفسها لا يحمل إلا كتابات fd مباشرة (مكتبات C) وأعطال المفسّر
+         */
+        private void drainErrors() {
+            Thread thread = new Thread(() -> {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        Log.w(TAG, "[WORKER] " + line);
+                    }
+                } catch (IOException e) {
+                    // Closed when the worker is destroyed
+                }
+            }, "python-worker-stderr");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        int run(JSONObject request, OutputListener listener) throws IOException {
+            byte[] payload = request.toString().getBytes(StandardCharsets.UTF_8);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.flush();
+            
+            while (true) {
+                byte kind = input.readByte();
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+                // Each frame holds whole characters
+                String text = new String(data, StandardCharsets.UTF_8);
+                
+                if (kind == FRAME_EXIT) {
+                    runs++;
+                    try {
+                        JSONObject result = new JSONObject(text);
+                        rssKb = result.optLong("rss");
+                        return result.optInt("exit", -1);
+                    } catch (JSONException e) {
+                        throw new IOException("Malformed worker result: " + text, e);
+                    }
+                }
+                if (listener != null && (kind == FRAME_STDOUT || kind == FRAME_STDERR)) {
+                    listener.onOutput(text, kind == FRAME_STDERR);
+                }
+            }
+        }
+        
+        boolean isAlive() {
+            return process.isAlive();
+        }
+        
+        int exitCode() {
+            try {
+                return process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        
+        void destroy() {
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.pythonide.libraries;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SitePackagesScanner - قراءة المكتبات المثبتة مباشرة من site-packages دون تشغيل pip
+ * يقرأ METADATA وRECORD لكل مجلد *.dist-info بالتوازي، ويحفظ النتيجة مع وقت تعديل المجلد
+ * فلا يُعاد إلا قراءة ما تغير؛ ويمكنه مراقبة مجلدات البيئة لإشعار الواجهة عند تثبيت أو حذف مكتبة
+ */
+public class SitePackagesScanner {
+    
+    private static final String TAG = "SitePackagesScanner";
+    
+    private static final String DIST_INFO_SUFFIX = ".dist-info";
+    // Events are applied together once pip has finished touching the directory
+    private static final long CHANGE_DELAY_MS = 500;
+    private static final int WATCH_MASK = FileObserver.CREATE | FileObserver.DELETE
+        | FileObserver.MOVED_FROM | FileObserver.MOVED_TO;
+    
+    private static final ExecutorService PARSE_EXECUTOR = Executors.newFixedThreadPool(
+        Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())), runnable -> {
+            Thread thread = new Thread(runnable, "dist-info-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+    
+    // Keyed by absolute path; an entry is reused while the directory's mtime is unchanged
+    private static final Map<String, CachedSite> SITE_CACHE = new ConcurrentHashMap<>();
+    private static final Map<String, PackageInfo> DIST_INFO_CACHE = new ConcurrentHashMap<>();
+    
+    /**
+     * بيانات مكتبة مثبتة كما في METADATA وRECORD
+     */
+    public static class PackageInfo {
+        public String name;
+        public String version;
+        public String summary = "";
+        public String author = "";
+        public String authorEmail = "";
+        public String license = "";
+        public String homePage = "";
+        public String requiresPython = "";
+        // Requires-Dist كما هي، مع الشروط
+        public final List<String> requiresDist = new ArrayList<>();
+        // أسماء التبعيات المطلوبة دائماً (دون الإضافات الاختيارية extra)
+        public final List<String> dependencies = new ArrayList<>();
+        public final List<String> classifiers = new ArrayList<>();
+        // مجموع أحجام الملفات المذكورة في RECORD
+        public long sizeBytes;
+        public int fileCount;
+        public File distInfoDirectory;
+        long modified;
+        
+        public String getNormalizedName() {
+            return PipOperations.normalizeName(name);
+        }
+    }
+    
+    private static class CachedSite {
+        final long modified;
+        final List<PackageInfo> packages;
+        
+        CachedSite(long modified, List<PackageInfo> packages) {
+            this.modified = modified;
+            this.packages = packages;
+        }
+    }
+    
+    /**
+     * المكتبات المثبتة في المجلدات المعطاة؛ المجلد الأول يغلب عند تكرار الاسم كما في sys.path
+     */
+    public static List<PackageInfo> scan(List<File> siteDirectories) {
+        Map<String, PackageInfo> packages = new LinkedHashMap<>();
+        for (File directory : siteDirectories) {
+            for (PackageInfo info : scanDirectory(directory)) {
+                String name = info.getNormalizedName();
+                if (!packages.containsKey(name)) {
+                    packages.put(name, info);
+                }
+            }
+        }
+        return new ArrayList<>(packages.values());
+    }
+    
+    private static List<PackageInfo> scanDirectory(File directory) {
+        String key = directory.getAbsolutePath();
+        long modified = directory.lastModified();
+        CachedSite cached = SITE_CACHE.get(key);
+        // Adding or removing a dist-info directory changes the parent's mtime
+        if (cached != null && cached.modified == modified) {
+            return cached.packages;
+        }
+        
+        File[] distInfos = directory.listFiles(file -> file.getName().endsWith(DIST_INFO_SUFFIX) && file.isDirectory());
+        if (distInfos == null) {
+            SITE_CACHE.remove(key);
+            return Collections.emptyList();
+        }
+        
+        List<PackageInfo> packages = new ArrayList<>(distInfos.length);
+        List<Future<PackageInfo>> pending = new ArrayList<>();
+        for (File distInfo : distInfos) {
+            PackageInfo info = DIST_INFO_CACHE.get(distInfo.getAbsolutePath());
+            if (info != null && info.modified == distInfo.lastModified()) {
+                packages.add(info);
+            } else {
+                pending.add(PARSE_EXECUTOR.submit(() -> parseDistInfo(distInfo)));
+            }
+        }
+        
+        for (Future<PackageInfo> future : pending) {
+            try {
+                PackageInfo info = future.get();
+                if (info != null) {
+                    DIST_INFO_CACHE.put(info.distInfoDirectory.getAbsolutePath(), info);
+                    packages.add(info);
+                }
+            } catch (ExecutionException e) {
+                Log.w(TAG, "خطأ في قراءة بيانات مكتبة", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Partial result; not cached
+                return packages;
+            }
+        }
+        
+        // Forget removed packages
+        String prefix = key + File.separator;
+        Set<String> present = new HashSet<>();
+        for (File distInfo : distInfos) {
+            present.add(distInfo.getAbsolutePath());
+        }
+        DIST_INFO_CACHE.keySet().removeIf(path -> path.startsWith(prefix) && !present.contains(path));
+        
+        packages = Collections.unmodifiableList(packages);
+        SITE_CACHE.put(key, new CachedSite(modified, packages));
+        return packages;
+    }
+    
+    /**
+     * قراءة مجلد dist-info واحد؛ null إذا لم يكن فيه METADATA صالح (تثبيت غير مكتمل مثلاً)
+     */
+    static PackageInfo parseDistInfo(File distInfo) throws IOException {
+        PackageInfo info = new PackageInfo();
+        info.distInfoDirectory = distInfo;
+        // Read before the files so a concurrent change is picked up next time
+        info.modified = distInfo.lastModified();
+        
+        File metadata = new File(distInfo, "METADATA");
+        if (!metadata.isFile()) {
+            return null;
+        }
+        parseMetadata(metadata, info);
+        if (info.name == null || info.version == null) {
+            return null;
+        }
+        
+        File record = new File(distInfo, "RECORD");
+        if (record.isFile()) {
+            parseRecord(record, info);
+        }
+        return info;
+    }
+    
+    /**
+     * ترويسات METADATA (صيغة البريد): حتى أول سطر فارغ، والأسطر التي تبدأ بمسافة تكملة للسابق
+     */
+    private static void parseMetadata(File file, PackageInfo info) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            String header = null;
+            StringBuilder value = new StringBuilder();
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                    if (header != null) {
+                        value.append('\n').append(line.trim());
+                    }
+                    continue;
+                }
+                if (header != null) {
+                    applyHeader(info, header, value.toString());
+                    header = null;
+                }
+                // The long description follows; it can be most of the file
+                if (line.isEmpty()) {
+                    break;
+                }
+                
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    header = line.substring(0, colon);
+                    value.setLength(0);
+                    value.append(line.substring(colon + 1).trim());
+                }
+            }
+            if (header != null) {
+                applyHeader(info, header, value.toString());
+            }
+        }
+    }
+    
+    private static void applyHeader(PackageInfo info, String header, String value) {
+        switch (header) {
+            case "Name":
+                info.name = value;
+                break;
+            case "Version":
+                info.version = value;
+                break;
+            case "Summary":
+                info.summary = value;
+                break;
+            case "Author":
+                info.author = value;
+                break;
+            case "Author-email":
+                info.authorEmail = value;
+                break;
+            case "License":
+                info.license = value;
+                break;
+            case "Home-page":
+                info.homePage = value;
+                break;
+            case "Project-URL":
+                // "Homepage, https://..." when Home-page is absent
+                if (info.homePage.isEmpty() && value.regionMatches(true, 0, "homepage,", 0, 9)) {
+                    info.homePage = value.substring(9).trim();
+                }
+                break;
+            case "Requires-Python":
+                info.requiresPython = value;
+                break;
+            case "Classifier":
+                info.classifiers.add(value);
+                break;
+            case "Requires-Dist":
+                info.requiresDist.add(value);
+                if (!isExtraRequirement(value)) {
+                    String name = requirementName(value);
+                    if (!name.isEmpty() && !info.dependencies.contains(name)) {
+                        info.dependencies.add(name);
+                    }
+                }
+                break;
+        }
+    }
+    
+    /**
+     * هل التبعية مطلوبة فقط مع إضافة اختيارية، مثل "pytest; extra == 'test'"
+     */
+    private static boolean isExtraRequirement(String requirement) {
+        int semicolon = requirement.indexOf(';');
+        return semicolon >= 0 && requirement.indexOf("extra", semicolon) >= 0;
+    }
+    
+    private static String requirementName(String requirement) {
+        int end = 0;
+        while (end < requirement.length()) {
+            char c = requirement.charAt(end);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != '.') break;
+            end++;
+        }
+        return requirement.substring(0, end);
+    }
+    
+    /**
+     * RECORD: "path,hash,size" لكل ملف؛ الحجم بعد آخر فاصلة (المسار قد يحتوي فواصل بين علامتي تنصيص)
+     */
+    private static void parseRecord(File file, PackageInfo info) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.lastIndexOf(',');
+                if (comma < 0) continue;
+                
+                info.fileCount++;
+                // RECORD itself and .pyc files have an empty size
+                if (comma < line.length() - 1) {
+                    try {
+                        info.sizeBytes += Long.parseLong(line.substring(comma + 1).trim());
+                    } catch (NumberFormatException e) {
+                        // Not a size; ignore the line
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * إسقاط كل النتائج المحفوظة
+     */
+    public static void clearCache() {
+        SITE_CACHE.clear();
+        DIST_INFO_CACHE.clear();
+    }
+    
+    /**
+     * مراقبة مجلدات site-packages؛ listener يُستدعى على خيط الواجهة بعد هدوء التغييرات
+     */
+    public static Watcher watch(List<File> siteDirectories, Runnable listener) {
+        return new Watcher(siteDirectories, listener);
+    }
+    
+    /**
+     * مراقب مجلدات البيئة؛ يجب إيقافه بـ stop() عند إغلاق الشاشة.
+     * المجلد غير الموجود بعد (مثل site-packages الخاص بالمستخدم قبل أول pip install --user)
+     * يُراقب عبر أقرب مجلد أب موجود، ويبدأ مراقبته هو عند إنشائه
+     */
+    public static class Watcher {
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+        // Guarded by this
+        private final List<FileObserver> observers = new ArrayList<>();
+        private boolean stopped = false;
+        private final Runnable notifyChange;
+        
+        Watcher(List<File> siteDirectories, Runnable listener) {
+            notifyChange = () -> {
+                // pip run from the terminal changes packages behind PipOperations too
+                PipOperations.invalidateInstalled();
+                listener.run();
+            };
+            for (File directory : siteDirectories) {
+                watchDirectory(directory);
+            }
+        }
+        
+        private synchronized void watchDirectory(File directory) {
+            if (stopped) return;
+            
+            if (directory.isDirectory()) {
+                startObserver(new FileObserver(directory.getAbsolutePath(), WATCH_MASK) {
+                    @Override
+                    public void onEvent(int event, String path) {
+                        // Only whole packages matter, not their individual files
+                        if (path != null && path.endsWith(DIST_INFO_SUFFIX)) {
+                            scheduleNotify();
+                        }
+                    }
+                });
+                return;
+            }
+            
+            // Wait for the next missing path component to appear in the nearest existing ancestor
+            File child = directory;
+            File parent = directory.getParentFile();
+            while (parent != null && !parent.isDirectory()) {
+                child = parent;
+                parent = parent.getParentFile();
+            }
+            if (parent == null) return;
+            
+            String childName = child.getName();
+            FileObserver[] self = new FileObserver[1];
+            self[0] = new FileObserver(parent.getAbsolutePath(), FileObserver.CREATE | FileObserver.MOVED_TO) {
+                @Override
+                public void onEvent(int event, String path) {
+                    if (!childName.equals(path)) return;
+                    mainHandler.post(() -> {
+                        stopObserver(self[0]);
+                        // Either the directory itself or one more level towards it
+                        watchDirectory(directory);
+                        if (directory.isDirectory()) {
+                            scheduleNotify();
+                        }
+                    });
+                }
+            };
+            startObserver(self[0]);
+            // Created between the check and the start of watching
+            if (child.isDirectory()) {
+                stopObserver(self[0]);
+                watchDirectory(directory);
+            }
+        }
+        
+        private void startObserver(FileObserver observer) {
+            observer.startWatching();
+            observers.add(observer);
+        }
+        
+        private synchronized void stopObserver(FileObserver observer) {
+            if (observers.remove(observer)) {
+                observer.stopWatching();
+            }
+        }
+        
+        private void scheduleNotify() {
+            mainHandler.removeCallbacks(notifyChange);
+            mainHandler.postDelayed(notifyChange, CHANGE_DELAY_MS);
+        }
+        
+        public synchronized void stop() {
+            stopped = true;
+            for (FileObserver observer : observers) {
+                observer.stopWatching();
+            }
+            observers.clear();
+            mainHandler.removeCallbacks(notifyChange);
+        }
+    }
+}
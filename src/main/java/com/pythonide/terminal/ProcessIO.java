@@ -0,0 +1,390 @@
+package com.pythonide.terminal;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ProcessIO - قراءة مخرجات العمليات الخارجية لكل المنفذين
+ * يضخ stdout وstderr من مجمّع خيوط مشترك بمخازن بايت كبيرة ويفك ترميزها تدريجياً دون تقسيم إلى أسطر،
+ * ويحتفظ في الذاكرة بحد أقصى من المخرجات (البداية والنهاية) وينقل الباقي إلى ملف مؤقت.
+ * المستمع يُستدعى على خيط الضخ نفسه، فإذا تأخر توقفت القراءة وامتلأ الأنبوب وانتظرت العملية (backpressure)
+ */
+public class ProcessIO {
+    
+    private static final String TAG = "ProcessIO";
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Chars kept in memory per stream; the rest goes to a spill file
+    public static final int DEFAULT_MEMORY_LIMIT = 256 * 1024;
+    private static final long SPILL_MAX_AGE_MS = 60 * 60 * 1000;
+    // Chars written to one spill file; past this only the count of the rest is kept
+    private static final long SPILL_LIMIT = 8 * 1024 * 1024;
+    
+    // Pump threads are reused across processes instead of two new threads per process
+    private static final ExecutorService PUMP_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "process-io-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
+    public interface OutputListener {
+        /**
+         * دفعة نص مفكوك الترميز (على خيط الضخ)؛ المخزن يُعاد استخدامه، فيجب نسخه إذا احتُفظ به
+         */
+        void onOutput(CharSequence text, boolean isError);
+    }
+    
+    /**
+     * بدء ضخ مخرجات العملية بحد الذاكرة الافتراضي
+     * @param listener يمكن أن يكون null إذا كان المطلوب النص المجمّع فقط
+     */
+    public static Pump start(Process process, OutputListener listener) {
+        return start(process, listener, DEFAULT_MEMORY_LIMIT);
+    }
+    
+    /**
+     * @param memoryLimit الأحرف المحفوظة لكل مجرى؛ 0 للاكتفاء بالمستمع دون حفظ شيء
+     */
+    public static Pump start(Process process, OutputListener listener, int memoryLimit) {
+        Pump pump = new Pump(process, memoryLimit);
+        PUMP_EXECUTOR.execute(() -> pump.pumpStream(process.getInputStream(), pump.stdout, false, listener));
+        PUMP_EXECUTOR.execute(() -> pump.pumpStream(process.getErrorStream(), pump.stderr, true, listener));
+        return pump;
+    }
+    
+    /**
+     * ضخ عملية واحدة: ينتهي بانتهاء العملية وقراءة كل مخرجاتها
+     */
+    public static class Pump {
+        private final Process process;
+        private final CappedOutput stdout;
+        private final CappedOutput stderr;
+        private final CountDownLatch drained = new CountDownLatch(2);
+        private Runnable drainedCallback;
+        
+        Pump(Process process, int memoryLimit) {
+            this.process = process;
+            this.stdout = new CappedOutput(memoryLimit);
+            this.stderr = new CappedOutput(memoryLimit);
+        }
+        
+        /**
+         * انتظار خروج العملية وانتهاء قراءة مخرجاتها
+         */
+        public int waitFor() throws InterruptedException {
+            int exitCode = process.waitFor();
+            drained.await();
+            return exitCode;
+        }
+        
+        /**
+         * @return false إذا انقضت المهلة قبل الخروج وانتهاء القراءة
+         */
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            return process.waitFor(timeout, unit)
+                && drained.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        
+        /**
+         * تشغيل callback بعد انتهاء قراءة المجريين (على خيط الضخ، أو فوراً إذا انتهت)
+         */
+        public void whenDrained(Runnable callback) {
+            synchronized (this) {
+                if (drained.getCount() > 0) {
+                    drainedCallback = callback;
+                    return;
+                }
+            }
+            callback.run();
+        }
+        
+        private void onStreamDrained() {
+            Runnable callback;
+            synchronized (this) {
+                drained.countDown();
+                if (drained.getCount() > 0) return;
+                callback = drainedCallback;
+                drainedCallback = null;
+            }
+            if (callback != null) {
+                callback.run();
+            }
+        }
+        
+        public CappedOutput getStdout() {
+            return stdout;
+        }
+        
+        public CappedOutput getStderr() {
+            return stderr;
+        }
+        
+        /**
+         * حذف ملفات المخرجات الكاملة بعد الانتهاء من النص؛ ما يصل بعدها لا يُكتب إلى ملف
+         */
+        public void discard() {
+            stdout.deleteSpill();
+            stderr.deleteSpill();
+        }
+        
+        private void pumpStream(InputStream stream, CappedOutput capture, boolean isError, OutputListener listener) {
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+            CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+            OutputListener activeListener = listener;
+            try (InputStream input = stream) {
+                int read;
+                while ((read = input.read(bytes.array(), bytes.position(), bytes.remaining())) != -1) {
+                    bytes.position(bytes.position() + read);
+                    bytes.flip();
+                    // A character split across reads stays in the byte buffer for the next round
+                    decoder.decode(bytes, chars, false);
+                    bytes.compact();
+                    activeListener = deliver(chars, capture, isError, activeListener);
+                }
+                bytes.flip();
+                decoder.decode(bytes, chars, true);
+                decoder.flush(chars);
+                deliver(chars, capture, isError, activeListener);
+            } catch (IOException e) {
+                // The stream closes under us when the process is destroyed
+                Log.d(TAG, "Stopped reading " + (isError ? "stderr" : "stdout") + ": " + e.getMessage());
+            } finally {
+                capture.finish();
+                onStreamDrained();
+            }
+        }
+        
+        /**
+         * @return المستمع للدفعة التالية، أو null إذا فشل (تستمر القراءة حتى لا تعلق العملية على أنبوب ممتلئ)
+         */
+        private static OutputListener deliver(CharBuffer chars, CappedOutput capture, boolean isError,
+                                              OutputListener listener) {
+            chars.flip();
+            if (chars.hasRemaining()) {
+                capture.append(chars);
+                if (listener != null) {
+                    try {
+                        listener.onOutput(chars, isError);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Output listener failed", e);
+                        listener = null;
+                    }
+                }
+            }
+            chars.clear();
+            return listener;
+        }
+    }
+    
+    /**
+     * مخرجات مجري واحد محدودة الذاكرة: كاملة حتى الحد، ثم البداية والنهاية فقط والكامل في ملف مؤقت
+     * (حتى SPILL_LIMIT حرفاً، ويُسجَّل عدد ما بعده)
+     */
+    public static class CappedOutput {
+        private final int memoryLimit;
+        private final StringBuilder text = new StringBuilder();
+        private long length = 0;
+        
+        // Set once the limit is passed
+        private char[] tail;
+        private int tailEnd = 0;
+        private boolean tailFull = false;
+        private File spillFile;
+        private Writer spillWriter;
+        private long spilled = 0;
+        // Chars past SPILL_LIMIT that the spill file does not hold
+        private long spillOmitted = 0;
+        private boolean discarded = false;
+        
+        CappedOutput(int memoryLimit) {
+            this.memoryLimit = Math.max(0, memoryLimit);
+        }
+        
+        synchronized void append(CharSequence chars) {
+            if (memoryLimit == 0) return;
+            
+            int count = chars.length();
+            length += count;
+            if (tail == null) {
+                if (text.length() + count <= memoryLimit) {
+                    text.append(chars);
+                    return;
+                }
+                overflow();
+            }
+            
+            if (spillWriter != null) {
+                int written = (int) Math.max(0, Math.min(count, SPILL_LIMIT - spilled));
+                spillOmitted += count - written;
+                try {
+                    if (written > 0) {
+                        spillWriter.append(chars, 0, written);
+                        spilled += written;
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to write spill file", e);
+                    closeSpill();
+                }
+            }
+            // Only the last tail.length chars can survive
+            for (int i = Math.max(0, count - tail.length); i < count; i++) {
+                tail[tailEnd++] = chars.charAt(i);
+                if (tailEnd == tail.length) {
+                    tailEnd = 0;
+                    tailFull = true;
+                }
+            }
+        }
+        
+        /**
+         * تجاوز الحد: تبقى الربع الأول كبداية، والباقي حلقة لآخر المخرجات، وما سبق يُنقل إلى ملف
+         */
+        private void overflow() {
+            int headLength = memoryLimit / 4;
+            tail = new char[memoryLimit - headLength];
+            if (!discarded) {
+                try {
+                    spillFile = createSpillFile();
+                    spillWriter = new OutputStreamWriter(new FileOutputStream(spillFile), StandardCharsets.UTF_8);
+                    spillWriter.append(text);
+                    spilled = text.length();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to create spill file", e);
+                    closeSpill();
+                }
+            }
+            // The part after the head goes through the tail like new output
+            String rest = text.substring(Math.min(headLength, text.length()));
+            text.setLength(Math.min(headLength, text.length()));
+            for (int i = Math.max(0, rest.length() - tail.length); i < rest.length(); i++) {
+                tail[tailEnd++] = rest.charAt(i);
+                if (tailEnd == tail.length) {
+                    tailEnd = 0;
+                    tailFull = true;
+                }
+            }
+        }
+        
+        synchronized void finish() {
+            if (spillWriter != null && spillOmitted > 0) {
+                try {
+                    spillWriter.append("\n[... ").append(String.valueOf(spillOmitted)).append(" حرفاً لم تُكتب ...]\n");
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to write spill file", e);
+                }
+            }
+            closeSpill();
+        }
+        
+        synchronized void deleteSpill() {
+            discarded = true;
+            closeSpill();
+            if (spillFile != null && !spillFile.delete()) {
+                Log.d(TAG, "Could not delete spill file " + spillFile);
+            }
+            spillFile = null;
+        }
+        
+        private void closeSpill() {
+            if (spillWriter != null) {
+                try {
+                    spillWriter.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close spill file", e);
+                }
+                spillWriter = null;
+            }
+        }
+        
+        /**
+         * النص المحفوظ في الذاكرة؛ عند التجاوز: البداية ثم ملاحظة بالمحذوف ومكان الملف ثم النهاية
+         */
+        public synchronized String getText() {
+            if (tail == null) {
+                return text.toString();
+            }
+            
+            int tailLength = tailFull ? tail.length : tailEnd;
+            StringBuilder result = new StringBuilder(text.length() + tailLength + 128);
+            result.append(text);
+            result.append("\n[... ").append(length - text.length() - tailLength).append(" حرفاً محذوفاً");
+            if (spillFile != null && spillOmitted > 0) {
+                result.append("، أول ").append(spilled).append(" حرفاً من المخرجات في ").append(spillFile.getAbsolutePath());
+            } else if (spillFile != null) {
+                result.append("، المخرجات كاملة في ").append(spillFile.getAbsolutePath());
+            }
+            result.append(" ...]\n");
+            if (tailFull) {
+                result.append(tail, tailEnd, tail.length - tailEnd);
+            }
+            result.append(tail, 0, tailEnd);
+            return result.toString();
+        }
+        
+        /**
+         * عدد كل الأحرف المستلمة
+         */
+        public synchronized long getLength() {
+            return length;
+        }
+        
+        public synchronized boolean isTruncated() {
+            return tail != null;
+        }
+        
+        /**
+         * ملف المخرجات الكاملة إذا تجاوزت الحد، وإلا null (أو بعد discard())
+         */
+        public synchronized File getSpillFile() {
+            return spillFile;
+        }
+    }
+    
+    private static File createSpillFile() throws IOException {
+        // java.io.tmpdir is the app's cache directory on Android
+        File directory = new File(System.getProperty("java.io.tmpdir"), "process_output");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        deleteOldSpillFiles(directory);
+        return File.createTempFile("output", ".txt", directory);
+    }
+    
+    private static void deleteOldSpillFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        
+        long cutoff = System.currentTimeMillis() - SPILL_MAX_AGE_MS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && !file.delete()) {
+                Log.d(TAG, "Could not delete old spill file " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.pythonide.terminal;
+
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ProcessSupervisor - مشرف عمليات الخلفية
+ * يحدّ عدد العمليات المتزامنة ويضع الباقي في طابور، ويقرأ /proc/<pid>/stat و status كل ثانية
+ * لحساب وقت المعالج والذاكرة، ويوقف العملية التي تتجاوز حد الوقت أو الذاكرة، ويحتفظ بآخر مخرجاتها فقط
+ */
+public class ProcessSupervisor {
+    
+    private static final String TAG = "ProcessSupervisor";
+    
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+    // Grace period between SIGTERM and SIGKILL for processes stopped by a limit
+    private static final long KILL_GRACE_MS = 3000;
+    private static final int OUTPUT_TAIL_ROWS = 500;
+    // Wide enough that log lines are kept whole
+    private static final int OUTPUT_TAIL_COLUMNS = 4096;
+    
+    private static final Pattern PID_PATTERN = Pattern.compile("pid=(\\d+)");
+    private static final long CLOCK_TICKS_PER_SECOND = clockTicksPerSecond();
+    
+    public interface ExitListener {
+        /**
+         * انتهت العملية أو أُوقفت أو فشل بدؤها (على خيط خلفي)
+         */
+        void onProcessExit(TerminalCommandExecutor.ProcessInfo processInfo);
+    }
+    
+    private int maxConcurrent;
+    private long maxRuntimeMs;
+    private long maxRssKb;
+    private final ExitListener exitListener;
+    
+    // Queued and running, in submission order
+    private final Map<Integer, TerminalCommandExecutor.ProcessInfo> processes = new LinkedHashMap<>();
+    private final ArrayDeque<TerminalCommandExecutor.ProcessInfo> queue = new ArrayDeque<>();
+    private int runningCount = 0;
+    private int nextProcessId = 1;
+    
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "process-supervisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> sampling;
+    
+    /**
+     * @param maxRuntimeMs 0 بلا حد
+     * @param maxRssKb 0 بلا حد
+     */
+    public ProcessSupervisor(int maxConcurrent, long maxRuntimeMs, long maxRssKb, ExitListener exitListener) {
+        this.exitListener = exitListener;
+        setLimits(maxConcurrent, maxRuntimeMs, maxRssKb);
+    }
+    
+    /**
+     * تغيير الحدود؛ تطبق على العمليات الجارية من العينة التالية
+     */
+    public synchronized void setLimits(int maxConcurrent, long maxRuntimeMs, long maxRssKb) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxRuntimeMs = maxRuntimeMs;
+        this.maxRssKb = maxRssKb;
+        startQueued();
+    }
+    
+    /**
+     * إضافة أمر: يبدأ فوراً إذا سمح الحد، وإلا ينتظر في الطابور
+     * @return رقم العملية
+     */
+    public synchronized int submit(String command, String[] commandArray, File directory) {
+        TerminalCommandExecutor.ProcessInfo processInfo = new TerminalCommandExecutor.ProcessInfo();
+        processInfo.id = nextProcessId++;
+        processInfo.command = command;
+        processInfo.commandArray = commandArray;
+        processInfo.directory = directory;
+        processInfo.state = TerminalCommandExecutor.ProcessState.QUEUED;
+        processInfo.output = new TerminalOutputBuffer(OUTPUT_TAIL_ROWS);
+        processInfo.output.setColumns(OUTPUT_TAIL_COLUMNS);
+        processInfo.error = new TerminalOutputBuffer(OUTPUT_TAIL_ROWS);
+        processInfo.error.setColumns(OUTPUT_TAIL_COLUMNS);
+        
+        processes.put(processInfo.id, processInfo);
+        queue.add(processInfo);
+        startQueued();
+        return processInfo.id;
+    }
+    
+    private void startQueued() {
+        while (runningCount < maxConcurrent && !queue.isEmpty()) {
+            start(queue.poll());
+        }
+    }
+    
+    private void start(TerminalCommandExecutor.ProcessInfo processInfo) {
+        ProcessBuilder pb = new ProcessBuilder(processInfo.commandArray);
+        if (processInfo.directory != null) {
+            pb.directory(processInfo.directory);
+        }
+        
+        try {
+            processInfo.process = pb.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start " + processInfo.command, e);
+            processInfo.state = TerminalCommandExecutor.ProcessState.FAILED;
+            processInfo.stopReason = e.getMessage();
+            processes.remove(processInfo.id);
+            notifyExit(processInfo);
+            return;
+        }
+        
+        runningCount++;
+        processInfo.state = TerminalCommandExecutor.ProcessState.RUNNING;
+        processInfo.startTime = System.currentTimeMillis();
+        processInfo.pid = getPid(processInfo.process);
+        
+        // Only the tail buffers keep output; nothing else is retained
+        ProcessIO.Pump pump = ProcessIO.start(processInfo.process,
+            (text, isError) -> (isError ? processInfo.error : processInfo.output).append(text), 0);
+        pump.whenDrained(() -> onExit(processInfo));
+        
+        if (sampling == null) {
+            sampling = sampler.scheduleWithFixedDelay(this::sample,
+                SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * بعد انتهاء قراءة مخرجات العملية (أي عند خروجها عادةً)
+     */
+    private void onExit(TerminalCommandExecutor.ProcessInfo processInfo) {
+        int exitCode;
+        try {
+            exitCode = processInfo.process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        finish(processInfo, exitCode);
+    }
+    
+    private void finish(TerminalCommandExecutor.ProcessInfo processInfo, int exitCode) {
+        synchronized (this) {
+            // Already handled by a kill or the sampler
+            if (processes.remove(processInfo.id) == null) return;
+            
+            processInfo.exitCode = exitCode;
+            if (processInfo.state == TerminalCommandExecutor.ProcessState.RUNNING) {
+                processInfo.state = TerminalCommandExecutor.ProcessState.FINISHED;
+            }
+            runningCount--;
+            startQueued();
+        }
+        notifyExit(processInfo);
+    }
+    
+    private void notifyExit(TerminalCommandExecutor.ProcessInfo processInfo) {
+        if (exitListener != null) {
+            exitListener.onProcessExit(processInfo);
+        }
+    }
+    
+    /**
+     * عينة دورية: وقت المعالج والذاكرة لكل عملية جارية، وتطبيق الحدود
+     */
+    private void sample() {
+        TerminalCommandExecutor.ProcessInfo[] running;
+        long runtimeLimit;
+        long memoryLimit;
+        synchronized (this) {
+            if (runningCount == 0 && sampling != null) {
+                sampling.cancel(false);
+                sampling = null;
+                return;
+            }
+            running = processes.values().toArray(new TerminalCommandExecutor.ProcessInfo[0]);
+            runtimeLimit = maxRuntimeMs;
+            memoryLimit = maxRssKb;
+        }
+        
+        long now = System.currentTimeMillis();
+        for (TerminalCommandExecutor.ProcessInfo processInfo : running) {
+            if (processInfo.process == null) continue;
+            
+            if (!processInfo.process.isAlive()) {
+                // A child still holding the pipes would otherwise keep the slot taken
+                finish(processInfo, processInfo.process.exitValue());
+                continue;
+            }
+            readProcStats(processInfo, now);
+            // Already being stopped
+            if (processInfo.state != TerminalCommandExecutor.ProcessState.RUNNING) continue;
+            
+            if (runtimeLimit > 0 && now - processInfo.startTime > runtimeLimit) {
+                stop(processInfo, "تجاوز حد الوقت (" + runtimeLimit / 1000 + " ث)");
+            } else if (memoryLimit > 0 && processInfo.rssKb > memoryLimit) {
+                stop(processInfo, "تجاوز حد الذاكرة (" + memoryLimit / 1024 + " MB)");
+            }
+        }
+    }
+    
+    private static void readProcStats(TerminalCommandExecutor.ProcessInfo processInfo, long now) {
+        if (processInfo.pid <= 0) return;
+        
+        String stat = readFirstLine(new File("/proc/" + processInfo.pid + "/stat"));
+        if (stat != null) {
+            // The command name may contain spaces and parentheses; fields resume after the last ')'
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            if (fields.length > 12) {
+                // utime and stime, fields 14 and 15 of stat(5)
+                long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+                long cpuTimeMs = ticks * 1000 / CLOCK_TICKS_PER_SECOND;
+                if (processInfo.lastSampleTime > 0 && now > processInfo.lastSampleTime) {
+                    processInfo.cpuPercent = (cpuTimeMs - processInfo.cpuTimeMs) * 100.0
+                        / (now - processInfo.lastSampleTime);
+                }
+                processInfo.cpuTimeMs = cpuTimeMs;
+                processInfo.lastSampleTime = now;
+            }
+        }
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/" + processInfo.pid + "/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    processInfo.rssKb = parseKb(line);
+                } else if (line.startsWith("VmHWM:")) {
+                    processInfo.peakRssKb = parseKb(line);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Exited between the liveness check and the read
+        }
+    }
+    
+    private static long parseKb(String line) {
+        String[] parts = line.split("\\s+");
+        return Long.parseLong(parts[1]);
+    }
+    
+    private static String readFirstLine(File file) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            return reader.readLine();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * إيقاف عملية تجاوزت حداً: SIGTERM ثم SIGKILL بعد مهلة
+     */
+    private void stop(TerminalCommandExecutor.ProcessInfo processInfo, String reason) {
+        Log.w(TAG, "Stopping " + processInfo.command + ": " + reason);
+        processInfo.state = TerminalCommandExecutor.ProcessState.STOPPED;
+        processInfo.stopReason = reason;
+        processInfo.process.destroy();
+        sampler.schedule(() -> {
+            if (processInfo.process.isAlive()) {
+                processInfo.process.destroyForcibly();
+            }
+        }, KILL_GRACE_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * إيقاف عملية بطلب المستخدم، أو حذفها من الطابور إذا لم تبدأ
+     * @return true إذا توقفت أو حُذفت
+     */
+    public boolean kill(int processId) throws InterruptedException {
+        TerminalCommandExecutor.ProcessInfo processInfo;
+        synchronized (this) {
+            processInfo = processes.get(processId);
+            if (processInfo == null) return false;
+            
+            if (processInfo.state == TerminalCommandExecutor.ProcessState.QUEUED) {
+                queue.remove(processInfo);
+                processes.remove(processId);
+                processInfo.state = TerminalCommandExecutor.ProcessState.STOPPED;
+                processInfo.stopReason = "أُلغيت قبل البدء";
+                return true;
+            }
+            processInfo.state = TerminalCommandExecutor.ProcessState.STOPPED;
+            processInfo.stopReason = "أوقفها المستخدم";
+        }
+        
+        Process process = processInfo.process;
+        process.destroy();
+        
+        // انتظار لفترة قصيرة للتوقف الطبيعي
+        boolean finished = process.waitFor(3, TimeUnit.SECONDS);
+        if (!finished) {
+            process.destroyForcibly();
+            finished = process.waitFor(1, TimeUnit.SECONDS);
+        }
+        if (finished) {
+            finish(processInfo, process.exitValue());
+        }
+        return finished;
+    }
+    
+    /**
+     * لقطة من العمليات الجارية والمنتظرة
+     */
+    public synchronized Map<Integer, TerminalCommandExecutor.ProcessInfo> getProcesses() {
+        return new HashMap<>(processes);
+    }
+    
+    /**
+     * إيقاف كل العمليات وإفراغ الطابور
+     */
+    public void shutdown() {
+        synchronized (this) {
+            queue.clear();
+            Iterator<TerminalCommandExecutor.ProcessInfo> iterator = processes.values().iterator();
+            while (iterator.hasNext()) {
+                TerminalCommandExecutor.ProcessInfo processInfo = iterator.next();
+                if (processInfo.process != null) {
+                    processInfo.process.destroy();
+                }
+                iterator.remove();
+            }
+            runningCount = 0;
+        }
+        sampler.shutdownNow();
+    }
+    
+    /**
+     * رقم العملية في النظام؛ Process.pid() غير متاح على Android فيُقرأ من تنفيذ المنصة
+     */
+    private static int getPid(Process process) {
+        try {
+            Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getInt(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Android's implementation prints "Process[pid=123, ...]"
+            Matcher matcher = PID_PATTERN.matcher(process.toString());
+            return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+        }
+    }
+    
+    private static long clockTicksPerSecond() {
+        try {
+            long ticks = Os.sysconf(OsConstants._SC_CLK_TCK);
+            return ticks > 0 ? ticks : 100;
+        } catch (Throwable e) {
+            // USER_HZ is 100 on every Android kernel
+            return 100;
+        }
+    }
+}
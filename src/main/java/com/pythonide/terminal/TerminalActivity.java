@@ -7,7 +7,6 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.text.InputType;
-import android.text.method.ScrollingMovementMethod;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.inputmethod.EditorInfo;
@@ -15,17 +14,17 @@ import android.view.inputmethod.InputMethodManager;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.LinearLayout;
-import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -33,10 +32,9 @@ import java.util.concurrent.Executors;
 
 public class TerminalActivity extends Activity {
     
-    private TextView outputTextView;
+    private TerminalOutputView outputView;
     private EditText inputEditText;
     private Button executeButton;
-    private ScrollView scrollView;
     private LinearLayout inputLayout;
     
     private ExecutorService executorService;
@@ -64,15 +62,12 @@ public class TerminalActivity extends Activity {
     }
     
     private void initializeViews() {
-        outputTextView = findViewById(R.id.output_text);
+        outputView = findViewById(R.id.output_view);
         inputEditText = findViewById(R.id.input_edit);
         executeButton = findViewById(R.id.execute_button);
-        scrollView = findViewById(R.id.scroll_view);
         inputLayout = findViewById(R.id.input_layout);
         
-        outputTextView.setMovementMethod(new ScrollingMovementMethod());
-        outputTextView.setTextSize(14);
-        outputTextView.setTypeface(null, android.graphics.Typeface.MONOSPACE);
+        outputView.setTextSize(14);
         inputEditText.setTypeface(null, android.graphics.Typeface.MONOSPACE);
         inputEditText.setTextSize(14);
         inputEditText.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
@@ -176,20 +171,14 @@ public class TerminalActivity extends Activity {
         executorService.execute(new Runnable() {
             @Override
             public void run() {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(pythonProcess.getInputStream()));
-                StringBuilder output = new StringBuilder();
+                InputStreamReader reader = new InputStreamReader(pythonProcess.getInputStream(), StandardCharsets.UTF_8);
+                char[] chunk = new char[8192];
                 
                 try {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        final String finalLine = line;
-                        mainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                appendOutput(finalLine + "\n");
-                                scrollToBottom();
-                            }
-                        });
+                    // Whole chunks go straight to the scrollback; the view redraws once per frame
+                    int read;
+                    while ((read = reader.read(chunk)) != -1) {
+                        outputView.append(CharBuffer.wrap(chunk, 0, read));
                     }
                 } catch (IOException e) {
                     mainHandler.post(new Runnable() {
@@ -222,7 +211,7 @@ public class TerminalActivity extends Activity {
         
         // معالجة الأوامر الخاصة
         if (command.equals("clear")) {
-            outputTextView.setText("");
+            outputView.clear();
             inputEditText.setText("");
             return;
         }
@@ -282,17 +271,7 @@ public class TerminalActivity extends Activity {
     }
     
     private void appendOutput(String text) {
-        outputTextView.append(text);
-        scrollToBottom();
-    }
-    
-    private void scrollToBottom() {
-        scrollView.post(new Runnable() {
-            @Override
-            public void run() {
-                scrollView.fullScroll(View.FOCUS_DOWN);
-            }
-        });
+        outputView.append(text);
     }
     
     @Override
@@ -3,16 +3,11 @@ package com.pythonide.terminal;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -25,21 +20,35 @@ public class TerminalCommandExecutor {
     private static final String TAG = "TerminalCommandExecutor";
     private static final long TIMEOUT_SECONDS = 30;
     
+    // حدود عمليات الخلفية الافتراضية
+    private static final int DEFAULT_MAX_CONCURRENT = 4;
+    private static final long DEFAULT_MAX_RUNTIME_MS = 30 * 60 * 1000;
+    private static final long DEFAULT_MAX_RSS_KB = 512 * 1024;
+    
     private Context context;
     private ExecutorService executorService;
     private TerminalHandler terminalHandler;
     private TerminalErrorHandler errorHandler;
     
-    // Processes قيد التشغيل
-    private Map<Integer, ProcessInfo> activeProcesses;
-    private int nextProcessId = 1;
+    // Processes قيد التشغيل أو في الطابور
+    private ProcessSupervisor processSupervisor;
     
     public TerminalCommandExecutor(Context context) {
         this.context = context;
         this.executorService = Executors.newCachedThreadPool();
         this.terminalHandler = new TerminalHandler(context);
         this.errorHandler = new TerminalErrorHandler(context);
-        this.activeProcesses = new ConcurrentHashMap<>();
+        this.processSupervisor = new ProcessSupervisor(DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_RUNTIME_MS,
+            DEFAULT_MAX_RSS_KB, this::onBackgroundProcessExit);
+    }
+    
+    /**
+     * تعيين حدود عمليات الخلفية
+     * @param maxRuntimeMs 0 بلا حد
+     * @param maxRssKb 0 بلا حد
+     */
+    public void setProcessLimits(int maxConcurrent, long maxRuntimeMs, long maxRssKb) {
+        processSupervisor.setLimits(maxConcurrent, maxRuntimeMs, maxRssKb);
     }
     
     /**
@@ -103,22 +112,8 @@ public class TerminalCommandExecutor {
         try {
             ShellCommand shellCommand = parseCommand(command);
             
-            ProcessBuilder pb = new ProcessBuilder(shellCommand.getCommandArray());
-            Process process = pb.start();
-            
-            int processId = nextProcessId++;
-            ProcessInfo processInfo = new ProcessInfo();
-            processInfo.id = processId;
-            processInfo.command = command;
-            processInfo.process = process;
-            processInfo.startTime = System.currentTimeMillis();
-            processInfo.output = new ArrayList<>();
-            processInfo.error = new ArrayList<>();
-            
-            activeProcesses.put(processId, processInfo);
-            
-            // قراءة output في threads منفصلة
-            startProcessOutputReader(processInfo);
+            // يبدأ فوراً أو ينتظر في الطابور حتى يفرغ مكان
+            int processId = processSupervisor.submit(command, shellCommand.getCommandArray(), null);
             
             errorHandler.logInfo("بدء تنفيذ أمر في الخلفية: " + command + " (PID: " + processId + ")");
             
@@ -134,23 +129,12 @@ public class TerminalCommandExecutor {
      * إيقاف process
      */
     public boolean killProcess(int processId) {
-        ProcessInfo processInfo = activeProcesses.get(processId);
-        if (processInfo == null) {
-            return false;
-        }
-        
         try {
-            processInfo.process.destroy();
-            
-            // انتظار لفترة قصيرة للتوقف الطبيعي
-            boolean finished = processInfo.process.waitFor(3, TimeUnit.SECONDS);
-            
+            boolean finished = processSupervisor.kill(processId);
             if (!finished) {
-                processInfo.process.destroyForcibly();
-                finished = processInfo.process.waitFor(1, TimeUnit.SECONDS);
+                return false;
             }
             
-            activeProcesses.remove(processId);
             errorHandler.logInfo("تم إيقاف Process: " + processId);
             return finished;
             
@@ -164,7 +148,20 @@ public class TerminalCommandExecutor {
      * الحصول على جميع processes النشطة
      */
     public Map<Integer, ProcessInfo> getActiveProcesses() {
-        return new HashMap<>(activeProcesses);
+        return processSupervisor.getProcesses();
+    }
+    
+    /**
+     * تسجيل انتهاء عملية خلفية، مع سبب الإيقاف إذا تجاوزت حداً
+     */
+    private void onBackgroundProcessExit(ProcessInfo processInfo) {
+        if (processInfo.stopReason != null) {
+            errorHandler.logInfo("أُوقفت العملية " + processInfo.id + " (" + processInfo.command + "): "
+                + processInfo.stopReason);
+        } else {
+            errorHandler.logInfo("انتهت العملية " + processInfo.id + " (" + processInfo.command + ") برمز "
+                + processInfo.exitCode);
+        }
     }
     
     /**
@@ -250,18 +247,34 @@ public class TerminalCommandExecutor {
      */
     private CommandResult executePsCommand() {
         StringBuilder output = new StringBuilder("العمليات النشطة:\n");
-        output.append("PID\tالأمر\tالوقت\n");
-        output.append("----\t-------\t-------\n");
+        output.append("ID\tPID\tالحالة\tCPU\tCPU%\tالذاكرة\tالوقت\tالأمر\n");
+        output.append("--\t---\t------\t---\t----\t-------\t-----\t-----\n");
         
-        for (ProcessInfo process : activeProcesses.values()) {
-            long runtime = System.currentTimeMillis() - process.startTime;
-            String timeStr = String.format("%.1fs", runtime / 1000.0);
-            output.append(process.id).append("\t").append(process.command).append("\t").append(timeStr).append("\n");
+        for (ProcessInfo process : processSupervisor.getProcesses().values()) {
+            output.append(process.id).append("\t")
+                .append(process.pid > 0 ? String.valueOf(process.pid) : "-").append("\t")
+                .append(getStateLabel(process.state)).append("\t")
+                .append(String.format("%.1fs", process.cpuTimeMs / 1000.0)).append("\t")
+                .append(String.format("%.0f%%", process.cpuPercent)).append("\t")
+                .append(String.format("%.1fMB", process.rssKb / 1024.0)).append("\t")
+                .append(String.format("%.1fs", process.getRuntime() / 1000.0)).append("\t")
+                .append(process.command).append("\n");
         }
         
         return new CommandResult(true, output.toString(), "");
     }
     
+    private static String getStateLabel(ProcessState state) {
+        switch (state) {
+            case QUEUED:
+                return "انتظار";
+            case STOPPED:
+                return "إيقاف";
+            default:
+                return "تشغيل";
+        }
+    }
+    
     /**
      * تنفيذ أمر الإيقاف
      */
@@ -312,79 +325,23 @@ public class TerminalCommandExecutor {
     /**
      * تنفيذ أمر shell
      */
-    private int executeShellCommand(ShellCommand shellCommand) throws IOException {
+    private int executeShellCommand(ShellCommand shellCommand) throws IOException, InterruptedException {
         ProcessBuilder pb = new ProcessBuilder(shellCommand.getCommandArray());
         pb.directory(context.getFilesDir());
         
         Process process = pb.start();
         
-        // قراءة output و error
-        StringBuilder stdout = new StringBuilder();
-        StringBuilder stderr = new StringBuilder();
+        // قراءة output و error من خيوط الضخ المشتركة
+        ProcessIO.Pump pump = ProcessIO.start(process, null);
         
-        Thread stdoutThread = startStreamReader(process.getInputStream(), stdout);
-        Thread stderrThread = startStreamReader(process.getErrorStream(), stderr);
+        // انتظار الانتهاء وقراءة كل المخرجات
+        int exitCode = pump.waitFor();
         
-        // انتظار انتهاء
-        int exitCode = process.waitFor();
-        
-        // انتظار انتهاء threads القراءة
-        stdoutThread.join();
-        stderrThread.join();
-        
-        shellCommand.setResult(stdout.toString(), stderr.toString(), exitCode);
+        shellCommand.setResult(pump.getStdout().getText(), pump.getStderr().getText(), exitCode);
         
         return exitCode;
     }
     
-    /**
-     * بدء thread لقراءة stream
-     */
-    private Thread startStreamReader(InputStream inputStream, StringBuilder output) {
-        Thread thread = new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
-                }
-            } catch (IOException e) {
-                output.append("خطأ في قراءة Stream: ").append(e.getMessage()).append("\n");
-            }
-        });
-        thread.start();
-        return thread;
-    }
-    
-    /**
-     * بدء قارئ output للـ process
-     */
-    private void startProcessOutputReader(ProcessInfo processInfo) {
-        // stdout reader
-        executorService.execute(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(processInfo.process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    processInfo.output.add(line);
-                    // هنا يمكن إرسال البيانات للواجهة
-                }
-            } catch (IOException e) {
-                processInfo.error.add("خطأ في قراءة stdout: " + e.getMessage());
-            }
-        });
-        
-        // stderr reader
-        executorService.execute(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(processInfo.process.getErrorStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    processInfo.error.add(line);
-                }
-            } catch (IOException e) {
-                processInfo.error.add("خطأ في قراءة stderr: " + e.getMessage());
-            }
-        });
-    }
-    
     /**
      * callback للأوامر
      */
@@ -458,20 +415,58 @@ public class TerminalCommandExecutor {
     public static class ProcessInfo {
         public int id;
         public String command;
+        public String[] commandArray;
+        public File directory;
         public Process process;
+        public int pid = -1;
         public long startTime;
-        public List<String> output;
-        public List<String> error;
+        public volatile ProcessState state;
+        public int exitCode;
+        // سبب الإيقاف إذا أُوقفت أو فشل بدؤها
+        public volatile String stopReason;
+        
+        // آخر عينة من /proc
+        public volatile long cpuTimeMs;
+        public volatile double cpuPercent;
+        public volatile long rssKb;
+        public volatile long peakRssKb;
+        long lastSampleTime;
+        
+        // آخر الأسطر فقط
+        public TerminalOutputBuffer output;
+        public TerminalOutputBuffer error;
         
         public boolean isRunning() {
             return process != null && process.isAlive();
         }
         
+        /**
+         * 0 إذا كانت لا تزال في الطابور
+         */
         public long getRuntime() {
-            return System.currentTimeMillis() - startTime;
+            return startTime > 0 ? System.currentTimeMillis() - startTime : 0;
+        }
+        
+        public String getOutput() {
+            return output.getText();
+        }
+        
+        public String getErrorOutput() {
+            return error.getText();
         }
     }
     
+    /**
+     * حالة عملية الخلفية
+     */
+    public enum ProcessState {
+        QUEUED,
+        RUNNING,
+        FINISHED,
+        STOPPED,
+        FAILED
+    }
+    
     /**
      * تنظيف الموارد
      */
@@ -483,12 +478,7 @@ public class TerminalCommandExecutor {
             }
             
             // إنهاء جميع العمليات
-            for (ProcessInfo process : activeProcesses.values()) {
-                if (process.isRunning()) {
-                    process.process.destroy();
-                }
-            }
-            activeProcesses.clear();
+            processSupervisor.shutdown();
             
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
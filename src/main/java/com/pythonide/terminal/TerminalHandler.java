@@ -200,26 +200,13 @@ public class TerminalHandler {
         
         try {
             Process process = Runtime.getRuntime().exec(command);
-            result.exitCode = process.waitFor();
             
-            // قراءة stdout
-            BufferedReader stdoutReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            StringBuilder stdout = new StringBuilder();
-            String line;
-            while ((line = stdoutReader.readLine()) != null) {
-                stdout.append(line).append("\n");
-            }
-            result.stdout = stdout.toString();
-            stdoutReader.close();
-            
-            // قراءة stderr
-            BufferedReader stderrReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            StringBuilder stderr = new StringBuilder();
-            while ((line = stderrReader.readLine()) != null) {
-                stderr.append(line).append("\n");
-            }
-            result.stderr = stderr.toString();
-            stderrReader.close();
+            // قراءة stdout و stderr أثناء التنفيذ حتى لا تتوقف العملية على أنبوب ممتلئ
+            ProcessIO.Pump pump = ProcessIO.start(process, null);
+            result.exitCode = pump.waitFor();
+            result.stdout = pump.getStdout().getText();
+            result.stderr = pump.getStderr().getText();
+            pump.discard();
             
             log("تنفيذ أمر: " + command + " (exit code: " + result.exitCode + ")");
             
@@ -0,0 +1,159 @@
+package com.pythonide.terminal;
+
+import java.util.Arrays;
+
+/**
+ * TerminalOutputBuffer - سجل مخرجات الطرفية (scrollback) في حلقة ثابتة السعة من الصفوف
+ * يُلف السطر الطويل عند عرض الطرفية لحظة الكتابة، ويُسقط أقدم الصفوف عند امتلاء الحلقة،
+ * فتبقى الذاكرة محدودة مهما طالت المخرجات. آمن للكتابة من خيوط القراءة والقراءة من خيط الواجهة
+ */
+public class TerminalOutputBuffer {
+    
+    private static final int DEFAULT_COLUMNS = 80;
+    private static final int TAB_WIDTH = 8;
+    
+    private final String[] rows;
+    private int firstRow = 0;
+    private int rowCount = 0;
+    // Rows evicted since creation; lets the view keep a scrolled-up position steady
+    private long droppedRows = 0;
+    
+    // The unterminated last row, shown as the cursor row
+    private final StringBuilder currentRow = new StringBuilder();
+    private int columns = DEFAULT_COLUMNS;
+    
+    private boolean pendingCarriageReturn = false;
+    // 0: text, 1: after ESC, 2: inside an ANSI CSI sequence
+    private int escapeState = 0;
+    
+    public TerminalOutputBuffer(int capacity) {
+        rows = new String[capacity];
+    }
+    
+    /**
+     * إضافة نص خام من العملية؛ يفهم \n و\r (إعادة كتابة السطر) والجدولة، ويحذف رموز ANSI
+     */
+    public synchronized void append(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            
+            if (escapeState == 1) {
+                escapeState = c == '[' ? 2 : 0;
+                continue;
+            }
+            if (escapeState == 2) {
+                // Parameters until the final byte of the sequence
+                if (c >= 0x40 && c <= 0x7e) {
+                    escapeState = 0;
+                }
+                continue;
+            }
+            
+            if (pendingCarriageReturn) {
+                pendingCarriageReturn = false;
+                // A lone \r starts the row over (progress bars); \r\n is a plain line break
+                if (c != '\n') {
+                    currentRow.setLength(0);
+                }
+            }
+            
+            switch (c) {
+                case '\n':
+                    commitRow();
+                    break;
+                case '\r':
+                    pendingCarriageReturn = true;
+                    break;
+                case '\t':
+                    for (int spaces = TAB_WIDTH - currentRow.length() % TAB_WIDTH; spaces > 0; spaces--) {
+                        appendChar(' ');
+                    }
+                    break;
+                case '\u001b':
+                    escapeState = 1;
+                    break;
+                default:
+                    // Other control characters would only draw as boxes
+                    if (c >= ' ' || Character.isSurrogate(c)) {
+                        appendChar(c);
+                    }
+                    break;
+            }
+        }
+    }
+    
+    private void appendChar(char c) {
+        // Wrap at the terminal width, keeping surrogate pairs on one row
+        if (currentRow.length() >= columns && !Character.isLowSurrogate(c)) {
+            commitRow();
+        }
+        currentRow.append(c);
+    }
+    
+    private void commitRow() {
+        String row = currentRow.toString();
+        currentRow.setLength(0);
+        
+        if (rowCount == rows.length) {
+            rows[firstRow] = row;
+            firstRow = (firstRow + 1) % rows.length;
+            droppedRows++;
+        } else {
+            rows[(firstRow + rowCount) % rows.length] = row;
+            rowCount++;
+        }
+    }
+    
+    /**
+     * عدد الصفوف بما فيها صف المؤشر الأخير
+     */
+    public synchronized int getRowCount() {
+        return rowCount + 1;
+    }
+    
+    /**
+     * نسخ الصفوف [start, start + count) إلى out؛ صف المؤشر يُنسخ كنص مستقل
+     * @return عدد الصفوف المنسوخة
+     */
+    public synchronized int getRows(int start, int count, CharSequence[] out) {
+        int end = Math.min(rowCount + 1, start + count);
+        int copied = 0;
+        for (int row = Math.max(0, start); row < end; row++) {
+            out[copied++] = row < rowCount ? rows[(firstRow + row) % rows.length] : currentRow.toString();
+        }
+        return copied;
+    }
+    
+    public synchronized long getDroppedRows() {
+        return droppedRows;
+    }
+    
+    /**
+     * عرض الطرفية بالأحرف؛ يطبّق على ما يُكتب بعده فقط (لا يُعاد لف الصفوف السابقة)
+     */
+    public synchronized void setColumns(int columns) {
+        this.columns = Math.max(1, columns);
+    }
+    
+    public synchronized void clear() {
+        Arrays.fill(rows, null);
+        firstRow = 0;
+        rowCount = 0;
+        currentRow.setLength(0);
+        pendingCarriageReturn = false;
+        escapeState = 0;
+    }
+    
+    /**
+     * كل النص المحفوظ (للنسخ)
+     */
+    public synchronized String getText() {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < rowCount; row++) {
+            text.append(rows[(firstRow + row) % rows.length]).append('\n');
+        }
+        text.append(currentRow);
+        return text.toString();
+    }
+}
@@ -0,0 +1,297 @@
+package com.pythonide.terminal;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.OverScroller;
+import android.widget.Toast;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TerminalOutputView - عرض مخرجات الطرفية
+ * الكتابة من أي خيط تذهب مباشرة إلى TerminalOutputBuffer، ويُعاد الرسم مرة واحدة لكل إطار (Choreographer)
+ * مهما كان عدد الأسطر؛ ولا تُرسم إلا الصفوف الظاهرة. يتبع آخر المخرجات ما لم يمرّر المستخدم لأعلى
+ */
+public class TerminalOutputView extends View {
+    
+    private static final int SCROLLBACK_ROWS = 10000;
+    private static final int DEFAULT_TEXT_COLOR = 0xFF00FF00;
+    private static final float DEFAULT_TEXT_SIZE_SP = 14f;
+    private static final float LINE_SPACING_DP = 2f;
+    
+    private final TerminalOutputBuffer buffer = new TerminalOutputBuffer(SCROLLBACK_ROWS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    
+    private Paint textPaint;
+    private int lineHeight;
+    private float baseline;
+    private float charWidth;
+    
+    private GestureDetector gestureDetector;
+    private OverScroller scroller;
+    // Pixel offset of the viewport top into the current rows
+    private int scrollOffset = 0;
+    private boolean followOutput = true;
+    private long seenDroppedRows = 0;
+    
+    // Reused each frame for the visible slice
+    private CharSequence[] visibleRows = new CharSequence[0];
+    
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameScheduled.set(false);
+            invalidate();
+        }
+    };
+    
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+    
+    public TerminalOutputView(Context context) {
+        super(context);
+        init();
+    }
+    
+    public TerminalOutputView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+    
+    public TerminalOutputView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+    
+    private void init() {
+        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(DEFAULT_TEXT_COLOR);
+        textPaint.setTypeface(Typeface.MONOSPACE);
+        setTextSize(DEFAULT_TEXT_SIZE_SP);
+        
+        scroller = new OverScroller(getContext());
+        gestureDetector = new GestureDetector(getContext(), new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                scroller.forceFinished(true);
+                return true;
+            }
+            
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                scrollOutputBy(Math.round(distanceY));
+                return true;
+            }
+            
+            @Override
+            public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+                scroller.fling(0, scrollOffset, 0, -Math.round(velocityY), 0, 0, 0, getMaxScrollOffset());
+                postInvalidateOnAnimation();
+                return true;
+            }
+            
+            @Override
+            public void onLongPress(MotionEvent e) {
+                copyToClipboard();
+            }
+        });
+    }
+    
+    /**
+     * إضافة مخرجات (من أي خيط)؛ تظهر في الإطار التالي
+     */
+    public void append(CharSequence text) {
+        buffer.append(text);
+        if (frameScheduled.compareAndSet(false, true)) {
+            // Choreographer belongs to the main looper
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                scheduleFrame.run();
+            } else {
+                mainHandler.post(scheduleFrame);
+            }
+        }
+    }
+    
+    /**
+     * مسح الشاشة والسجل
+     */
+    public void clear() {
+        buffer.clear();
+        scroller.forceFinished(true);
+        scrollOffset = 0;
+        followOutput = true;
+        invalidate();
+    }
+    
+    public String getText() {
+        return buffer.getText();
+    }
+    
+    /**
+     * تعيين حجم النص بوحدة sp
+     */
+    public void setTextSize(float sizeSp) {
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, sizeSp,
+            getResources().getDisplayMetrics()));
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        float spacing = LINE_SPACING_DP * getResources().getDisplayMetrics().density;
+        // Whole pixels so row positions never drift over thousands of rows
+        lineHeight = (int) Math.ceil(metrics.descent - metrics.ascent + spacing);
+        baseline = -metrics.ascent;
+        charWidth = textPaint.measureText("M");
+        updateColumns();
+        invalidate();
+    }
+    
+    public void setTextColor(int color) {
+        textPaint.setColor(color);
+        invalidate();
+    }
+    
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateColumns();
+    }
+    
+    private void updateColumns() {
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        if (width > 0 && charWidth > 0) {
+            buffer.setColumns((int) (width / charWidth));
+        }
+    }
+    
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        
+        int rowCount = buffer.getRowCount();
+        syncScroll(rowCount);
+        
+        int viewportHeight = getViewportHeight();
+        int firstVisible = scrollOffset / lineHeight;
+        int visibleCount = viewportHeight / lineHeight + 2;
+        if (visibleRows.length < visibleCount) {
+            visibleRows = new CharSequence[visibleCount];
+        }
+        int count = buffer.getRows(firstVisible, visibleCount, visibleRows);
+        
+        canvas.save();
+        canvas.clipRect(getPaddingLeft(), getPaddingTop(),
+            getWidth() - getPaddingRight(), getHeight() - getPaddingBottom());
+        float x = getPaddingLeft();
+        float y = getPaddingTop() + firstVisible * lineHeight - scrollOffset + baseline;
+        for (int i = 0; i < count; i++) {
+            CharSequence row = visibleRows[i];
+            canvas.drawText(row, 0, row.length(), x, y, textPaint);
+            visibleRows[i] = null;
+            y += lineHeight;
+        }
+        canvas.restore();
+    }
+    
+    /**
+     * ملاءمة موضع التمرير مع الصفوف الحالية: تتبّع آخر المخرجات، أو تثبيت المحتوى الظاهر عند إسقاط صفوف قديمة
+     */
+    private void syncScroll(int rowCount) {
+        long droppedRows = buffer.getDroppedRows();
+        if (droppedRows != seenDroppedRows) {
+            if (!followOutput) {
+                long shift = (droppedRows - seenDroppedRows) * lineHeight;
+                scrollOffset = (int) Math.max(0, scrollOffset - shift);
+                // The fling was computed against rows that have since moved
+                scroller.forceFinished(true);
+            }
+            seenDroppedRows = droppedRows;
+        }
+        
+        int maxOffset = getMaxScrollOffset(rowCount);
+        if (followOutput || scrollOffset > maxOffset) {
+            scrollOffset = maxOffset;
+        }
+    }
+    
+    private void scrollOutputBy(int dy) {
+        int maxOffset = getMaxScrollOffset();
+        scrollOffset = Math.max(0, Math.min(maxOffset, scrollOffset + dy));
+        followOutput = scrollOffset >= maxOffset;
+        awakenScrollBars();
+        invalidate();
+    }
+    
+    @Override
+    public void computeScroll() {
+        if (scroller.computeScrollOffset()) {
+            int maxOffset = getMaxScrollOffset();
+            scrollOffset = Math.max(0, Math.min(maxOffset, scroller.getCurrY()));
+            followOutput = scrollOffset >= maxOffset;
+            awakenScrollBars();
+            postInvalidateOnAnimation();
+        }
+    }
+    
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return gestureDetector.onTouchEvent(event) || super.onTouchEvent(event);
+    }
+    
+    @Override
+    protected int computeVerticalScrollRange() {
+        return buffer.getRowCount() * lineHeight;
+    }
+    
+    @Override
+    protected int computeVerticalScrollOffset() {
+        return scrollOffset;
+    }
+    
+    @Override
+    protected int computeVerticalScrollExtent() {
+        return getViewportHeight();
+    }
+    
+    private int getViewportHeight() {
+        return Math.max(0, getHeight() - getPaddingTop() - getPaddingBottom());
+    }
+    
+    private int getMaxScrollOffset() {
+        return getMaxScrollOffset(buffer.getRowCount());
+    }
+    
+    private int getMaxScrollOffset(int rowCount) {
+        return Math.max(0, rowCount * lineHeight - getViewportHeight());
+    }
+    
+    private void copyToClipboard() {
+        ClipboardManager clipboard = (ClipboardManager) getContext().getSystemService(Context.CLIPBOARD_SERVICE);
+        if (clipboard == null) return;
+        
+        clipboard.setPrimaryClip(ClipData.newPlainText("terminal", buffer.getText()));
+        Toast.makeText(getContext(), "تم نسخ مخرجات الطرفية", Toast.LENGTH_SHORT).show();
+    }
+    
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mainHandler.removeCallbacks(scheduleFrame);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        frameScheduled.set(false);
+    }
+}
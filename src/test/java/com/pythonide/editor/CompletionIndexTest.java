@@ -0,0 +1,167 @@
+package com.pythonide.editor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * اختبارات فهرس الإكمال التلقائي (CompletionIndex)
+ */
+public class CompletionIndexTest {
+
+    private static final int MAX_RESULTS = 10;
+
+    private List<AutoCompleteHandler.CompletionItem> items;
+    private CompletionIndex index;
+    private final List<AutoCompleteHandler.CompletionItem> out = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        items = new ArrayList<>();
+        items.add(item("print", AutoCompleteHandler.CompletionItem.TYPE_BUILTIN));
+        items.add(item("property", AutoCompleteHandler.CompletionItem.TYPE_BUILTIN));
+        items.add(item("pass", AutoCompleteHandler.CompletionItem.TYPE_KEYWORD));
+        items.add(item("getName", AutoCompleteHandler.CompletionItem.TYPE_METHOD));
+        items.add(item("get_attr", AutoCompleteHandler.CompletionItem.TYPE_METHOD));
+        items.add(item("getattr", AutoCompleteHandler.CompletionItem.TYPE_BUILTIN));
+        items.add(item("HTTPServer", AutoCompleteHandler.CompletionItem.TYPE_CLASS));
+        index = new CompletionIndex(items, MAX_RESULTS);
+    }
+
+    @Test
+    public void testPrefixMatchesAreRanked() {
+        // Keywords before builtins, then shorter names first
+        assertEquals(names("pass", "print", "property"), query("p"));
+        assertEquals(names("print"), query("pri"));
+        assertEquals(0, index.query("xyz", 0, 3, out));
+    }
+
+    @Test
+    public void testQueryIgnoresCase() {
+        assertEquals(names("print"), query("PRI"));
+        assertEquals(names("HTTPServer"), query("https"));
+    }
+
+    @Test
+    public void testQueryUsesTextRange() {
+        String line = "x = os.geta(";
+        index.query(line, 7, 11, out);
+        assertEquals(names("getattr"), namesOf(out));
+    }
+
+    @Test
+    public void testInitialsFillRemainingSlots() {
+        assertEquals(names("getName"), query("gn"));
+        // No name starts with "ga"; get_attr is found through its initials only
+        assertEquals(names("get_attr"), query("ga"));
+        assertEquals(names("HTTPServer"), query("hs"));
+    }
+
+    @Test
+    public void testEmptyPrefixReturnsTopRanked() {
+        assertEquals(ranked(items, ""), query(""));
+    }
+
+    @Test
+    public void testInitialsOf() {
+        assertEquals("gn", CompletionIndex.initialsOf("getName"));
+        assertEquals("ga", CompletionIndex.initialsOf("get_attr"));
+        assertEquals("hs", CompletionIndex.initialsOf("HTTPServer"));
+        assertEquals("ppf", CompletionIndex.initialsOf("_private_parseFile"));
+        assertEquals("", CompletionIndex.initialsOf("print"));
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        // Enough shared prefixes to exercise precomputed top lists and the binary search past the trie
+        Random random = new Random(42);
+        String[] stems = {"get", "get_", "set_", "process", "proc", "self", "session", "a", "ab", "abc"};
+        String alphabet = "abcdefghijklmnopqrstuvwxyz_ABC0123";
+        List<AutoCompleteHandler.CompletionItem> many = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder name = new StringBuilder(stems[random.nextInt(stems.length)]);
+            int extra = random.nextInt(8);
+            for (int k = 0; k < extra; k++) {
+                name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            many.add(item(name.toString(), 1 + random.nextInt(7)));
+        }
+        CompletionIndex large = new CompletionIndex(many, MAX_RESULTS);
+
+        for (int i = 0; i < 2000; i++) {
+            String name = many.get(random.nextInt(many.size())).name;
+            String prefix = name.substring(0, random.nextInt(name.length() + 1));
+            if (random.nextBoolean()) {
+                prefix = prefix.toUpperCase(Locale.ROOT);
+            }
+
+            List<String> expected = ranked(many, prefix);
+            large.query(prefix, 0, prefix.length(), out);
+            List<String> actual = namesOf(out);
+
+            int prefixCount = Math.min(expected.size(), MAX_RESULTS);
+            assertEquals("prefix \"" + prefix + "\"", expected.subList(0, prefixCount), actual.subList(0, prefixCount));
+            assertTrue(actual.size() <= MAX_RESULTS);
+        }
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        CompletionIndex empty = new CompletionIndex(new ArrayList<>(), MAX_RESULTS);
+        assertEquals(0, empty.size());
+        assertEquals(0, empty.query("pr", 0, 2, out));
+        assertFalse(out.iterator().hasNext());
+    }
+
+    private List<String> query(String prefix) {
+        index.query(prefix, 0, prefix.length(), out);
+        return namesOf(out);
+    }
+
+    /**
+     * المرجع: مسح خطي لكل العناصر ثم ترتيبها بنفس معايير الفهرس
+     */
+    private static List<String> ranked(List<AutoCompleteHandler.CompletionItem> all, String prefix) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        List<AutoCompleteHandler.CompletionItem> matches = new ArrayList<>();
+        for (AutoCompleteHandler.CompletionItem item : all) {
+            if (item.name.toLowerCase(Locale.ROOT).startsWith(lowerPrefix)) {
+                matches.add(item);
+            }
+        }
+        matches.sort(Comparator
+            .comparingInt((AutoCompleteHandler.CompletionItem item) -> item.type)
+            .thenComparingInt(item -> item.name.length())
+            .thenComparing(item -> item.name, String.CASE_INSENSITIVE_ORDER));
+        return namesOf(matches);
+    }
+
+    private static List<String> namesOf(List<AutoCompleteHandler.CompletionItem> completions) {
+        List<String> names = new ArrayList<>();
+        for (AutoCompleteHandler.CompletionItem completion : completions) {
+            names.add(completion.name);
+        }
+        return names;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+
+    private static AutoCompleteHandler.CompletionItem item(String name, int type) {
+        return new AutoCompleteHandler.CompletionItem(name, type, "");
+    }
+}
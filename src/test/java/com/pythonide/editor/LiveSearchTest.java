@@ -0,0 +1,209 @@
+package com.pythonide.editor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * اختبارات البحث الحي (LiveSearch): تحديث مصفوفة التطابقات دون إعادة مسح المستند
+ * المرجع في كل اختبار مسح كامل بـ Matcher.find()
+ */
+public class LiveSearchTest {
+
+    @Test
+    public void testSpliceSameSize() {
+        LiveSearch.MatchArray matches = matches(0, 2, 10, 12, 20, 22, 30, 32);
+        matches.splice(1, 2, matches(11, 14), 3);
+        assertMatches(new int[] {0, 11, 23, 33}, new int[] {2, 14, 25, 35}, matches);
+    }
+
+    @Test
+    public void testSpliceGrowsPastCapacity() {
+        LiveSearch.MatchArray matches = new LiveSearch.MatchArray();
+        for (int i = 0; i < 64; i++) {
+            matches.add(i * 10, i * 10 + 1);
+        }
+        LiveSearch.MatchArray found = new LiveSearch.MatchArray();
+        for (int i = 0; i < 10; i++) {
+            found.add(5 + i, 6 + i);
+        }
+
+        // Replace the match at 0 with ten new ones; everything after moves by one
+        matches.splice(0, 1, found, 1);
+        assertEquals(73, matches.count);
+        assertEquals(5, matches.starts[0]);
+        assertEquals(14, matches.starts[9]);
+        assertEquals(11, matches.starts[10]);
+        assertEquals(631, matches.starts[72]);
+        assertEquals(632, matches.ends[72]);
+    }
+
+    @Test
+    public void testSpliceShrinksAndShiftsBack() {
+        LiveSearch.MatchArray matches = matches(0, 2, 10, 12, 20, 22, 30, 32);
+        matches.splice(1, 3, new LiveSearch.MatchArray(), -5);
+        assertMatches(new int[] {0, 25}, new int[] {2, 27}, matches);
+
+        // Removing everything
+        matches.splice(0, matches.count, new LiveSearch.MatchArray(), 0);
+        assertEquals(0, matches.count);
+    }
+
+    @Test
+    public void testSpliceInsertsIntoEmptyRange() {
+        LiveSearch.MatchArray matches = matches(0, 2, 30, 32);
+        matches.splice(1, 1, matches(10, 12, 15, 17), 0);
+        assertMatches(new int[] {0, 10, 15, 30}, new int[] {2, 12, 17, 32}, matches);
+    }
+
+    @Test
+    public void testAddSkipsDuplicateEmptyMatch() {
+        LiveSearch.MatchArray matches = new LiveSearch.MatchArray();
+        matches.add(5, 5);
+        matches.add(5, 5);
+        matches.add(6, 6);
+        assertEquals(2, matches.count);
+        assertEquals(0, matches.lowerBound(5));
+        assertEquals(1, matches.lowerBound(6));
+        assertEquals(2, matches.lowerBound(7));
+    }
+
+    @Test
+    public void testNarrowMatches() {
+        String text = "print(x)\nprinter = pr\nsprint pri\n";
+        LiveSearch.MatchArray matches = fullScan(text, literal("pr", false));
+        assertEquals(5, matches.count);
+
+        LiveSearch.narrowMatches(matches, literal("prin", false), text);
+        assertMatchesEqual(fullScan(text, literal("prin", false)), matches);
+        assertEquals(3, matches.count);
+
+        LiveSearch.narrowMatches(matches, literal("printe", false), text);
+        assertMatches(new int[] {9}, new int[] {15}, matches);
+    }
+
+    @Test
+    public void testNarrowMatchesIgnoringCase() {
+        String text = "Value value VALUES val";
+        LiveSearch.MatchArray matches = fullScan(text, literal("val", false));
+        LiveSearch.narrowMatches(matches, literal("VALUE", false), text);
+        assertMatchesEqual(fullScan(text, literal("value", false)), matches);
+        assertEquals(3, matches.count);
+    }
+
+    @Test
+    public void testNarrowMatchesAgreesWithFullScan() {
+        Random random = new Random(17);
+        for (int round = 0; round < 200; round++) {
+            String text = randomText(random, 2000, "abc \n");
+            String query = randomText(random, 1 + random.nextInt(2), "abc");
+            String longer = query + randomText(random, 1 + random.nextInt(3), "abc");
+            boolean caseSensitive = random.nextBoolean();
+            // setQuery() only narrows when the shorter query cannot overlap itself
+            if (LiveSearch.hasBorder(query, caseSensitive)) continue;
+
+            LiveSearch.MatchArray matches = fullScan(text, literal(query, caseSensitive));
+            LiveSearch.narrowMatches(matches, literal(longer, caseSensitive), text);
+            assertMatchesEqual(fullScan(text, literal(longer, caseSensitive)), matches);
+        }
+    }
+
+    @Test
+    public void testHasBorder() {
+        assertTrue(LiveSearch.hasBorder("aa", true));
+        assertTrue(LiveSearch.hasBorder("abab", true));
+        assertTrue(LiveSearch.hasBorder("Aba", false));
+        assertFalse(LiveSearch.hasBorder("Aba", true));
+        assertFalse(LiveSearch.hasBorder("abc", false));
+        assertFalse(LiveSearch.hasBorder("a", false));
+    }
+
+    @Test
+    public void testScanAcrossRegions() {
+        // Longer than one scan region, so the scan is split at line ends
+        Random random = new Random(23);
+        PieceTableDocument document = new PieceTableDocument(randomText(random, 200000, "abcd \n"));
+        Pattern pattern = LiveSearch.createPattern("ab+c", false, true, false);
+        assertMatchesEqual(fullScan(document.toString(), pattern), LiveSearch.scan(document, pattern));
+    }
+
+    @Test
+    public void testUpdateMatchesAfterRandomEdits() {
+        String[] queries = {"ab", "a+b", "^c", "b\\n", "\\bab\\b", "d?a"};
+        Random random = new Random(29);
+        for (String query : queries) {
+            Pattern pattern = LiveSearch.createPattern(query, false, true, false);
+            PieceTableDocument document = new PieceTableDocument(randomText(random, 3000, "abcd \n"));
+            LiveSearch.MatchArray matches = LiveSearch.scan(document, pattern);
+
+            for (int i = 0; i < 300; i++) {
+                int start = random.nextInt(document.length() + 1);
+                int before = Math.min(document.length() - start, random.nextInt(6));
+                String text = randomText(random, random.nextInt(6), "abcd \n");
+                document.replace(start, start + before, text);
+
+                LiveSearch.updateMatches(matches, pattern, document, start, before, text.length());
+                assertMatchesEqual("\"" + query + "\" after edit " + i,
+                    fullScan(document.toString(), pattern), matches);
+            }
+        }
+    }
+
+    private static Pattern literal(String query, boolean caseSensitive) {
+        return LiveSearch.createPattern(query, caseSensitive, false, false);
+    }
+
+    private static LiveSearch.MatchArray fullScan(String text, Pattern pattern) {
+        LiveSearch.MatchArray matches = new LiveSearch.MatchArray();
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            matches.add(matcher.start(), matcher.end());
+        }
+        return matches;
+    }
+
+    private static LiveSearch.MatchArray matches(int... bounds) {
+        LiveSearch.MatchArray matches = new LiveSearch.MatchArray();
+        for (int i = 0; i < bounds.length; i += 2) {
+            matches.add(bounds[i], bounds[i + 1]);
+        }
+        return matches;
+    }
+
+    private static void assertMatches(int[] starts, int[] ends, LiveSearch.MatchArray matches) {
+        assertEquals(starts.length, matches.count);
+        for (int i = 0; i < starts.length; i++) {
+            assertEquals("start " + i, starts[i], matches.starts[i]);
+            assertEquals("end " + i, ends[i], matches.ends[i]);
+        }
+    }
+
+    private static void assertMatchesEqual(LiveSearch.MatchArray expected, LiveSearch.MatchArray actual) {
+        assertMatchesEqual("", expected, actual);
+    }
+
+    private static void assertMatchesEqual(String message, LiveSearch.MatchArray expected,
+                                           LiveSearch.MatchArray actual) {
+        assertEquals(message, expected.count, actual.count);
+        assertArrayEquals(message, Arrays.copyOf(expected.starts, expected.count),
+            Arrays.copyOf(actual.starts, actual.count));
+        assertArrayEquals(message, Arrays.copyOf(expected.ends, expected.count),
+            Arrays.copyOf(actual.ends, actual.count));
+    }
+
+    private static String randomText(Random random, int length, String alphabet) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,278 @@
+package com.pythonide.editor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * اختبارات مستند جدول القطع (PieceTableDocument)
+ * كل تعديل يُطبّق أيضاً على StringBuilder ويُقارن المستند به
+ */
+public class PieceTableDocumentTest {
+
+    @Test
+    public void testEmptyDocument() {
+        PieceTableDocument document = new PieceTableDocument();
+        assertEquals(0, document.length());
+        assertEquals(1, document.getLineCount());
+        assertEquals(0, document.getLineStart(0));
+        assertEquals(0, document.getLineEnd(0));
+        assertEquals(0, document.getLineForOffset(0));
+        assertEquals("", document.toString());
+    }
+
+    @Test
+    public void testLineIndex() {
+        PieceTableDocument document = new PieceTableDocument("import os\n\ndef main():\n    pass\n");
+        assertEquals(5, document.getLineCount());
+        assertEquals(0, document.getLineStart(0));
+        assertEquals(9, document.getLineEnd(0));
+        assertEquals(10, document.getLineStart(1));
+        assertEquals(10, document.getLineEnd(1));
+        assertEquals(11, document.getLineStart(2));
+        assertEquals(document.length(), document.getLineStart(4));
+
+        assertEquals(0, document.getLineForOffset(9));
+        assertEquals(1, document.getLineForOffset(10));
+        assertEquals(2, document.getLineForOffset(11));
+        assertEquals(4, document.getLineForOffset(document.length()));
+    }
+
+    @Test
+    public void testReplaceAcrossPieces() {
+        PieceTableDocument document = new PieceTableDocument("hello world");
+        document.replace(5, 5, ",\nbig");
+        document.replace(0, 1, "H");
+        document.replace(document.length(), document.length(), "!\n");
+        assertEquals("Hello,\nbig world!\n", document.toString());
+        assertEquals(3, document.getLineCount());
+        assertEquals(7, document.getLineStart(1));
+        assertEquals(1, document.getLineForOffset(12));
+
+        // Delete a range spanning the original and added pieces
+        document.replace(3, 10, "");
+        assertEquals("Hel world!\n", document.toString());
+        assertEquals(2, document.getLineCount());
+        assertEquals('w', document.charAt(4));
+        assertEquals(4, document.indexOf("world", 0));
+        assertEquals(-1, document.indexOf("big", 0));
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(7);
+        StringBuilder model = new StringBuilder(randomText(random, 2000));
+        PieceTableDocument document = new PieceTableDocument(model);
+
+        for (int i = 0; i < 3000; i++) {
+            int start = random.nextInt(model.length() + 1);
+            int end = Math.min(model.length(), start + random.nextInt(20));
+            if (random.nextInt(3) == 0) {
+                end = start;
+            }
+            String text = random.nextInt(4) == 0 ? "" : randomText(random, random.nextInt(12));
+
+            long version = document.getVersion();
+            document.replace(start, end, text);
+            model.replace(start, end, text);
+            assertTrue(document.getVersion() > version);
+
+            if (i % 100 == 0) {
+                assertMatches(model, document);
+            } else {
+                // Spot checks around the edit between full comparisons
+                assertEquals(model.length(), document.length());
+                int offset = Math.min(start, model.length() - 1);
+                if (offset >= 0) {
+                    assertEquals(model.charAt(offset), document.charAt(offset));
+                }
+                assertEquals(lineOf(model, start), document.getLineForOffset(start));
+            }
+        }
+        assertMatches(model, document);
+    }
+
+    @Test
+    public void testAddBufferSpansChunks() {
+        StringBuilder model = new StringBuilder("start\nend\n");
+        PieceTableDocument document = new PieceTableDocument(model);
+
+        // Larger than one 16K add-buffer chunk
+        Random random = new Random(3);
+        String large = randomText(random, 40000);
+        document.replace(6, 6, large);
+        model.replace(6, 6, large);
+        document.replace(100, 30000, "x\ny");
+        model.replace(100, 30000, "x\ny");
+        assertMatches(model, document);
+    }
+
+    @Test
+    public void testSnapshotIsUnaffectedByLaterEdits() {
+        PieceTableDocument document = new PieceTableDocument("a\nb\nc\n");
+        document.replace(2, 3, "B");
+        TextDocument snapshot = document.snapshot();
+        long snapshotVersion = snapshot.getVersion();
+
+        document.replace(0, 0, "first\n");
+        document.replace(document.length(), document.length(), "last");
+        document.setText("replaced");
+
+        assertEquals("a\nB\nc\n", snapshot.toString());
+        assertEquals(4, snapshot.getLineCount());
+        assertEquals(2, snapshot.getLineStart(1));
+        assertEquals(snapshotVersion, snapshot.getVersion());
+        assertEquals("replaced", document.toString());
+        assertFalse(document.isReadOnly());
+    }
+
+    @Test
+    public void testSnapshotIsReadOnly() {
+        PieceTableDocument document = new PieceTableDocument("text");
+        TextDocument snapshot = document.snapshot();
+        assertTrue(snapshot.isReadOnly());
+        assertSame(snapshot, snapshot.snapshot());
+
+        try {
+            snapshot.replace(0, 1, "T");
+            fail("Snapshot accepted an edit");
+        } catch (UnsupportedOperationException expected) {
+            // Expected
+        }
+        try {
+            snapshot.setText("other");
+            fail("Snapshot accepted setText");
+        } catch (UnsupportedOperationException expected) {
+            // Expected
+        }
+        assertEquals("text", snapshot.toString());
+    }
+
+    @Test
+    public void testSnapshotsDuringRandomEdits() {
+        Random random = new Random(11);
+        StringBuilder model = new StringBuilder(randomText(random, 500));
+        PieceTableDocument document = new PieceTableDocument(model);
+        List<TextDocument> snapshots = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            int start = random.nextInt(model.length() + 1);
+            int end = Math.min(model.length(), start + random.nextInt(10));
+            String text = randomText(random, random.nextInt(8));
+            document.replace(start, end, text);
+            model.replace(start, end, text);
+
+            if (i % 50 == 0) {
+                snapshots.add(document.snapshot());
+                expected.add(model.toString());
+            }
+        }
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertMatches(new StringBuilder(expected.get(i)), snapshots.get(i));
+        }
+        assertMatches(model, document);
+    }
+
+    @Test
+    public void testCompaction() {
+        Random random = new Random(5);
+        StringBuilder model = new StringBuilder(randomText(random, 10000));
+        PieceTableDocument document = new PieceTableDocument(model);
+        TextDocument before = document.snapshot();
+        String beforeText = model.toString();
+
+        // Scattered single-char inserts fragment the table past the compaction threshold
+        long version = document.getVersion();
+        for (int i = 0; i < 6000; i++) {
+            int offset = random.nextInt(model.length() + 1);
+            String text = random.nextInt(10) == 0 ? "\n" : "x";
+            document.replace(offset, offset, text);
+            model.insert(offset, text);
+        }
+
+        assertEquals(version + 6000, document.getVersion());
+        assertMatches(model, document);
+        assertEquals(beforeText, before.toString());
+
+        // Editing after compaction keeps working on the rebuilt buffers
+        document.replace(10, 20, "after\ncompaction");
+        model.replace(10, 20, "after\ncompaction");
+        assertMatches(model, document);
+    }
+
+    @Test
+    public void testOutOfRange() {
+        PieceTableDocument document = new PieceTableDocument("abc");
+        try {
+            document.charAt(3);
+            fail("charAt past the end");
+        } catch (IndexOutOfBoundsException expected) {
+            // Expected
+        }
+        try {
+            document.replace(2, 4, "");
+            fail("replace past the end");
+        } catch (IndexOutOfBoundsException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * مقارنة كاملة: النص، كل محرف، فهرس الأسطر في الاتجاهين، وindexOf
+     */
+    private static void assertMatches(StringBuilder model, TextDocument document) {
+        String text = model.toString();
+        assertEquals(text.length(), document.length());
+        assertEquals(text, document.toString());
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(text.charAt(i), document.charAt(i));
+        }
+
+        int line = 0;
+        int lineStart = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            assertEquals("offset " + i, line, document.getLineForOffset(i));
+            if (i == text.length() || text.charAt(i) == '\n') {
+                assertEquals("line " + line, lineStart, document.getLineStart(line));
+                assertEquals("line " + line, i, document.getLineEnd(line));
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        assertEquals(line, document.getLineCount());
+
+        if (text.length() > 10) {
+            String needle = text.substring(text.length() / 2, text.length() / 2 + 4);
+            assertEquals(text.indexOf(needle, 3), document.indexOf(needle, 3));
+        }
+        int middle = text.length() / 2;
+        assertEquals(text.substring(middle), document.getText(middle, text.length()));
+    }
+
+    private static int lineOf(CharSequence text, int offset) {
+        int line = 0;
+        for (int i = 0; i < offset; i++) {
+            if (text.charAt(i) == '\n') line++;
+        }
+        return line;
+    }
+
+    private static String randomText(Random random, int length) {
+        String alphabet = "abcdefghij  \n\n\tXYZ(){}";
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
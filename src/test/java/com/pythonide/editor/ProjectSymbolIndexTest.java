@@ -0,0 +1,161 @@
+package com.pythonide.editor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * اختبارات فهرس رموز المشروع (ProjectSymbolIndex)
+ * تُستدعى update() مباشرة على خيط الاختبار بدل refresh()
+ */
+public class ProjectSymbolIndexTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File projectRoot;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws IOException {
+        projectRoot = tempFolder.newFolder("project");
+        cacheFile = new File(tempFolder.getRoot(), "cache/symbols.bin");
+    }
+
+    @Test
+    public void testExtractsSymbols() throws IOException {
+        write("main.py", "import os, json as j\n"
+            + "from util import (load,\n    save as store)\n"
+            + "VERSION = 1\n"
+            + "class Model:\n    def method(self):\n        local = 2\n"
+            + "def run():\n    pass\n");
+
+        ProjectSymbolIndex index = new ProjectSymbolIndex(projectRoot, cacheFile);
+        assertTrue(index.update());
+        assertEquals(names("os", "j", "load", "store", "VERSION", "Model", "method", "run"),
+            completionNames(index));
+        assertEquals(1, index.findDefinitions("Model").size());
+        assertEquals(4, index.findDefinitions("Model").get(0).line);
+        // Imports are not definitions
+        assertTrue(index.findDefinitions("load").isEmpty());
+    }
+
+    @Test
+    public void testCacheRoundTrip() throws IOException {
+        File main = write("main.py", "def first():\n    pass\n");
+        write("pkg/helpers.py", "class Helper:\n    pass\n");
+        long lastModified = main.lastModified();
+
+        ProjectSymbolIndex index = new ProjectSymbolIndex(projectRoot, cacheFile);
+        assertTrue(index.update());
+        assertTrue(cacheFile.exists());
+        // Nothing changed on disk
+        assertFalse(index.update());
+
+        // Same size and time: a new index must take the symbols from the cache without parsing
+        write("main.py", "def other():\n    pass\n");
+        assertTrue(main.setLastModified(lastModified));
+        ProjectSymbolIndex cached = new ProjectSymbolIndex(projectRoot, cacheFile);
+        assertTrue(cached.update());
+        assertEquals(2, cached.getFileCount());
+        assertEquals(names("first", "Helper"), completionNames(cached));
+
+        // A changed time makes the file parsed again
+        assertTrue(main.setLastModified(lastModified + 2000));
+        assertTrue(cached.update());
+        assertEquals(names("other", "Helper"), completionNames(cached));
+    }
+
+    @Test
+    public void testCorruptCacheIsIgnored() throws IOException {
+        write("main.py", "def first():\n    pass\n");
+        assertTrue(cacheFile.getParentFile().mkdirs());
+        Files.write(cacheFile.toPath(), new byte[] {'P', 'Y', 'I', 'X', 0, 0});
+
+        ProjectSymbolIndex index = new ProjectSymbolIndex(projectRoot, cacheFile);
+        assertTrue(index.update());
+        assertEquals(names("first"), completionNames(index));
+    }
+
+    @Test
+    public void testSkipsIgnoredDirectories() throws IOException {
+        write("main.py", "def kept():\n    pass\n");
+        write(".hidden/hidden.py", "def hidden():\n    pass\n");
+        write("__pycache__/cached.py", "def cached():\n    pass\n");
+        write("venv/lib/venv_module.py", "def in_venv():\n    pass\n");
+        write("lib/site-packages/installed.py", "def installed():\n    pass\n");
+        // A virtualenv under any name
+        write("env311/pyvenv.cfg", "home = /usr/bin\n");
+        write("env311/lib/env_module.py", "def in_env():\n    pass\n");
+        write("big.py", "def big():\n    pass\n" + repeat("#\n", 600 * 1024));
+
+        ProjectSymbolIndex index = new ProjectSymbolIndex(projectRoot, cacheFile);
+        index.update();
+        assertEquals(1, index.getFileCount());
+        assertEquals(names("kept"), completionNames(index));
+    }
+
+    @Test
+    public void testSkipsSymbolicLinks() throws IOException {
+        write("main.py", "def kept():\n    pass\n");
+        File outside = tempFolder.newFolder("outside");
+        Files.write(new File(outside, "shared.py").toPath(), "def shared():\n    pass\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            // A loop back to the project root and a link out of the project
+            Files.createSymbolicLink(new File(projectRoot, "loop").toPath(), projectRoot.toPath());
+            Files.createSymbolicLink(new File(projectRoot, "linked").toPath(), outside.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            assumeTrue("Symbolic links not supported", false);
+        }
+
+        ProjectSymbolIndex index = new ProjectSymbolIndex(projectRoot, cacheFile);
+        index.update();
+        assertEquals(1, index.getFileCount());
+        assertEquals(names("kept"), completionNames(index));
+    }
+
+    private File write(String path, String content) throws IOException {
+        File file = new File(projectRoot, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> completionNames(ProjectSymbolIndex index) {
+        List<String> names = new ArrayList<>();
+        for (AutoCompleteHandler.CompletionItem item : index.getCompletionItems()) {
+            names.add(item.name);
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package com.pythonide.editor;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * اختبارات التراجع وإعادة التنفيذ (UndoRedoManager)
+ * المحرر هنا نص بسيط يطلق أحداث TextWatcher بنفس ترتيب Editable، مع مسافة بادئة تلقائية
+ * بعد السطر المنتهي بـ ':' كما في CodeEditText
+ */
+public class UndoRedoManagerTest {
+
+    private FakeEditor editor;
+    private UndoRedoManager manager;
+
+    @Before
+    public void setUp() {
+        editor = new FakeEditor();
+        // CodeEditText attaches its own watcher before the manager's
+        editor.addTextChangedListener(new AutoIndentWatcher());
+        manager = new UndoRedoManager(editor);
+    }
+
+    @Test
+    public void testTypingIsCoalesced() {
+        editor.type("print");
+        assertEquals(1, manager.getUndoStepCount());
+
+        manager.undo();
+        assertEquals("", editor.toString());
+        manager.redo();
+        assertEquals("print", editor.toString());
+        assertEquals(5, editor.selection);
+    }
+
+    @Test
+    public void testEnterAndIndentAreSeparateSteps() {
+        editor.type("if x:\n");
+        assertEquals("if x:\n    ", editor.toString());
+        assertEquals(3, manager.getUndoStepCount());
+
+        manager.undo();
+        assertEquals("if x:\n", editor.toString());
+        manager.undo();
+        assertEquals("if x:", editor.toString());
+    }
+
+    @Test
+    public void testRedoEnterThenUndoTwice() {
+        editor.type("if x:\n");
+        manager.undo();
+        manager.undo();
+        assertEquals("if x:", editor.toString());
+
+        // Replaying the newline must not indent again behind the history's back
+        manager.redo();
+        assertEquals("if x:\n", editor.toString());
+        assertTrue(manager.canRedo());
+
+        manager.undo();
+        assertEquals("if x:", editor.toString());
+        manager.undo();
+        assertEquals("", editor.toString());
+        assertFalse(manager.canUndo());
+
+        manager.redo();
+        manager.redo();
+        manager.redo();
+        assertEquals("if x:\n    ", editor.toString());
+        assertFalse(manager.canRedo());
+    }
+
+    @Test
+    public void testUndoNewlineBackspace() {
+        editor.type("if x:\n");
+        // Backspace over the indentation and the newline
+        editor.replace(6, 10, "");
+        editor.replace(5, 6, "");
+        assertEquals("if x:", editor.toString());
+
+        // Undoing the newline deletion re-inserts a single '\n', which must not indent
+        manager.undo();
+        assertEquals("if x:\n", editor.toString());
+        manager.undo();
+        assertEquals("if x:\n    ", editor.toString());
+        manager.undo();
+        manager.undo();
+        assertEquals("if x:", editor.toString());
+    }
+
+    @Test
+    public void testReplayingOnlyDuringUndoRedo() {
+        final List<Boolean> seen = new ArrayList<>();
+        editor.addTextChangedListener(new TextWatcherAdapter() {
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                seen.add(manager.isReplaying());
+            }
+        });
+
+        editor.type("a");
+        manager.undo();
+        manager.redo();
+        assertEquals(3, seen.size());
+        assertFalse(seen.get(0));
+        assertTrue(seen.get(1));
+        assertTrue(seen.get(2));
+        assertFalse(manager.isReplaying());
+    }
+
+    /**
+     * نفس قاعدة CodeEditText: سطر جديد مكتوب (وليس معاداً من السجل) بعد ':' يضيف مستوى مسافة
+     */
+    private class AutoIndentWatcher extends TextWatcherAdapter {
+        private boolean newlineTyped;
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+            newlineTyped = before == 0 && count == 1 && s.charAt(start) == '\n' && !manager.isReplaying();
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            if (!newlineTyped) return;
+            newlineTyped = false;
+
+            int cursor = editor.selection;
+            if (cursor >= 2 && editor.text.charAt(cursor - 2) == ':') {
+                editor.replace(cursor, cursor, "    ");
+            }
+        }
+    }
+
+    private static class TextWatcherAdapter implements TextWatcher {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+        }
+    }
+
+    private static class FakeEditor implements UndoRedoManager.EditTarget {
+        final StringBuilder text = new StringBuilder();
+        final List<TextWatcher> watchers = new ArrayList<>();
+        int selection;
+
+        @Override
+        public void addTextChangedListener(TextWatcher watcher) {
+            watchers.add(watcher);
+        }
+
+        @Override
+        public String getText(int start, int end) {
+            return text.substring(start, end);
+        }
+
+        @Override
+        public void replace(int start, int end, CharSequence replacement) {
+            int count = replacement.length();
+            for (TextWatcher watcher : new ArrayList<>(watchers)) {
+                watcher.beforeTextChanged(text, start, end - start, count);
+            }
+            text.replace(start, end, replacement.toString());
+            selection = start + count;
+            for (TextWatcher watcher : new ArrayList<>(watchers)) {
+                watcher.onTextChanged(text, start, end - start, count);
+            }
+            for (TextWatcher watcher : new ArrayList<>(watchers)) {
+                watcher.afterTextChanged(null);
+            }
+        }
+
+        @Override
+        public void setSelection(int offset) {
+            selection = offset;
+        }
+
+        void type(String typed) {
+            for (int i = 0; i < typed.length(); i++) {
+                replace(selection, selection, String.valueOf(typed.charAt(i)));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.pythonide.files;
+
+import com.pythonide.editor.PieceTableDocument;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * اختبارات خدمة الحفظ (FileSaveService)
+ * الحفظ يتم على خيط الكتابة، فتنتظر الاختبارات محتوى الملف بدلاً من المستمع
+ */
+public class FileSaveServiceTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveWritesContent() throws Exception {
+        File target = new File(tempFolder.getRoot(), "main.py");
+        FileSaveService service = new FileSaveService(target);
+
+        String text = "print('مرحباً')\n" + repeat("x = 1\n", 5000);
+        service.save(new PieceTableDocument(text).snapshot());
+        awaitContent(target, text);
+        assertFalse(new File(tempFolder.getRoot(), ".main.py.saving").exists());
+    }
+
+    @Test
+    public void testSaveEmptyDocument() throws Exception {
+        File target = tempFolder.newFile("empty.py");
+        Files.write(target.toPath(), "hello".getBytes(StandardCharsets.UTF_8));
+        FileSaveService service = new FileSaveService(target);
+
+        service.save(new PieceTableDocument("").snapshot());
+        awaitContent(target, "");
+
+        // The writer must still accept saves after the empty one
+        service.save(new PieceTableDocument("second").snapshot());
+        awaitContent(target, "second");
+    }
+
+    @Test
+    public void testSaveAfterFailure() throws Exception {
+        File directory = new File(tempFolder.getRoot(), "missing");
+        File target = new File(directory, "script.py");
+        FileSaveService service = new FileSaveService(target);
+
+        // The temporary file cannot be created, so this save fails
+        service.save(new PieceTableDocument("first").snapshot());
+        service.save(new PieceTableDocument("first again").snapshot());
+        Thread.sleep(200);
+        assertFalse(target.exists());
+
+        assertTrue(directory.mkdirs());
+        service.save(new PieceTableDocument("after failure").snapshot());
+        awaitContent(target, "after failure");
+    }
+
+    private static void awaitContent(File file, String expected) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        String actual = null;
+        while (System.currentTimeMillis() < deadline) {
+            if (file.exists()) {
+                actual = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                if (actual.equals(expected)) return;
+            }
+            Thread.sleep(20);
+        }
+        assertEquals(expected, actual);
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}